@@ -82,6 +82,7 @@ public interface HttpServer {
         EXPAND_STORAGE,
         GC,
         GC_DETAILS,
+        HOT_LEDGERS,
         BOOKIE_STATE,
         BOOKIE_SANITY,
         BOOKIE_STATE_READONLY,
@@ -54,6 +54,11 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_REQUEST = "READ_ENTRY_REQUEST";
     String READ_ENTRY = "READ_ENTRY";
     String READ_ENTRY_REJECTED = "READ_ENTRY_REJECTED";
+    String READ_ENTRY_COALESCED = "READ_ENTRY_COALESCED";
+    String READ_ENTRY_CACHE_HIT_INLINE = "READ_ENTRY_CACHE_HIT_INLINE";
+    String READ_ENTRY_DISK_SCHEDULING_DELAY = "READ_ENTRY_DISK_SCHEDULING_DELAY";
+    String READ_ENTRY_RANGE_REQUEST = "READ_ENTRY_RANGE_REQUEST";
+    String READ_ENTRY_RANGE_PAUSED = "READ_ENTRY_RANGE_PAUSED";
     String READ_ENTRY_SCHEDULING_DELAY = "READ_ENTRY_SCHEDULING_DELAY";
     String READ_ENTRY_FENCE_REQUEST = "READ_ENTRY_FENCE_REQUEST";
     String READ_ENTRY_FENCE_WAIT = "READ_ENTRY_FENCE_WAIT";
@@ -70,6 +75,10 @@ public interface BookKeeperServerStats {
     String GET_BOOKIE_INFO = "GET_BOOKIE_INFO";
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
+    String REQUEST_SCHEDULER_QUEUE_DEPTH = "REQUEST_SCHEDULER_QUEUE_DEPTH";
+    String REQUEST_SCHEDULER_QUEUE_LATENCY = "REQUEST_SCHEDULER_QUEUE_LATENCY";
+    String REQUEST_SCHEDULER_REJECTED = "REQUEST_SCHEDULER_REJECTED";
+    String TENANT_THROTTLED = "TENANT_THROTTLED";
 
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
@@ -128,6 +137,7 @@ public interface BookKeeperServerStats {
 
     // Ledger Cache Stats
     String LEDGER_CACHE_READ_PAGE = "LEDGER_CACHE_READ_PAGE";
+    String LEDGER_CACHE_FLUSH = "LEDGER_CACHE_FLUSH";
     // SkipList Stats
     String SKIP_LIST_GET_ENTRY = "SKIP_LIST_GET_ENTRY";
     String SKIP_LIST_PUT_ENTRY = "SKIP_LIST_PUT_ENTRY";
@@ -142,6 +152,7 @@ public interface BookKeeperServerStats {
     // Ledger Cache Counters
     String LEDGER_CACHE_HIT = "LEDGER_CACHE_HIT";
     String LEDGER_CACHE_MISS = "LEDGER_CACHE_MISS";
+    String LEDGER_CACHE_FLUSH_PAGES = "LEDGER_CACHE_FLUSH_PAGES";
 
     // Compaction/Garbage Collection Related Counters
     String ACTIVE_ENTRY_LOG_COUNT = "ACTIVE_ENTRY_LOG_TOTAL";
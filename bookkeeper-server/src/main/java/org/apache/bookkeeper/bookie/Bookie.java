@@ -19,6 +19,7 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
@@ -43,6 +44,15 @@ public interface Bookie {
     // TODO: replace ackBeforeSync with flags
     void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+    /**
+     * Add a batch of entries, as {@link #addEntry} would add each of them, logging them to the
+     * journal together. The entries which can't be added are not logged, and their failure is
+     * returned instead of being thrown, including when the thread is interrupted.
+     *
+     * @return the failure of each entry which couldn't be added, or null if all the entries were added
+     */
+    Exception[] addEntries(ByteBuf[] entries, WriteCallback[] cbs, int count, boolean ackBeforeSync,
+                           Object ctx, byte[][] masterKeys);
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
@@ -57,6 +67,22 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+    /**
+     * Get a {@link FileRegion} over an entry stored in a sealed entry log, to send it without
+     * copying it to user space.
+     *
+     * @return the region of the entry, or null if the entry has to be read with {@link #readEntry}.
+     */
+    FileRegion readEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, NoLedgerException, BookieException;
+    /**
+     * Read an entry only if the storage can serve it from memory, so it can be called from
+     * threads which must not block on the disk.
+     *
+     * @return the entry, or null if the entry has to be read with {@link #readEntry}.
+     */
+    ByteBuf readEntryIfCached(long ledgerId, long entryId)
+            throws IOException, NoLedgerException, BookieException;
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
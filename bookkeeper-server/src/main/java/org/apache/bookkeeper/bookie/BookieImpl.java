@@ -32,6 +32,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import java.io.File;
 import java.io.FilenameFilter;
@@ -958,6 +959,30 @@ public class BookieImpl implements Bookie {
                                   boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
         long ledgerId = handle.getLedgerId();
+        long entryId = addEntryToLedgerStorage(handle, entry, masterKey);
+
+        if (!writeDataToJournal) {
+            cb.writeComplete(0, ledgerId, entryId, null, ctx);
+            if (ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+            return;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Adding {}@{}", entryId, ledgerId);
+        }
+        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+    }
+
+    /**
+     * Add an entry to the ledger storage, the entry still has to be logged to the journal.
+     *
+     * @return the entry id
+     */
+    private long addEntryToLedgerStorage(LedgerDescriptor handle, ByteBuf entry, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long ledgerId = handle.getLedgerId();
         long entryId = handle.addEntry(entry);
 
         bookieStats.getWriteBytes().addCount(entry.readableBytes());
@@ -977,19 +1002,7 @@ public class BookieImpl implements Bookie {
                 }
             }
         }
-
-        if (!writeDataToJournal) {
-            cb.writeComplete(0, ledgerId, entryId, null, ctx);
-            if (ctx instanceof BookieRequestHandler) {
-                ((BookieRequestHandler) ctx).flushPendingResponse();
-            }
-            return;
-        }
-
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Adding {}@{}", entryId, ledgerId);
-        }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+        return entryId;
     }
 
     /**
@@ -1121,6 +1134,127 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Add a batch of entries to ledgers. Each entry is added to the ledger storage as with
+     * {@link #addEntry}. The consecutive entries of a ledger are added under the lock of the ledger,
+     * and logged to the journal with a single enqueue before the lock is released, like a single add.
+     * The entries are released.
+     *
+     * <p>If the thread is interrupted, the entries which weren't logged to the journal yet fail with
+     * an {@link IOException}, the interrupt flag of the thread is kept.
+     *
+     * @return the failure of each entry which couldn't be added, or null if all the entries were added
+     */
+    public Exception[] addEntries(ByteBuf[] entries, WriteCallback[] cbs, int count, boolean ackBeforeSync,
+                                  Object ctx, byte[][] masterKeys) {
+        long requestNanos = MathUtils.nowInNano();
+        Exception[] failures = null;
+        // the entries before this index are logged to the journal, or failed
+        int logged = 0;
+        try {
+            while (logged < count) {
+                LedgerDescriptor handle;
+                try {
+                    handle = getLedgerForEntry(entries[logged], masterKeys[logged]);
+                } catch (IOException | BookieException | RuntimeException e) {
+                    failures = addFailure(failures, count, logged++, e);
+                    continue;
+                }
+                long ledgerId = handle.getLedgerId();
+                int end = logged + 1;
+                while (end < count && entries[end].getLong(entries[end].readerIndex()) == ledgerId) {
+                    end++;
+                }
+                synchronized (handle) {
+                    for (int i = logged; i < end; i++) {
+                        try {
+                            if (i > logged) {
+                                // checks the master key of the entry
+                                getLedgerForEntry(entries[i], masterKeys[i]);
+                            }
+                            if (handle.isFenced()) {
+                                throw BookieException
+                                        .create(BookieException.Code.LedgerFencedException);
+                            }
+                            addEntryToLedgerStorage(handle, entries[i], masterKeys[i]);
+                        } catch (NoWritableLedgerDirException e) {
+                            stateManager.transitionToReadOnlyMode();
+                            failures = addFailure(failures, count, i, new IOException(e));
+                        } catch (IOException | BookieException | RuntimeException e) {
+                            failures = addFailure(failures, count, i, e);
+                        }
+                    }
+                    logAddedEntries(entries, cbs, logged, end, failures, ackBeforeSync, ctx);
+                }
+                logged = end;
+            }
+            if (!writeDataToJournal && ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+            return failures;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while adding a batch of {} entries", count, e);
+            for (int i = logged; i < count; i++) {
+                if (failures == null || failures[i] == null) {
+                    failures = addFailure(failures, count, i,
+                            new IOException("Interrupted while adding the entry", e));
+                }
+            }
+            return failures;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (int i = 0; i < count; i++) {
+                int entrySize = entries[i].readableBytes();
+                if (failures == null || failures[i] == null) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entrySize);
+                }
+                ReferenceCountUtil.release(entries[i]);
+            }
+        }
+    }
+
+    /**
+     * Log the entries of a ledger in [from, to) which were added to the ledger storage to its journal,
+     * or complete them if the data isn't written to the journal.
+     */
+    private void logAddedEntries(ByteBuf[] entries, WriteCallback[] cbs, int from, int to, Exception[] failures,
+                                 boolean ackBeforeSync, Object ctx) throws InterruptedException {
+        if (!writeDataToJournal) {
+            for (int i = from; i < to; i++) {
+                if (failures == null || failures[i] == null) {
+                    ByteBuf entry = entries[i];
+                    cbs[i].writeComplete(0, entry.getLong(entry.readerIndex()),
+                            entry.getLong(entry.readerIndex() + 8), null, ctx);
+                }
+            }
+            return;
+        }
+        ByteBuf[] journalEntries = new ByteBuf[to - from];
+        WriteCallback[] journalCbs = new WriteCallback[to - from];
+        for (int i = from; i < to; i++) {
+            if (failures == null || failures[i] == null) {
+                journalEntries[i - from] = entries[i];
+                journalCbs[i - from] = cbs[i];
+            }
+        }
+        ByteBuf entry = entries[from];
+        getJournal(entry.getLong(entry.readerIndex()))
+                .logAddEntries(journalEntries, journalCbs, to - from, ackBeforeSync, ctx);
+    }
+
+    private static Exception[] addFailure(Exception[] failures, int count, int idx, Exception failure) {
+        if (failures == null) {
+            failures = new Exception[count];
+        }
+        failures[idx] = failure;
+        return failures;
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1162,6 +1296,39 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    public FileRegion readEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        FileRegion region = handle.readEntryRegion(entryId, minEntrySize);
+        if (null != region) {
+            bookieStats.getReadBytes().addCount(region.count());
+            bookieStats.getReadEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(requestNanos), TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(region.count());
+        }
+        return region;
+    }
+
+    public ByteBuf readEntryIfCached(long ledgerId, long entryId)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        // opening the handle may look the ledger up in the storage, which is left to the regular reads
+        LedgerDescriptor handle = handles.getOpenReadOnlyHandle(ledgerId);
+        if (null == handle) {
+            return null;
+        }
+        ByteBuf entry = handle.readEntryIfCached(entryId);
+        if (null != entry) {
+            int entrySize = entry.readableBytes();
+            bookieStats.getReadBytes().addCount(entrySize);
+            bookieStats.getReadEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(requestNanos), TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+        }
+        return entry;
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
@@ -56,7 +57,9 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.DirWriteLoad;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
@@ -67,6 +70,7 @@ import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.HardLink;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.LedgerDirUtil;
+import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
 import org.apache.commons.lang3.tuple.Pair;
@@ -91,13 +95,61 @@ public class DefaultEntryLogger implements EntryLogger {
         private final EntryLogMetadata entryLogMetadata;
         private final File logFile;
         private long ledgerIdAssigned = UNASSIGNED_LEDGERID;
+        // write load of the ledger dir of the log, null if it isn't tracked
+        private final DirWriteLoad dirWriteLoad;
+        private final AtomicLong lastSyncedPosition = new AtomicLong(0);
 
         public BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
                 long logId, File logFile, long unpersistedBytesBound) throws IOException {
+            this(allocator, fc, writeCapacity, readCapacity, logId, logFile, unpersistedBytesBound, null);
+        }
+
+        public BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
+                long logId, File logFile, long unpersistedBytesBound, DirWriteLoad dirWriteLoad) throws IOException {
             super(allocator, fc, writeCapacity, readCapacity, unpersistedBytesBound);
             this.logId = logId;
             this.entryLogMetadata = new EntryLogMetadata(logId);
             this.logFile = logFile;
+            this.dirWriteLoad = dirWriteLoad;
+        }
+
+        @Override
+        public void write(ByteBuf src) throws IOException {
+            if (null != dirWriteLoad) {
+                dirWriteLoad.onWrite(src.readableBytes());
+            }
+            super.write(src);
+        }
+
+        @Override
+        public long forceWrite(boolean forceMetadata) throws IOException {
+            if (null == dirWriteLoad) {
+                return super.forceWrite(forceMetadata);
+            }
+            dirWriteLoad.onSyncStarted();
+            long startTimeNanos = MathUtils.nowInNano();
+            long positionForceWrite;
+            try {
+                positionForceWrite = super.forceWrite(forceMetadata);
+            } catch (IOException e) {
+                dirWriteLoad.onSyncFailed();
+                throw e;
+            }
+            long prevSyncedPosition = lastSyncedPosition.getAndAccumulate(positionForceWrite, Math::max);
+            dirWriteLoad.onSyncCompleted(Math.max(positionForceWrite - prevSyncedPosition, 0),
+                    MathUtils.elapsedNanos(startTimeNanos));
+            return positionForceWrite;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (null != dirWriteLoad) {
+                long prevSyncedPosition = lastSyncedPosition.getAndSet(Long.MAX_VALUE);
+                if (prevSyncedPosition != Long.MAX_VALUE) {
+                    dirWriteLoad.onDiscarded(Math.max(position() - prevSyncedPosition, 0));
+                }
+            }
+            super.close();
         }
         public long getLogId() {
             return logId;
@@ -837,6 +889,35 @@ public class DefaultEntryLogger implements EntryLogger {
     }
 
 
+    /**
+     * Get a {@link FileRegion} over the data of an entry, to send it without copying it to user space.
+     *
+     * @param minEntrySize entries smaller than this are not worth a file region
+     * @return the region of the entry, or null if the entry log isn't flushed yet or the entry is
+     *         smaller than minEntrySize, in which case it should be read with {@link #readEntry}.
+     */
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long location, int minEntrySize)
+            throws IOException {
+        long entryLogId = logIdForOffset(location);
+        long pos = posForOffset(location);
+        if (!recentlyCreatedEntryLogsStatus.isFlushedLogId(entryLogId)) {
+            return null;
+        }
+
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            int entrySize = sizeBuff.getInt(0);
+            if (entrySize < minEntrySize) {
+                return null;
+            }
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+            return new EntryLogFileRegion(fc.validateAndGetFileChannel(), pos, entrySize);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        }
+    }
+
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
         long entryLogId = logIdForOffset(location);
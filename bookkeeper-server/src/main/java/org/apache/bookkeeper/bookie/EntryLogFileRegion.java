@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link FileRegion} over the bytes of an entry in an entry log, which lets the
+ * entry be transferred to a socket without being copied to user space.
+ *
+ * <p>Unlike {@link io.netty.channel.DefaultFileRegion}, the file channel is shared
+ * with the entry logger and it's not closed when the region is released.
+ */
+class EntryLogFileRegion extends AbstractReferenceCounted implements FileRegion {
+    private final FileChannel fileChannel;
+    private final long position;
+    private final long count;
+    private long transferred;
+
+    EntryLogFileRegion(FileChannel fileChannel, long position, long count) {
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.count = count;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    @Deprecated
+    public long transfered() {
+        return transferred;
+    }
+
+    @Override
+    public long transferred() {
+        return transferred;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long position) throws IOException {
+        long remaining = count - position;
+        if (remaining < 0 || position < 0) {
+            throw new IllegalArgumentException(
+                    "position out of range: " + position + " (expected: 0 - " + (count - 1) + ')');
+        }
+        if (remaining == 0) {
+            return 0L;
+        }
+        long written = fileChannel.transferTo(this.position + position, remaining, target);
+        if (written > 0) {
+            transferred += written;
+        } else if (written == 0 && fileChannel.size() < this.position + count) {
+            // the entry log was truncated, the transfer would never complete
+            throw new IOException("Entry log is shorter than the entry region at "
+                    + this.position + " of " + count + " bytes");
+        }
+        return written;
+    }
+
+    @Override
+    protected void deallocate() {
+        // the file channel is owned by the entry logger
+    }
+
+    @Override
+    public FileRegion retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FileRegion retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FileRegion touch() {
+        return this;
+    }
+
+    @Override
+    public FileRegion touch(Object hint) {
+        return this;
+    }
+}
@@ -39,6 +39,7 @@ import com.google.common.cache.RemovalNotification;
 import io.netty.buffer.ByteBuf;
 import java.io.File;
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -90,15 +91,18 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     }
 
     class EntryLogAndLockTuple {
+        private final long ledgerId;
         private final Lock ledgerLock;
-        private BufferedLogChannelWithDirInfo entryLogWithDirInfo;
+        private volatile BufferedLogChannelWithDirInfo entryLogWithDirInfo;
+        private volatile long lastAccessTimeNanos;
+        // links of the access order list, guarded by accessOrder
+        private EntryLogAndLockTuple prev;
+        private EntryLogAndLockTuple next;
 
         private EntryLogAndLockTuple(long ledgerId) {
-            int lockIndex = MathUtils.signSafeMod(Long.hashCode(ledgerId), lockArrayPool.length());
-            if (lockArrayPool.get(lockIndex) == null) {
-                lockArrayPool.compareAndSet(lockIndex, null, new ReentrantLock());
-            }
-            ledgerLock = lockArrayPool.get(lockIndex);
+            this.ledgerId = ledgerId;
+            this.ledgerLock = getLock(ledgerId);
+            this.lastAccessTimeNanos = MathUtils.nowInNano();
         }
 
         private Lock getLedgerLock() {
@@ -112,6 +116,108 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         private void setEntryLogWithDirInfo(BufferedLogChannelWithDirInfo entryLogWithDirInfo) {
             this.entryLogWithDirInfo = entryLogWithDirInfo;
         }
+
+        /*
+         * marks this ledger as recently used. It should be called with the
+         * ledgerLock held, so that the idle check done under the same lock
+         * during expiry can't race with an in-progress addEntry. The ledger
+         * is only moved in the access order once per
+         * ACCESS_REORDER_INTERVAL_NANOS, so a ledger taking a burst of adds
+         * doesn't contend on the access order lock for each of them.
+         */
+        private void recordAccess() {
+            long nowNanos = MathUtils.nowInNano();
+            boolean reorder = nowNanos - lastAccessTimeNanos >= ACCESS_REORDER_INTERVAL_NANOS;
+            lastAccessTimeNanos = nowNanos;
+            if (reorder) {
+                accessOrder.moveToLast(this);
+            }
+        }
+
+        private long getLastAccessTimeNanos() {
+            return lastAccessTimeNanos;
+        }
+    }
+
+    /*
+     * the ledgers of ledgerIdEntryLogMap from the least to the most recently
+     * used, as an intrusive doubly linked list, so that finding the least
+     * recently used or the idle ledgers doesn't need to scan and sort the map.
+     */
+    private static class AccessOrder {
+        private EntryLogAndLockTuple head;
+        private EntryLogAndLockTuple tail;
+
+        synchronized void addLast(EntryLogAndLockTuple tuple) {
+            if (tuple.prev != null || head == tuple) {
+                return;
+            }
+            linkLast(tuple);
+        }
+
+        synchronized void moveToLast(EntryLogAndLockTuple tuple) {
+            // a ledger which is not linked anymore was evicted, it must not be added back
+            if (tail == tuple || (tuple.prev == null && head != tuple)) {
+                return;
+            }
+            unlink(tuple);
+            linkLast(tuple);
+        }
+
+        synchronized void remove(EntryLogAndLockTuple tuple) {
+            if (tuple.prev == null && head != tuple) {
+                return;
+            }
+            unlink(tuple);
+        }
+
+        /*
+         * returns the least recently used ledger, other than excludedLedgerId.
+         */
+        synchronized EntryLogAndLockTuple first(long excludedLedgerId) {
+            return skip(head, excludedLedgerId);
+        }
+
+        /*
+         * returns the ledger used after the given one, other than
+         * excludedLedgerId, or null if the given ledger is not linked anymore.
+         */
+        synchronized EntryLogAndLockTuple next(EntryLogAndLockTuple tuple, long excludedLedgerId) {
+            return skip(tuple.next, excludedLedgerId);
+        }
+
+        private EntryLogAndLockTuple skip(EntryLogAndLockTuple tuple, long excludedLedgerId) {
+            if (tuple != null && tuple.ledgerId == excludedLedgerId) {
+                return tuple.next;
+            }
+            return tuple;
+        }
+
+        private void linkLast(EntryLogAndLockTuple tuple) {
+            tuple.prev = tail;
+            tuple.next = null;
+            if (tail == null) {
+                head = tuple;
+            } else {
+                tail.next = tuple;
+            }
+            tail = tuple;
+        }
+
+        private void unlink(EntryLogAndLockTuple tuple) {
+            if (tuple.prev == null) {
+                head = tuple.next;
+            } else {
+                tuple.prev.next = tuple.next;
+            }
+            if (tuple.next == null) {
+                tail = tuple.prev;
+            } else {
+                tuple.next.prev = tuple.prev;
+            }
+            tuple.prev = null;
+            tuple.next = null;
+        }
     }
 
     @StatsDoc(
@@ -244,19 +350,30 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         }
     }
 
+    private static final long ACCESS_REORDER_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long INVALID_LEDGER_ID = -1L;
+
     private final AtomicReferenceArray<Lock> lockArrayPool;
-    private final LoadingCache<Long, EntryLogAndLockTuple> ledgerIdEntryLogMap;
     /*
-     * every time active logChannel is accessed from ledgerIdEntryLogMap
-     * cache, the accesstime of that entry is updated. But for certain
-     * operations we dont want to impact accessTime of the entries (like
-     * periodic flush of current active logChannels), and those operations
-     * can use this copy of references.
+     * ledgerId -> current entrylog of the ledger. This map is on the
+     * addEntry path of every ledger, so it is keyed by primitive ledgerId and
+     * lookups don't take any lock (see ConcurrentLongHashMap). Writers of a
+     * given ledger are serialized by the striped lockArrayPool, so the map
+     * itself is only mutated when a ledger gets its first entrylog or when
+     * it is evicted.
+     */
+    private final ConcurrentLongHashMap<EntryLogAndLockTuple> ledgerIdEntryLogMap;
+    private final AccessOrder accessOrder = new AccessOrder();
+    /*
+     * this is a copy of the references of the current active logChannels,
+     * keyed by logId. Operations like periodic flush of current active
+     * logChannels or getCurrentLogIfPresent can use it without having to
+     * go through ledgerIdEntryLogMap.
      */
     private final ConcurrentLongHashMap<BufferedLogChannelWithDirInfo> replicaOfCurrentLogChannels;
-    private final CacheLoader<Long, EntryLogAndLockTuple> entryLogAndLockTupleCacheLoader;
     private final DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
     private final int entrylogMapAccessExpiryTimeInSeconds;
+    private final long entrylogMapAccessExpiryTimeInNanos;
     private final int maximumNumberOfActiveEntryLogs;
     private final int entryLogPerLedgerCounterLimitsMultFactor;
 
@@ -275,99 +392,128 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         this.replicaOfCurrentLogChannels =
                 ConcurrentLongHashMap.<BufferedLogChannelWithDirInfo>newBuilder().build();
         this.entrylogMapAccessExpiryTimeInSeconds = conf.getEntrylogMapAccessExpiryTimeInSeconds();
+        this.entrylogMapAccessExpiryTimeInNanos = TimeUnit.SECONDS.toNanos(entrylogMapAccessExpiryTimeInSeconds);
         this.maximumNumberOfActiveEntryLogs = conf.getMaximumNumberOfActiveEntryLogs();
         this.entryLogPerLedgerCounterLimitsMultFactor = conf.getEntryLogPerLedgerCounterLimitsMultFactor();
 
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         this.lockArrayPool = new AtomicReferenceArray<Lock>(maximumNumberOfActiveEntryLogs * 2);
-        this.entryLogAndLockTupleCacheLoader = new CacheLoader<Long, EntryLogAndLockTuple>() {
-            @Override
-            public EntryLogAndLockTuple load(Long key) throws Exception {
-                return new EntryLogAndLockTuple(key);
-            }
-        };
         /*
-         * Currently we are relying on access time based eviction policy for
-         * removal of EntryLogAndLockTuple, so if the EntryLogAndLockTuple of
-         * the ledger is not accessed in
-         * entrylogMapAccessExpiryTimeInSeconds period, it will be removed
-         * from the cache.
+         * Entries are removed from ledgerIdEntryLogMap either when the number
+         * of active entrylogs exceeds maximumNumberOfActiveEntryLogs (least
+         * recently used ledgers are evicted first), or when the ledger was
+         * not accessed in entrylogMapAccessExpiryTimeInSeconds period. The
+         * ledgers are kept in accessOrder, so both only look at the least
+         * recently used ledgers. Idle ledgers are expired when a ledger is
+         * added to the map and at checkpoint time, never on the add path, so
+         * that an add only touches the lock of its ledger.
          *
          * We are going to introduce explicit advisory writeClose call, with
          * that explicit call EntryLogAndLockTuple of the ledger will be
-         * removed from the cache. But still timebased eviciton policy is
+         * removed from the map. But still timebased eviciton policy is
          * needed because it is not guaranteed that Bookie/EntryLogger would
          * receive successfully write close call in all the cases.
          */
-        ledgerIdEntryLogMap = CacheBuilder.newBuilder()
-                .expireAfterAccess(entrylogMapAccessExpiryTimeInSeconds, TimeUnit.SECONDS)
-                .maximumSize(maximumNumberOfActiveEntryLogs)
-                .removalListener(new RemovalListener<Long, EntryLogAndLockTuple>() {
-                    @Override
-                    public void onRemoval(
-                            RemovalNotification<Long, EntryLogAndLockTuple> expiredLedgerEntryLogMapEntry) {
-                        onCacheEntryRemoval(expiredLedgerEntryLogMapEntry);
-                    }
-                }).build(entryLogAndLockTupleCacheLoader);
+        this.ledgerIdEntryLogMap = ConcurrentLongHashMap.<EntryLogAndLockTuple>newBuilder()
+                .expectedItems(maximumNumberOfActiveEntryLogs)
+                .build();
 
         this.statsLogger = statsLogger;
         this.entryLogsPerLedgerCounter = new EntryLogsPerLedgerCounter(this.statsLogger);
     }
 
     /*
-     * This method is called when an entry is removed from the cache. This could
-     * be because access time of that ledger has elapsed
+     * This method is called when an entry is removed from ledgerIdEntryLogMap.
+     * This could be because access time of that ledger has elapsed
      * entrylogMapAccessExpiryTimeInSeconds period, or number of active
-     * currentlogs in the cache has reached the size of
-     * maximumNumberOfActiveEntryLogs, or if an entry is explicitly
-     * invalidated/removed. In these cases entry for that ledger is removed from
-     * cache. Since the entrylog of this ledger is not active anymore it has to
-     * be removed from replicaOfCurrentLogChannels and added to
-     * rotatedLogChannels.
-     *
-     * Because of performance/optimizations concerns the cleanup maintenance
-     * operations wont happen automatically, for more info on eviction cleanup
-     * maintenance tasks -
-     * https://google.github.io/guava/releases/19.0/api/docs/com/google/
-     * common/cache/CacheBuilder.html
+     * currentlogs in the map has reached the size of
+     * maximumNumberOfActiveEntryLogs. Since the entrylog of this ledger is
+     * not active anymore it has to be removed from replicaOfCurrentLogChannels
+     * and added to rotatedLogChannels.
      *
+     * The ledger lock is only tried, never waited for: the caller may already
+     * hold the lock of another ledger, and a ledger whose lock is busy is
+     * being written to, so it is not a good candidate for eviction anyway.
      */
-    private void onCacheEntryRemoval(RemovalNotification<Long, EntryLogAndLockTuple> removedLedgerEntryLogMapEntry) {
-        Long ledgerId = removedLedgerEntryLogMapEntry.getKey();
-        if (log.isDebugEnabled()) {
-            log.debug("LedgerId {} is being evicted from the cache map because of {}", ledgerId,
-                    removedLedgerEntryLogMapEntry.getCause());
-        }
-        EntryLogAndLockTuple entryLogAndLockTuple = removedLedgerEntryLogMapEntry.getValue();
-        if (entryLogAndLockTuple == null) {
-            log.error("entryLogAndLockTuple is not supposed to be null in entry removal listener for ledger : {}",
-                    ledgerId);
-            return;
-        }
-        Lock lock = entryLogAndLockTuple.ledgerLock;
-        BufferedLogChannelWithDirInfo logChannelWithDirInfo = entryLogAndLockTuple.getEntryLogWithDirInfo();
-        if (logChannelWithDirInfo == null) {
-            log.error("logChannel for ledger: {} is not supposed to be null in entry removal listener", ledgerId);
-            return;
+    private boolean evictLedgerFromEntryLogMap(EntryLogAndLockTuple entryLogAndLockTuple, RemovalCause cause) {
+        long ledgerId = entryLogAndLockTuple.ledgerId;
+        Lock lock = entryLogAndLockTuple.getLedgerLock();
+        if (!lock.tryLock()) {
+            return false;
         }
-        lock.lock();
         try {
+            if (cause == RemovalCause.EXPIRED && !isIdle(entryLogAndLockTuple, MathUtils.nowInNano())) {
+                return false;
+            }
+            if (!ledgerIdEntryLogMap.remove(ledgerId, entryLogAndLockTuple)) {
+                return false;
+            }
+            accessOrder.remove(entryLogAndLockTuple);
+            if (log.isDebugEnabled()) {
+                log.debug("LedgerId {} is being evicted from the entrylog map because of {}", ledgerId, cause);
+            }
+            BufferedLogChannelWithDirInfo logChannelWithDirInfo = entryLogAndLockTuple.getEntryLogWithDirInfo();
+            if (logChannelWithDirInfo == null) {
+                log.error("logChannel for ledger: {} is not supposed to be null in entry removal", ledgerId);
+                return true;
+            }
             BufferedLogChannel logChannel = logChannelWithDirInfo.getLogChannel();
             // Append ledgers map at the end of entry log
             try {
                 logChannel.appendLedgersMap();
             } catch (Exception e) {
-                log.error("Got IOException while trying to appendLedgersMap in cacheEntryRemoval callback", e);
+                log.error("Got IOException while trying to appendLedgersMap in entry removal", e);
             }
             replicaOfCurrentLogChannels.remove(logChannel.getLogId());
             rotatedLogChannels.add(logChannel);
-            entryLogsPerLedgerCounter.removedLedgerFromEntryLogMapCache(ledgerId,
-                    removedLedgerEntryLogMapEntry.getCause());
+            entryLogsPerLedgerCounter.removedLedgerFromEntryLogMapCache(ledgerId, cause);
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    private boolean isIdle(EntryLogAndLockTuple entryLogAndLockTuple, long nowNanos) {
+        return nowNanos - entryLogAndLockTuple.getLastAccessTimeNanos() >= entrylogMapAccessExpiryTimeInNanos;
+    }
+
+    /*
+     * evicts the least recently used ledgers until the number of active
+     * entrylogs is back within maximumNumberOfActiveEntryLogs. A ledger which
+     * is being written to can't be evicted, it is skipped, so the number of
+     * attempts is bounded by the size of the map.
+     */
+    private void evictLeastRecentlyUsedLedgers(long excludedLedgerId) {
+        long attempts = ledgerIdEntryLogMap.size();
+        EntryLogAndLockTuple candidate = accessOrder.first(excludedLedgerId);
+        while (candidate != null && ledgerIdEntryLogMap.size() > maximumNumberOfActiveEntryLogs
+                && attempts-- > 0) {
+            if (evictLedgerFromEntryLogMap(candidate, RemovalCause.SIZE)) {
+                candidate = accessOrder.first(excludedLedgerId);
+            } else {
+                candidate = accessOrder.next(candidate, excludedLedgerId);
+            }
+        }
+    }
+
+    /*
+     * rotates the entrylogs of the ledgers which were not accessed in
+     * entrylogMapAccessExpiryTimeInSeconds period. The idle ledgers are at
+     * the head of the access order, so this stops at the first ledger which
+     * is not idle.
+     */
+    private void expireIdleLedgers() {
+        long attempts = ledgerIdEntryLogMap.size();
+        EntryLogAndLockTuple candidate = accessOrder.first(INVALID_LEDGER_ID);
+        while (candidate != null && isIdle(candidate, MathUtils.nowInNano()) && attempts-- > 0) {
+            if (evictLedgerFromEntryLogMap(candidate, RemovalCause.EXPIRED)) {
+                candidate = accessOrder.first(INVALID_LEDGER_ID);
+            } else {
+                candidate = accessOrder.next(candidate, INVALID_LEDGER_ID);
+            }
+        }
+    }
+
     private LedgerDirsListener getLedgerDirsListener() {
         return new LedgerDirsListener() {
             @Override
@@ -392,13 +538,14 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         };
     }
 
-    Lock getLock(long ledgerId) throws IOException {
-        try {
-            return ledgerIdEntryLogMap.get(ledgerId).getLedgerLock();
-        } catch (Exception e) {
-            log.error("Received unexpected exception while fetching lock to acquire for ledger: " + ledgerId, e);
-            throw new IOException("Received unexpected exception while fetching lock to acquire", e);
+    Lock getLock(long ledgerId) {
+        int lockIndex = MathUtils.signSafeMod(Long.hashCode(ledgerId), lockArrayPool.length());
+        Lock lock = lockArrayPool.get(lockIndex);
+        if (lock == null) {
+            lockArrayPool.compareAndSet(lockIndex, null, new ReentrantLock());
+            lock = lockArrayPool.get(lockIndex);
         }
+        return lock;
     }
 
     /*
@@ -410,16 +557,25 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     @Override
     public void setCurrentLogForLedgerAndAddToRotate(long ledgerId, BufferedLogChannel logChannel) throws IOException {
         Lock lock = getLock(ledgerId);
+        boolean newLedgerInEntryLogMapCache;
         lock.lock();
         try {
-            BufferedLogChannel hasToRotateLogChannel = getCurrentLogForLedger(ledgerId);
-            boolean newLedgerInEntryLogMapCache = (hasToRotateLogChannel == null);
+            EntryLogAndLockTuple entryLogAndLockTuple = ledgerIdEntryLogMap.computeIfAbsent(ledgerId,
+                    EntryLogAndLockTuple::new);
+            BufferedLogChannelWithDirInfo hasToRotateLogChannelWithDirInfo =
+                    entryLogAndLockTuple.getEntryLogWithDirInfo();
+            newLedgerInEntryLogMapCache = (hasToRotateLogChannelWithDirInfo == null);
             logChannel.setLedgerIdAssigned(ledgerId);
             BufferedLogChannelWithDirInfo logChannelWithDirInfo = new BufferedLogChannelWithDirInfo(logChannel);
-            ledgerIdEntryLogMap.get(ledgerId).setEntryLogWithDirInfo(logChannelWithDirInfo);
+            entryLogAndLockTuple.setEntryLogWithDirInfo(logChannelWithDirInfo);
+            if (newLedgerInEntryLogMapCache) {
+                accessOrder.addLast(entryLogAndLockTuple);
+            }
+            entryLogAndLockTuple.recordAccess();
             entryLogsPerLedgerCounter.openNewEntryLogForLedger(ledgerId, newLedgerInEntryLogMapCache);
             replicaOfCurrentLogChannels.put(logChannel.getLogId(), logChannelWithDirInfo);
-            if (hasToRotateLogChannel != null) {
+            if (hasToRotateLogChannelWithDirInfo != null) {
+                BufferedLogChannel hasToRotateLogChannel = hasToRotateLogChannelWithDirInfo.getLogChannel();
                 replicaOfCurrentLogChannels.remove(hasToRotateLogChannel.getLogId());
                 rotatedLogChannels.add(hasToRotateLogChannel);
             }
@@ -429,6 +585,10 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         } finally {
             lock.unlock();
         }
+        if (newLedgerInEntryLogMapCache) {
+            expireIdleLedgers();
+            evictLeastRecentlyUsedLedgers(ledgerId);
+        }
     }
 
     @Override
@@ -442,17 +602,8 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     }
 
     public BufferedLogChannelWithDirInfo getCurrentLogWithDirInfoForLedger(long ledgerId) throws IOException {
-        Lock lock = getLock(ledgerId);
-        lock.lock();
-        try {
-            EntryLogAndLockTuple entryLogAndLockTuple = ledgerIdEntryLogMap.get(ledgerId);
-            return entryLogAndLockTuple.getEntryLogWithDirInfo();
-        } catch (Exception e) {
-            log.error("Received unexpected exception while fetching entry from map for ledger: " + ledgerId, e);
-            throw new IOException("Received unexpected exception while fetching entry from map", e);
-        } finally {
-            lock.unlock();
-        }
+        EntryLogAndLockTuple entryLogAndLockTuple = ledgerIdEntryLogMap.get(ledgerId);
+        return (entryLogAndLockTuple == null) ? null : entryLogAndLockTuple.getEntryLogWithDirInfo();
     }
 
     public Set<BufferedLogChannelWithDirInfo> getCopyOfCurrentLogs() {
@@ -471,6 +622,11 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
 
     @Override
     public void checkpoint() throws IOException {
+        /*
+         * rotate the entrylogs of the idle ledgers first, so that they are
+         * flushed and closed along with the other rotated logs.
+         */
+        expireIdleLedgers();
         /*
          * In the case of entryLogPerLedgerEnabled we need to flush
          * both rotatedlogs and currentlogs. This is needed because
@@ -530,36 +686,22 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     }
 
     /*
-     * this is for testing purpose only. guava's cache doesnt cleanup
-     * completely (including calling expiry removal listener) automatically
-     * when access timeout elapses.
-     *
-     * https://google.github.io/guava/releases/19.0/api/docs/com/google/
-     * common/cache/CacheBuilder.html
-     *
-     * If expireAfterWrite or expireAfterAccess is requested entries may be
-     * evicted on each cache modification, on occasional cache accesses, or
-     * on calls to Cache.cleanUp(). Expired entries may be counted by
-     * Cache.size(), but will never be visible to read or write operations.
-     *
-     * Certain cache configurations will result in the accrual of periodic
-     * maintenance tasks which will be performed during write operations, or
-     * during occasional read operations in the absence of writes. The
-     * Cache.cleanUp() method of the returned cache will also perform
-     * maintenance, but calling it should not be necessary with a high
-     * throughput cache. Only caches built with removalListener,
-     * expireAfterWrite, expireAfterAccess, weakKeys, weakValues, or
-     * softValues perform periodic maintenance.
+     * this is for testing purpose only. Idle ledgers are otherwise only
+     * expired from ledgerIdEntryLogMap when a ledger is added to it or when
+     * checkpoint is called.
      */
     @VisibleForTesting
     void doEntryLogMapCleanup() {
-        ledgerIdEntryLogMap.cleanUp();
+        expireIdleLedgers();
     }
 
     @VisibleForTesting
-    ConcurrentMap<Long, EntryLogAndLockTuple> getCacheAsMap() {
-        return ledgerIdEntryLogMap.asMap();
+    Map<Long, EntryLogAndLockTuple> getCacheAsMap() {
+        Map<Long, EntryLogAndLockTuple> cacheAsMap = new HashMap<Long, EntryLogAndLockTuple>();
+        ledgerIdEntryLogMap.forEach(cacheAsMap::put);
+        return cacheAsMap;
     }
+
     /*
      * Returns writable ledger dir with least number of current active
      * entrylogs.
@@ -575,9 +717,14 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
                 writableLedgerDirFrequency.get(parentDirOfCurrentLogChannel).increment();
             }
         }
-        @SuppressWarnings("unchecked")
+        Comparator<Entry<File, MutableInt>> comparator = Map.Entry.comparingByValue();
+        if (ledgerDirsManager.isLoadAwareDirSelection()) {
+            // among the dirs with the least number of current logs, prefer the least loaded one
+            comparator = comparator.thenComparingLong(
+                    entry -> ledgerDirsManager.getEstimatedSyncDelayNanos(entry.getKey()));
+        }
         Optional<Entry<File, MutableInt>> ledgerDirWithLeastNumofCurrentLogs = writableLedgerDirFrequency.entrySet()
-                .stream().min(Map.Entry.comparingByValue());
+                .stream().min(comparator);
         return ledgerDirWithLeastNumofCurrentLogs.get().getKey();
     }
 
@@ -620,12 +767,14 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     @Override
     public long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
         Lock lock = getLock(ledger);
+        long location;
         lock.lock();
         try {
-            return super.addEntry(ledger, entry, rollLog);
+            location = super.addEntry(ledger, entry, rollLog);
         } finally {
             lock.unlock();
         }
+        return location;
     }
 
     @Override
@@ -646,8 +795,13 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         Lock lock = getLock(ledgerId);
         lock.lock();
         try {
-            BufferedLogChannelWithDirInfo logChannelWithDirInfo = getCurrentLogWithDirInfoForLedger(ledgerId);
+            EntryLogAndLockTuple entryLogAndLockTuple = ledgerIdEntryLogMap.get(ledgerId);
+            BufferedLogChannelWithDirInfo logChannelWithDirInfo = null;
             BufferedLogChannel logChannel = null;
+            if (entryLogAndLockTuple != null) {
+                entryLogAndLockTuple.recordAccess();
+                logChannelWithDirInfo = entryLogAndLockTuple.getEntryLogWithDirInfo();
+            }
             if (logChannelWithDirInfo != null) {
                 logChannel = logChannelWithDirInfo.getLogChannel();
             }
@@ -144,6 +144,9 @@ class EntryLogManagerForSingleEntryLog extends EntryLogManagerBase {
 
     @Override
     public File getDirForNextEntryLog(List<File> writableLedgerDirs) {
+        if (ledgerDirsManager.isLoadAwareDirSelection()) {
+            return ledgerDirsManager.pickDirForNewLog(writableLedgerDirs);
+        }
         Collections.shuffle(writableLedgerDirs);
         return writableLedgerDirs.get(0);
     }
@@ -183,7 +183,8 @@ class EntryLoggerAllocator {
         FileChannel channel = new RandomAccessFile(newLogFile, "rw").getChannel();
 
         BufferedLogChannel logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
-                conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes());
+                conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes(),
+                ledgerDirsManager.getDirWriteLoad(dirForNextEntryLog));
         logfileHeader.readerIndex(0);
         logChannel.write(logfileHeader);
 
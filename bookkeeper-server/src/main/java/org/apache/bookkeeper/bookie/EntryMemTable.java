@@ -104,7 +104,7 @@ public class EntryMemTable implements AutoCloseable{
     SkipListArena allocator;
 
     // flag indicating the status of the previous flush call
-    private final AtomicBoolean previousFlushSucceeded;
+    final AtomicBoolean previousFlushSucceeded;
 
     private EntrySkipList newSkipList() {
         return new EntrySkipList(checkpointSource.newCheckpoint());
@@ -119,12 +119,21 @@ public class EntryMemTable implements AutoCloseable{
     */
     public EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
                          final StatsLogger statsLogger) {
+        this(conf, source, statsLogger, true);
+    }
+
+    /**
+     * Constructor for the memtables which don't keep their entries in the skiplists.
+     * @param useSkipList whether to allocate the skiplist and the arena of the memtable
+     */
+    EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                  final StatsLogger statsLogger, boolean useSkipList) {
         this.checkpointSource = source;
-        this.kvmap = newSkipList();
+        this.kvmap = useSkipList ? newSkipList() : EntrySkipList.EMPTY_VALUE;
         this.snapshot = EntrySkipList.EMPTY_VALUE;
         this.conf = conf;
         this.size = new AtomicLong(0);
-        this.allocator = new SkipListArena(conf);
+        this.allocator = useSkipList ? new SkipListArena(conf) : null;
         this.previousFlushSucceeded = new AtomicBoolean(true);
         // skip list size limit
         this.skipListSizeLimit = conf.getSkipListSizeLimit();
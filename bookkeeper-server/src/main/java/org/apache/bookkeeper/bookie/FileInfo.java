@@ -473,7 +473,18 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
         }
     }
 
-    public synchronized long write(ByteBuffer[] buffs, long position) throws IOException {
+    public long write(ByteBuffer[] buffs, long position) throws IOException {
+        return write(buffs, position, true);
+    }
+
+    /**
+     * Write the buffers at the given position of the index file.
+     *
+     * @param forceWrite
+     *          whether to sync the file once the buffers are written. If false,
+     *          the caller is responsible to call {@link #force()} afterwards.
+     */
+    synchronized long write(ByteBuffer[] buffs, long position, boolean forceWrite) throws IOException {
         checkOpen(true);
         long total = 0;
         try {
@@ -486,7 +497,9 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
                 total += rc;
             }
         } finally {
-            fc.force(true);
+            if (forceWrite) {
+                fc.force(true);
+            }
             long newsize = position + START_OF_DATA + total;
             if (newsize > size) {
                 size = newsize;
@@ -496,6 +509,16 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
         return total;
     }
 
+    /**
+     * Sync the data written to the index file to the disk.
+     */
+    synchronized void force() throws IOException {
+        checkOpen(true);
+        if (fc != null) {
+            fc.force(true);
+        }
+    }
+
     /**
      * Copies current file contents upto specified size to the target file and
      * deletes the current file. If size not known then pass size as
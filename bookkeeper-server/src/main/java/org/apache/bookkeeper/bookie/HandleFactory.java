@@ -29,4 +29,11 @@ interface HandleFactory {
 
     LedgerDescriptor getReadOnlyHandle(long ledgerId)
             throws IOException, Bookie.NoLedgerException;
+
+    /**
+     * Get the read only handle of a ledger if it is already open, without looking the ledger up in the storage.
+     *
+     * @return the handle, or null if the ledger wasn't read since it was opened or deleted.
+     */
+    LedgerDescriptor getOpenReadOnlyHandle(long ledgerId);
 }
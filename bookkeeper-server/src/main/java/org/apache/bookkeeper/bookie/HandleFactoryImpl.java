@@ -64,6 +64,11 @@ class HandleFactoryImpl implements HandleFactory, LedgerDeletionListener {
         return handle;
     }
 
+    @Override
+    public LedgerDescriptor getOpenReadOnlyHandle(long ledgerId) {
+        return readOnlyLedgers.get(ledgerId);
+    }
+
     @Override
     public void ledgerDeleted(long ledgerId) {
         ledgers.remove(ledgerId);
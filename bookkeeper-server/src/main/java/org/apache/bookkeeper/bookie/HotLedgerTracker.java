@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Tracks the heat of the ledgers of a bookie, i.e. how many entries are read from and added to them,
+ * with a bounded top-K sketch (space saving): the sketch counts the entries of up to K ledgers, and a
+ * ledger which isn't tracked replaces the coldest tracked ledger, inheriting its heat as an error
+ * margin. The heats are halved periodically, so the sketch follows the recent traffic.
+ *
+ * <p>The hottest ledgers are the ones with the highest heat at the last decay. The tracking is lossy:
+ * the events recorded while another thread is updating the sketch are dropped.
+ */
+public class HotLedgerTracker {
+
+    private static final long DECAY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long[] NO_LEDGERS = new long[0];
+
+    /**
+     * The heat of a tracked ledger.
+     */
+    @Getter
+    public static final class LedgerHeat {
+        private long ledgerId;
+        // reads and adds, including the error inherited from the ledger it replaced
+        private long heat;
+        // the heat this ledger may have been overestimated by
+        private long error;
+        private long reads;
+        // reads which missed the caches
+        private long readMisses;
+        private long writes;
+
+        LedgerHeat copy() {
+            LedgerHeat copy = new LedgerHeat();
+            copy.ledgerId = ledgerId;
+            copy.heat = heat;
+            copy.error = error;
+            copy.reads = reads;
+            copy.readMisses = readMisses;
+            copy.writes = writes;
+            return copy;
+        }
+    }
+
+    private final LedgerHeat[] sketch;
+    private final ConcurrentLongHashMap<LedgerHeat> trackedLedgers;
+    private final int numHotLedgers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int size = 0;
+    private long nextDecayNanos;
+
+    // sorted ids of the hottest ledgers
+    private volatile long[] hotLedgers = NO_LEDGERS;
+
+    /**
+     * @param capacity the max number of ledgers tracked by the sketch
+     * @param numHotLedgers the number of hottest ledgers reported by {@link #isHot(long)}
+     */
+    public HotLedgerTracker(int capacity, int numHotLedgers) {
+        this.sketch = new LedgerHeat[capacity];
+        this.trackedLedgers = ConcurrentLongHashMap.<LedgerHeat>newBuilder()
+                .expectedItems(Math.max(capacity, 16))
+                .concurrencyLevel(1)
+                .build();
+        this.numHotLedgers = Math.min(numHotLedgers, capacity);
+        this.nextDecayNanos = MathUtils.nowInNano() + DECAY_INTERVAL_NANOS;
+    }
+
+    public void recordRead(long ledgerId, boolean cacheMiss) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            LedgerHeat ledger = track(ledgerId);
+            ledger.heat++;
+            ledger.reads++;
+            if (cacheMiss) {
+                ledger.readMisses++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordWrite(long ledgerId) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            LedgerHeat ledger = track(ledgerId);
+            ledger.heat++;
+            ledger.writes++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a ledger was one of the hottest ledgers at the last decay.
+     */
+    public boolean isHot(long ledgerId) {
+        long[] ledgers = hotLedgers;
+        return ledgers.length > 0 && Arrays.binarySearch(ledgers, ledgerId) >= 0;
+    }
+
+    /**
+     * Get the tracked ledgers, the hottest first.
+     */
+    public List<LedgerHeat> getLedgerHeats() {
+        List<LedgerHeat> heats = new ArrayList<>();
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                heats.add(sketch[i].copy());
+            }
+        } finally {
+            lock.unlock();
+        }
+        heats.sort(Comparator.comparingLong(LedgerHeat::getHeat).reversed());
+        return heats;
+    }
+
+    private LedgerHeat track(long ledgerId) {
+        long now = MathUtils.nowInNano();
+        if (now >= nextDecayNanos) {
+            decay();
+            nextDecayNanos = now + DECAY_INTERVAL_NANOS;
+        }
+
+        LedgerHeat ledger = trackedLedgers.get(ledgerId);
+        if (ledger != null) {
+            return ledger;
+        }
+        if (size < sketch.length) {
+            ledger = new LedgerHeat();
+            sketch[size++] = ledger;
+        } else {
+            // replace the coldest ledger
+            ledger = sketch[0];
+            for (int i = 1; i < size; i++) {
+                if (sketch[i].heat < ledger.heat) {
+                    ledger = sketch[i];
+                }
+            }
+            trackedLedgers.remove(ledger.ledgerId);
+        }
+        ledger.ledgerId = ledgerId;
+        ledger.error = ledger.heat;
+        ledger.reads = 0;
+        ledger.readMisses = 0;
+        ledger.writes = 0;
+        trackedLedgers.put(ledgerId, ledger);
+        return ledger;
+    }
+
+    private void decay() {
+        LedgerHeat[] byHeat = Arrays.copyOf(sketch, size);
+        Arrays.sort(byHeat, Comparator.comparingLong((LedgerHeat ledger) -> ledger.heat).reversed());
+        int numHot = 0;
+        long[] hot = new long[Math.min(numHotLedgers, size)];
+        for (int i = 0; i < hot.length && byHeat[i].heat > 0; i++) {
+            hot[numHot++] = byHeat[i].ledgerId;
+        }
+        hot = Arrays.copyOf(hot, numHot);
+        Arrays.sort(hot);
+        hotLedgers = hot;
+
+        for (int i = 0; i < size; i++) {
+            LedgerHeat ledger = sketch[i];
+            ledger.heat /= 2;
+            ledger.error /= 2;
+        }
+    }
+}
@@ -21,6 +21,8 @@
 package org.apache.bookkeeper.bookie;
 
 import static java.lang.Long.max;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_FLUSH_PAGES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_HIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_MISS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_READ_PAGE;
@@ -28,12 +30,14 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_INDEX_PAGES
 
 // CHECKSTYLE.OFF: IllegalImport
 import com.google.common.base.Stopwatch;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,14 +45,20 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.bookkeeper.bookie.stats.IndexInMemPageMgrStats;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 // CHECKSTYLE.ON: IllegalImport
@@ -57,21 +67,74 @@ class IndexInMemPageMgr {
     private static final Logger LOG = LoggerFactory.getLogger(IndexInMemPageMgr.class);
     private static final ConcurrentHashMap<Long, LedgerEntryPage> EMPTY_PAGE_MAP =
             new ConcurrentHashMap<Long, LedgerEntryPage>();
+    // maximum number of reclaim candidates looked at by a single grab of a clean page
+    private static final int MAX_RECLAIM_SCAN = 256;
+
+    /**
+     * Backing memory of the index pages.
+     *
+     * <p>Instead of allocating a direct buffer per page, pages are sliced out of large direct
+     * buffer chunks which are allocated on demand, as the number of pages grows towards the
+     * page limit. Each slot of the slab is assigned once, to the page sliced at the same
+     * position, and pages are never freed: they are recycled by the page manager.
+     */
+    private static class PageSlab {
+        // size of the direct buffers the pages are sliced from
+        private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+        private final int pageSize;
+        private final int pageLimit;
+        private final int pagesPerChunk;
+        private final AtomicReferenceArray<ByteBuffer> chunks;
+
+        PageSlab(int pageSize, int pageLimit) {
+            this.pageSize = pageSize;
+            this.pageLimit = pageLimit;
+            this.pagesPerChunk = Math.max(1, Math.min(CHUNK_SIZE / pageSize, pageLimit));
+            this.chunks = new AtomicReferenceArray<>((pageLimit + pagesPerChunk - 1) / pagesPerChunk);
+        }
+
+        LedgerEntryPage newPage(int slot, int entriesPerPage, LEPStateChangeCallback callback) {
+            ByteBuffer chunk = getOrAllocateChunk(slot / pagesPerChunk);
+            ByteBuffer buffer = chunk.duplicate();
+            buffer.position((slot % pagesPerChunk) * pageSize);
+            buffer.limit(buffer.position() + pageSize);
+            return new LedgerEntryPage(buffer.slice(), entriesPerPage, callback);
+        }
+
+        private ByteBuffer getOrAllocateChunk(int chunkIdx) {
+            ByteBuffer chunk = chunks.get(chunkIdx);
+            if (null == chunk) {
+                synchronized (this) {
+                    chunk = chunks.get(chunkIdx);
+                    if (null == chunk) {
+                        int numPages = Math.min(pagesPerChunk, pageLimit - chunkIdx * pagesPerChunk);
+                        chunk = ByteBuffer.allocateDirect(numPages * pageSize);
+                        chunks.set(chunkIdx, chunk);
+                    }
+                }
+            }
+            return chunk;
+        }
+    }
 
     private static class InMemPageCollection implements LEPStateChangeCallback {
 
         final ConcurrentMap<Long, ConcurrentMap<Long, LedgerEntryPage>> pages;
-        final Map<EntryKey, LedgerEntryPage> lruCleanPageMap;
         final ConcurrentLinkedQueue<LedgerEntryPage> listOfFreePages;
+        final PageSlab pageSlab;
+        // clean pages which are not in use, in the order the CLOCK hand visits them. A page is
+        // queued when it becomes clean and unused, so the sweep never looks at dirty or busy pages
+        final ConcurrentLinkedQueue<LedgerEntryPage> reclaimCandidates;
 
         // Stats
         private final IndexInMemPageMgrStats inMemPageMgrStats;
 
-        public InMemPageCollection(StatsLogger statsLogger) {
+        public InMemPageCollection(PageSlab pageSlab, StatsLogger statsLogger) {
             pages = new ConcurrentHashMap<>();
-            lruCleanPageMap =
-                    Collections.synchronizedMap(new LinkedHashMap<EntryKey, LedgerEntryPage>(16, 0.75f, true));
             listOfFreePages = new ConcurrentLinkedQueue<LedgerEntryPage>();
+            reclaimCandidates = new ConcurrentLinkedQueue<LedgerEntryPage>();
+            this.pageSlab = pageSlab;
             inMemPageMgrStats = new IndexInMemPageMgrStats(statsLogger);
         }
 
@@ -108,10 +171,6 @@ class IndexInMemPageMgr {
             LedgerEntryPage oldPage = map.putIfAbsent(lep.getFirstEntry(), lep);
             if (null == oldPage) {
                 oldPage = lep;
-                // Also include this in the clean page map if it qualifies.
-                // Note: This is done for symmetry and correctness, however it should never
-                // get exercised since we shouldn't attempt a put without the page being in use
-                addToCleanPagesList(lep);
             }
             return oldPage;
         }
@@ -178,9 +237,6 @@ class IndexInMemPageMgr {
             for (ConcurrentMap.Entry<Long, LedgerEntryPage> entry: pageMap.entrySet()) {
                 LedgerEntryPage lep = entry.getValue();
                 if (lep.isClean()) {
-                    if (!lep.inUse()) {
-                        addToCleanPagesList(lep);
-                    }
                     if (LOG.isTraceEnabled()) {
                         LOG.trace("Page is clean " + lep);
                     }
@@ -191,32 +247,6 @@ class IndexInMemPageMgr {
             return firstEntryList;
         }
 
-        /**
-         * Add the LedgerEntryPage to the clean page LRU map.
-         *
-         * @param lep Ledger Entry Page object
-         */
-        private void addToCleanPagesList(LedgerEntryPage lep) {
-            synchronized (lruCleanPageMap) {
-                if (lep.isClean() && !lep.inUse()) {
-                    lruCleanPageMap.put(lep.getEntryKey(), lep);
-                }
-            }
-        }
-
-        /**
-         * Remove the LedgerEntryPage from the clean page LRU map.
-         *
-         * @param lep Ledger Entry Page object
-         */
-        private void removeFromCleanPageList(LedgerEntryPage lep) {
-            synchronized (lruCleanPageMap) {
-                if (!lep.isClean() || lep.inUse()) {
-                    lruCleanPageMap.remove(lep.getEntryKey());
-                }
-            }
-        }
-
         /**
          * Get the set of active ledgers.
          *
@@ -228,6 +258,12 @@ class IndexInMemPageMgr {
         /**
          * Get a clean page and provision it for the specified ledger and firstEntry within the ledger.
          *
+         * <p>The reclaim candidates are swept in CLOCK order: a candidate which was used since the
+         * hand last passed over it gets a second chance and goes back to the end of the queue. A
+         * candidate which got dirty or in use since it was queued is dropped, it will be queued
+         * again once it is clean and unused. The sweep looks at most at {@link #MAX_RECLAIM_SCAN}
+         * candidates, so a grab under memory pressure never scans the whole page cache.
+         *
          * @param ledgerId Ledger id
          * @param firstEntry Id of the first entry in the page
          * @returns LedgerEntryPage if present
@@ -240,27 +276,20 @@ class IndexInMemPageMgr {
                 lep.usePage();
                 return lep;
             }
-            while (lruCleanPageMap.size() > 0) {
-                lep = null;
-                synchronized (lruCleanPageMap) {
-                    Iterator<Map.Entry<EntryKey, LedgerEntryPage>> iterator = lruCleanPageMap.entrySet().iterator();
-
-                    Map.Entry<EntryKey, LedgerEntryPage> entry = null;
-                    while (iterator.hasNext()) {
-                        entry = iterator.next();
-                        iterator.remove();
-                        if (entry.getValue().isClean() && !entry.getValue().inUse()) {
-                            lep = entry.getValue();
-                            break;
-                        }
-                    }
-
-                    if (null == lep) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Did not find eligible page in the first pass");
-                        }
-                        return null;
-                    }
+            for (int i = 0; i < MAX_RECLAIM_SCAN; i++) {
+                lep = reclaimCandidates.poll();
+                if (null == lep) {
+                    break;
+                }
+                // clear the mark before looking at the page: if the page becomes a candidate again
+                // after this point, the state change queues it again
+                lep.clearReclaimCandidate();
+                if (lep.inUse() || !lep.isClean()) {
+                    continue;
+                }
+                if (lep.clearReferenced()) {
+                    queueReclaimCandidate(lep);
+                    continue;
                 }
 
                 // We found a candidate page, lets see if we can reclaim it before its re-used
@@ -271,10 +300,10 @@ class IndexInMemPageMgr {
                 // has changed we should leave this page along and continue iterating to find
                 // another suitable page.
                 if ((null != pageMap) && (pageMap.remove(lep.getFirstEntry(), lep))) {
-                    if (!lep.isClean()) {
-                        // Someone wrote to this page while we were reclaiming it.
+                    if (!lep.isClean() || lep.inUse()) {
+                        // Someone used this page while we were reclaiming it.
                         pageMap.put(lep.getFirstEntry(), lep);
-                        lep = null;
+                        queueReclaimCandidate(lep);
                     } else {
                         // Do some bookkeeping on the page table
                         pages.remove(lep.getLedger(), EMPTY_PAGE_MAP);
@@ -284,11 +313,22 @@ class IndexInMemPageMgr {
                         lep.setLedgerAndFirstEntry(ledgerId, firstEntry);
                         return lep;
                     }
-                } else {
-                    lep = null;
                 }
             }
-            return lep;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Did not find eligible page in {} reclaim candidates", MAX_RECLAIM_SCAN);
+            }
+            return null;
+        }
+
+        boolean hasReclaimCandidates() {
+            return !reclaimCandidates.isEmpty();
+        }
+
+        private void queueReclaimCandidate(LedgerEntryPage lep) {
+            if (lep.markReclaimCandidate()) {
+                reclaimCandidates.add(lep);
+            }
         }
 
         public void addToListOfFreePages(LedgerEntryPage lep) {
@@ -302,26 +342,28 @@ class IndexInMemPageMgr {
 
         @Override
         public void onSetInUse(LedgerEntryPage lep) {
-            removeFromCleanPageList(lep);
+            // pages in use are dropped by the CLOCK sweep, and queued again once released
         }
 
         @Override
         public void onResetInUse(LedgerEntryPage lep) {
-            if (!lep.isDeleted()) {
-                addToCleanPagesList(lep);
-            } else {
+            if (lep.isDeleted()) {
                 addToListOfFreePages(lep);
+            } else if (lep.isClean()) {
+                queueReclaimCandidate(lep);
             }
         }
 
         @Override
         public void onSetClean(LedgerEntryPage lep) {
-            addToCleanPagesList(lep);
+            if (!lep.inUse()) {
+                queueReclaimCandidate(lep);
+            }
         }
 
         @Override
         public void onSetDirty(LedgerEntryPage lep) {
-            removeFromCleanPageList(lep);
+            // dirty pages are dropped by the CLOCK sweep, and queued again once flushed
         }
     }
 
@@ -337,10 +379,16 @@ class IndexInMemPageMgr {
     // flush and read pages
     private final IndexPersistenceMgr indexPersistenceManager;
 
+    // Used to flush the ledgers of different index directories in parallel,
+    // null if the ledgers are flushed by the calling thread
+    private final ExecutorService flushExecutor;
+
     // Stats
     private final Counter ledgerCacheHitCounter;
     private final Counter ledgerCacheMissCounter;
     private final OpStatsLogger ledgerCacheReadPageStats;
+    private final OpStatsLogger ledgerCacheFlushStats;
+    private final Counter ledgerCacheFlushPagesCounter;
 
     public IndexInMemPageMgr(int pageSize,
                              int entriesPerPage,
@@ -350,7 +398,6 @@ class IndexInMemPageMgr {
         this.pageSize = pageSize;
         this.entriesPerPage = entriesPerPage;
         this.indexPersistenceManager = indexPersistenceManager;
-        this.pageMapAndList = new InMemPageCollection(statsLogger);
 
         long maxDirectMemory = PlatformDependent.estimateMaxDirectMemory();
 
@@ -362,10 +409,19 @@ class IndexInMemPageMgr {
         }
         LOG.info("maxDirectMemory = {}, pageSize = {}, pageLimit = {}",
                 maxDirectMemory, pageSize, pageLimit);
+        this.pageMapAndList = new InMemPageCollection(new PageSlab(pageSize, pageLimit), statsLogger);
+        if (conf.getNumIndexFlushThreads() > 1) {
+            this.flushExecutor = Executors.newFixedThreadPool(conf.getNumIndexFlushThreads(),
+                    new DefaultThreadFactory("IndexFlushThread"));
+        } else {
+            this.flushExecutor = null;
+        }
         // Expose Stats
         this.ledgerCacheHitCounter = statsLogger.getCounter(LEDGER_CACHE_HIT);
         this.ledgerCacheMissCounter = statsLogger.getCounter(LEDGER_CACHE_MISS);
         this.ledgerCacheReadPageStats = statsLogger.getOpStatsLogger(LEDGER_CACHE_READ_PAGE);
+        this.ledgerCacheFlushStats = statsLogger.getOpStatsLogger(LEDGER_CACHE_FLUSH);
+        this.ledgerCacheFlushPagesCounter = statsLogger.getCounter(LEDGER_CACHE_FLUSH_PAGES);
         // Export sampled stats for index pages, ledgers.
         statsLogger.registerGauge(
                 NUM_INDEX_PAGES,
@@ -488,24 +544,26 @@ class IndexInMemPageMgr {
         }
 
         while (true) {
-            boolean canAllocate = false;
-            if (pageCount.incrementAndGet() <= pageLimit) {
-                canAllocate = true;
-            } else {
-                pageCount.decrementAndGet();
-            }
-
-            if (canAllocate) {
-                LedgerEntryPage lep = new LedgerEntryPage(pageSize, entriesPerPage, pageMapAndList);
+            // once pageCount reaches pageLimit it never goes below it again, so every
+            // successful increment hands out a distinct slot of the page slab
+            int slot = pageCount.incrementAndGet() - 1;
+            if (slot < pageLimit) {
+                LedgerEntryPage lep = pageMapAndList.pageSlab.newPage(slot, entriesPerPage, pageMapAndList);
                 lep.setLedgerAndFirstEntry(ledger, entry);
                 lep.usePage();
                 return lep;
+            } else {
+                pageCount.decrementAndGet();
             }
 
             LedgerEntryPage lep = pageMapAndList.grabCleanPage(ledger, entry);
             if (null != lep) {
                 return lep;
             }
+            if (pageMapAndList.hasReclaimCandidates()) {
+                // the sweep gave up before looking at all the candidates
+                continue;
+            }
             LOG.info("Could not grab a clean page for ledger {}, entry {}, force flushing dirty ledgers.",
                     ledger, entry);
             flushOneOrMoreLedgers(false);
@@ -514,16 +572,93 @@ class IndexInMemPageMgr {
 
     void flushOneOrMoreLedgers(boolean doAll) throws IOException {
         List<Long> ledgersToFlush = new ArrayList<>(pageMapAndList.getActiveLedgers());
+        if (!doAll) {
+            for (Long potentiallyDirtyLedger : ledgersToFlush) {
+                try {
+                    flushSpecificLedger(potentiallyDirtyLedger);
+                } catch (Bookie.NoLedgerException e) {
+                    continue;
+                }
+                break;
+            }
+            return;
+        }
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            if (null != flushExecutor && ledgersToFlush.size() > 1) {
+                flushLedgersInParallel(ledgersToFlush);
+            } else {
+                flushLedgers(ledgersToFlush);
+            }
+            success = true;
+        } finally {
+            if (success) {
+                ledgerCacheFlushStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                        TimeUnit.NANOSECONDS);
+            } else {
+                ledgerCacheFlushStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void flushLedgers(List<Long> ledgersToFlush) throws IOException {
         for (Long potentiallyDirtyLedger : ledgersToFlush) {
             try {
                 flushSpecificLedger(potentiallyDirtyLedger);
             } catch (Bookie.NoLedgerException e) {
                 continue;
             }
-            if (!doAll) {
-                break;
+        }
+    }
+
+    /**
+     * Flush the given ledgers on the flush executor. Ledgers are grouped by the directory
+     * of their index files: the ledgers of a directory are flushed sequentially, while
+     * different directories are flushed in parallel.
+     *
+     * @param ledgersToFlush ledgers to flush
+     * @throws IOException the first failure encountered, once all the flushes are done
+     */
+    private void flushLedgersInParallel(List<Long> ledgersToFlush) throws IOException {
+        Map<File, List<Long>> ledgersPerDir = new HashMap<>();
+        for (Long ledger : ledgersToFlush) {
+            File ledgerDir = indexPersistenceManager.getLedgerDirForLedger(ledger);
+            if (null != ledgerDir) {
+                ledgersPerDir.computeIfAbsent(ledgerDir, dir -> new ArrayList<>()).add(ledger);
+            }
+        }
+
+        List<Future<Void>> flushFutures = new ArrayList<>(ledgersPerDir.size());
+        for (List<Long> ledgers : ledgersPerDir.values()) {
+            flushFutures.add(flushExecutor.submit(() -> {
+                flushLedgers(ledgers);
+                return null;
+            }));
+        }
+
+        IOException flushException = null;
+        for (Future<Void> flushFuture : flushFutures) {
+            try {
+                flushFuture.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                if (null == flushException) {
+                    flushException = new IOException("Interrupted while flushing ledger cache", ie);
+                }
+            } catch (ExecutionException ee) {
+                if (null == flushException) {
+                    flushException = (ee.getCause() instanceof IOException)
+                            ? (IOException) ee.getCause()
+                            : new IOException("Failed to flush ledger cache", ee.getCause());
+                }
             }
         }
+        if (null != flushException) {
+            throw flushException;
+        }
     }
 
     /**
@@ -556,6 +691,7 @@ class IndexInMemPageMgr {
                 }
             }
             indexPersistenceManager.flushLedgerEntries(ledger, entries);
+            ledgerCacheFlushPagesCounter.addCount(entries.size());
         } finally {
             for (LedgerEntryPage lep: entries) {
                 lep.releasePage();
@@ -563,6 +699,12 @@ class IndexInMemPageMgr {
         }
     }
 
+    void close() {
+        if (null != flushExecutor) {
+            flushExecutor.shutdown();
+        }
+    }
+
     void putEntryOffset(long ledger, long entry, long offset) throws IOException {
         int offsetInPage = (int) (entry % entriesPerPage);
         // find the id of the first entry of the page that has the entry
@@ -509,6 +509,26 @@ public class IndexPersistenceMgr {
         return fi.getLf().getParentFile().getParentFile().getParentFile();
     }
 
+    /**
+     * Get the ledger directory that the index file of the ledger belongs to.
+     *
+     * @param ledger Ledger id
+     * @return ledger directory of the index file, or null if the ledger doesn't exist.
+     */
+    File getLedgerDirForLedger(long ledger) throws IOException {
+        CachedFileInfo fi = null;
+        try {
+            fi = getFileInfo(ledger, null);
+            return getLedgerDirForLedger(fi);
+        } catch (Bookie.NoLedgerException nle) {
+            return null;
+        } finally {
+            if (null != fi) {
+                fi.release();
+            }
+        }
+    }
+
     private void moveLedgerIndexFile(Long l, FileInfo fi) throws NoWritableLedgerDirException, IOException {
         File newLedgerIndexFile = getNewLedgerIndexFile(l, getLedgerDirForLedger(fi));
         try {
@@ -574,6 +594,12 @@ public class IndexPersistenceMgr {
                 LOG.warn("Nothing to write, but there were entries!");
             }
             writeBuffers(l, entries, fi, start, entries.size() - start);
+            // sync the index file once, after all the runs of pages have been written
+            try {
+                fi.force();
+            } catch (FileInfo.FileInfoDeletedException e) {
+                throw new Bookie.NoLedgerException(l);
+            }
             for (int i = 0; i < entries.size(); i++) {
                 LedgerEntryPage lep = entries.get(i);
                 lep.setClean(versions[i]);
@@ -609,7 +635,7 @@ public class IndexPersistenceMgr {
         while (buffs[buffs.length - 1].remaining() > 0) {
             long rc = 0;
             try {
-                rc = fi.write(buffs, entries.get(start + 0).getFirstEntryPosition());
+                rc = fi.write(buffs, entries.get(start + 0).getFirstEntryPosition(), false);
             } catch (FileInfo.FileInfoDeletedException e) {
                 throw new Bookie.NoLedgerException(ledger);
             }
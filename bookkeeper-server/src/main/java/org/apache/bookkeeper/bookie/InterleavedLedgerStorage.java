@@ -36,6 +36,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import java.io.File;
 import java.io.IOException;
@@ -446,6 +447,19 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         }
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize) throws IOException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return null;
+        }
+        long offset = ledgerCache.getEntryOffset(ledgerId, entryId);
+        if (offset == 0) {
+            // let getEntry report the missing entry
+            return null;
+        }
+        return entryLogger.readEntryRegion(ledgerId, entryId, offset, minEntrySize);
+    }
+
     private void flushOrCheckpoint(boolean isCheckpointFlush)
             throws IOException {
 
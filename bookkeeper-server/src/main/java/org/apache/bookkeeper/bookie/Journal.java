@@ -915,6 +915,46 @@ public class Journal implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * record a batch of add entry operations in journal, with a single enqueue.
+     * The null entries are skipped.
+     */
+    public void logAddEntries(ByteBuf[] entries, WriteCallback[] cbs, int count,
+                              boolean ackBeforeSync, Object ctx)
+            throws InterruptedException {
+        int numEntries = 0;
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            if (entries[i] != null) {
+                numEntries++;
+                size += entries[i].readableBytes();
+            }
+        }
+        if (numEntries == 0) {
+            return;
+        }
+
+        memoryLimitController.reserveMemory(size);
+
+        QueueEntry[] queueEntries = new QueueEntry[numEntries];
+        long enqueueTime = MathUtils.nowInNano();
+        int idx = 0;
+        for (int i = 0; i < count; i++) {
+            ByteBuf entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+            // Retain entry until it gets written to journal
+            entry.retain();
+            queueEntries[idx++] = QueueEntry.create(
+                    entry, ackBeforeSync, entry.getLong(entry.readerIndex()), entry.getLong(entry.readerIndex() + 8),
+                    cbs[i], ctx, enqueueTime, journalStats.getJournalAddEntryStats(), callbackTime);
+        }
+
+        journalStats.getJournalQueueSize().addCount(numEntries);
+        queue.putAll(queueEntries, 0, numEntries);
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -22,6 +22,7 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.PrimitiveIterator.OfLong;
@@ -161,6 +162,16 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
         return ledgerStorage.getEntry(ledgerId, entryId);
     }
 
+    @Override
+    FileRegion readEntryRegion(long entryId, int minEntrySize) throws IOException, BookieException {
+        return ledgerStorage.getEntryRegion(ledgerId, entryId, minEntrySize);
+    }
+
+    @Override
+    ByteBuf readEntryIfCached(long entryId) {
+        return ledgerStorage.getEntryIfCached(ledgerId, entryId);
+    }
+
     @Override
     long getLastAddConfirmed() throws IOException, BookieException {
         return ledgerStorage.getLastAddConfirmed(ledgerId);
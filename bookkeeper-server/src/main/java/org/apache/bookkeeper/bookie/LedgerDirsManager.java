@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -53,6 +55,9 @@ public class LedgerDirsManager {
     private final Random rand = new Random();
     private final ConcurrentMap<File, Float> diskUsages =
             new ConcurrentHashMap<File, Float>();
+    private final ConcurrentMap<File, DirWriteLoad> dirWriteLoads =
+            new ConcurrentHashMap<File, DirWriteLoad>();
+    private final boolean loadAwareDirSelection;
     private final long entryLogSize;
     private long minUsableSizeForEntryLogCreation;
     private long minUsableSizeForIndexFileCreation;
@@ -75,11 +80,12 @@ public class LedgerDirsManager {
         this.entryLogSize = conf.getEntryLogSizeLimit();
         this.minUsableSizeForIndexFileCreation = conf.getMinUsableSizeForIndexFileCreation();
         this.minUsableSizeForEntryLogCreation = conf.getMinUsableSizeForEntryLogCreation();
+        this.loadAwareDirSelection = conf.isLoadAwareLedgerDirSelectionEnabled();
         for (File dir : ledgerDirectories) {
             diskUsages.put(dir, 0f);
-            String statName = "dir_" + dir.getParent().replace('/', '_') + "_usage";
+            String statPrefix = "dir_" + dir.getParent().replace('/', '_');
             final File targetDir = dir;
-            statsLogger.registerGauge(statName, new Gauge<Number>() {
+            statsLogger.registerGauge(statPrefix + "_usage", new Gauge<Number>() {
                 @Override
                 public Number getDefaultValue() {
                     return 0;
@@ -90,6 +96,46 @@ public class LedgerDirsManager {
                     return diskUsages.get(targetDir) * 100;
                 }
             });
+
+            if (!loadAwareDirSelection) {
+                // the write load is only tracked to pick the dirs of new logs
+                continue;
+            }
+            final DirWriteLoad writeLoad = new DirWriteLoad();
+            dirWriteLoads.put(dir, writeLoad);
+            statsLogger.registerGauge(statPrefix + "_sync_latency_micros", new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return writeLoad.avgSyncLatencyNanos / 1000;
+                }
+            });
+            statsLogger.registerGauge(statPrefix + "_pending_syncs", new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return writeLoad.pendingSyncs.get();
+                }
+            });
+            statsLogger.registerGauge(statPrefix + "_unsynced_bytes", new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return writeLoad.unsyncedBytes.sum();
+                }
+            });
         }
 
         this.diskChecker = diskChecker;
@@ -346,6 +392,15 @@ public class LedgerDirsManager {
     }
 
     File pickRandomDir(List<File> dirs, File excludedDir) throws NoWritableLedgerDirException {
+        if (loadAwareDirSelection) {
+            File dir = pickLeastLoadedDir(dirs, excludedDir);
+            if (null == dir) {
+                throw new NoWritableLedgerDirException("No writable directories found from "
+                        + " available writable dirs (" + dirs + ") : exclude dir "
+                        + excludedDir);
+            }
+            return dir;
+        }
         final int start = rand.nextInt(dirs.size());
         int idx = start;
         File candidate = dirs.get(idx);
@@ -363,6 +418,75 @@ public class LedgerDirsManager {
         return candidate;
     }
 
+    /**
+     * Get the write load tracker of a ledger dir.
+     *
+     * @return the write load of the dir, or null if it is not a ledger dir managed by this manager
+     *         or if load aware dir selection is disabled.
+     */
+    DirWriteLoad getDirWriteLoad(File dir) {
+        return dirWriteLoads.get(dir);
+    }
+
+    /**
+     * Estimate how long a sync issued now on the given dir would take, based on the
+     * write load observed on the dir.
+     */
+    long getEstimatedSyncDelayNanos(File dir) {
+        DirWriteLoad writeLoad = dirWriteLoads.get(dir);
+        return null == writeLoad ? 0 : writeLoad.getEstimatedSyncDelayNanos();
+    }
+
+    boolean isLoadAwareDirSelection() {
+        return loadAwareDirSelection;
+    }
+
+    /**
+     * Pick the dir of a new entry log from the given writable dirs. When load aware dir selection
+     * is enabled the least loaded of two randomly chosen dirs is picked, otherwise one is picked randomly.
+     */
+    File pickDirForNewLog(List<File> dirs) {
+        if (loadAwareDirSelection) {
+            return pickLeastLoadedDir(dirs, null);
+        }
+        return dirs.get(rand.nextInt(dirs.size()));
+    }
+
+    /**
+     * Pick the less loaded of two dirs chosen randomly, which steers new files away from slow
+     * or saturated disks while still spreading them over the dirs with similar loads.
+     */
+    private File pickLeastLoadedDir(List<File> dirs, File excludedDir) {
+        List<File> candidates = dirs;
+        if (null != excludedDir && dirs.contains(excludedDir)) {
+            candidates = new ArrayList<File>(dirs);
+            candidates.remove(excludedDir);
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        } else if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        int first = rand.nextInt(candidates.size());
+        int second = rand.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        File firstDir = candidates.get(first);
+        File secondDir = candidates.get(second);
+        return getEstimatedSyncDelayNanos(secondDir) < getEstimatedSyncDelayNanos(firstDir) ? secondDir : firstDir;
+    }
+
+    /**
+     * Decay the sync latency of the dirs which didn't sync any data since the previous call,
+     * so a dir which was slow once gets new data again after a while.
+     */
+    void decayIdleDirWriteLoads() {
+        for (DirWriteLoad writeLoad : dirWriteLoads.values()) {
+            writeLoad.decayIfIdle();
+        }
+    }
+
     public void addLedgerDirsListener(LedgerDirsListener listener) {
         if (listener != null) {
             listeners.add(listener);
@@ -373,6 +497,63 @@ public class LedgerDirsManager {
         return diskChecker;
     }
 
+    /**
+     * The write load observed on a ledger dir: the bytes written to its entry logs which are
+     * not synced yet, the syncs in progress and the average latency of its syncs.
+     */
+    static class DirWriteLoad {
+        // weight of a new sample in the moving averages
+        private static final double ALPHA = 0.2;
+
+        private final LongAdder unsyncedBytes = new LongAdder();
+        private final AtomicInteger pendingSyncs = new AtomicInteger(0);
+        private volatile long avgSyncLatencyNanos = 0;
+        private volatile long avgSyncBytes = 0;
+        private volatile boolean syncedSinceLastDecay = false;
+
+        void onWrite(long bytes) {
+            unsyncedBytes.add(bytes);
+        }
+
+        void onSyncStarted() {
+            pendingSyncs.incrementAndGet();
+        }
+
+        void onSyncCompleted(long syncedBytes, long latencyNanos) {
+            pendingSyncs.decrementAndGet();
+            unsyncedBytes.add(-syncedBytes);
+            avgSyncLatencyNanos = (long) (ALPHA * latencyNanos + (1 - ALPHA) * avgSyncLatencyNanos);
+            avgSyncBytes = (long) (ALPHA * syncedBytes + (1 - ALPHA) * avgSyncBytes);
+            syncedSinceLastDecay = true;
+        }
+
+        void onSyncFailed() {
+            pendingSyncs.decrementAndGet();
+        }
+
+        /**
+         * Drop the bytes of a log which is closed without being synced.
+         */
+        void onDiscarded(long unsynced) {
+            unsyncedBytes.add(-unsynced);
+        }
+
+        long getEstimatedSyncDelayNanos() {
+            long latency = avgSyncLatencyNanos;
+            long bytesPerSync = Math.max(avgSyncBytes, 1);
+            // the syncs in progress are waited for, and the unsynced bytes take as long to sync
+            // as the average sync per avgSyncBytes
+            return latency * (1 + pendingSyncs.get()) + latency * Math.max(unsyncedBytes.sum(), 0) / bytesPerSync;
+        }
+
+        private void decayIfIdle() {
+            if (!syncedSinceLastDecay) {
+                avgSyncLatencyNanos = avgSyncLatencyNanos / 2;
+            }
+            syncedSinceLastDecay = false;
+        }
+    }
+
     /**
      * Indicates All configured ledger directories are full.
      */
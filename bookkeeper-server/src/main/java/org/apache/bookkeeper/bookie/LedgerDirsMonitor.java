@@ -175,6 +175,8 @@ class LedgerDirsMonitor {
             }
         }
 
+        ldm.decayIdleDirWriteLoads();
+
         if (conf.isReadOnlyModeOnAnyDiskFullEnabled()) {
             if (someDiskFulled && !ldm.getFullFilledLedgerDirs().isEmpty()) {
                 // notify any disk full.
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.NoSuchElementException;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.util.ZeroBuffer;
@@ -48,6 +49,10 @@ public class LedgerEntryPage implements AutoCloseable {
     private final AtomicInteger useCount = new AtomicInteger(0);
     private final AtomicInteger version = new AtomicInteger(0);
     private volatile int last = -1; // Last update position
+    // Set whenever the page is used, cleared by the CLOCK sweep of the page manager
+    private volatile boolean referenced = false;
+    // Whether the page is in the reclaim candidates of the page manager
+    private final AtomicBoolean reclaimCandidate = new AtomicBoolean(false);
     private final LEPStateChangeCallback callback;
     private boolean deleted;
 
@@ -60,9 +65,17 @@ public class LedgerEntryPage implements AutoCloseable {
     }
 
     public LedgerEntryPage(int pageSize, int entriesPerPage, LEPStateChangeCallback callback) {
-        this.pageSize = pageSize;
+        this(ByteBuffer.allocateDirect(pageSize), entriesPerPage, callback);
+    }
+
+    /**
+     * Create a page on top of an already allocated buffer, e.g. a slice of a larger slab.
+     * The page takes its size from the capacity of the buffer.
+     */
+    LedgerEntryPage(ByteBuffer page, int entriesPerPage, LEPStateChangeCallback callback) {
+        this.pageSize = page.capacity();
         this.entriesPerPage = entriesPerPage;
-        page = ByteBuffer.allocateDirect(pageSize);
+        this.page = page;
         this.callback = callback;
         if (null != this.callback) {
             callback.onResetInUse(this);
@@ -105,6 +118,9 @@ public class LedgerEntryPage implements AutoCloseable {
     }
 
     public void usePage() {
+        if (!referenced) {
+            referenced = true;
+        }
         int oldVal = useCount.getAndIncrement();
         if ((0 == oldVal) && (null != callback)) {
             callback.onSetInUse(this);
@@ -162,6 +178,32 @@ public class LedgerEntryPage implements AutoCloseable {
         return clean;
     }
 
+    /**
+     * Clear the reference bit of the page.
+     *
+     * @return whether the page was used since the last time the bit was cleared
+     */
+    boolean clearReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Mark the page as queued for reclaim.
+     *
+     * @return false if the page was already queued
+     */
+    boolean markReclaimCandidate() {
+        return reclaimCandidate.compareAndSet(false, true);
+    }
+
+    void clearReclaimCandidate() {
+        reclaimCandidate.set(false);
+    }
+
     public void setOffset(long offset, int position) {
         checkPage();
         page.putLong(position, offset);
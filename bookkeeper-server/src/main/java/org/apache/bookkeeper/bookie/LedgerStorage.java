@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -144,6 +145,27 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Get a {@link FileRegion} over an entry stored in a sealed entry log, so it can be sent
+     * without being copied to user space.
+     *
+     * @param minEntrySize entries smaller than this are not worth a file region
+     * @return the region of the entry, or null if the entry has to be read with {@link #getEntry}.
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        return null;
+    }
+
+    /**
+     * Get an entry only if it can be served from memory, without reading it from the disk.
+     *
+     * @return the entry, or null if it has to be read with {@link #getEntry}.
+     */
+    default ByteBuf getEntryIfCached(long ledgerId, long entryId) {
+        return null;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -339,6 +361,14 @@ public interface LedgerStorage {
         return Collections.emptyList();
     }
 
+    /**
+     * Get the hottest ledgers tracked by the storage, the hottest first.
+     * Empty if the storage doesn't track the heat of the ledgers.
+     */
+    default List<HotLedgerTracker.LedgerHeat> getHotLedgers() {
+        return Collections.emptyList();
+    }
+
     /**
      * Returns the primitive long iterator for entries of the ledger, stored in
      * this LedgerStorage. The returned iterator provide weakly consistent state
@@ -0,0 +1,548 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * An {@link EntryMemTable} which keeps the entries off-heap.
+ *
+ * <p>The payloads are copied into large direct memory chunks with a bump-the-pointer allocator
+ * and located through a primitive (ledgerId, entryId) keyed hash map, so adding an entry doesn't
+ * allocate any object. Entries are not kept sorted while they are added: the table is sorted once,
+ * by (ledgerId, entryId), when its snapshot is flushed.
+ *
+ * <p>Adds don't take the memtable lock. Writers and readers pin the table they use, and a table
+ * which has been snapshotted is only flushed once the in-progress writes to it are done, and only
+ * released once no reader uses it anymore.
+ */
+@Slf4j
+class OffHeapEntryMemTable extends EntryMemTable {
+
+    /**
+     * A direct memory chunk the entries are copied to.
+     */
+    private static class Chunk {
+        final int id;
+        final ByteBuf data;
+        final AtomicInteger nextFreeOffset = new AtomicInteger(0);
+
+        Chunk(int id, ByteBuf data) {
+            this.id = id;
+            this.data = data;
+        }
+
+        /**
+         * @return the offset of the allocated slice in the chunk, or -1 if there is not enough space left.
+         */
+        int alloc(int size) {
+            while (true) {
+                int oldOffset = nextFreeOffset.get();
+                if (oldOffset + size > data.capacity()) {
+                    return -1;
+                }
+                if (nextFreeOffset.compareAndSet(oldOffset, oldOffset + size)) {
+                    return oldOffset;
+                }
+            }
+        }
+    }
+
+    /**
+     * A generation of the memtable: the table entries are added to, or the snapshot being flushed.
+     */
+    private class Table {
+        final Checkpoint cp;
+        // (ledgerId, entryId) -> (chunkId << 32 | offset, length)
+        final ConcurrentLongLongPairHashMap index;
+        // ledgerId -> first and last entryId added
+        final ConcurrentLongLongHashMap firstEntries;
+        final ConcurrentLongLongHashMap lastEntries;
+        final ConcurrentLongHashMap<Chunk> chunks;
+        final AtomicReference<Chunk> curChunk = new AtomicReference<>();
+        final AtomicInteger nextChunkId = new AtomicInteger(0);
+        // number of writers and readers currently using the table
+        final AtomicInteger pins = new AtomicInteger(0);
+        // set once the flusher waits for the table to be unpinned, notified when it is
+        volatile boolean awaitingUnpin = false;
+        final Object unpinned = new Object();
+
+        Table(Checkpoint cp) {
+            this.cp = cp;
+            this.index = ConcurrentLongLongPairHashMap.newBuilder().build();
+            this.firstEntries = ConcurrentLongLongHashMap.newBuilder().build();
+            this.lastEntries = ConcurrentLongLongHashMap.newBuilder().build();
+            this.chunks = ConcurrentLongHashMap.<Chunk>newBuilder().build();
+        }
+
+        boolean isEmpty() {
+            return index.isEmpty();
+        }
+
+        int compareTo(Checkpoint cp) {
+            return this.cp.compareTo(cp);
+        }
+
+        /**
+         * Copy the entry into the chunks of the table.
+         *
+         * @return the location of the entry, or -1 if the entry already exists.
+         */
+        long add(long ledgerId, long entryId, ByteBuffer entry) {
+            if (index.containsKey(ledgerId, entryId)) {
+                return -1L;
+            }
+            int len = entry.remaining();
+            long location = allocate(len);
+            Chunk chunk = chunks.get(location >>> 32);
+            chunk.data.setBytes((int) location, entry.duplicate());
+            if (!index.putIfAbsent(ledgerId, entryId, location, len)) {
+                // added concurrently, the allocated slice is wasted until the table is released
+                return -1L;
+            }
+            long firstEntryId = firstEntries.putIfAbsent(ledgerId, entryId);
+            while (firstEntryId != -1L && firstEntryId > entryId
+                    && !firstEntries.compareAndSet(ledgerId, firstEntryId, entryId)) {
+                firstEntryId = firstEntries.get(ledgerId);
+            }
+            long lastEntryId = lastEntries.putIfAbsent(ledgerId, entryId);
+            while (lastEntryId != -1L && lastEntryId < entryId
+                    && !lastEntries.compareAndSet(ledgerId, lastEntryId, entryId)) {
+                lastEntryId = lastEntries.get(ledgerId);
+            }
+            return location;
+        }
+
+        private long allocate(int size) {
+            if (size > maxAlloc) {
+                // large entries get a chunk of their own
+                return ((long) newChunk(size).id << 32);
+            }
+            while (true) {
+                Chunk c = curChunk.get();
+                if (null != c) {
+                    int offset = c.alloc(size);
+                    if (offset != -1) {
+                        return ((long) c.id << 32) | offset;
+                    }
+                }
+                synchronized (this) {
+                    if (curChunk.get() == c) {
+                        curChunk.set(newChunk(chunkSize));
+                    }
+                }
+            }
+        }
+
+        private Chunk newChunk(int size) {
+            Chunk chunk = new Chunk(nextChunkId.getAndIncrement(),
+                    allocator.directBuffer(size, size));
+            chunks.put(chunk.id, chunk);
+            return chunk;
+        }
+
+        /**
+         * @return a copy of the entry, or null if it is not in the table.
+         */
+        EntryKeyValue get(long ledgerId, long entryId) {
+            LongPair location = index.get(ledgerId, entryId);
+            if (null == location) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) location.second];
+            chunks.get(location.first >>> 32).data.getBytes((int) location.first, bytes);
+            return new EntryKeyValue(ledgerId, entryId, bytes);
+        }
+
+        long getLastEntryId(long ledgerId) {
+            return lastEntries.get(ledgerId);
+        }
+
+        /**
+         * @return the ids of the entries of the ledger in the table, in ascending order.
+         */
+        long[] getEntriesOfLedger(long ledgerId) {
+            long firstEntryId = firstEntries.get(ledgerId);
+            long lastEntryId = lastEntries.get(ledgerId);
+            if (firstEntryId == -1L || lastEntryId == -1L) {
+                return new long[0];
+            }
+            long numEntries = index.size();
+            if (lastEntryId - firstEntryId + 1 <= numEntries) {
+                // probe the range of entries of the ledger, which is dense unless entries are missing
+                long[] entries = new long[(int) (lastEntryId - firstEntryId + 1)];
+                int n = 0;
+                for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                    if (index.containsKey(ledgerId, entryId)) {
+                        entries[n++] = entryId;
+                    }
+                }
+                return Arrays.copyOf(entries, n);
+            }
+            // the range is sparser than the whole table, scan the table instead
+            long[] entries = new long[16];
+            AtomicInteger n = new AtomicInteger(0);
+            AtomicReference<long[]> entriesRef = new AtomicReference<>(entries);
+            index.forEach((lid, entryId, location, length) -> {
+                if (lid == ledgerId) {
+                    long[] array = entriesRef.get();
+                    int i = n.getAndIncrement();
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, array.length * 2);
+                        entriesRef.set(array);
+                    }
+                    array[i] = entryId;
+                }
+            });
+            long[] result = Arrays.copyOf(entriesRef.get(), n.get());
+            Arrays.sort(result);
+            return result;
+        }
+
+        void release() {
+            chunks.forEach((id, chunk) -> chunk.data.release());
+            chunks.clear();
+        }
+    }
+
+    private final ByteBufAllocator allocator;
+    private final int chunkSize;
+    private final int maxAlloc;
+    private final Object snapshotLock = new Object();
+    private final Table emptyTable;
+
+    private volatile Table table;
+    private volatile Table snapshotTable;
+
+    OffHeapEntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                         final StatsLogger statsLogger) {
+        super(conf, source, statsLogger, false);
+        this.allocator = PooledByteBufAllocator.DEFAULT;
+        this.chunkSize = conf.getSkipListArenaChunkSize();
+        this.maxAlloc = conf.getSkipListArenaMaxAllocSize();
+        this.emptyTable = new Table(Checkpoint.MAX);
+        this.table = new Table(checkpointSource.newCheckpoint());
+        this.snapshotTable = emptyTable;
+    }
+
+    /**
+     * Pin the current table, or the current snapshot. The returned table won't be released
+     * until it is unpinned.
+     */
+    private Table pin(boolean snapshot) {
+        while (true) {
+            Table t = snapshot ? snapshotTable : table;
+            t.pins.incrementAndGet();
+            if (t == (snapshot ? snapshotTable : table)) {
+                return t;
+            }
+            t.pins.decrementAndGet();
+        }
+    }
+
+    private static void unpin(Table t) {
+        if (t.pins.decrementAndGet() == 0 && t.awaitingUnpin) {
+            synchronized (t.unpinned) {
+                t.unpinned.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait for the writers and readers using a table which is not current anymore. It can't be
+     * pinned again, so the wait is short: it is not interruptible, as the table has to be
+     * drained before it is flushed or released.
+     */
+    private static void awaitUnpinned(Table t) {
+        if (t.pins.get() == 0) {
+            return;
+        }
+        t.awaitingUnpin = true;
+        boolean interrupted = false;
+        synchronized (t.unpinned) {
+            while (t.pins.get() > 0) {
+                try {
+                    t.unpinned.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    void dump() {
+        table.index.forEach((ledgerId, entryId, location, length) -> log.info("{}:{}", ledgerId, entryId));
+        snapshotTable.index.forEach((ledgerId, entryId, location, length) -> log.info("{}:{}", ledgerId, entryId));
+    }
+
+    @Override
+    Checkpoint snapshot(Checkpoint oldCp) throws IOException {
+        Checkpoint cp = null;
+        // No-op if snapshot currently has entries
+        if (this.snapshotTable.isEmpty() && this.table.compareTo(oldCp) < 0) {
+            final long startTimeNanos = MathUtils.nowInNano();
+            synchronized (snapshotLock) {
+                if (this.snapshotTable.isEmpty() && !this.table.isEmpty()
+                        && this.table.compareTo(oldCp) < 0) {
+                    this.snapshotTable = this.table;
+                    this.table = new Table(checkpointSource.newCheckpoint());
+                    // get the checkpoint of the memtable.
+                    cp = this.table.cp;
+                    // Reset heap to not include any keys
+                    this.size.set(0);
+                }
+            }
+
+            if (null != cp) {
+                memTableStats.getSnapshotStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getSnapshotStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+        return cp;
+    }
+
+    @Override
+    long flushSnapshot(final SkipListFlusher flusher, Checkpoint checkpoint) throws IOException {
+        long size = 0;
+        if (this.snapshotTable.compareTo(checkpoint) < 0) {
+            synchronized (this) {
+                Table keyValues = this.snapshotTable;
+                if (keyValues.compareTo(checkpoint) < 0 && !keyValues.isEmpty()) {
+                    // wait for the adds which raced with the snapshot to be done
+                    awaitUnpinned(keyValues);
+
+                    // (ledgerId, entryId, location, length) tuples, sorted by ledgerId and entryId
+                    long[] sortedEntries = new long[(int) keyValues.index.size() * 4];
+                    AtomicInteger idx = new AtomicInteger(0);
+                    keyValues.index.forEach((ledgerId, entryId, location, length) -> {
+                        int i = idx.getAndAdd(4);
+                        sortedEntries[i] = ledgerId;
+                        sortedEntries[i + 1] = entryId;
+                        sortedEntries[i + 2] = location;
+                        sortedEntries[i + 3] = length;
+                    });
+                    ArrayGroupSort.sort(sortedEntries, 0, idx.get());
+
+                    long ledgerGC = -1;
+                    for (int i = 0; i < idx.get(); i += 4) {
+                        long ledger = sortedEntries[i];
+                        long location = sortedEntries[i + 2];
+                        int length = (int) sortedEntries[i + 3];
+                        size += length;
+                        if (ledgerGC != ledger) {
+                            ByteBuf chunk = keyValues.chunks.get(location >>> 32).data;
+                            try {
+                                flusher.process(ledger, sortedEntries[i + 1], chunk.slice((int) location, length));
+                            } catch (NoLedgerException exception) {
+                                ledgerGC = ledger;
+                            }
+                        }
+                    }
+                    memTableStats.getFlushBytesCounter().addCount(size);
+                    clearSnapshot(keyValues);
+                }
+            }
+        }
+
+        skipListSemaphore.release((int) size);
+        return size;
+    }
+
+    private void clearSnapshot(final Table keyValues) {
+        synchronized (snapshotLock) {
+            assert this.snapshotTable == keyValues;
+            this.snapshotTable = emptyTable;
+        }
+        // the readers still using the snapshot have to be done before its memory is released
+        awaitUnpinned(keyValues);
+        keyValues.release();
+    }
+
+    @Override
+    public long addEntry(long ledgerId, long entryId, final ByteBuffer entry, final CacheCallback cb)
+            throws IOException {
+        long size = 0;
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            if (isSizeLimitReached() || (!previousFlushSucceeded.get())) {
+                Checkpoint cp = snapshot();
+                if ((null != cp) || (!previousFlushSucceeded.get())) {
+                    cb.onSizeLimitReached(cp);
+                }
+            }
+
+            final int len = entry.remaining();
+            if (!skipListSemaphore.tryAcquire(len)) {
+                memTableStats.getThrottlingCounter().inc();
+                final long throttlingStartTimeNanos = MathUtils.nowInNano();
+                skipListSemaphore.acquireUninterruptibly(len);
+                memTableStats.getThrottlingStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(throttlingStartTimeNanos), TimeUnit.NANOSECONDS);
+            }
+
+            Table t = pin(false);
+            try {
+                if (t.add(ledgerId, entryId, entry) != -1L) {
+                    size = len;
+                    this.size.addAndGet(size);
+                } else {
+                    skipListSemaphore.release(len);
+                }
+            } finally {
+                unpin(t);
+            }
+            success = true;
+            return size;
+        } finally {
+            if (success) {
+                memTableStats.getPutEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getPutEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public EntryKeyValue getEntry(long ledgerId, long entryId) throws IOException {
+        long startTimeNanos = MathUtils.nowInNano();
+        EntryKeyValue value = getEntryFrom(false, ledgerId, entryId);
+        if (value == null) {
+            value = getEntryFrom(true, ledgerId, entryId);
+        }
+        memTableStats.getGetEntryStats()
+            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    private EntryKeyValue getEntryFrom(boolean snapshot, long ledgerId, long entryId) {
+        Table t = pin(snapshot);
+        try {
+            return t.get(ledgerId, entryId);
+        } finally {
+            unpin(t);
+        }
+    }
+
+    @Override
+    public EntryKeyValue getLastEntry(long ledgerId) throws IOException {
+        long startTimeNanos = MathUtils.nowInNano();
+        EntryKeyValue value = getLastEntryFrom(false, ledgerId);
+        if (value == null) {
+            value = getLastEntryFrom(true, ledgerId);
+        }
+        memTableStats.getGetEntryStats()
+            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    private EntryKeyValue getLastEntryFrom(boolean snapshot, long ledgerId) {
+        Table t = pin(snapshot);
+        try {
+            long lastEntryId = t.getLastEntryId(ledgerId);
+            return lastEntryId == -1L ? null : t.get(ledgerId, lastEntryId);
+        } finally {
+            unpin(t);
+        }
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size.get() == 0 && snapshotTable.isEmpty();
+    }
+
+    /*
+     * returns the primitive long iterator of entries of a ledger available in
+     * this EntryMemTable, in the ascending order. Unlike the skiplist based
+     * memtable, the entries are collected when this method is called, so the
+     * iterator doesn't reflect later modifications.
+     */
+    @Override
+    PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) {
+        long[] entries = collectEntriesOfLedger(false, ledgerId);
+        long[] snapshotEntries = collectEntriesOfLedger(true, ledgerId);
+        long[] allEntries = Arrays.copyOf(entries, entries.length + snapshotEntries.length);
+        System.arraycopy(snapshotEntries, 0, allEntries, entries.length, snapshotEntries.length);
+        long[] sortedEntries = Arrays.stream(allEntries).sorted().distinct().toArray();
+        return new PrimitiveIterator.OfLong() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < sortedEntries.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return sortedEntries[next++];
+            }
+        };
+    }
+
+    private long[] collectEntriesOfLedger(boolean snapshot, long ledgerId) {
+        Table t = pin(snapshot);
+        try {
+            return t.getEntriesOfLedger(ledgerId);
+        } finally {
+            unpin(t);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        table.release();
+        snapshotTable.release();
+    }
+}
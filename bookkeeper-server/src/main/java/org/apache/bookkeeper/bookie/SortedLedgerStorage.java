@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.List;
@@ -114,6 +115,8 @@ public class SortedLedgerStorage
 
         if (conf.isEntryLogPerLedgerEnabled()) {
             this.memTable = new EntryMemTableWithParallelFlusher(conf, checkpointSource, statsLogger);
+        } else if (conf.isMemtableOffHeapEnabled()) {
+            this.memTable = new OffHeapEntryMemTable(conf, checkpointSource, statsLogger);
         } else {
             this.memTable = new EntryMemTable(conf, checkpointSource, statsLogger);
         }
@@ -239,6 +242,12 @@ public class SortedLedgerStorage
         return buffToRet;
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize) throws IOException {
+        // entries which are only in the memtable have no offset in the ledger cache yet
+        return interleavedLedgerStorage.getEntryRegion(ledgerId, entryId, minEntrySize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException {
         return interleavedLedgerStorage.getLastAddConfirmed(ledgerId);
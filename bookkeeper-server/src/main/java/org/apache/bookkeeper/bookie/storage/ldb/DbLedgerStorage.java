@@ -29,11 +29,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -49,6 +51,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
+import org.apache.bookkeeper.bookie.HotLedgerTracker;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
@@ -94,6 +97,12 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String HOT_LEDGERS_TRACKER_SIZE = "dbStorage_hotLedgersTrackerSize";
+    static final String HOT_LEDGERS_COUNT = "dbStorage_hotLedgersCount";
+    static final String READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT = "dbStorage_readAheadCacheHotLedgersPercent";
+    private static final int DEFAULT_HOT_LEDGERS_TRACKER_SIZE = 100;
+    private static final int DEFAULT_HOT_LEDGERS_COUNT = 10;
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB =
@@ -123,6 +132,8 @@ public class DbLedgerStorage implements LedgerStorage {
     private static final long STORAGE_FLAGS_KEY = 0L;
     private int numberOfDirs;
     private List<SingleDirectoryDbLedgerStorage> ledgerStorageList;
+    // shared by the directories, null when the hot ledgers aren't tracked
+    private HotLedgerTracker hotLedgerTracker;
 
     private ExecutorService entryLoggerWriteExecutor = null;
     private ExecutorService entryLoggerFlushExecutor = null;
@@ -177,6 +188,14 @@ public class DbLedgerStorage implements LedgerStorage {
         long readAheadCacheBatchBytesSize = conf.getInt(READ_AHEAD_CACHE_BATCH_BYTES_SIZE,
                 DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE);
 
+        int hotLedgersTrackerSize = getHotLedgersTrackerSize(conf);
+        if (hotLedgersTrackerSize > 0) {
+            hotLedgerTracker = new HotLedgerTracker(hotLedgersTrackerSize,
+                    conf.getInt(HOT_LEDGERS_COUNT, DEFAULT_HOT_LEDGERS_COUNT));
+        } else if (getReadAheadCacheHotLedgersPercent(conf) > 0) {
+            log.warn("The hot ledgers aren't tracked, the region of the read cache set aside for them is unused");
+        }
+
         ledgerStorageList = Lists.newArrayList();
         for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
             File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(i);
@@ -238,11 +257,13 @@ public class DbLedgerStorage implements LedgerStorage {
             } else {
                 entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
             }
-            ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm,
+            SingleDirectoryDbLedgerStorage storage = newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm,
                 idm, entrylogger,
                 statsLogger, perDirectoryWriteCacheSize,
                 perDirectoryReadCacheSize,
-                readAheadCacheBatchSize, readAheadCacheBatchBytesSize));
+                readAheadCacheBatchSize, readAheadCacheBatchBytesSize);
+            storage.setHotLedgerTracker(hotLedgerTracker);
+            ledgerStorageList.add(storage);
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
             if (!lDirs[0].getPath().equals(iDirs[0].getPath())) {
                 idm.getListeners().forEach(indexDirsManager::addLedgerDirsListener);
@@ -361,6 +382,17 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryRegion(ledgerId, entryId, minEntrySize);
+    }
+
+    @Override
+    public ByteBuf getEntryIfCached(long ledgerId, long entryId) {
+        return getLedgerStorage(ledgerId).getEntryIfCached(ledgerId, entryId);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -597,6 +629,11 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    @Override
+    public List<HotLedgerTracker.LedgerHeat> getHotLedgers() {
+        return hotLedgerTracker != null ? hotLedgerTracker.getLedgerHeats() : Collections.emptyList();
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
@@ -610,6 +647,24 @@ public class DbLedgerStorage implements LedgerStorage {
         }
     }
 
+    /**
+     * The tracker records every add and read of the bookie, so unless it is configured it is only
+     * enabled when the read cache sets a region aside for the hot ledgers, which relies on it.
+     */
+    static int getHotLedgersTrackerSize(ServerConfiguration conf) {
+        int defaultSize = getReadAheadCacheHotLedgersPercent(conf) > 0 ? DEFAULT_HOT_LEDGERS_TRACKER_SIZE : 0;
+        return conf.getInt(HOT_LEDGERS_TRACKER_SIZE, defaultSize);
+    }
+
+    static int getReadAheadCacheHotLedgersPercent(ServerConfiguration conf) {
+        int percent = conf.getInt(READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT, 0);
+        if (percent < 0 || percent >= 100) {
+            throw new IllegalArgumentException("Invalid value provided for " + READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT
+                    + " : " + percent);
+        }
+        return percent;
+    }
+
     static boolean getBooleanVariableOrDefault(ServerConfiguration conf, String keyName, boolean defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Boolean) {
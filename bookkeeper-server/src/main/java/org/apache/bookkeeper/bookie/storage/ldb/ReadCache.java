@@ -45,11 +45,16 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>A part of the memory can be set aside as a protected region, for the
+ * entries put with {@link #putProtected}. The region is a read cache of its
+ * own: its entries can only be evicted by newer protected entries, never by
+ * the rotation of the main segments.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
-    private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
@@ -62,12 +67,28 @@ public class ReadCache implements Closeable {
     private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    // the region of the protected entries, null if there is none
+    private final ReadCache protectedRegion;
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, 0L);
+    }
+
+    /**
+     * @param protectedSize the part of {@code maxCacheSize} set aside for the protected entries, 0 for none
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, long protectedSize) {
+        this(allocator, maxCacheSize - protectedSize, maxSegmentSize,
+                protectedSize > 0 ? new ReadCache(allocator, protectedSize, maxSegmentSize) : null);
+    }
+
+    private ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, ReadCache protectedRegion) {
         this.allocator = allocator;
+        this.protectedRegion = protectedRegion;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
@@ -87,6 +108,20 @@ public class ReadCache implements Closeable {
     @Override
     public void close() {
         cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        if (protectedRegion != null) {
+            protectedRegion.close();
+        }
+    }
+
+    /**
+     * Put an entry in the protected region, or in the main segments if there is no protected region.
+     */
+    public void putProtected(long ledgerId, long entryId, ByteBuf entry) {
+        if (protectedRegion != null) {
+            protectedRegion.put(ledgerId, entryId, entry);
+        } else {
+            put(ledgerId, entryId, entry);
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
@@ -162,7 +197,7 @@ public class ReadCache implements Closeable {
         }
 
         // Entry not found in any segment
-        return null;
+        return protectedRegion != null ? protectedRegion.get(ledgerId, entryId) : null;
     }
 
     public boolean hasEntry(long ledgerId, long entryId) {
@@ -183,7 +218,7 @@ public class ReadCache implements Closeable {
         }
 
         // Entry not found in any segment
-        return false;
+        return protectedRegion != null && protectedRegion.hasEntry(ledgerId, entryId);
     }
 
     /**
@@ -203,6 +238,9 @@ public class ReadCache implements Closeable {
                     // the segment is empty
                 }
             }
+            if (protectedRegion != null) {
+                size += protectedRegion.size();
+            }
 
             return size;
         } finally {
@@ -221,6 +259,9 @@ public class ReadCache implements Closeable {
             for (int i = 0; i < cacheIndexes.size(); i++) {
                 count += cacheIndexes.get(i).size();
             }
+            if (protectedRegion != null) {
+                count += protectedRegion.count();
+            }
 
             return count;
         } finally {
@@ -31,6 +31,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
@@ -56,9 +57,11 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
+import org.apache.bookkeeper.bookie.HotLedgerTracker;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
@@ -107,6 +110,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
+    // Whether the entries of the hot ledgers are put in the protected region of the read cache
+    private final boolean pinHotLedgers;
+    // Shared with the other directories, null when the hot ledgers aren't tracked
+    private volatile HotLedgerTracker hotLedgerTracker;
 
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
@@ -188,7 +195,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        long readCacheProtectedSize = readCacheMaxSize
+                * DbLedgerStorage.getReadAheadCacheHotLedgersPercent(conf) / 100;
+        pinHotLedgers = readCacheProtectedSize > 0;
+        readCache = new ReadCache(allocator, readCacheMaxSize, ReadCache.DEFAULT_MAX_SEGMENT_SIZE,
+                readCacheProtectedSize);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
@@ -500,6 +511,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
+        HotLedgerTracker tracker = hotLedgerTracker;
+        if (tracker != null) {
+            tracker.recordWrite(ledgerId);
+        }
+
         recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
         return entryId;
     }
@@ -577,34 +593,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+            recordRead(ledgerId, false);
             return entry;
         }
 
@@ -614,6 +605,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            recordRead(ledgerId, false);
             return entry;
         }
 
@@ -643,7 +635,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                     MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
         }
 
-        readCache.put(ledgerId, entryId, entry);
+        recordRead(ledgerId, true);
+        putInReadCache(ledgerId, entryId, entry);
 
         // Try to read more entries
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
@@ -652,6 +645,101 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entry;
     }
 
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
+        // write caches are already thread safe on their own, here we just need to make sure we get references to both
+        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        if (!writeCacheRotationLock.validate(stamp)) {
+            // Fallback to regular read lock approach
+            stamp = writeCacheRotationLock.readLock();
+            try {
+                localWriteCache = writeCache;
+                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+
+        // First try to read from the write cache of recent entries
+        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
+        if (entry != null) {
+            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+            return entry;
+        }
+
+        // If there's a flush going on, the entry might be in the flush buffer
+        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        if (entry != null) {
+            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+        }
+        return entry;
+    }
+
+    /**
+     * Probe the write and read caches for an entry. The misses aren't counted, they're counted when
+     * the entry is read from the storage.
+     */
+    @Override
+    public ByteBuf getEntryIfCached(long ledgerId, long entryId) {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return null;
+        }
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
+        if (entry == null) {
+            entry = readCache.get(ledgerId, entryId);
+            if (entry != null) {
+                dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            }
+        }
+        if (entry != null) {
+            recordRead(ledgerId, false);
+        }
+        return entry;
+    }
+
+    void setHotLedgerTracker(HotLedgerTracker hotLedgerTracker) {
+        this.hotLedgerTracker = hotLedgerTracker;
+    }
+
+    private void recordRead(long ledgerId, boolean cacheMiss) {
+        HotLedgerTracker tracker = hotLedgerTracker;
+        if (tracker != null) {
+            tracker.recordRead(ledgerId, cacheMiss);
+        }
+    }
+
+    private boolean isPinned(long ledgerId) {
+        HotLedgerTracker tracker = hotLedgerTracker;
+        return pinHotLedgers && tracker != null && tracker.isHot(ledgerId);
+    }
+
+    private void putInReadCache(long ledgerId, long entryId, ByteBuf entry) {
+        if (isPinned(ledgerId)) {
+            readCache.putProtected(ledgerId, entryId, entry);
+        } else {
+            readCache.put(ledgerId, entryId, entry);
+        }
+    }
+
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED || !(entryLogger instanceof DefaultEntryLogger)
+                || readCache.hasEntry(ledgerId, entryId)) {
+            return null;
+        }
+        // The location is only indexed once the entry is flushed to the entry log, the entries still in the write
+        // caches are read with getEntry. The region bypasses the read-ahead cache.
+        long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+        if (entryLocation == 0) {
+            return null;
+        }
+        return ((DefaultEntryLogger) entryLogger).readEntryRegion(ledgerId, entryId, entryLocation, minEntrySize);
+    }
+
     private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
@@ -676,7 +764,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                     }
 
                     // Insert entry in read cache
-                    readCache.put(orginalLedgerId, currentEntryId, entry);
+                    putInReadCache(orginalLedgerId, currentEntryId, entry);
 
                     count++;
                     firstEntryId++;
@@ -821,6 +909,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
                 long location = entryLogger.addEntry(ledgerId, entry);
                 entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                if (isPinned(ledgerId)) {
+                    // keep the tail of the hot ledgers readable once the write cache is cleared
+                    readCache.putProtected(ledgerId, entryId, entry);
+                }
             });
 
             long entryLoggerStart = MathUtils.nowInNano();
@@ -31,6 +31,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
@@ -100,6 +101,7 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
     public void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx) {
         final ReadContext rctx = (ReadContext) ctx;
         final BatchedLedgerEntryRequest entry = (BatchedLedgerEntryRequest) rctx.entry;
+        recordReadLatency(rctx, rc);
 
         if (rc != BKException.Code.OK) {
             entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Error: " + BKException.getMessage(rc), rc);
@@ -126,16 +128,58 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         if (lh.throttler != null) {
             lh.throttler.acquire();
         }
+        entry.lastSentTo = to;
         if (isRecoveryRead) {
             int flags = BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_DO_FENCING;
             clientCtx.getBookieClient().batchReadEntries(to, lh.ledgerId, entry.eId,
                     maxCount, maxSize, this, new ReadContext(bookieIndex, to, entry), flags, lh.ledgerKey);
+        } else if (!clientCtx.getConf().useV2WireProtocol) {
+            // the v3 protocol has no batch reads, the entries are streamed by a range read instead
+            clientCtx.getBookieClient().readEntryRange(to, lh.ledgerId, entry.eId, maxCount, maxSize,
+                    new RangeReadCollector(this, entry.eId), new ReadContext(bookieIndex, to, entry));
         } else {
             clientCtx.getBookieClient().batchReadEntries(to, lh.ledgerId, entry.eId, maxCount, maxSize,
                     this, new ReadContext(bookieIndex, to, entry), BookieProtocol.FLAG_NONE);
         }
     }
 
+    /**
+     * Collects the entries streamed by a range read, and completes them as the response of a batch read.
+     */
+    static class RangeReadCollector implements RangeReadEntryCallback {
+        private final BatchedReadEntryCallback cb;
+        private final long startEntryId;
+        private final ByteBufList entries = ByteBufList.get();
+
+        RangeReadCollector(BatchedReadEntryCallback cb, long startEntryId) {
+            this.cb = cb;
+            this.startEntryId = startEntryId;
+        }
+
+        @Override
+        public synchronized void readEntryReceived(long ledgerId, long entryId, ByteBuf buffer, Object ctx) {
+            if (entryId != startEntryId + entries.size()) {
+                // the entries of a range are streamed in order, the ones after a gap can't be part of the batch
+                buffer.release();
+                return;
+            }
+            entries.add(buffer);
+        }
+
+        @Override
+        public synchronized void readRangeComplete(int rc, long ledgerId, long nextEntryId, Object ctx) {
+            if (rc == BKException.Code.OK && entries.size() == 0) {
+                // the bookie has none of the entries, as for a batch read its replicas are tried next
+                rc = BKException.Code.NoSuchEntryException;
+            }
+            try {
+                cb.readEntriesComplete(rc, ledgerId, startEntryId, entries, ctx);
+            } finally {
+                entries.release();
+            }
+        }
+    }
+
     abstract class BatchedLedgerEntryRequest extends LedgerEntryRequest {
 
         //Indicate which ledger the BatchedLedgerEntryRequest is reading.
@@ -57,11 +57,13 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncOpenCallback;
 import org.apache.bookkeeper.client.api.BookKeeperBuilder;
 import org.apache.bookkeeper.client.api.CreateBuilder;
 import org.apache.bookkeeper.client.api.DeleteBuilder;
+import org.apache.bookkeeper.client.api.DeleteLedgersBuilder;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.LedgersIterator;
 import org.apache.bookkeeper.client.api.ListLedgersResult;
 import org.apache.bookkeeper.client.api.ListLedgersResultBuilder;
 import org.apache.bookkeeper.client.api.OpenBuilder;
+import org.apache.bookkeeper.client.api.OpenLedgersBuilder;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -118,6 +120,10 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     private final StatsLogger statsLogger;
     private final BookKeeperClientStats clientStats;
     private final double bookieQuarantineRatio;
+    // the read latencies of the bookies, to order the reads of all the ledgers
+    private final BookieReadLatencyTracker readLatencyTracker = new BookieReadLatencyTracker();
+    // the cache of the entries read by the client, null if disabled
+    private final ClientEntryCache entryCache;
 
     // whether the event loop group is one we created, or is owned by whoever
     // instantiated us
@@ -437,6 +443,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         // initialize stats logger
         this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
         this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
+        this.entryCache = conf.getClientEntryCacheMaxSizeBytes() > 0
+                ? new ClientEntryCache(conf.getClientEntryCacheMaxSizeBytes()) : null;
 
         // initialize metadata driver
         try {
@@ -549,6 +557,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         internalConf = ClientInternalConf.fromConfig(conf);
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
+        entryCache = null;
         scheduler = null;
         requestTimer = null;
         metadataDriver = null;
@@ -1479,6 +1488,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             eventLoopGroup.shutdownGracefully();
         }
         this.metadataDriver.close();
+        if (entryCache != null) {
+            entryCache.clear();
+        }
     }
 
     @Override
@@ -1496,6 +1508,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return new LedgerDeleteOp.DeleteBuilderImpl(this);
     }
 
+    @Override
+    public OpenLedgersBuilder newOpenLedgersOp() {
+        return new LedgerOpenOp.OpenLedgersBuilderImpl(this);
+    }
+
+    @Override
+    public DeleteLedgersBuilder newDeleteLedgersOp() {
+        return new LedgerDeleteOp.DeleteLedgersBuilderImpl(this);
+    }
+
     private static final class SyncLedgerIterator implements LedgersIterator {
 
         private final LedgerRangeIterator iterator;
@@ -1649,6 +1671,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public BookieReadLatencyTracker getReadLatencyTracker() {
+                return readLatencyTracker;
+            }
+
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return entryCache;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
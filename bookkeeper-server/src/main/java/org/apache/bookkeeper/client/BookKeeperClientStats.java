@@ -61,6 +61,9 @@ public interface BookKeeperClientStats {
     String ENSEMBLE_CHANGES = "NUM_ENSEMBLE_CHANGE";
     String LAC_UPDATE_HITS = "LAC_UPDATE_HITS";
     String LAC_UPDATE_MISSES = "LAC_UPDATE_MISSES";
+    String COMPRESSION_SAVED_BYTES = "COMPRESSION_SAVED_BYTES";
+    String ENTRY_CACHE_HITS = "ENTRY_CACHE_HITS";
+    String ENTRY_CACHE_MISSES = "ENTRY_CACHE_MISSES";
     String GET_BOOKIE_INFO_OP = "GET_BOOKIE_INFO";
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
@@ -125,6 +128,9 @@ public interface BookKeeperClientStats {
     Counter getEnsembleChangeCounter();
     Counter getLacUpdateHitsCounter();
     Counter getLacUpdateMissesCounter();
+    Counter getCompressionSavedBytesCounter();
+    Counter getEntryCacheHitsCounter();
+    Counter getEntryCacheMissesCounter();
     OpStatsLogger getClientChannelWriteWaitLogger();
     OpStatsLogger getWriteDelayedDueToNotEnoughFaultDomainsLatency();
     Counter getWriteDelayedDueToNotEnoughFaultDomains();
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+
+/**
+ * Tracks the read latency of the bookies of a client, as an exponentially weighted moving average of
+ * the latency of the reads they served, and ranks them for reads (C3 style): the score of a bookie is
+ * its latency scaled by its pending requests, i.e. roughly the time a new read would wait for it.
+ *
+ * <p>The latency of a bookie which wasn't read from recently is halved every decay period, so a bookie
+ * which was slow gets read from again once the others are loaded. The tracking is lossy: concurrent
+ * samples of a bookie may overwrite each other.
+ */
+public class BookieReadLatencyTracker {
+
+    // the weight of a new sample in the moving average
+    private static final double ALPHA = 0.25;
+    private static final long DECAY_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final class ReadLatency {
+        volatile long ewmaNanos;
+        volatile long lastSampleNanos;
+    }
+
+    private final ConcurrentHashMap<BookieId, ReadLatency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Record the latency of a read served by a bookie, or of a read which timed out.
+     */
+    public void recordReadLatency(BookieId bookie, long latencyNanos) {
+        ReadLatency latency = latencies.computeIfAbsent(bookie, b -> new ReadLatency());
+        long now = MathUtils.nowInNano();
+        long previous = decayedLatency(latency, now);
+        latency.ewmaNanos = previous == 0 ? latencyNanos : (long) (previous + ALPHA * (latencyNanos - previous));
+        latency.lastSampleNanos = now;
+    }
+
+    /**
+     * Get the read latency of a bookie, 0 if it wasn't read from.
+     */
+    public long getReadLatencyNanos(BookieId bookie) {
+        ReadLatency latency = latencies.get(bookie);
+        return latency == null ? 0L : decayedLatency(latency, MathUtils.nowInNano());
+    }
+
+    /**
+     * Get the read score of a bookie, the lower the better.
+     *
+     * @param pendingRequests the pending requests to the bookie, as returned by
+     *                        {@link BookieClient#getNumPendingRequests(BookieId, long)}
+     */
+    public long getReadScore(BookieId bookie, long pendingRequests) {
+        if ((pendingRequests & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+            return Long.MAX_VALUE;
+        }
+        long latencyNanos = getReadLatencyNanos(bookie);
+        if (pendingRequests > 0 && latencyNanos > Long.MAX_VALUE / (pendingRequests + 1)) {
+            return Long.MAX_VALUE;
+        }
+        return latencyNanos * (pendingRequests + 1);
+    }
+
+    private static long decayedLatency(ReadLatency latency, long now) {
+        long periods = (now - latency.lastSampleNanos) / DECAY_PERIOD_NANOS;
+        return periods >= 63 ? 0L : latency.ewmaNanos >> periods;
+    }
+
+    /**
+     * Reorder a range of a write set by the read scores of its bookies, keeping the order of the
+     * bookies with the same score.
+     *
+     * @param from the first position of the range
+     * @param to the position after the last position of the range
+     * @return whether the range was reordered
+     */
+    static boolean reorderByReadScore(List<BookieId> ensemble,
+                                   BookiesHealthInfo bookiesHealthInfo,
+                                   DistributionSchedule.WriteSet writeSet,
+                                   int from, int to) {
+        if (to - from < 2) {
+            return false;
+        }
+        long[] scores = new long[to - from];
+        for (int i = from; i < to; i++) {
+            scores[i - from] = bookiesHealthInfo.getBookieReadScore(ensemble.get(writeSet.get(i)));
+            if (scores[i - from] < 0) {
+                // the read latencies aren't tracked
+                return false;
+            }
+        }
+        boolean reordered = false;
+        // insertion sort, the write sets are small
+        for (int i = from + 1; i < to; i++) {
+            long score = scores[i - from];
+            int j = i;
+            while (j > from && scores[j - 1 - from] > score) {
+                scores[j - from] = scores[j - 1 - from];
+                j--;
+            }
+            if (j != i) {
+                scores[j - from] = score;
+                writeSet.moveAndShift(i, j);
+                reordered = true;
+            }
+        }
+        return reordered;
+    }
+}
@@ -44,4 +44,15 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the read score of a bookie, i.e. its recent read latency scaled by its pending
+     * requests. The lower the better.
+     *
+     * @param bookieSocketAddress
+     * @return read score of the bookie, -1 if the read latencies of the bookies aren't tracked
+     */
+    default long getBookieReadScore(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
 }
@@ -42,5 +42,10 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    BookieReadLatencyTracker getReadLatencyTracker();
+    /**
+     * The cache of the entries read by the client, null if it is disabled.
+     */
+    ClientEntryCache getEntryCache();
     boolean isClientClosed();
 }
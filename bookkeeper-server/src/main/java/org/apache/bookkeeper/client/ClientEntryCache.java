@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * A size bounded cache of the entries read by a client, keyed by ledger id and entry id, so the
+ * entries read again, e.g. by several readers of a ledger, are served without reading them from the
+ * bookies.
+ *
+ * <p>Only the confirmed entries of a ledger are cached, they can't change. The cache shares the
+ * buffers of the entries with the readers: the cached entries are retained slices of the buffers read
+ * from the bookies, and the entries served from the cache are retained slices of the cached ones.
+ * A slice pins the whole buffer it was taken from, so an entry much smaller than that buffer, e.g.
+ * one of the entries of a batch read, is copied instead. The size of the cache is accounted by the
+ * memory the cached entries pin, the entries are evicted in the order they were cached.
+ */
+public class ClientEntryCache {
+
+    // an entry is copied when the buffer it is a slice of is more than this many times its size
+    private static final int MAX_PINNED_BYTES_RATIO = 2;
+
+    private static final class CachedEntry {
+        final long ledgerId;
+        final long entryId;
+        final long length;
+        final long sizeBytes;
+        final ByteBuf entryBuf;
+        // guarded by this
+        boolean released = false;
+        // guarded by this, whether the entry is still in the insertion order of the cache
+        boolean queued = true;
+
+        CachedEntry(long ledgerId, long entryId, long length, long sizeBytes, ByteBuf entryBuf) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.length = length;
+            this.sizeBytes = sizeBytes;
+            this.entryBuf = entryBuf;
+        }
+
+        synchronized ByteBuf retainedSlice() {
+            return released ? null : entryBuf.retainedSlice();
+        }
+    }
+
+    private final long maxSizeBytes;
+    private final AtomicLong sizeBytes = new AtomicLong(0);
+    private final ConcurrentLongHashMap<ConcurrentLongHashMap<CachedEntry>> ledgers =
+            ConcurrentLongHashMap.<ConcurrentLongHashMap<CachedEntry>>newBuilder().build();
+    // the cached entries, in the order they were cached. The entries released before they are evicted,
+    // e.g. by the invalidation of their ledger, stay in the queue until it is compacted
+    private final ConcurrentLinkedQueue<CachedEntry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger liveEntries = new AtomicInteger(0);
+    private final AtomicInteger deadEntries = new AtomicInteger(0);
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    public ClientEntryCache(long maxSizeBytes) {
+        if (maxSizeBytes <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for maxSizeBytes : " + maxSizeBytes);
+        }
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Cache an entry read from the bookies. The entry must be confirmed.
+     */
+    public void put(LedgerEntry entry) {
+        ByteBuf buf = entry.getEntryBuffer();
+        int entrySize = buf.readableBytes();
+        int pinnedSize = pinnedCapacity(buf);
+        boolean copy = pinnedSize > (long) MAX_PINNED_BYTES_RATIO * entrySize;
+        long cachedSize = copy ? entrySize : pinnedSize;
+        if (cachedSize > maxSizeBytes) {
+            return;
+        }
+        ConcurrentLongHashMap<CachedEntry> entries = ledgers.get(entry.getLedgerId());
+        if (entries == null) {
+            entries = ledgers.computeIfAbsent(entry.getLedgerId(), ledgerId ->
+                    ConcurrentLongHashMap.<CachedEntry>newBuilder().expectedItems(16).concurrencyLevel(1).build());
+        }
+        if (entries.containsKey(entry.getEntryId())) {
+            return;
+        }
+        CachedEntry cached = new CachedEntry(entry.getLedgerId(), entry.getEntryId(), entry.getLength(),
+                cachedSize, copy ? buf.copy() : buf.retainedSlice());
+        if (entries.putIfAbsent(entry.getEntryId(), cached) != null) {
+            cached.entryBuf.release();
+            return;
+        }
+        liveEntries.incrementAndGet();
+        insertionOrder.add(cached);
+        if (sizeBytes.addAndGet(cachedSize) > maxSizeBytes) {
+            evict();
+        }
+    }
+    /**
+     * Get a range of entries of a ledger.
+     *
+     * @return the entries, or null if any of them isn't cached
+     */
+    public LedgerEntries getEntries(long ledgerId, long firstEntry, long lastEntry) {
+        ConcurrentLongHashMap<CachedEntry> entries = ledgers.get(ledgerId);
+        if (entries == null || lastEntry - firstEntry + 1 > entries.size()) {
+            return null;
+        }
+        List<LedgerEntry> result = new ArrayList<>((int) (lastEntry - firstEntry + 1));
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            CachedEntry cached = entries.get(entryId);
+            ByteBuf buf = cached == null ? null : cached.retainedSlice();
+            if (buf == null) {
+                result.forEach(LedgerEntry::close);
+                return null;
+            }
+            result.add(LedgerEntryImpl.create(ledgerId, entryId, cached.length, buf));
+        }
+        return LedgerEntriesImpl.create(result);
+    }
+
+    /**
+     * Drop the entries of a ledger, e.g. once the ledger is deleted.
+     */
+    public void invalidateLedger(long ledgerId) {
+        ConcurrentLongHashMap<CachedEntry> entries = ledgers.remove(ledgerId);
+        if (entries != null) {
+            entries.forEach((entryId, cached) -> release(cached));
+            maybeCompact();
+        }
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    public void clear() {
+        for (long ledgerId : ledgers.keys()) {
+            invalidateLedger(ledgerId);
+        }
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes.get();
+    }
+
+    int getNumQueuedEntries() {
+        return insertionOrder.size();
+    }
+
+    private void evict() {
+        CachedEntry cached;
+        while (sizeBytes.get() > maxSizeBytes && (cached = insertionOrder.poll()) != null) {
+            if (!dequeue(cached, false)) {
+                // removed by a compaction
+                continue;
+            }
+            ConcurrentLongHashMap<CachedEntry> entries = ledgers.get(cached.ledgerId);
+            if (entries != null) {
+                entries.remove(cached.entryId, cached);
+                if (entries.isEmpty()) {
+                    ledgers.remove(cached.ledgerId, entries);
+                }
+            }
+            release(cached);
+        }
+    }
+
+    /**
+     * Remove the released entries from the insertion order once they outnumber the cached ones, so the
+     * queue stays proportional to the size of the cache.
+     */
+    private void maybeCompact() {
+        if (deadEntries.get() <= liveEntries.get() || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<CachedEntry> iterator = insertionOrder.iterator();
+            while (iterator.hasNext()) {
+                CachedEntry cached = iterator.next();
+                if (dequeue(cached, true)) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Mark an entry as removed from the insertion order.
+     *
+     * @return false if it was already removed, or if it isn't released while only released entries are removed
+     */
+    private boolean dequeue(CachedEntry cached, boolean onlyIfReleased) {
+        synchronized (cached) {
+            if (!cached.queued || (onlyIfReleased && !cached.released)) {
+                return false;
+            }
+            cached.queued = false;
+            if (cached.released) {
+                deadEntries.decrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    private void release(CachedEntry cached) {
+        synchronized (cached) {
+            if (cached.released) {
+                return;
+            }
+            cached.released = true;
+            cached.entryBuf.release();
+            if (cached.queued) {
+                deadEntries.incrementAndGet();
+            }
+        }
+        liveEntries.decrementAndGet();
+        sizeBytes.addAndGet(-cached.sizeBytes);
+    }
+
+    /**
+     * The capacity of the buffer a buffer is a view of, i.e. the memory a slice of it pins.
+     */
+    private static int pinnedCapacity(ByteBuf buf) {
+        ByteBuf root = buf;
+        while (root.unwrap() != null) {
+            root = root.unwrap();
+        }
+        return root.capacity();
+    }
+}
@@ -39,6 +39,7 @@ class ClientInternalConf {
     final long addEntryQuorumTimeoutNanos;
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
+    final boolean enableReorderReadSequenceByLatency;
     final boolean enableStickyReads;
     final int recoveryReadBatchSize;
     final int throttleValue;
@@ -68,6 +69,7 @@ class ClientInternalConf {
                                FeatureProvider featureProvider) {
         this.explicitLacInterval = conf.getExplictLacInterval();
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
+        this.enableReorderReadSequenceByLatency = conf.isReorderReadSequenceByLatencyEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
         this.recoveryReadBatchSize = conf.getRecoveryReadBatchSize();
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
@@ -85,7 +87,14 @@ class ClientInternalConf {
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.getSpeculativeReadLatencyPercentile() > 0) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new PercentileSpeculativeRequestExecutionPolicy(
+                                        conf.getSpeculativeReadLatencyPercentile(),
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadBudgetRatio()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
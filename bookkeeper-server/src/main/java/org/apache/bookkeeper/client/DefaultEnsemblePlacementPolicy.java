@@ -173,6 +173,7 @@ public class DefaultEnsemblePlacementPolicy implements EnsemblePlacementPolicy {
             List<BookieId> ensemble,
             BookiesHealthInfo bookiesHealthInfo,
             DistributionSchedule.WriteSet writeSet) {
+        BookieReadLatencyTracker.reorderByReadScore(ensemble, bookiesHealthInfo, writeSet, 0, writeSet.size());
         return writeSet;
     }
 
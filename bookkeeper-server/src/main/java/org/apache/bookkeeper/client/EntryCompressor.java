@@ -0,0 +1,278 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.compression.Snappy;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.bookkeeper.client.api.CompressionType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.stats.Counter;
+
+/**
+ * Compresses the payload of the entries of a ledger which declares a {@link CompressionType} in its
+ * custom metadata.
+ *
+ * <p>A compressed payload starts with a header: a flag telling whether the data which follows is
+ * compressed or stored as it is, because compressing didn't shrink it, and the size of the
+ * uncompressed data.
+ */
+abstract class EntryCompressor {
+
+    private static final byte STORED = 0;
+    private static final byte COMPRESSED = 1;
+    private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    protected final ByteBufAllocator allocator;
+    private final Counter savedBytesCounter;
+
+    EntryCompressor(ByteBufAllocator allocator, Counter savedBytesCounter) {
+        this.allocator = allocator;
+        this.savedBytesCounter = savedBytesCounter;
+    }
+
+    /**
+     * Get the compressor of a ledger.
+     *
+     * @return the compressor, or null if the entries of the ledger aren't compressed
+     * @throws IllegalArgumentException if the compression type of the ledger is unknown, its entries
+     *         can't be read or written by this client
+     */
+    static EntryCompressor of(LedgerMetadata metadata, ByteBufAllocator allocator, Counter savedBytesCounter) {
+        byte[] value = metadata.getCustomMetadata().get(CompressionType.CUSTOM_METADATA_KEY);
+        if (value == null) {
+            return null;
+        }
+        CompressionType type = parseType(value);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown compression type " + new String(value, UTF_8)
+                    + " of ledger " + metadata.getLedgerId());
+        }
+        switch (type) {
+        case NONE:
+            return null;
+        case SNAPPY:
+            return new SnappyCompressor(allocator, savedBytesCounter);
+        case DEFLATE:
+            return new DeflateCompressor(allocator, savedBytesCounter);
+        default:
+            throw new IllegalArgumentException("Unsupported compression type " + type + " of ledger "
+                    + metadata.getLedgerId());
+        }
+    }
+
+    /**
+     * Parse the compression type of the custom metadata of a ledger.
+     *
+     * @return the compression type, or null if the value isn't a known compression type
+     */
+    static CompressionType parseType(byte[] value) {
+        try {
+            return CompressionType.valueOf(new String(value, UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compress the payload of an entry. The payload is released, even if compressing it fails.
+     */
+    ByteBuf compress(ByteBuf payload) {
+        int length = payload.readableBytes();
+        ByteBuf compressed = null;
+        try {
+            compressed = newBuffer(HEADER_SIZE + length);
+            compressed.writeByte(COMPRESSED);
+            compressed.writeInt(length);
+            compress(payload.duplicate(), compressed, length);
+        } catch (Throwable t) {
+            if (compressed != null) {
+                compressed.release();
+            }
+            payload.release();
+            throw t;
+        }
+
+        int savedBytes = length - compressed.readableBytes();
+        if (savedBytes <= 0) {
+            // not worth it, store the payload as it is, without copying it
+            compressed.release();
+            ByteBuf header;
+            try {
+                header = allocator.buffer(HEADER_SIZE, HEADER_SIZE);
+            } catch (Throwable t) {
+                payload.release();
+                throw t;
+            }
+            header.writeByte(STORED);
+            header.writeInt(length);
+            CompositeByteBuf stored = allocator.compositeBuffer(2);
+            stored.addComponents(true, header, payload);
+            return stored;
+        }
+        payload.release();
+        savedBytesCounter.addCount(savedBytes);
+        return compressed;
+    }
+
+    /**
+     * Decompress the payload of an entry. The entry isn't released.
+     *
+     * @throws IOException if the payload isn't a valid compressed payload
+     */
+    ByteBuf decompress(ByteBuf entry) throws IOException {
+        if (entry.readableBytes() < HEADER_SIZE) {
+            throw new IOException("Entry of " + entry.readableBytes() + " bytes is too short to be compressed");
+        }
+        int index = entry.readerIndex();
+        byte flag = entry.getByte(index);
+        int length = entry.getInt(index + Byte.BYTES);
+        ByteBuf data = entry.slice(index + HEADER_SIZE, entry.readableBytes() - HEADER_SIZE);
+        if (flag == STORED) {
+            if (data.readableBytes() != length) {
+                throw new IOException("Stored entry of " + data.readableBytes() + " bytes, expected " + length);
+            }
+            return data.retain();
+        } else if (flag != COMPRESSED || length < 0) {
+            throw new IOException("Invalid compression header, flag " + flag + ", length " + length);
+        }
+
+        ByteBuf decompressed = newBuffer(length);
+        try {
+            decompress(data, decompressed, length);
+            if (decompressed.readableBytes() != length) {
+                throw new IOException("Decompressed entry of " + decompressed.readableBytes()
+                        + " bytes, expected " + length);
+            }
+            return decompressed;
+        } catch (IOException e) {
+            decompressed.release();
+            throw e;
+        } catch (RuntimeException e) {
+            decompressed.release();
+            throw new IOException("Corrupted compressed entry", e);
+        }
+    }
+
+    protected abstract ByteBuf newBuffer(int initialCapacity);
+
+    protected abstract void compress(ByteBuf in, ByteBuf out, int length);
+
+    protected abstract void decompress(ByteBuf in, ByteBuf out, int length) throws IOException;
+
+    /**
+     * Snappy compression, with the pure java codec of netty.
+     */
+    static class SnappyCompressor extends EntryCompressor {
+
+        SnappyCompressor(ByteBufAllocator allocator, Counter savedBytesCounter) {
+            super(allocator, savedBytesCounter);
+        }
+
+        @Override
+        protected ByteBuf newBuffer(int initialCapacity) {
+            return allocator.buffer(initialCapacity);
+        }
+
+        @Override
+        protected void compress(ByteBuf in, ByteBuf out, int length) {
+            // the codec is stateful, it can't be shared by threads
+            new Snappy().encode(in, out, length);
+        }
+
+        @Override
+        protected void decompress(ByteBuf in, ByteBuf out, int length) {
+            new Snappy().decode(in, out);
+        }
+    }
+
+    /**
+     * Deflate compression, with the codec of the jdk. The codec works on arrays, so the buffers are
+     * heap buffers.
+     */
+    static class DeflateCompressor extends EntryCompressor {
+
+        private static final ThreadLocal<Deflater> DEFLATER =
+                ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+        private static final ThreadLocal<Inflater> INFLATER =
+                ThreadLocal.withInitial(() -> new Inflater(true));
+
+        private static final int MIN_WRITABLE_BYTES = 512;
+
+        DeflateCompressor(ByteBufAllocator allocator, Counter savedBytesCounter) {
+            super(allocator, savedBytesCounter);
+        }
+
+        @Override
+        protected ByteBuf newBuffer(int initialCapacity) {
+            return allocator.heapBuffer(initialCapacity);
+        }
+
+        @Override
+        protected void compress(ByteBuf in, ByteBuf out, int length) {
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            if (in.hasArray()) {
+                deflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), length);
+            } else {
+                deflater.setInput(ByteBufUtil.getBytes(in, in.readerIndex(), length, false));
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.ensureWritable(MIN_WRITABLE_BYTES);
+                int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+                out.writerIndex(out.writerIndex() + written);
+            }
+        }
+
+        @Override
+        protected void decompress(ByteBuf in, ByteBuf out, int length) throws IOException {
+            Inflater inflater = INFLATER.get();
+            inflater.reset();
+            if (in.hasArray()) {
+                inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+            } else {
+                inflater.setInput(ByteBufUtil.getBytes(in));
+            }
+            try {
+                while (!inflater.finished() && out.readableBytes() < length) {
+                    int read = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                            Math.min(out.writableBytes(), length - out.readableBytes()));
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated compressed entry");
+                    }
+                    out.writerIndex(out.writerIndex() + read);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted compressed entry", e);
+            }
+        }
+    }
+}
@@ -21,8 +21,11 @@
 
 package org.apache.bookkeeper.client;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
@@ -35,13 +38,18 @@ import org.apache.bookkeeper.client.BKException.BKNotEnoughBookiesException;
 import org.apache.bookkeeper.client.BookKeeper.DigestType;
 import org.apache.bookkeeper.client.SyncCallbackUtils.SyncCreateAdvCallback;
 import org.apache.bookkeeper.client.SyncCallbackUtils.SyncCreateCallback;
+import org.apache.bookkeeper.client.api.BulkResult;
+import org.apache.bookkeeper.client.api.CompressionType;
 import org.apache.bookkeeper.client.api.CreateAdvBuilder;
 import org.apache.bookkeeper.client.api.CreateBuilder;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteAdvHandle;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.client.impl.BulkResultImpl;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerIdGenerator;
+import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -77,6 +85,9 @@ class LedgerCreateOp {
     final BookKeeperClientStats clientStats;
     boolean adv = false;
     boolean generateLedgerId = true;
+    // the batch of the metadata creations of the ledgers created together, if any
+    MetadataCreateBatch metadataBatch = null;
+    boolean metadataSubmitted = false;
 
     /**
      * Constructor.
@@ -203,12 +214,21 @@ class LedgerCreateOp {
                 LedgerCreateOp.this.ledgerId = ledgerId;
                 LedgerCreateOp.this.metadata = metadataBuilder.withId(ledgerId).build();
                 // create a ledger with metadata
-                bk.getLedgerManager().createLedgerMetadata(ledgerId, metadata)
+                createLedgerMetadata()
                     .whenComplete((written, exception) -> metadataCallback(written, exception, metadataBuilder));
             }
         });
     }
 
+    private CompletableFuture<Versioned<LedgerMetadata>> createLedgerMetadata() {
+        if (metadataBatch != null && !metadataSubmitted) {
+            metadataSubmitted = true;
+            return metadataBatch.create(ledgerId, metadata);
+        }
+        // the retries with a new ledger id aren't batched
+        return bk.getLedgerManager().createLedgerMetadata(ledgerId, metadata);
+    }
+
     /**
      * Initiates the operation to return LedgerHandleAdv.
      */
@@ -250,6 +270,10 @@ class LedgerCreateOp {
                 LOG.error("Incorrectly entered parameter throttle: " + bk.getConf().getThrottleValue(), e);
                 createComplete(BKException.Code.IncorrectParameterException, null);
                 return;
+            } catch (IllegalArgumentException e) {
+                LOG.error("Invalid metadata of ledger: " + ledgerId, e);
+                createComplete(BKException.Code.IncorrectParameterException, null);
+                return;
             }
 
             List<BookieId> curEns = lh.getLedgerMetadata().getEnsembleAt(0L);
@@ -265,6 +289,11 @@ class LedgerCreateOp {
     }
 
     private void createComplete(int rc, LedgerHandle lh) {
+        if (metadataBatch != null && !metadataSubmitted) {
+            // failed before creating its metadata, e.g. without enough bookies
+            metadataSubmitted = true;
+            metadataBatch.abandon();
+        }
         // Opened a new ledger
         if (BKException.Code.OK != rc) {
             createOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
@@ -278,6 +307,69 @@ class LedgerCreateOp {
         }
     }
 
+    /**
+     * The metadata creations of ledgers created together, which are written with batched calls to the
+     * ledger manager. The creations are written once all the ledgers which didn't create their metadata
+     * yet gave up, or once {@link #MAX_BATCH_SIZE} creations are waiting.
+     */
+    static class MetadataCreateBatch {
+
+        static final int MAX_BATCH_SIZE = 128;
+
+        private final LedgerManager ledgerManager;
+        // the ledgers which didn't create their metadata yet
+        private int pendingLedgers;
+        private List<Long> ledgerIds = new ArrayList<>();
+        private List<LedgerMetadata> metadatas = new ArrayList<>();
+        private List<CompletableFuture<Versioned<LedgerMetadata>>> promises = new ArrayList<>();
+
+        MetadataCreateBatch(LedgerManager ledgerManager, int numLedgers) {
+            this.ledgerManager = ledgerManager;
+            this.pendingLedgers = numLedgers;
+        }
+
+        CompletableFuture<Versioned<LedgerMetadata>> create(long ledgerId, LedgerMetadata metadata) {
+            CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+            synchronized (this) {
+                ledgerIds.add(ledgerId);
+                metadatas.add(metadata);
+                promises.add(promise);
+                pendingLedgers--;
+            }
+            flushIfReady();
+            return promise;
+        }
+
+        void abandon() {
+            synchronized (this) {
+                pendingLedgers--;
+            }
+            flushIfReady();
+        }
+
+        private void flushIfReady() {
+            List<Long> batchLedgerIds;
+            List<LedgerMetadata> batchMetadatas;
+            List<CompletableFuture<Versioned<LedgerMetadata>>> batchPromises;
+            synchronized (this) {
+                if (ledgerIds.isEmpty() || (pendingLedgers > 0 && ledgerIds.size() < MAX_BATCH_SIZE)) {
+                    return;
+                }
+                batchLedgerIds = ledgerIds;
+                batchMetadatas = metadatas;
+                batchPromises = promises;
+                ledgerIds = new ArrayList<>();
+                metadatas = new ArrayList<>();
+                promises = new ArrayList<>();
+            }
+            List<CompletableFuture<Versioned<LedgerMetadata>>> results =
+                ledgerManager.createLedgersMetadata(batchLedgerIds, batchMetadatas);
+            for (int i = 0; i < results.size(); i++) {
+                FutureUtils.proxyTo(results.get(i), batchPromises.get(i));
+            }
+        }
+    }
+
     public static class CreateBuilderImpl implements CreateBuilder {
 
         private final BookKeeper bk;
@@ -379,6 +471,12 @@ class LedgerCreateOp {
                 return false;
             }
 
+            byte[] compressionType = builderCustomMetadata.get(CompressionType.CUSTOM_METADATA_KEY);
+            if (compressionType != null && EntryCompressor.parseType(compressionType) == null) {
+                LOG.error("invalid compression type {}", new String(compressionType, UTF_8));
+                return false;
+            }
+
             return true;
         }
 
@@ -390,6 +488,35 @@ class LedgerCreateOp {
             return future;
         }
 
+        @Override
+        public CompletableFuture<BulkResult<WriteHandle>> executeBulk(int numLedgers) {
+            if (numLedgers < 0 || !validate()) {
+                return FutureUtils.exception(BKException.create(BKException.Code.IncorrectParameterException));
+            }
+            MetadataCreateBatch metadataBatch = new MetadataCreateBatch(bk.getLedgerManager(), numLedgers);
+            List<CompletableFuture<WriteHandle>> creates = new ArrayList<>(numLedgers);
+            ReentrantReadWriteLock closeLock = bk.getCloseLock();
+            closeLock.readLock().lock();
+            try {
+                if (bk.isClosed()) {
+                    return FutureUtils.exception(BKException.create(BKException.Code.ClientClosedException));
+                }
+                for (int i = 0; i < numLedgers; i++) {
+                    CompletableFuture<WriteHandle> future = new CompletableFuture<>();
+                    LedgerCreateOp op = new LedgerCreateOp(bk, builderEnsembleSize,
+                        builderWriteQuorumSize, builderAckQuorumSize, DigestType.fromApiDigestType(builderDigestType),
+                        builderPassword, new SyncCreateCallback(future), null, builderCustomMetadata,
+                        builderWriteFlags, bk.getClientCtx().getClientStats());
+                    op.metadataBatch = metadataBatch;
+                    op.initiate();
+                    creates.add(future);
+                }
+            } finally {
+                closeLock.readLock().unlock();
+            }
+            return BulkResultImpl.collect(creates);
+        }
+
         private void create(CreateCallback cb) {
             if (!validate()) {
                 cb.createComplete(BKException.Code.IncorrectParameterException, null, null);
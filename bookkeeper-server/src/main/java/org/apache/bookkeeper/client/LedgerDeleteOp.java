@@ -21,12 +21,19 @@
 
 package org.apache.bookkeeper.client;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.bookkeeper.client.AsyncCallback.DeleteCallback;
 import org.apache.bookkeeper.client.SyncCallbackUtils.SyncDeleteCallback;
+import org.apache.bookkeeper.client.api.BulkResult;
 import org.apache.bookkeeper.client.api.DeleteBuilder;
+import org.apache.bookkeeper.client.api.DeleteLedgersBuilder;
+import org.apache.bookkeeper.client.impl.BulkResultImpl;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.versioning.Version;
@@ -82,6 +89,10 @@ class LedgerDeleteOp {
                         deleteOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                     } else {
                         deleteOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        ClientEntryCache entryCache = bk.getClientCtx().getEntryCache();
+                        if (entryCache != null) {
+                            entryCache.invalidateLedger(ledgerId);
+                        }
                     }
                     cb.deleteComplete(BKException.getExceptionCode(exception), this.ctx);
                 }, bk.getMainWorkerPool().chooseThread(ledgerId));
@@ -143,4 +154,75 @@ class LedgerDeleteOp {
         }
     }
 
+    static class DeleteLedgersBuilderImpl implements DeleteLedgersBuilder {
+
+        private List<Long> builderLedgerIds = Collections.emptyList();
+        private final BookKeeper bk;
+
+        DeleteLedgersBuilderImpl(BookKeeper bk) {
+            this.bk = bk;
+        }
+
+        @Override
+        public DeleteLedgersBuilder withLedgerIds(List<Long> ledgerIds) {
+            this.builderLedgerIds = ledgerIds;
+            return this;
+        }
+
+        private boolean validate() {
+            if (builderLedgerIds == null) {
+                LOG.error("invalid ledgerIds null");
+                return false;
+            }
+            for (Long ledgerId : builderLedgerIds) {
+                if (ledgerId == null || ledgerId < 0) {
+                    LOG.error("invalid ledgerId {} < 0", ledgerId);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<BulkResult<Void>> execute() {
+            if (!validate()) {
+                return FutureUtils.exception(BKException.create(BKException.Code.IncorrectParameterException));
+            }
+            List<Long> ledgerIds = new ArrayList<>(builderLedgerIds);
+            OpStatsLogger deleteOpLogger = bk.getClientCtx().getClientStats().getDeleteOpLogger();
+            long startTime = MathUtils.nowInNano();
+            List<CompletableFuture<Void>> removals;
+            ReentrantReadWriteLock closeLock = bk.getCloseLock();
+            closeLock.readLock().lock();
+            try {
+                if (bk.isClosed()) {
+                    return FutureUtils.exception(BKException.create(BKException.Code.ClientClosedException));
+                }
+                removals = bk.getLedgerManager().removeLedgersMetadata(ledgerIds);
+            } finally {
+                closeLock.readLock().unlock();
+            }
+            List<CompletableFuture<Void>> deletes = new ArrayList<>(removals.size());
+            for (int i = 0; i < removals.size(); i++) {
+                long ledgerId = ledgerIds.get(i);
+                CompletableFuture<Void> delete = new CompletableFuture<>();
+                removals.get(i).whenComplete((ignore, exception) -> {
+                    if (exception != null) {
+                        deleteOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        delete.completeExceptionally(BKException.create(BKException.getExceptionCode(exception)));
+                    } else {
+                        deleteOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        ClientEntryCache entryCache = bk.getClientCtx().getEntryCache();
+                        if (entryCache != null) {
+                            entryCache.invalidateLedger(ledgerId);
+                        }
+                        delete.complete(null);
+                    }
+                });
+                deletes.add(delete);
+            }
+            return BulkResultImpl.collect(deletes);
+        }
+    }
+
 }
@@ -32,7 +32,9 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,13 +47,16 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -102,7 +107,6 @@ public class LedgerHandle implements WriteHandle {
     private Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
     final ExecutorService executor;
-    long lastAddPushed;
     boolean notSupportBatch;
 
     private enum HandleState {
@@ -110,7 +114,7 @@ public class LedgerHandle implements WriteHandle {
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -119,6 +123,36 @@ public class LedgerHandle implements WriteHandle {
       */
     volatile long lastAddConfirmed;
 
+    private static final AtomicLongFieldUpdater<LedgerHandle> LAST_ADD_CONFIRMED_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LedgerHandle.class, "lastAddConfirmed");
+
+    /**
+     * Id and ledger length of an entry pushed to the ledger.
+     */
+    static final class PushedEntry {
+        final long entryId;
+        final long length;
+
+        PushedEntry(long entryId, long length) {
+            this.entryId = entryId;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Last entry pushed to the ledger, and the length of the ledger up to it. The adds assign the
+     * entry id and the ledger length of their entry with a single compare-and-set, so concurrent
+     * producers don't need a lock and an entry id always matches its ledger length.
+     */
+    private final AtomicReference<PushedEntry> lastPushed = new AtomicReference<>();
+
+    /**
+     * The adds hold the read lock while pushing their entry and adding it to the pending adds, so
+     * the producers don't exclude each other. Closing the handle and draining the pending adds
+     * hold the write lock, so no add can slip in after the drain.
+     */
+    final StampedLock addLock = new StampedLock();
+
      /**
       * Next entryId which is expected to move forward during {@link #sendAddSuccessCallbacks() }. This is important
       * in order to have an ordered sequence of addEntry acknowledged to the writer
@@ -137,7 +171,6 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
@@ -173,6 +206,8 @@ public class LedgerHandle implements WriteHandle {
     final Counter lacUpdateHitsCounter;
     final Counter lacUpdateMissesCounter;
     private final OpStatsLogger clientChannelWriteWaitStats;
+    // null if the entries of the ledger aren't compressed
+    final EntryCompressor entryCompressor;
 
     LedgerHandle(ClientContext clientCtx,
                  long ledgerId, Versioned<LedgerMetadata> versionedMetadata,
@@ -182,16 +217,16 @@ public class LedgerHandle implements WriteHandle {
         this.clientCtx = clientCtx;
 
         this.versionedMetadata = versionedMetadata;
-        this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
+        this.pendingAddOps = new PendingAddOpQueue();
         this.writeFlags = writeFlags;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
         if (metadata.isClosed()) {
-            lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-            length = metadata.getLength();
+            lastAddConfirmed = metadata.getLastEntryId();
+            setLastAddPushed(metadata.getLastEntryId(), metadata.getLength());
         } else {
-            lastAddConfirmed = lastAddPushed = INVALID_ENTRY_ID;
-            length = 0;
+            lastAddConfirmed = INVALID_ENTRY_ID;
+            setLastAddPushed(INVALID_ENTRY_ID, 0);
         }
 
         this.pendingAddsSequenceHead = lastAddConfirmed;
@@ -241,12 +276,23 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadScore(BookieId bookieSocketAddress) {
+                if (!clientCtx.getConf().enableReorderReadSequenceByLatency) {
+                    return -1L;
+                }
+                return clientCtx.getReadLatencyTracker().getReadScore(bookieSocketAddress,
+                        getBookiePendingRequests(bookieSocketAddress));
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
         lacUpdateHitsCounter = clientCtx.getClientStats().getLacUpdateHitsCounter();
         lacUpdateMissesCounter = clientCtx.getClientStats().getLacUpdateMissesCounter();
         clientChannelWriteWaitStats = clientCtx.getClientStats().getClientChannelWriteWaitLogger();
+        entryCompressor = EntryCompressor.of(metadata, clientCtx.getByteBufAllocator(),
+                clientCtx.getClientStats().getCompressionSavedBytesCounter());
 
         clientCtx.getClientStats().registerPendingAddsGauge(new Gauge<Integer>() {
                 @Override
@@ -316,24 +362,70 @@ public class LedgerHandle implements WriteHandle {
         return writeFlags;
     }
 
+    /**
+     * Get the allocator of the client the ledger was opened with.
+     *
+     * @return the allocator of the buffers of the client
+     */
+    public ByteBufAllocator getByteBufAllocator() {
+        return clientCtx.getByteBufAllocator();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddConfirmed() {
+    public long getLastAddConfirmed() {
         return lastAddConfirmed;
     }
 
-    synchronized void setLastAddConfirmed(long lac) {
+    void setLastAddConfirmed(long lac) {
         this.lastAddConfirmed = lac;
     }
 
+    /**
+     * Move the last add confirmed forward, never backward.
+     *
+     * @return whether the last add confirmed moved
+     */
+    boolean advanceLastAddConfirmed(long lac) {
+        long current;
+        do {
+            current = lastAddConfirmed;
+            if (lac <= current) {
+                return false;
+            }
+        } while (!LAST_ADD_CONFIRMED_UPDATER.compareAndSet(this, current, lac));
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
-        return lastAddPushed;
+    public long getLastAddPushed() {
+        return lastPushed.get().entryId;
+    }
+
+    /**
+     * Reset the last entry pushed to the ledger and the length of the ledger.
+     */
+    void setLastAddPushed(long entryId, long length) {
+        lastPushed.set(new PushedEntry(entryId, length));
+    }
+
+    /**
+     * Push a new entry to the ledger: assign it the next entry id, and add its length to the
+     * length of the ledger.
+     */
+    PushedEntry pushEntry(long entryLength) {
+        PushedEntry last;
+        PushedEntry pushed;
+        do {
+            last = lastPushed.get();
+            pushed = new PushedEntry(last.entryId + 1, last.length + entryLength);
+        } while (!lastPushed.compareAndSet(last, pushed));
+        return pushed;
     }
 
     /**
@@ -364,8 +456,13 @@ public class LedgerHandle implements WriteHandle {
                 versionedMetadata = newMetadata;
                 LedgerMetadata metadata = versionedMetadata.getValue();
                 if (metadata.isClosed()) {
-                    lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-                    length = metadata.getLength();
+                    long stamp = addLock.writeLock();
+                    try {
+                        lastAddConfirmed = metadata.getLastEntryId();
+                        setLastAddPushed(metadata.getLastEntryId(), metadata.getLength());
+                    } finally {
+                        addLock.unlockWrite(stamp);
+                    }
                 }
                 return true;
             } else {
@@ -422,9 +519,24 @@ public class LedgerHandle implements WriteHandle {
      * @param delta
      * @return the length of the ledger after the addition
      */
-    synchronized long addToLength(long delta) {
-        this.length += delta;
-        return this.length;
+    long addToLength(long delta) {
+        PushedEntry last;
+        PushedEntry updated;
+        do {
+            last = lastPushed.get();
+            updated = new PushedEntry(last.entryId, last.length + delta);
+        } while (!lastPushed.compareAndSet(last, updated));
+        return updated.length;
+    }
+
+    /**
+     * Set the length of the ledger in bytes.
+     */
+    void setLength(long length) {
+        PushedEntry last;
+        do {
+            last = lastPushed.get();
+        } while (!lastPushed.compareAndSet(last, new PushedEntry(last.entryId, length)));
     }
 
     /**
@@ -433,8 +545,8 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
-        return this.length;
+    public long getLength() {
+        return lastPushed.get().length;
     }
 
     /**
@@ -552,15 +664,21 @@ public class LedgerHandle implements WriteHandle {
                     });
 
                     synchronized (LedgerHandle.this) {
-                        prevHandleState = handleState;
-
-                        // drain pending adds first
-                        pendingAdds = drainPendingAddsAndAdjustLength();
-
-                        // taking the length must occur after draining, as draining changes the length
-                        lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
-                        finalLength = LedgerHandle.this.length;
-                        handleState = HandleState.CLOSED;
+                        long stamp = addLock.writeLock();
+                        try {
+                            prevHandleState = handleState;
+
+                            // drain pending adds first
+                            pendingAdds = drainPendingAdds();
+
+                            // taking the length must occur after draining, as draining changes the length
+                            lastEntry = LedgerHandle.this.lastAddConfirmed;
+                            finalLength = getLength();
+                            setLastAddPushed(lastEntry, finalLength);
+                            handleState = HandleState.CLOSED;
+                        } finally {
+                            addLock.unlockWrite(stamp);
+                        }
                     }
 
                     // error out all pending adds during closing, the callbacks shouldn't be
@@ -920,8 +1038,10 @@ public class LedgerHandle implements WriteHandle {
                 .whenComplete((entries, ex) -> {
                     if (ex != null) {
                         //If the bookie server not support the batch read request, the bookie server will close the
-                        // connection, then get the BookieHandleNotAvailableException.
-                        if (ex instanceof BKException.BKBookieHandleNotAvailableException) {
+                        // connection, then get the BookieHandleNotAvailableException. On the v3 protocol, a bookie
+                        // which doesn't support range reads fails them with IllegalOpException.
+                        if (ex instanceof BKException.BKBookieHandleNotAvailableException
+                                || ex instanceof BKException.BKIllegalOpException) {
                             notSupportBatch = true;
                             long lastEntry = Math.min(startEntry + maxCount - 1, lastAddConfirmed);
                             readEntriesInternalAsync(startEntry, lastEntry, false).whenComplete((entries1, ex1) -> {
@@ -1002,7 +1122,7 @@ public class LedgerHandle implements WriteHandle {
         } else {
             op.future().completeExceptionally(BKException.create(ClientClosedException));
         }
-        return op.future();
+        return decompressEntries(op.future(), isRecoveryRead);
     }
 
     /**
@@ -1140,9 +1260,48 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Decompress the entries read from a compressed ledger. The recovery reads keep the entries as
+     * they are stored, so they can be added back to the ledger.
+     */
+    private CompletableFuture<LedgerEntries> decompressEntries(CompletableFuture<LedgerEntries> future,
+                                                               boolean isRecoveryRead) {
+        if (entryCompressor == null || isRecoveryRead) {
+            return future;
+        }
+        CompletableFuture<LedgerEntries> decompressed = new CompletableFuture<>();
+        future.whenComplete((entries, cause) -> {
+            if (cause != null) {
+                decompressed.completeExceptionally(cause);
+                return;
+            }
+            try {
+                for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
+                    LedgerEntryImpl entryImpl = (LedgerEntryImpl) entry;
+                    entryImpl.setEntryBuf(entryCompressor.decompress(entryImpl.getEntryBuffer()));
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to decompress the entries read from ledger {}", ledgerId, e);
+                entries.close();
+                decompressed.completeExceptionally(BKException.create(BKException.Code.UnexpectedConditionException));
+                return;
+            }
+            decompressed.complete(entries);
+        });
+        return decompressed;
+    }
+
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        ClientEntryCache entryCache = isRecoveryRead ? null : clientCtx.getEntryCache();
+        if (entryCache != null && lastEntry <= getLastAddConfirmed()) {
+            LedgerEntries cached = entryCache.getEntries(ledgerId, firstEntry, lastEntry);
+            if (cached != null) {
+                clientCtx.getClientStats().getEntryCacheHitsCounter().addCount(lastEntry - firstEntry + 1);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -1180,7 +1339,27 @@ public class LedgerHandle implements WriteHandle {
         } else {
             op.future().completeExceptionally(BKException.create(ClientClosedException));
         }
-        return op.future();
+        CompletableFuture<LedgerEntries> future = decompressEntries(op.future(), isRecoveryRead);
+        return entryCache == null ? future : cacheEntries(entryCache, future);
+    }
+
+    /**
+     * Cache the confirmed entries read from the bookies, before they are handed to the reader.
+     */
+    private CompletableFuture<LedgerEntries> cacheEntries(ClientEntryCache entryCache,
+                                                          CompletableFuture<LedgerEntries> future) {
+        return future.thenApply(entries -> {
+            long lac = getLastAddConfirmed();
+            long numEntries = 0;
+            for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
+                if (entry.getEntryId() <= lac) {
+                    entryCache.put(entry);
+                }
+                numEntries++;
+            }
+            clientCtx.getClientStats().getEntryCacheMissesCounter().addCount(numEntries);
+            return entries;
+        });
     }
 
     /**
@@ -1334,10 +1513,55 @@ public class LedgerHandle implements WriteHandle {
     }
 
     public void asyncAddEntry(ByteBuf data, final AddCallback cb, final Object ctx) {
+        if (entryCompressor != null) {
+            compressAndAddEntry(INVALID_ENTRY_ID, data, cb, ctx, compressed -> {
+                PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), compressed, writeFlags,
+                        cb, ctx);
+                doAsyncAddEntry(op);
+            });
+            return;
+        }
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
         doAsyncAddEntry(op);
     }
 
+    /**
+     * Compress the payload of an entry in the thread pinned to the ledger, before its digest is
+     * computed, then add it. Every add of a compressed ledger goes through the pinned thread, so the
+     * entries are still added in the order they were submitted.
+     */
+    void compressAndAddEntry(long entryId, ByteBuf data, AddCallbackWithLatency cb, Object ctx,
+                             Consumer<ByteBuf> addCompressed) {
+        try {
+            executeOrdered(new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuf compressed;
+                    try {
+                        compressed = entryCompressor.compress(data);
+                    } catch (RuntimeException | Error e) {
+                        // the payload is released by the compressor
+                        LOG.error("Failed to compress entry of ledger {}", ledgerId, e);
+                        cb.addCompleteWithLatency(BKException.Code.UnexpectedConditionException,
+                                LedgerHandle.this, entryId, 0, ctx);
+                        return;
+                    }
+                    addCompressed.accept(compressed);
+                }
+
+                @Override
+                public String toString() {
+                    return String.format("CompressAndAddEntry(lid=%d)", ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            data.release();
+            cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                            BKException.Code.InterruptedException),
+                    LedgerHandle.this, entryId, 0, ctx);
+        }
+    }
+
     /**
      * Add entry asynchronously to an open ledger, using an offset and range.
      * This can be used only with {@link LedgerHandleAdv} returned through
@@ -1585,19 +1809,20 @@ public class LedgerHandle implements WriteHandle {
         }
 
         boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
+        // the read lock ensures that the ledger isn't closed between checking
+        // and pushing the entry, without excluding the other producers
+        long stamp = addLock.readLock();
+        try {
             if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
+                PushedEntry pushed = pushEntry(op.payload.readableBytes());
+                op.setEntryId(pushed.entryId);
+                op.setLedgerLength(pushed.length);
                 pendingAddOps.add(op);
             } else {
                 wasClosed = true;
             }
+        } finally {
+            addLock.unlockRead(stamp);
         }
 
         if (wasClosed) {
@@ -1641,15 +1866,21 @@ public class LedgerHandle implements WriteHandle {
 
     }
 
-    synchronized void updateLastConfirmed(long lac, long len) {
-        if (lac > lastAddConfirmed) {
-            lastAddConfirmed = lac;
+    void updateLastConfirmed(long lac, long len) {
+        if (advanceLastAddConfirmed(lac)) {
             lacUpdateHitsCounter.inc();
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length = Math.max(length, len);
+        PushedEntry last;
+        PushedEntry updated;
+        do {
+            last = lastPushed.get();
+            if (lac <= last.entryId && len <= last.length) {
+                return;
+            }
+            updated = new PushedEntry(Math.max(last.entryId, lac), Math.max(last.length, len));
+        } while (!lastPushed.compareAndSet(last, updated));
     }
 
     /**
@@ -1852,6 +2083,17 @@ public class LedgerHandle implements WriteHandle {
             AtomicBoolean completed = new AtomicBoolean(false);
             @Override
             public void readLastConfirmedAndEntryComplete(int rc, long lastAddConfirmed, LedgerEntry entry) {
+                if (rc == BKException.Code.OK && entry != null && entryCompressor != null) {
+                    try {
+                        ByteBuf data = entryCompressor.decompress(entry.data);
+                        entry.data.release();
+                        entry.data = data;
+                    } catch (IOException e) {
+                        LOG.error("Failed to decompress entry {} of ledger {}", entry.getEntryId(), ledgerId, e);
+                        entry.data.release();
+                        rc = BKException.Code.UnexpectedConditionException;
+                    }
+                }
                 if (rc == BKException.Code.OK) {
                     if (completed.compareAndSet(false, true)) {
                         cb.readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry, ctx);
@@ -1985,7 +2227,7 @@ public class LedgerHandle implements WriteHandle {
             isClosed = metadata.isClosed();
             if (isClosed) {
                 lastAddConfirmed = metadata.getLastEntryId();
-                length = metadata.getLength();
+                setLength(metadata.getLength());
             }
         }
         if (isClosed) {
@@ -2069,7 +2311,16 @@ public class LedgerHandle implements WriteHandle {
         errorOutPendingAdds(rc, drainPendingAddsAndAdjustLength());
     }
 
-    synchronized List<PendingAddOp> drainPendingAddsAndAdjustLength() {
+    List<PendingAddOp> drainPendingAddsAndAdjustLength() {
+        long stamp = addLock.writeLock();
+        try {
+            return drainPendingAdds();
+        } finally {
+            addLock.unlockWrite(stamp);
+        }
+    }
+
+    private List<PendingAddOp> drainPendingAdds() {
         PendingAddOp pendingAddOp;
         List<PendingAddOp> opsDrained = new ArrayList<PendingAddOp>(pendingAddOps.size());
         while ((pendingAddOp = pendingAddOps.poll()) != null) {
@@ -2111,7 +2362,7 @@ public class LedgerHandle implements WriteHandle {
             explicitLacFlushPolicy.updatePiggyBackedLac(lastAddConfirmed);
             pendingAddsSequenceHead = pendingAddOp.entryId;
             if (!writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
-                this.lastAddConfirmed = pendingAddsSequenceHead;
+                advanceLastAddConfirmed(pendingAddsSequenceHead);
             }
 
             pendingAddOp.submitCallback(BKException.Code.OK);
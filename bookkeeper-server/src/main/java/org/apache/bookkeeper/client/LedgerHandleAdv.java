@@ -203,6 +203,14 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
     @Override
     public void asyncAddEntry(final long entryId, ByteBuf data,
                               final AddCallbackWithLatency cb, final Object ctx) {
+        if (entryCompressor != null) {
+            compressAndAddEntry(entryId, data, cb, ctx, compressed -> initiateAddEntry(entryId, compressed, cb, ctx));
+            return;
+        }
+        initiateAddEntry(entryId, data, cb, ctx);
+    }
+
+    private void initiateAddEntry(long entryId, ByteBuf data, AddCallbackWithLatency cb, Object ctx) {
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
         op.setEntryId(entryId);
 
@@ -226,10 +234,10 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         }
 
         boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
+        // the read lock ensures that the ledger isn't closed between checking
+        // and adding to the pending adds, without excluding the other producers
+        long stamp = addLock.readLock();
+        try {
             if (isHandleWritable()) {
                 long currentLength = addToLength(op.payload.readableBytes());
                 op.setLedgerLength(currentLength);
@@ -237,6 +245,8 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
             } else {
                 wasClosed = true;
             }
+        } finally {
+            addLock.unlockRead(stamp);
         }
 
         if (wasClosed) {
@@ -24,7 +24,10 @@ package org.apache.bookkeeper.client;
 import static org.apache.bookkeeper.client.BookKeeper.DigestType.fromApiDigestType;
 
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,9 +36,14 @@ import org.apache.bookkeeper.client.AsyncCallback.ReadLastConfirmedCallback;
 import org.apache.bookkeeper.client.BookKeeper.DigestType;
 import org.apache.bookkeeper.client.SyncCallbackUtils.SyncOpenCallback;
 import org.apache.bookkeeper.client.api.BKException.Code;
+import org.apache.bookkeeper.client.api.BulkResult;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.OpenBuilder;
+import org.apache.bookkeeper.client.api.OpenLedgersBuilder;
 import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.impl.BulkResultImpl;
 import org.apache.bookkeeper.client.impl.OpenBuilderBase;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.OrderedGenericCallback;
@@ -185,6 +193,10 @@ class LedgerOpenOp {
             LOG.error("Incorrectly entered parameter throttle: " + bk.getConf().getThrottleValue(), e);
             openComplete(BKException.Code.IncorrectParameterException, null);
             return;
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid metadata of ledger: " + ledgerId, e);
+            openComplete(BKException.Code.IncorrectParameterException, null);
+            return;
         }
 
         if (metadata.isClosed()) {
@@ -238,7 +250,8 @@ class LedgerOpenOp {
                             openComplete(bk.getReturnRc(BKException.Code.ReadException), null);
                         });
                     } else {
-                        lh.lastAddConfirmed = lh.lastAddPushed = lastConfirmed;
+                        lh.lastAddConfirmed = lastConfirmed;
+                        lh.setLastAddPushed(lastConfirmed, lh.getLength());
                         openComplete(BKException.Code.OK, lh);
                     }
                 }
@@ -305,4 +318,65 @@ class LedgerOpenOp {
         }
     }
 
+    static final class OpenLedgersBuilderImpl implements OpenLedgersBuilder {
+
+        private final BookKeeper bk;
+        private List<Long> builderLedgerIds = Collections.emptyList();
+        private boolean builderRecovery = false;
+        private byte[] builderPassword;
+        private org.apache.bookkeeper.client.api.DigestType builderDigestType =
+            org.apache.bookkeeper.client.api.DigestType.CRC32;
+
+        OpenLedgersBuilderImpl(BookKeeper bookkeeper) {
+            this.bk = bookkeeper;
+        }
+
+        @Override
+        public OpenLedgersBuilder withLedgerIds(List<Long> ledgerIds) {
+            this.builderLedgerIds = ledgerIds;
+            return this;
+        }
+
+        @Override
+        public OpenLedgersBuilder withRecovery(boolean recovery) {
+            this.builderRecovery = recovery;
+            return this;
+        }
+
+        @Override
+        public OpenLedgersBuilder withPassword(byte[] password) {
+            this.builderPassword = Arrays.copyOf(password, password.length);
+            return this;
+        }
+
+        @Override
+        public OpenLedgersBuilder withDigestType(org.apache.bookkeeper.client.api.DigestType digestType) {
+            this.builderDigestType = digestType;
+            return this;
+        }
+
+        /**
+         * Open the ledgers concurrently, so their metadata reads are pipelined on the metadata store.
+         */
+        @Override
+        public CompletableFuture<BulkResult<ReadHandle>> execute() {
+            if (builderLedgerIds == null) {
+                LOG.error("invalid ledgerIds null");
+                return FutureUtils.exception(BKException.create(Code.IncorrectParameterException));
+            }
+            List<CompletableFuture<ReadHandle>> opens = new ArrayList<>(builderLedgerIds.size());
+            for (Long ledgerId : builderLedgerIds) {
+                OpenBuilder builder = new OpenBuilderImpl(bk)
+                    .withLedgerId(ledgerId == null ? -1L : ledgerId)
+                    .withRecovery(builderRecovery)
+                    .withDigestType(builderDigestType);
+                if (builderPassword != null) {
+                    builder.withPassword(builderPassword);
+                }
+                opens.add(builder.execute());
+            }
+            return BulkResultImpl.collect(opens);
+        }
+    }
+
 }
@@ -118,10 +118,10 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
                                         .lastEntry()
                                         .getKey();
 
-                                lh.lastAddPushed = lh.lastAddConfirmed = Math.max(data.getLastAddConfirmed(),
+                                lh.lastAddConfirmed = Math.max(data.getLastAddConfirmed(),
                                         (lastEnsembleEntryId - 1));
 
-                                lh.length = data.getLength();
+                                lh.setLastAddPushed(lh.lastAddConfirmed, data.getLength());
                                 lh.pendingAddsSequenceHead = lh.lastAddConfirmed;
                                 startEntryToRead = endEntryToRead = lh.lastAddConfirmed;
                             }
@@ -191,14 +191,12 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
              * replicas. We subtract the length of the data itself, since it will
              * be added again when processing the call to add it.
              */
-            synchronized (lh) {
-                lh.length = entry.getLength() - (long) data.length;
-                // check whether entry id is expected, so we won't overwritten any entries by mistake
-                if (entry.getEntryId() != lh.lastAddPushed + 1) {
-                    LOG.error("Unexpected to recovery add entry {} as entry {} for ledger {}.",
-                            entry.getEntryId(), (lh.lastAddPushed + 1), lh.getId());
-                    rc = BKException.Code.UnexpectedConditionException;
-                }
+            lh.setLength(entry.getLength() - (long) data.length);
+            // check whether entry id is expected, so we won't overwritten any entries by mistake
+            if (entry.getEntryId() != lh.getLastAddPushed() + 1) {
+                LOG.error("Unexpected to recovery add entry {} as entry {} for ledger {}.",
+                        entry.getEntryId(), (lh.getLastAddPushed() + 1), lh.getId());
+                rc = BKException.Code.UnexpectedConditionException;
             }
             if (BKException.Code.OK == rc) {
                 lh.asyncRecoveryAddEntry(data, 0, data.length, this, null);
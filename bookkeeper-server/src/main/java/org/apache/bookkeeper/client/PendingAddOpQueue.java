@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.client;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free queue of the pending adds of a ledger, ordered by entry id.
+ *
+ * <p>The producers of a ledger get their entry ids and add their ops concurrently, so the ops
+ * aren't necessarily added in the order of their entry ids. Keeping them ordered lets the
+ * completions be sequenced from the head of the queue.
+ *
+ * <p>The size of the skip list isn't a constant time operation, the queue counts its ops instead.
+ */
+class PendingAddOpQueue extends AbstractQueue<PendingAddOp> {
+
+    private final ConcurrentSkipListSet<PendingAddOp> ops =
+            new ConcurrentSkipListSet<>(new LedgerHandleAdv.PendingOpsComparator());
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    @Override
+    public boolean offer(PendingAddOp op) {
+        if (!ops.add(op)) {
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public PendingAddOp poll() {
+        PendingAddOp op = ops.pollFirst();
+        if (op != null) {
+            size.decrementAndGet();
+        }
+        return op;
+    }
+
+    @Override
+    public PendingAddOp peek() {
+        try {
+            return ops.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!ops.remove(o)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return ops.contains(o);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    @Override
+    public Iterator<PendingAddOp> iterator() {
+        final Iterator<PendingAddOp> iterator = ops.iterator();
+        return new Iterator<PendingAddOp>() {
+            private PendingAddOp last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public PendingAddOp next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                // removed through the queue, so it is only counted once if polled concurrently
+                PendingAddOpQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * The number of pending adds. It may be momentarily off by the ops being added or removed
+     * concurrently.
+     */
+    @Override
+    public int size() {
+        return Math.max(size.get(), 0);
+    }
+}
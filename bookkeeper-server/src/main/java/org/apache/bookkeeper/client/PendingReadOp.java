@@ -96,6 +96,7 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
     public void readEntryComplete(int rc, long ledgerId, final long entryId, final ByteBuf buffer, Object ctx) {
         final ReadContext rctx = (ReadContext) ctx;
         final SingleLedgerEntryRequest entry = (SingleLedgerEntryRequest) rctx.entry;
+        recordReadLatency(rctx, rc);
 
         if (rc != BKException.Code.OK) {
             entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Error: " + BKException.getMessage(rc), rc);
@@ -169,6 +170,7 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
         if (lh.throttler != null) {
             lh.throttler.acquire();
         }
+        entry.lastSentTo = to;
 
         if (isRecoveryRead) {
             int flags = BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_DO_FENCING;
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} which hedges a request once it has been outstanding for
+ * longer than a percentile of the recent latencies of the bookie it was sent to, e.g. its p95.
+ *
+ * <p>The speculative requests are limited by a budget shared by all the requests of the client: each
+ * request earns a fraction of a speculative request, e.g. 5%, so the speculative requests don't amplify
+ * the load when all the bookies get slow. The budget can accumulate up to {@link #MAX_BUDGET} requests.
+ *
+ * <p>Until a bookie served enough requests, the requests sent to it are hedged after the
+ * {@code defaultSpeculativeRequestTimeout}. The delay is capped by the {@code maxSpeculativeRequestTimeout}.
+ */
+public class PercentileSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(PercentileSpeculativeRequestExecutionPolicy.class);
+
+    // the max number of speculative requests the budget can accumulate
+    static final int MAX_BUDGET = 100;
+    // the budget is accounted in thousandths of a request
+    private static final long BUDGET_UNIT = 1000;
+    private static final long MIN_SPECULATIVE_REQUEST_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    final double percentile;
+    final long defaultSpeculativeRequestTimeoutNanos;
+    final long maxSpeculativeRequestTimeoutNanos;
+    final long budgetPerRequest;
+
+    private final ConcurrentHashMap<BookieId, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicLong budget;
+
+    public PercentileSpeculativeRequestExecutionPolicy(double percentile,
+                                                       int defaultSpeculativeRequestTimeout,
+                                                       int maxSpeculativeRequestTimeout,
+                                                       double budgetRatio) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile : " + percentile);
+        }
+        if (budgetRatio < 0) {
+            throw new IllegalArgumentException("Invalid value provided for budgetRatio : " + budgetRatio);
+        }
+        this.percentile = percentile;
+        this.defaultSpeculativeRequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(defaultSpeculativeRequestTimeout);
+        this.maxSpeculativeRequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(defaultSpeculativeRequestTimeout, maxSpeculativeRequestTimeout));
+        this.budgetPerRequest = Math.round(budgetRatio * BUDGET_UNIT);
+        this.budget = new AtomicLong(MAX_BUDGET * BUDGET_UNIT);
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        earnBudget();
+        return scheduleSpeculativeRead(scheduler, requestExecutor);
+    }
+
+    @Override
+    public void recordRequestLatency(BookieId bookie, long latencyNanos) {
+        LatencyHistogram histogram = histograms.get(bookie);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(bookie, b -> new LatencyHistogram());
+        }
+        histogram.record(latencyNanos);
+    }
+
+    /**
+     * Get the delay after which a request sent to a bookie is hedged.
+     */
+    long getSpeculativeRequestTimeoutNanos(BookieId bookie) {
+        LatencyHistogram histogram = bookie == null ? null : histograms.get(bookie);
+        long timeoutNanos = histogram == null ? -1L : histogram.getPercentile(percentile);
+        if (timeoutNanos < 0) {
+            return defaultSpeculativeRequestTimeoutNanos;
+        }
+        return Math.max(MIN_SPECULATIVE_REQUEST_TIMEOUT_NANOS,
+                Math.min(timeoutNanos, maxSpeculativeRequestTimeoutNanos));
+    }
+
+    private void earnBudget() {
+        long max = MAX_BUDGET * BUDGET_UNIT;
+        while (true) {
+            long current = budget.get();
+            if (current >= max || budget.compareAndSet(current, Math.min(max, current + budgetPerRequest))) {
+                return;
+            }
+        }
+    }
+
+    private boolean spendBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < BUDGET_UNIT) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                                       final SpeculativeRequestExecutor requestExecutor) {
+        final long timeoutNanos = getSpeculativeRequestTimeoutNanos(requestExecutor.getLastRequestTarget());
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!spendBudget()) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("No budget left to issue a speculative request for {}", requestExecutor);
+                        }
+                        return;
+                    }
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                scheduleSpeculativeRead(scheduler, requestExecutor);
+                            } else {
+                                // the request wasn't issued, give the budget back
+                                budget.addAndGet(BUDGET_UNIT);
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}", requestExecutor);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            LOG.warn("Failed to issue speculative request for {} : ", requestExecutor, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {} : ", requestExecutor, re);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A histogram of the recent latencies of a bookie, with logarithmic buckets of a quarter of a power
+     * of two of microseconds. The histogram rotates between two windows, so the percentiles reflect the
+     * latencies of the last one to two windows. The percentiles are cached for a short period.
+     */
+    static final class LatencyHistogram {
+        private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+        private static final long PERCENTILE_CACHE_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int NUM_BUCKETS = 40 << SUB_BUCKET_BITS;
+        // the min number of samples to compute a percentile
+        private static final long MIN_SAMPLES = 100;
+
+        private final AtomicLongArray[] windows = {
+            new AtomicLongArray(NUM_BUCKETS), new AtomicLongArray(NUM_BUCKETS)
+        };
+        private volatile int currentWindow = 0;
+        private volatile long windowStartNanos = MathUtils.nowInNano();
+
+        private volatile long cachedPercentileNanos = -1L;
+        private volatile long cachedAtNanos = Long.MIN_VALUE;
+
+        void record(long latencyNanos) {
+            maybeRotate(MathUtils.nowInNano());
+            windows[currentWindow].incrementAndGet(bucketOf(latencyNanos));
+        }
+
+        /**
+         * Get a percentile of the latencies, -1 if there aren't enough samples.
+         * The percentile cached last is returned, whatever percentile is asked.
+         */
+        long getPercentile(double percentile) {
+            long now = MathUtils.nowInNano();
+            if (now - cachedAtNanos < PERCENTILE_CACHE_NANOS) {
+                return cachedPercentileNanos;
+            }
+            maybeRotate(now);
+            AtomicLongArray current = windows[currentWindow];
+            AtomicLongArray previous = windows[1 - currentWindow];
+            long[] counts = new long[NUM_BUCKETS];
+            long total = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] = current.get(i) + previous.get(i);
+                total += counts[i];
+            }
+            long percentileNanos = -1L;
+            if (total >= MIN_SAMPLES) {
+                long rank = (long) Math.ceil(total * percentile / 100);
+                long seen = 0;
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        percentileNanos = upperBoundOf(i);
+                        break;
+                    }
+                }
+            }
+            cachedPercentileNanos = percentileNanos;
+            cachedAtNanos = now;
+            return percentileNanos;
+        }
+
+        private void maybeRotate(long now) {
+            long start = windowStartNanos;
+            if (now - start < WINDOW_NANOS) {
+                return;
+            }
+            synchronized (this) {
+                if (windowStartNanos != start) {
+                    return;
+                }
+                int next = 1 - currentWindow;
+                AtomicLongArray window = windows[next];
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    window.set(i, 0);
+                }
+                currentWindow = next;
+                windowStartNanos = now;
+            }
+        }
+
+        static int bucketOf(long latencyNanos) {
+            long micros = Math.max(1L, latencyNanos / 1000);
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent < SUB_BUCKET_BITS) {
+                return (int) micros;
+            }
+            int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+            return Math.min(NUM_BUCKETS - 1, ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket);
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < (1 << SUB_BUCKET_BITS)) {
+                return TimeUnit.MICROSECONDS.toNanos(bucket + 1);
+            }
+            int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+            int subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+            long micros = ((long) ((1 << SUB_BUCKET_BITS) + subBucket + 1)) << (exponent - SUB_BUCKET_BITS);
+            return TimeUnit.MICROSECONDS.toNanos(micros);
+        }
+    }
+}
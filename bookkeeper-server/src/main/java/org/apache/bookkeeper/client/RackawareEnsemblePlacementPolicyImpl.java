@@ -969,6 +969,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         if (!isAnyBookieUnavailable) {
+            if (BookieReadLatencyTracker.reorderByReadScore(ensemble, bookiesHealthInfo, writeSet,
+                    0, writeSet.size())) {
+                reordered = true;
+            }
             if (reordered) {
                 readReorderedCounter.registerSuccessfulValue(1);
             }
@@ -1057,6 +1061,17 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             }
         }
 
+        // order the available local bookies by their read latency, if it is tracked
+        int numLocal = 0;
+        while (numLocal < writeSet.size() && (writeSet.get(numLocal) & MASK_BITS) == LOCAL_MASK) {
+            writeSet.set(numLocal, writeSet.get(numLocal) & ~MASK_BITS);
+            numLocal++;
+        }
+        BookieReadLatencyTracker.reorderByReadScore(ensemble, bookiesHealthInfo, writeSet, 0, numLocal);
+        for (int i = 0; i < numLocal; i++) {
+            writeSet.set(i, writeSet.get(i) | LOCAL_MASK);
+        }
+
         // Insert a node from the remote region at the specified location so
         // we try more than one region within the max allowed latency
         int firstRemote = -1;
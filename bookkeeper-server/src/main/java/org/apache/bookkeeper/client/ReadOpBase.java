@@ -33,6 +33,7 @@ import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks;
+import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -107,6 +108,28 @@ public abstract class ReadOpBase implements Runnable {
 
     abstract void initiate();
 
+    /**
+     * Record the latency of a read to a bookie, to rank the bookies of the next reads and to time
+     * the speculative reads. The reads which failed quickly, e.g. because the bookie doesn't have
+     * the entry, aren't recorded.
+     */
+    void recordReadLatency(ReadContext rctx, int rc) {
+        if (rc != BKException.Code.OK && rc != BKException.Code.TimeoutException) {
+            return;
+        }
+        ClientInternalConf conf = clientCtx.getConf();
+        if (!conf.enableReorderReadSequenceByLatency && !conf.readSpeculativeRequestPolicy.isPresent()) {
+            return;
+        }
+        long latencyNanos = MathUtils.elapsedNanos(rctx.sentNanos);
+        if (conf.enableReorderReadSequenceByLatency) {
+            clientCtx.getReadLatencyTracker().recordReadLatency(rctx.to, latencyNanos);
+        }
+        if (conf.readSpeculativeRequestPolicy.isPresent()) {
+            conf.readSpeculativeRequestPolicy.get().recordRequestLatency(rctx.to, latencyNanos);
+        }
+    }
+
     protected abstract void submitCallback(int code);
 
     abstract class LedgerEntryRequest implements SpeculativeRequestExecutor {
@@ -121,6 +144,8 @@ public abstract class ReadOpBase implements Runnable {
 
         final List<BookieId> ensemble;
         final DistributionSchedule.WriteSet writeSet;
+        // the bookie the last read was sent to
+        volatile BookieId lastSentTo;
 
 
         LedgerEntryRequest(List<BookieId> ensemble, final long eId) {
@@ -266,18 +291,25 @@ public abstract class ReadOpBase implements Runnable {
                 }
             });
         }
+
+        @Override
+        public BookieId getLastRequestTarget() {
+            return lastSentTo;
+        }
     }
 
     protected static class ReadContext implements BookkeeperInternalCallbacks.ReadEntryCallbackCtx {
         final int bookieIndex;
         final BookieId to;
         final PendingReadOp.LedgerEntryRequest entry;
+        final long sentNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, PendingReadOp.LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sentNanos = MathUtils.nowInNano();
         }
 
         @Override
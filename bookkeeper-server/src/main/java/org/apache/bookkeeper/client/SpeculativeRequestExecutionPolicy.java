@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define a policy for speculative request execution.
@@ -42,4 +43,14 @@ public interface SpeculativeRequestExecutionPolicy {
      */
     ScheduledFuture<?> initiateSpeculativeRequest(ScheduledExecutorService scheduler,
             SpeculativeRequestExecutor requestExecutor);
+
+    /**
+     * Record the latency of a request served by a bookie, for the policies which time the
+     * speculative requests by the latencies of the bookies.
+     *
+     * @param bookie the bookie which served the request
+     * @param latencyNanos the latency of the request
+     */
+    default void recordRequestLatency(BookieId bookie, long latencyNanos) {
+    }
 }
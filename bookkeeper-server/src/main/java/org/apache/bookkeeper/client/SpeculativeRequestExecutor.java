@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,14 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get the bookie the last request was sent to, so the policy can time the next speculative
+     * request by the latency of that bookie.
+     *
+     * @return the bookie the last request was sent to, or null if unknown
+     */
+    default BookieId getLastRequestTarget() {
+        return null;
+    }
 }
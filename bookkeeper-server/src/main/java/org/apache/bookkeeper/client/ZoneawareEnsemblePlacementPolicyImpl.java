@@ -839,6 +839,7 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     @Override
     public DistributionSchedule.WriteSet reorderReadSequence(List<BookieId> ensemble,
             BookiesHealthInfo bookiesHealthInfo, DistributionSchedule.WriteSet writeSet) {
+        BookieReadLatencyTracker.reorderByReadScore(ensemble, bookiesHealthInfo, writeSet, 0, writeSet.size());
         return writeSet;
     }
 
@@ -0,0 +1,112 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Append small records to a ledger, packing several records in each entry.
+ *
+ * <p>The records are buffered into a batch, which is appended to the ledger as one entry once it
+ * reaches the max batch size or the max number of records, once the max batch delay has elapsed
+ * since its first record, or when the handle is flushed. The records are appended in order.
+ *
+ * <p>The ledger must only be written through this handle, and read with a {@link RecordReadHandle}.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface BatchingWriteHandle extends AutoCloseable {
+
+    /**
+     * Create a batching handle on top of a write handle.
+     *
+     * @param handle the handle of the ledger to write the batches to
+     * @param maxBatchSize the max size in bytes of a batch; a record bigger than that is appended alone
+     * @param maxBatchRecords the max number of records of a batch
+     * @param maxBatchDelay the max time a record waits for its batch to be appended, 0 to only append
+     *                      the batches on size or on flush
+     * @param unit the unit of {@code maxBatchDelay}
+     * @param scheduler the scheduler of the delayed appends, can be null if {@code maxBatchDelay} is 0
+     * @return the batching handle
+     */
+    static BatchingWriteHandle create(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                      long maxBatchDelay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        return new BatchingWriteHandleImpl(handle, maxBatchSize, maxBatchRecords, maxBatchDelay, unit, scheduler);
+    }
+
+    /**
+     * Append a record asynchronously.
+     *
+     * @param record the record to append. The bytebuf's reference count will be decremented by 1 once
+     *               the record has been copied into its batch
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    CompletableFuture<RecordPosition> appendAsync(ByteBuf record);
+
+    /**
+     * Append a record synchronously, waiting for its batch to be appended.
+     *
+     * @param record the record to append
+     * @return the position of the record
+     */
+    default RecordPosition append(ByteBuf record) throws BKException, InterruptedException {
+        return FutureUtils.<RecordPosition, BKException>result(appendAsync(record), BKException.HANDLER);
+    }
+
+    /**
+     * Append the current batch now, without waiting for it to be full.
+     *
+     * @return an handle to the result, which completes once all the records appended so far are persisted
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Get the write handle of the ledger the batches are appended to.
+     *
+     * @return the write handle
+     */
+    WriteHandle getWriteHandle();
+
+    /**
+     * Append the current batch, wait for the appends in flight, then close the ledger.
+     *
+     * @return an handle to the result of the operation
+     */
+    CompletableFuture<Void> closeAsync();
+
+    /**
+     * Synchronous version of {@link #closeAsync()}.
+     */
+    @Override
+    default void close() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(closeAsync(), BKException.HANDLER);
+    }
+
+}
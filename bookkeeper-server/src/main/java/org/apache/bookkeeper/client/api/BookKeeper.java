@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.client.impl.BookKeeperBuilderImpl;
+import org.apache.bookkeeper.client.impl.LedgerSequenceReaderImpl;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.conf.ClientConfiguration;
@@ -66,6 +67,22 @@ public interface BookKeeper extends AutoCloseable {
      */
     DeleteBuilder newDeleteLedgerOp();
 
+    /**
+     * Open several existing ledgers at once.
+     *
+     * @return a builder useful to create readable handlers for existing ledgers
+     * @since 4.18
+     */
+    OpenLedgersBuilder newOpenLedgersOp();
+
+    /**
+     * Delete several existing ledgers at once.
+     *
+     * @return a builder useful to delete existing ledgers
+     * @since 4.18
+     */
+    DeleteLedgersBuilder newDeleteLedgersOp();
+
     /**
      * List ledgers.
      *
@@ -73,6 +90,16 @@ public interface BookKeeper extends AutoCloseable {
      */
     ListLedgersResultBuilder newListLedgersOp();
 
+    /**
+     * Read a sequence of ledgers, in order.
+     *
+     * @return a builder useful to create a reader of a sequence of ledgers
+     * @since 4.18
+     */
+    default LedgerSequenceReaderBuilder newLedgerSequenceReader() {
+        return new LedgerSequenceReaderImpl.BuilderImpl(this);
+    }
+
     /**
      * Get ledger metadata of a given ledger id.
      *
@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * The result of an operation on several ledgers, e.g. the creation of ledgers, which succeeds or
+ * fails for each ledger on its own. The results are in the order of the request: the ledger ids of
+ * an open or a delete, the ledgers of a creation.
+ *
+ * @param <T> the type of the result of the operation on a ledger
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface BulkResult<T> {
+
+    /**
+     * Get the number of ledgers of the operation.
+     *
+     * @return the number of ledgers
+     */
+    int size();
+
+    /**
+     * Get the result of the operation on a ledger.
+     *
+     * @param index the index of the ledger in the request
+     * @return the result, null if the operation failed on this ledger
+     */
+    T getResult(int index);
+
+    /**
+     * Get the failure of the operation on a ledger.
+     *
+     * @param index the index of the ledger in the request
+     * @return the failure, null if the operation succeeded on this ledger
+     */
+    Throwable getFailure(int index);
+
+    /**
+     * Get the number of ledgers on which the operation failed.
+     *
+     * @return the number of failures
+     */
+    int getNumFailures();
+
+    /**
+     * Tell whether the operation succeeded on all the ledgers.
+     *
+     * @return true if the operation succeeded on all the ledgers
+     */
+    default boolean isSuccess() {
+        return getNumFailures() == 0;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Compression of the entries of a ledger.
+ *
+ * <p>A ledger is compressed when its custom metadata maps {@link #CUSTOM_METADATA_KEY} to the
+ * {@link #toCustomMetadataValue() value} of a compression type. The client compresses the payload
+ * of each entry before computing its digest, and decompresses it when the entry is read, so the
+ * bookies only store the compressed entries. Entries which don't shrink are stored as they are.
+ *
+ * <pre>{@code
+ * Map<String, byte[]> customMetadata = new HashMap<>();
+ * customMetadata.put(CompressionType.CUSTOM_METADATA_KEY, CompressionType.SNAPPY.toCustomMetadataValue());
+ * bk.newCreateLedgerOp().withCustomMetadata(customMetadata)...
+ * }</pre>
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public enum CompressionType {
+
+    /**
+     * Entries are not compressed.
+     */
+    NONE,
+    /**
+     * Entries are compressed with the Snappy format, fast with a moderate ratio.
+     */
+    SNAPPY,
+    /**
+     * Entries are compressed with the Deflate format, slower with a better ratio.
+     */
+    DEFLATE;
+
+    /**
+     * The key of the compression type in the custom metadata of a ledger.
+     */
+    public static final String CUSTOM_METADATA_KEY = "bookkeeper.entry.compression";
+
+    /**
+     * Gets the value of this compression type in the custom metadata of a ledger.
+     *
+     * @return the value to map to {@link #CUSTOM_METADATA_KEY}
+     */
+    public byte[] toCustomMetadataValue() {
+        return name().getBytes(UTF_8);
+    }
+
+}
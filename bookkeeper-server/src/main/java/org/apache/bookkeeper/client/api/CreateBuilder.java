@@ -23,6 +23,7 @@ package org.apache.bookkeeper.client.api;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 
@@ -122,4 +123,19 @@ public interface CreateBuilder extends OpBuilder<WriteHandle> {
      */
     CreateAdvBuilder makeAdv();
 
+    /**
+     * Create several ledgers at once with the same configuration. The ledgers are created concurrently
+     * and their metadata is written in batches, each ledger is created or fails on its own.
+     *
+     * @param numLedgers the number of ledgers to create
+     *
+     * @return an handle to the result, the handles of the ledgers created
+     * @since 4.18
+     */
+    default CompletableFuture<BulkResult<WriteHandle>> executeBulk(int numLedgers) {
+        CompletableFuture<BulkResult<WriteHandle>> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException());
+        return future;
+    }
+
 }
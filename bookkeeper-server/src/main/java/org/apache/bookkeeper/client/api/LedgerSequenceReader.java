@@ -0,0 +1,68 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read the entries of a sequence of ledgers, in order.
+ *
+ * <p>The reader opens the next ledgers and reads ahead, across the ledger boundaries, while the
+ * entries read are consumed, so the throughput doesn't drop at the end of each ledger. The entries
+ * read ahead are bounded by {@link LedgerSequenceReaderBuilder#withMaxBytesInFlight(long)}.
+ *
+ * <p>The ledgers which aren't closed are read up to their last add confirmed when they are opened.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface LedgerSequenceReader extends AutoCloseable {
+
+    /**
+     * Read the next entries of the sequence asynchronously. The entries returned belong to a
+     * single ledger. Only one read can be outstanding at a time.
+     *
+     * @return an handle to the result, in case of success the next entries, or null once all the
+     *         entries of the sequence were read
+     */
+    CompletableFuture<LedgerEntries> readNextAsync();
+
+    /**
+     * Read the next entries of the sequence synchronously.
+     *
+     * @return the next entries, or null once all the entries of the sequence were read
+     * @see #readNextAsync()
+     */
+    default LedgerEntries readNext() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(readNextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Close the reader, releasing the entries read ahead and closing the handles of the ledgers.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Builder-style interface to create a reader of a sequence of ledgers.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface LedgerSequenceReaderBuilder {
+
+    /**
+     * Append all the entries of a ledger to the sequence.
+     *
+     * @param ledgerId the id of the ledger
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder addLedger(long ledgerId);
+
+    /**
+     * Append a range of entries of a ledger to the sequence.
+     *
+     * @param ledgerId the id of the ledger
+     * @param firstEntry id of the first entry of the range
+     * @param lastEntry id of the last entry of the range (included)
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder addLedger(long ledgerId, long firstEntry, long lastEntry);
+
+    /**
+     * Sets the password to be used to open the ledgers. It defaults to an empty password.
+     *
+     * @param password the password to unlock the ledgers
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder withPassword(byte[] password);
+
+    /**
+     * Sets the expected digest type used to check the contents of the ledgers. It defaults to
+     * {@link DigestType#CRC32}.
+     *
+     * @param digestType the type of digest
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder withDigestType(DigestType digestType);
+
+    /**
+     * Sets the max size of the entries read ahead, which are being read or weren't consumed yet.
+     * It defaults to 8 MB.
+     *
+     * @param maxBytesInFlight the max size of the entries read ahead, in bytes
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder withMaxBytesInFlight(long maxBytesInFlight);
+
+    /**
+     * Sets the number of ledgers opened ahead of the ledger being read. It defaults to 2.
+     *
+     * @param maxLedgersOpenAhead the number of ledgers opened ahead
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder withMaxLedgersOpenAhead(int maxLedgersOpenAhead);
+
+    /**
+     * Sets the max number of entries of a read request. It defaults to 100.
+     *
+     * @param maxEntriesPerRead the max number of entries of a read request
+     *
+     * @return the builder itself
+     */
+    LedgerSequenceReaderBuilder withMaxEntriesPerRead(int maxEntriesPerRead);
+
+    /**
+     * Create the reader. The reader starts opening and reading the ledgers.
+     *
+     * @return the reader
+     */
+    LedgerSequenceReader build();
+
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.List;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Builder-style interface to open several exiting ledgers at once. The ledgers are opened
+ * concurrently, each ledger is opened or fails on its own.
+ *
+ * @since 4.18
+ * @see BookKeeper#newOpenLedgersOp()
+ */
+@Public
+@Unstable
+public interface OpenLedgersBuilder extends OpBuilder<BulkResult<ReadHandle>> {
+
+    /**
+     * Set the ids of the ledgers to be opened.
+     *
+     * @param ledgerIds the ids of the ledgers
+     *
+     * @return the builder itself
+     */
+    OpenLedgersBuilder withLedgerIds(List<Long> ledgerIds);
+
+    /**
+     * Define to open the ledgers in recovery mode or in readonly mode. It defaults to 'false'.
+     *
+     * @param recovery recovery mode
+     *
+     * @return the builder itself
+     * @see OpenBuilder#withRecovery(boolean)
+     */
+    OpenLedgersBuilder withRecovery(boolean recovery);
+
+    /**
+     * Sets the password to be used to open the ledgers. It defaults to an empty password.
+     *
+     * @param password the password to unlock the ledgers
+     *
+     * @return the builder itself
+     */
+    OpenLedgersBuilder withPassword(byte[] password);
+
+    /**
+     * Sets the expected digest type used to check the contents of the ledgers. It defaults to
+     * {@link DigestType#CRC32}.
+     *
+     * @param digestType the type of digest
+     *
+     * @return the builder itself
+     * @see OpenBuilder#withDigestType(DigestType)
+     */
+    OpenLedgersBuilder withDigestType(DigestType digestType);
+
+}
@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.RecordReadHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read the records of a ledger written by a {@link BatchingWriteHandle}, unpacking the records of
+ * each entry.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface RecordReadHandle {
+
+    /**
+     * Create a record view of a read handle.
+     *
+     * @param handle the handle of a ledger written by a {@link BatchingWriteHandle}
+     * @return the record view
+     */
+    static RecordReadHandle of(ReadHandle handle) {
+        return new RecordReadHandleImpl(handle);
+    }
+
+    /**
+     * Read the records of a range of entries asynchronously.
+     *
+     * @param firstEntry id of the first entry of the range
+     * @param lastEntry id of the last entry of the range (included)
+     * @return an handle to the result, in case of success the records of the entries, in order
+     */
+    CompletableFuture<List<Record>> readAsync(long firstEntry, long lastEntry);
+
+    /**
+     * Read the records of a range of entries synchronously.
+     *
+     * @param firstEntry id of the first entry of the range
+     * @param lastEntry id of the last entry of the range (included)
+     * @return the records of the entries, in order
+     */
+    default List<Record> read(long firstEntry, long lastEntry) throws BKException, InterruptedException {
+        return FutureUtils.<List<Record>, BKException>result(readAsync(firstEntry, lastEntry), BKException.HANDLER);
+    }
+
+    /**
+     * Read the record at a position asynchronously.
+     *
+     * @param position the position of the record
+     * @return an handle to the result, in case of success the record
+     */
+    CompletableFuture<Record> readAsync(RecordPosition position);
+
+    /**
+     * Get the read handle of the ledger.
+     *
+     * @return the read handle
+     */
+    ReadHandle getReadHandle();
+
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write handle which packs the records into batches, each batch appended as one entry.
+ *
+ * <p>The batches are cut holding the lock of the handle, which orders them, and queued. They are
+ * encoded and appended to the ledger by whichever thread finds the queue not being drained, without
+ * holding the lock, so the producers don't wait for the appends of each other.
+ */
+public class BatchingWriteHandleImpl implements BatchingWriteHandle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingWriteHandleImpl.class);
+
+    /**
+     * A batch cut from the records, waiting to be appended.
+     */
+    private static final class Batch {
+        final List<ByteBuf> records;
+        final int size;
+        final CompletableFuture<Long> append = new CompletableFuture<>();
+
+        Batch(List<ByteBuf> records, int size) {
+            this.records = records;
+            this.size = size;
+        }
+    }
+
+    private final WriteHandle handle;
+    private final ByteBufAllocator allocator;
+    private final int maxBatchSize;
+    private final int maxBatchRecords;
+    private final long maxBatchDelayNanos;
+    private final ScheduledExecutorService scheduler;
+
+    // the current batch, guarded by this
+    private List<ByteBuf> records = new ArrayList<>();
+    private List<CompletableFuture<RecordPosition>> recordFutures = new ArrayList<>();
+    private int batchSize = RecordBatches.HEADER_SIZE;
+    // incremented by each cut of a batch, so a delayed append doesn't append a later batch
+    private long batchSequence = 0;
+    // completes once all the batches cut so far are appended, failed if any of them failed
+    private CompletableFuture<Void> appendsDone = FutureUtils.Void();
+    private CompletableFuture<Void> closeFuture = null;
+
+    // the batches cut and not appended yet, in order
+    private final Queue<Batch> batchesToAppend = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger(0);
+
+    public BatchingWriteHandleImpl(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                   long maxBatchDelay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(handle, handle instanceof LedgerHandle
+                        ? ((LedgerHandle) handle).getByteBufAllocator() : ByteBufAllocator.DEFAULT,
+                maxBatchSize, maxBatchRecords, maxBatchDelay, unit, scheduler);
+    }
+
+    public BatchingWriteHandleImpl(WriteHandle handle, ByteBufAllocator allocator, int maxBatchSize,
+                                   int maxBatchRecords, long maxBatchDelay, TimeUnit unit,
+                                   ScheduledExecutorService scheduler) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(maxBatchRecords > 0, "maxBatchRecords must be positive");
+        checkArgument(maxBatchDelay <= 0 || scheduler != null, "a scheduler is required for the batch delay");
+        this.handle = handle;
+        this.allocator = allocator;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxBatchDelayNanos = unit.toNanos(Math.max(maxBatchDelay, 0));
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        boolean scheduleAppend = false;
+        long sequence;
+        synchronized (this) {
+            if (closeFuture != null) {
+                record.release();
+                future.completeExceptionally(new BKException.BKLedgerClosedException());
+                return future;
+            }
+
+            int recordSize = RecordBatches.RECORD_HEADER_SIZE + record.readableBytes();
+            if (!records.isEmpty() && batchSize + recordSize > maxBatchSize) {
+                cutBatch();
+            }
+            records.add(record);
+            recordFutures.add(future);
+            batchSize += recordSize;
+
+            if (batchSize >= maxBatchSize || records.size() >= maxBatchRecords) {
+                cutBatch();
+            } else if (records.size() == 1 && maxBatchDelayNanos > 0) {
+                scheduleAppend = true;
+            }
+            sequence = batchSequence;
+        }
+        if (scheduleAppend) {
+            scheduleAppend(sequence);
+        }
+        appendBatches();
+        return future;
+    }
+
+    private void scheduleAppend(long sequence) {
+        try {
+            scheduler.schedule(() -> appendBatchIfCurrent(sequence), maxBatchDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Failed to schedule the append of the batch of ledger {}, appending it now", handle.getId());
+            appendBatchIfCurrent(sequence);
+        }
+    }
+
+    private void appendBatchIfCurrent(long sequence) {
+        synchronized (this) {
+            if (sequence == batchSequence) {
+                cutBatch();
+            }
+        }
+        appendBatches();
+    }
+
+    // must be called holding the lock of this, so the batches are queued in order
+    private void cutBatch() {
+        if (records.isEmpty()) {
+            return;
+        }
+        Batch batch = new Batch(records, batchSize);
+        List<CompletableFuture<RecordPosition>> futures = recordFutures;
+        records = new ArrayList<>();
+        recordFutures = new ArrayList<>();
+        batchSize = RecordBatches.HEADER_SIZE;
+        batchSequence++;
+
+        batch.append.whenComplete((entryId, cause) -> {
+            for (int i = 0; i < futures.size(); i++) {
+                if (cause != null) {
+                    futures.get(i).completeExceptionally(cause);
+                } else {
+                    futures.get(i).complete(new RecordBatches.Position(entryId, i));
+                }
+            }
+        });
+        appendsDone = CompletableFuture.allOf(appendsDone, batch.append);
+        batchesToAppend.add(batch);
+    }
+
+    /**
+     * Append the queued batches, unless another thread is appending them. Must be called without
+     * holding the lock of this.
+     */
+    private void appendBatches() {
+        if (drainRequests.getAndIncrement() != 0) {
+            // the thread draining the queue will see the batches queued before the request
+            return;
+        }
+        int requests = 1;
+        do {
+            Batch batch;
+            while ((batch = batchesToAppend.poll()) != null) {
+                appendBatch(batch);
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void appendBatch(Batch batch) {
+        ByteBuf entry;
+        try {
+            entry = RecordBatches.encode(allocator, batch.records, batch.size);
+        } catch (Throwable t) {
+            LOG.error("Failed to encode a batch of {} records of ledger {}", batch.records.size(), handle.getId(),
+                    t);
+            batch.append.completeExceptionally(t);
+            return;
+        }
+        FutureUtils.proxyTo(handle.appendAsync(entry), batch.append);
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> flushed;
+        synchronized (this) {
+            cutBatch();
+            flushed = appendsDone;
+        }
+        appendBatches();
+        return flushed;
+    }
+
+    @Override
+    public WriteHandle getWriteHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Void> closed;
+        synchronized (this) {
+            if (closeFuture == null) {
+                cutBatch();
+                // closing the ledger fails the appends in flight, wait for them first
+                closeFuture = appendsDone.handle((ignore, cause) -> null).thenCompose(ignore -> handle.closeAsync());
+            }
+            closed = closeFuture;
+        }
+        appendBatches();
+        return closed;
+    }
+}
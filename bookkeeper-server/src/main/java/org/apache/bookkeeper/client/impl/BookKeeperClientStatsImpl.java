@@ -130,6 +130,21 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "The number of unsuccessful lac updates on piggybacked responses"
     )
     private final Counter lacUpdateMissesCounter;
+    @StatsDoc(
+        name = COMPRESSION_SAVED_BYTES,
+        help = "The number of bytes saved by compressing the entries added to the compressed ledgers"
+    )
+    private final Counter compressionSavedBytesCounter;
+    @StatsDoc(
+        name = ENTRY_CACHE_HITS,
+        help = "The number of entries read from the client entry cache"
+    )
+    private final Counter entryCacheHitsCounter;
+    @StatsDoc(
+        name = ENTRY_CACHE_MISSES,
+        help = "The number of entries read from the bookies while the client entry cache is enabled"
+    )
+    private final Counter entryCacheMissesCounter;
     @StatsDoc(
         name = CLIENT_CHANNEL_WRITE_WAIT,
         help = " The latency distribution of waiting time on channel being writable"
@@ -181,6 +196,9 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.ensembleChangeCounter = stats.getCounter(ENSEMBLE_CHANGES);
         this.lacUpdateHitsCounter = stats.getCounter(LAC_UPDATE_HITS);
         this.lacUpdateMissesCounter = stats.getCounter(LAC_UPDATE_MISSES);
+        this.compressionSavedBytesCounter = stats.getCounter(COMPRESSION_SAVED_BYTES);
+        this.entryCacheHitsCounter = stats.getCounter(ENTRY_CACHE_HITS);
+        this.entryCacheMissesCounter = stats.getCounter(ENTRY_CACHE_MISSES);
         this.clientChannelWriteWaitStats = stats.getOpStatsLogger(CLIENT_CHANNEL_WRITE_WAIT);
 
         speculativeReadCounter = stats.getCounter(SPECULATIVE_READ_COUNT);
@@ -269,6 +287,18 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return lacUpdateMissesCounter;
     }
     @Override
+    public Counter getCompressionSavedBytesCounter() {
+        return compressionSavedBytesCounter;
+    }
+    @Override
+    public Counter getEntryCacheHitsCounter() {
+        return entryCacheHitsCounter;
+    }
+    @Override
+    public Counter getEntryCacheMissesCounter() {
+        return entryCacheMissesCounter;
+    }
+    @Override
     public OpStatsLogger getClientChannelWriteWaitLogger() {
         return clientChannelWriteWaitStats;
     }
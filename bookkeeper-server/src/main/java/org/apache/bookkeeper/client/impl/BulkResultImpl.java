@@ -0,0 +1,96 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.api.BulkResult;
+
+/**
+ * The results of an operation on several ledgers, collected from the operations on each ledger.
+ */
+public class BulkResultImpl<T> implements BulkResult<T> {
+
+    private final Object[] results;
+    private final Throwable[] failures;
+    private final int numFailures;
+
+    /**
+     * Wait for the operations on the ledgers to complete and collect their results.
+     *
+     * @param futures the operations on the ledgers, in the order of the request
+     * @return the results, once all the operations completed
+     */
+    public static <T> CompletableFuture<BulkResult<T>> collect(List<CompletableFuture<T>> futures) {
+        CompletableFuture<BulkResult<T>> result = new CompletableFuture<>();
+        if (futures.isEmpty()) {
+            result.complete(new BulkResultImpl<>(futures));
+            return result;
+        }
+        AtomicInteger pending = new AtomicInteger(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, cause) -> {
+                if (pending.decrementAndGet() == 0) {
+                    result.complete(new BulkResultImpl<>(futures));
+                }
+            });
+        }
+        return result;
+    }
+
+    private BulkResultImpl(List<CompletableFuture<T>> futures) {
+        this.results = new Object[futures.size()];
+        this.failures = new Throwable[futures.size()];
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results[i] = futures.get(i).join();
+            } catch (CompletionException e) {
+                failures[i] = e.getCause() != null ? e.getCause() : e;
+                failed++;
+            }
+        }
+        this.numFailures = failed;
+    }
+
+    @Override
+    public int size() {
+        return results.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getResult(int index) {
+        return (T) results[index];
+    }
+
+    @Override
+    public Throwable getFailure(int index) {
+        return failures[index];
+    }
+
+    @Override
+    public int getNumFailures() {
+        return numFailures;
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BookKeeper;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerSequenceReader;
+import org.apache.bookkeeper.client.api.LedgerSequenceReaderBuilder;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reader of a sequence of ledgers, which pipelines the opens of the ledgers and the reads of their
+ * entries under a window of bytes, and delivers the entries in order.
+ *
+ * <p>The reads are batch reads of up to {@code maxEntriesPerRead} entries. As the size of the entries
+ * isn't known before they are read, the window reserves the average size of the entries read so far
+ * for each entry being read, and the actual size once they are read, until they are consumed.
+ *
+ * <p>The state of the reader is guarded by the reader. The opens, the reads and the completions of
+ * the reads of the consumer are issued once the lock is released, as they may complete inline.
+ */
+public class LedgerSequenceReaderImpl implements LedgerSequenceReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerSequenceReaderImpl.class);
+
+    static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 8 * 1024 * 1024;
+    static final int DEFAULT_MAX_LEDGERS_OPEN_AHEAD = 2;
+    static final int DEFAULT_MAX_ENTRIES_PER_READ = 100;
+    // the size assumed for the entries until some are read
+    private static final long INITIAL_ENTRY_SIZE_ESTIMATE = 1024;
+    // the max size of a batch read, below the default max frame size of the client
+    private static final long MAX_BATCH_READ_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Builder of a reader of a sequence of ledgers.
+     */
+    public static class BuilderImpl implements LedgerSequenceReaderBuilder {
+
+        private final BookKeeper client;
+        private final List<Segment> segments = new ArrayList<>();
+        private byte[] password = new byte[0];
+        private DigestType digestType = DigestType.CRC32;
+        private long maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
+        private int maxLedgersOpenAhead = DEFAULT_MAX_LEDGERS_OPEN_AHEAD;
+        private int maxEntriesPerRead = DEFAULT_MAX_ENTRIES_PER_READ;
+
+        public BuilderImpl(BookKeeper client) {
+            this.client = client;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder addLedger(long ledgerId) {
+            return addLedger(ledgerId, 0, Long.MAX_VALUE);
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder addLedger(long ledgerId, long firstEntry, long lastEntry) {
+            if (ledgerId < 0 || firstEntry < 0 || lastEntry < firstEntry) {
+                throw new IllegalArgumentException("Invalid range of ledger " + ledgerId + " : ["
+                        + firstEntry + ", " + lastEntry + "]");
+            }
+            segments.add(new Segment(ledgerId, firstEntry, lastEntry));
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder withPassword(byte[] password) {
+            this.password = password;
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder withDigestType(DigestType digestType) {
+            this.digestType = digestType;
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder withMaxBytesInFlight(long maxBytesInFlight) {
+            this.maxBytesInFlight = maxBytesInFlight;
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder withMaxLedgersOpenAhead(int maxLedgersOpenAhead) {
+            this.maxLedgersOpenAhead = maxLedgersOpenAhead;
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReaderBuilder withMaxEntriesPerRead(int maxEntriesPerRead) {
+            this.maxEntriesPerRead = maxEntriesPerRead;
+            return this;
+        }
+
+        @Override
+        public LedgerSequenceReader build() {
+            if (segments.isEmpty()) {
+                throw new IllegalArgumentException("No ledger to read");
+            }
+            if (maxBytesInFlight <= 0 || maxLedgersOpenAhead < 0 || maxEntriesPerRead <= 0) {
+                throw new IllegalArgumentException("Invalid read ahead limits : maxBytesInFlight = "
+                        + maxBytesInFlight + ", maxLedgersOpenAhead = " + maxLedgersOpenAhead
+                        + ", maxEntriesPerRead = " + maxEntriesPerRead);
+            }
+            LedgerSequenceReaderImpl reader = new LedgerSequenceReaderImpl(this);
+            reader.advance();
+            return reader;
+        }
+    }
+
+    /**
+     * A range of entries of a ledger of the sequence.
+     */
+    private static final class Segment {
+        final long ledgerId;
+        final long firstEntry;
+        final long lastEntry;
+
+        ReadHandle handle;
+        Throwable openFailure;
+        // the last entry to read, once the ledger is opened
+        long endEntry;
+        // the next entry to request
+        long nextEntry;
+        int pendingReads = 0;
+        boolean handleClosed = false;
+
+        Segment(long ledgerId, long firstEntry, long lastEntry) {
+            this.ledgerId = ledgerId;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+    }
+
+    /**
+     * A read of a range of entries of a segment.
+     */
+    private static final class ReadRequest {
+        final Segment segment;
+        final long firstEntry;
+        final long lastEntry;
+        // the bytes reserved in the window, the actual size of the entries once they are read
+        long bytes;
+        boolean done = false;
+        // whether the entries are released once read, as the reader is closed or stopped
+        boolean discarded = false;
+        LedgerEntries entries;
+        Throwable cause;
+
+        ReadRequest(Segment segment, long firstEntry, long lastEntry, long bytes) {
+            this.segment = segment;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.bytes = bytes;
+        }
+    }
+
+    private final BookKeeper client;
+    private final byte[] password;
+    private final DigestType digestType;
+    private final long maxBytesInFlight;
+    private final int maxLedgersOpenAhead;
+    private final int maxEntriesPerRead;
+    private final Segment[] segments;
+    private volatile boolean batchReadUnsupported = false;
+
+    private int nextSegmentToOpen = 0;
+    private int nextSegmentToRead = 0;
+    // the reads, in the order of their entries
+    private final ArrayDeque<ReadRequest> requests = new ArrayDeque<>();
+    private long bytesInFlight = 0;
+    private long bytesRead = 0;
+    private long entriesRead = 0;
+    // the pending read of the consumer
+    private CompletableFuture<LedgerEntries> waiter = null;
+    // the failure which stopped the read ahead
+    private Throwable failure = null;
+    private boolean closed = false;
+
+    private LedgerSequenceReaderImpl(BuilderImpl builder) {
+        this.client = builder.client;
+        this.password = builder.password;
+        this.digestType = builder.digestType;
+        this.maxBytesInFlight = builder.maxBytesInFlight;
+        this.maxLedgersOpenAhead = builder.maxLedgersOpenAhead;
+        this.maxEntriesPerRead = builder.maxEntriesPerRead;
+        this.segments = new Segment[builder.segments.size()];
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = builder.segments.get(i);
+            segments[i] = new Segment(segment.ledgerId, segment.firstEntry, segment.lastEntry);
+        }
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readNextAsync() {
+        List<Runnable> actions = new ArrayList<>();
+        CompletableFuture<LedgerEntries> result = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed || waiter != null) {
+                return FutureUtils.exception(new BKException.BKIllegalOpException());
+            }
+            waiter = result;
+            deliver(actions);
+        }
+        run(actions);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            discardRequests(actions);
+            for (Segment segment : segments) {
+                maybeCloseHandle(segment, actions);
+            }
+            if (waiter != null) {
+                CompletableFuture<LedgerEntries> pendingRead = waiter;
+                waiter = null;
+                actions.add(() -> pendingRead.completeExceptionally(new BKException.BKIllegalOpException()));
+            }
+        }
+        run(actions);
+    }
+
+    private void advance() {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            fill(actions);
+        }
+        run(actions);
+    }
+
+    private static void run(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Open the next ledgers and read ahead, until the window is full.
+     */
+    private void fill(List<Runnable> actions) {
+        while (!closed && failure == null) {
+            while (nextSegmentToOpen < segments.length
+                    && nextSegmentToOpen <= nextSegmentToRead + maxLedgersOpenAhead) {
+                Segment segment = segments[nextSegmentToOpen++];
+                actions.add(() -> open(segment));
+            }
+            if (nextSegmentToRead >= segments.length) {
+                return;
+            }
+            Segment segment = segments[nextSegmentToRead];
+            if (segment.openFailure != null) {
+                ReadRequest request = new ReadRequest(segment, -1L, -1L, 0L);
+                request.done = true;
+                request.cause = segment.openFailure;
+                requests.add(request);
+                failure = segment.openFailure;
+                return;
+            }
+            if (segment.handle == null) {
+                // the ledger is being opened
+                return;
+            }
+            if (segment.nextEntry > segment.endEntry) {
+                nextSegmentToRead++;
+                maybeCloseHandle(segment, actions);
+                continue;
+            }
+            long numEntries = Math.min(maxEntriesPerRead, segment.endEntry - segment.nextEntry + 1);
+            long bytes = numEntries * entrySizeEstimate();
+            if (bytesInFlight > 0 && bytesInFlight + bytes > maxBytesInFlight) {
+                return;
+            }
+            ReadRequest request = new ReadRequest(segment, segment.nextEntry, segment.nextEntry + numEntries - 1,
+                    bytes);
+            segment.nextEntry += numEntries;
+            segment.pendingReads++;
+            bytesInFlight += bytes;
+            requests.add(request);
+            actions.add(() -> read(request));
+        }
+    }
+
+    /**
+     * Hand the next entries to the pending read of the consumer, if they are read.
+     */
+    private void deliver(List<Runnable> actions) {
+        if (waiter == null) {
+            return;
+        }
+        CompletableFuture<LedgerEntries> pendingRead = waiter;
+        ReadRequest request = requests.peek();
+        if (request != null) {
+            if (!request.done) {
+                return;
+            }
+            requests.poll();
+            waiter = null;
+            if (request.cause != null) {
+                Throwable cause = request.cause;
+                failure = cause;
+                discardRequests(actions);
+                actions.add(() -> pendingRead.completeExceptionally(cause));
+            } else {
+                LedgerEntries entries = request.entries;
+                bytesInFlight -= request.bytes;
+                actions.add(() -> pendingRead.complete(entries));
+                fill(actions);
+            }
+        } else if (failure != null) {
+            waiter = null;
+            Throwable cause = failure;
+            actions.add(() -> pendingRead.completeExceptionally(cause));
+        } else if (nextSegmentToRead >= segments.length) {
+            waiter = null;
+            actions.add(() -> pendingRead.complete(null));
+        }
+    }
+
+    private void discardRequests(List<Runnable> actions) {
+        ReadRequest request;
+        while ((request = requests.poll()) != null) {
+            if (request.entries != null) {
+                actions.add(request.entries::close);
+            }
+            request.discarded = true;
+        }
+    }
+
+    private void maybeCloseHandle(Segment segment, List<Runnable> actions) {
+        if (segment.handle != null && !segment.handleClosed && segment.pendingReads == 0
+                && (closed || segment.nextEntry > segment.endEntry)) {
+            segment.handleClosed = true;
+            ReadHandle handle = segment.handle;
+            actions.add(() -> handle.closeAsync());
+        }
+    }
+
+    private long entrySizeEstimate() {
+        return entriesRead == 0 ? INITIAL_ENTRY_SIZE_ESTIMATE : Math.max(1L, bytesRead / entriesRead);
+    }
+
+    private void open(Segment segment) {
+        client.newOpenLedgerOp()
+            .withLedgerId(segment.ledgerId)
+            .withPassword(password)
+            .withDigestType(digestType)
+            .withRecovery(false)
+            .execute()
+            .whenComplete((handle, cause) -> opened(segment, handle, cause));
+    }
+
+    private void opened(Segment segment, ReadHandle handle, Throwable cause) {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            if (cause != null) {
+                LOG.warn("Failed to open ledger {} of the sequence", segment.ledgerId, cause);
+                segment.openFailure = cause;
+            } else {
+                segment.handle = handle;
+                segment.nextEntry = segment.firstEntry;
+                segment.endEntry = Math.min(segment.lastEntry, handle.getLastAddConfirmed());
+                if (closed) {
+                    maybeCloseHandle(segment, actions);
+                }
+            }
+            fill(actions);
+            deliver(actions);
+        }
+        run(actions);
+    }
+
+    private void read(ReadRequest request) {
+        readEntries(request.segment.handle, request.firstEntry, request.lastEntry)
+            .whenComplete((entries, cause) -> readComplete(request, entries, cause));
+    }
+
+    private void readComplete(ReadRequest request, LedgerEntries entries, Throwable cause) {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            request.segment.pendingReads--;
+            maybeCloseHandle(request.segment, actions);
+            if (request.discarded) {
+                if (entries != null) {
+                    actions.add(entries::close);
+                }
+            } else {
+                request.done = true;
+                if (cause != null) {
+                    LOG.warn("Failed to read entries [{}, {}] of ledger {} of the sequence",
+                            request.firstEntry, request.lastEntry, request.segment.ledgerId, cause);
+                    request.cause = cause;
+                    if (failure == null) {
+                        failure = cause;
+                    }
+                    bytesInFlight -= request.bytes;
+                    request.bytes = 0;
+                } else {
+                    long bytes = 0;
+                    long numEntries = 0;
+                    for (LedgerEntry entry : entries) {
+                        bytes += entry.getEntryBuffer().readableBytes();
+                        numEntries++;
+                    }
+                    bytesRead += bytes;
+                    entriesRead += numEntries;
+                    bytesInFlight += bytes - request.bytes;
+                    request.bytes = bytes;
+                    request.entries = entries;
+                }
+                fill(actions);
+                deliver(actions);
+            }
+        }
+        run(actions);
+    }
+
+    /**
+     * Read a range of entries with batch reads, falling back to a range read if the handle doesn't
+     * support batch reads. A batch read returns less entries than asked if they exceed its max size,
+     * the rest of the range is read then.
+     */
+    private CompletableFuture<LedgerEntries> readEntries(ReadHandle handle, long firstEntry, long lastEntry) {
+        if (batchReadUnsupported) {
+            return handle.readAsync(firstEntry, lastEntry);
+        }
+        CompletableFuture<LedgerEntries> result = new CompletableFuture<>();
+        int maxCount = (int) (lastEntry - firstEntry + 1);
+        handle.batchReadAsync(firstEntry, maxCount, Math.min(maxBytesInFlight, MAX_BATCH_READ_BYTES))
+            .whenComplete((entries, cause) -> {
+                if (cause != null) {
+                    Throwable t = cause instanceof CompletionException && cause.getCause() != null
+                            ? cause.getCause() : cause;
+                    if (t instanceof UnsupportedOperationException) {
+                        batchReadUnsupported = true;
+                        FutureUtils.proxyTo(handle.readAsync(firstEntry, lastEntry), result);
+                    } else {
+                        result.completeExceptionally(cause);
+                    }
+                    return;
+                }
+                long lastEntryRead = firstEntry - 1;
+                for (LedgerEntry entry : entries) {
+                    lastEntryRead = entry.getEntryId();
+                }
+                if (lastEntryRead >= lastEntry) {
+                    result.complete(entries);
+                } else if (lastEntryRead < firstEntry) {
+                    entries.close();
+                    result.completeExceptionally(new BKException.BKReadException());
+                } else {
+                    readEntries(handle, lastEntryRead + 1, lastEntry).whenComplete((rest, restCause) -> {
+                        if (restCause != null) {
+                            entries.close();
+                            result.completeExceptionally(restCause);
+                        } else {
+                            result.complete(concat(entries, rest));
+                        }
+                    });
+                }
+            });
+        return result;
+    }
+
+    private static LedgerEntries concat(LedgerEntries first, LedgerEntries second) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        try (LedgerEntries head = first; LedgerEntries tail = second) {
+            for (LedgerEntry entry : head) {
+                entries.add(LedgerEntryImpl.duplicate(entry));
+            }
+            for (LedgerEntry entry : tail) {
+                entries.add(LedgerEntryImpl.duplicate(entry));
+            }
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+}
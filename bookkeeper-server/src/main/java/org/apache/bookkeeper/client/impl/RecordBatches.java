@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.List;
+import org.apache.bookkeeper.client.api.Record;
+import org.apache.bookkeeper.client.api.RecordPosition;
+
+/**
+ * The format of the entries written by a {@link org.apache.bookkeeper.client.api.BatchingWriteHandle}.
+ *
+ * <p>An entry is a batch of records: a magic number, the number of records, then for each record its
+ * size and its bytes.
+ */
+final class RecordBatches {
+
+    private static final int MAGIC = 0x42524231; // "BRB1"
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private RecordBatches() {}
+
+    /**
+     * Encode the records into an entry, and release them, even if the entry can't be allocated.
+     *
+     * @param allocator the allocator of the entry
+     * @param size the size of the entry, i.e. the header size and the size of the records with their headers
+     */
+    static ByteBuf encode(ByteBufAllocator allocator, List<ByteBuf> records, int size) {
+        ByteBuf entry;
+        try {
+            entry = allocator.buffer(size, size);
+        } catch (Throwable t) {
+            records.forEach(ByteBuf::release);
+            throw t;
+        }
+        entry.writeInt(MAGIC);
+        entry.writeInt(records.size());
+        for (ByteBuf record : records) {
+            entry.writeInt(record.readableBytes());
+            entry.writeBytes(record, record.readerIndex(), record.readableBytes());
+            record.release();
+        }
+        return entry;
+    }
+
+    /**
+     * Decode the records of an entry.
+     *
+     * @return false if the entry isn't a batch of records
+     */
+    static boolean decode(long entryId, ByteBuf entry, List<Record> records) {
+        int index = entry.readerIndex();
+        if (entry.readableBytes() < HEADER_SIZE || entry.getInt(index) != MAGIC) {
+            return false;
+        }
+        int count = entry.getInt(index + 4);
+        index += HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (entry.writerIndex() - index < RECORD_HEADER_SIZE) {
+                return false;
+            }
+            int size = entry.getInt(index);
+            index += RECORD_HEADER_SIZE;
+            if (size < 0 || entry.writerIndex() - index < size) {
+                return false;
+            }
+            byte[] data = new byte[size];
+            entry.getBytes(index, data);
+            index += size;
+            records.add(new RecordImpl(new Position(entryId, i), data));
+        }
+        return true;
+    }
+
+    static final class Position implements RecordPosition {
+        private final long entryId;
+        private final int index;
+
+        Position(long entryId, int index) {
+            this.entryId = entryId;
+            this.index = index;
+        }
+
+        @Override
+        public long getEntryId() {
+            return entryId;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) o;
+            return entryId == other.entryId && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(entryId) * 31 + index;
+        }
+
+        @Override
+        public String toString() {
+            return entryId + ":" + index;
+        }
+    }
+
+    static final class RecordImpl implements Record {
+        private final RecordPosition position;
+        private final byte[] data;
+
+        RecordImpl(RecordPosition position, byte[] data) {
+            this.position = position;
+            this.data = data;
+        }
+
+        @Override
+        public RecordPosition getPosition() {
+            return position;
+        }
+
+        @Override
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.Record;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.RecordReadHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * The record view of a read handle, which unpacks the records of the batches.
+ */
+public class RecordReadHandleImpl implements RecordReadHandle {
+
+    private final ReadHandle handle;
+
+    public RecordReadHandleImpl(ReadHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public CompletableFuture<List<Record>> readAsync(long firstEntry, long lastEntry) {
+        CompletableFuture<List<Record>> result = new CompletableFuture<>();
+        handle.readAsync(firstEntry, lastEntry).whenComplete((entries, cause) -> {
+            if (cause != null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            try (LedgerEntries ledgerEntries = entries) {
+                List<Record> records = new ArrayList<>();
+                for (LedgerEntry entry : ledgerEntries) {
+                    if (!RecordBatches.decode(entry.getEntryId(), entry.getEntryBuffer(), records)) {
+                        result.completeExceptionally(new BKException.BKUnexpectedConditionException());
+                        return;
+                    }
+                }
+                result.complete(records);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Record> readAsync(RecordPosition position) {
+        return readAsync(position.getEntryId(), position.getEntryId()).thenCompose(records -> {
+            if (position.getIndex() < 0 || position.getIndex() >= records.size()) {
+                return FutureUtils.exception(new BKException.BKIncorrectParameterException());
+            }
+            return FutureUtils.value(records.get(position.getIndex()));
+        });
+    }
+
+    @Override
+    public ReadHandle getReadHandle() {
+        return handle;
+    }
+}
@@ -97,6 +97,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_CONNECT_TIMEOUT_MILLIS = "clientConnectTimeoutMillis";
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
+    protected static final String MAX_CHANNELS_PER_BOOKIE = "maxChannelsPerBookie";
+    protected static final String CHANNEL_POOL_GROW_THRESHOLD = "channelPoolGrowThreshold";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
 
@@ -105,6 +107,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String SPECULATIVE_READ_TIMEOUT = "speculativeReadTimeout";
     protected static final String FIRST_SPECULATIVE_READ_TIMEOUT = "firstSpeculativeReadTimeout";
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String SPECULATIVE_READ_BUDGET_RATIO = "speculativeReadBudgetRatio";
+    protected static final String CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES = "clientEntryCacheMaxSizeBytes";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
@@ -159,6 +164,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LATENCY_ENABLED = "readReorderByLatencyEnabled";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
     protected static final String BOOKIE_ADDRESS_RESOLVER_ENABLED = "bookieAddressResolverEnabled";
@@ -581,6 +587,57 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of channels per bookie. The channel pool of a bookie grows beyond
+     * {@link #getNumChannelsPerBookie()} channels, up to this number, when its channels are loaded,
+     * and shrinks back when they are idle. The added channels only serve the reads, so the adds of
+     * a ledger stay ordered on one channel.
+     *
+     * <p>If this is not greater than {@link #getNumChannelsPerBookie()}, the pool has a fixed size.
+     *
+     * @return max num channels per bookie.
+     */
+    public int getMaxChannelsPerBookie() {
+        return getInt(MAX_CHANNELS_PER_BOOKIE, 0);
+    }
+
+    /**
+     * Set the max number of channels per bookie.
+     *
+     * @param maxChannelsPerBookie
+     *          max num channels per bookie.
+     * @return client configuration.
+     * @see #getMaxChannelsPerBookie()
+     */
+    public ClientConfiguration setMaxChannelsPerBookie(int maxChannelsPerBookie) {
+        setProperty(MAX_CHANNELS_PER_BOOKIE, maxChannelsPerBookie);
+        return this;
+    }
+
+    /**
+     * Get the load of the least loaded channel of a bookie above which the channel pool of the
+     * bookie grows. The load of a channel is its number of pending requests, plus its bytes queued
+     * for writing in units of 64KB.
+     *
+     * @return the load threshold to grow the channel pool of a bookie.
+     */
+    public int getChannelPoolGrowThreshold() {
+        return getInt(CHANNEL_POOL_GROW_THRESHOLD, 500);
+    }
+
+    /**
+     * Set the load of the least loaded channel of a bookie above which the channel pool of the
+     * bookie grows.
+     *
+     * @param channelPoolGrowThreshold
+     *          the load threshold to grow the channel pool of a bookie.
+     * @return client configuration.
+     */
+    public ClientConfiguration setChannelPoolGrowThreshold(int channelPoolGrowThreshold) {
+        setProperty(CHANNEL_POOL_GROW_THRESHOLD, channelPoolGrowThreshold);
+        return this;
+    }
+
     /**
      * Use older Bookkeeper wire protocol (no protobuf).
      *
@@ -1044,6 +1101,82 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the read latencies of a bookie after which a read sent to it is
+     * speculatively sent to the next bookie, e.g. 95 for the p95 latency.
+     *
+     * <p>If it is set, the speculative reads are timed by the recent read latencies of the bookies
+     * instead of backing off from the first speculative read timeout: the first speculative read
+     * timeout is used until a bookie served enough reads, and the max speculative read timeout
+     * caps the delay. The speculative reads are limited by {@link #getSpeculativeReadBudgetRatio()}.
+     * If &lt;= zero, the speculative reads are timed by the backoff.
+     *
+     * @return the percentile of the read latencies to issue the speculative reads at.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 0);
+    }
+
+    /**
+     * Set the percentile of the read latencies of a bookie after which a read sent to it is
+     * speculatively sent to the next bookie.
+     *
+     * @param percentile
+     *          the percentile of the read latencies, in (0, 100).
+     * @return client configuration.
+     * @see #getSpeculativeReadLatencyPercentile()
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the max ratio of speculative reads to reads, when the speculative reads are timed by the
+     * read latencies of the bookies, e.g. 0.05 for at most 5% extra reads.
+     *
+     * @return the max ratio of speculative reads to reads.
+     */
+    public double getSpeculativeReadBudgetRatio() {
+        return getDouble(SPECULATIVE_READ_BUDGET_RATIO, 0.05);
+    }
+
+    /**
+     * Set the max ratio of speculative reads to reads, when the speculative reads are timed by the
+     * read latencies of the bookies.
+     *
+     * @param ratio
+     *          the max ratio of speculative reads to reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadBudgetRatio(double ratio) {
+        setProperty(SPECULATIVE_READ_BUDGET_RATIO, ratio);
+        return this;
+    }
+
+    /**
+     * Get the max size of the cache of the entries read by the client. The confirmed entries read
+     * from the bookies are cached, so the entries read again are served without reading them from
+     * the bookies. 0 disables the cache.
+     *
+     * @return the max size of the client entry cache, in bytes.
+     */
+    public long getClientEntryCacheMaxSizeBytes() {
+        return getLong(CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES, 0L);
+    }
+
+    /**
+     * Set the max size of the cache of the entries read by the client, 0 to disable the cache.
+     *
+     * @param maxSizeBytes
+     *          the max size of the client entry cache, in bytes.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientEntryCacheMaxSizeBytes(long maxSizeBytes) {
+        setProperty(CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1269,6 +1402,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether to reorder the reads by the latency of the bookies.
+     *
+     * <p>If enabled, the client tracks the recent read latency of each bookie, and the available
+     * bookies of a read sequence are tried in the order of their latency scaled by their pending
+     * requests, so a slow bookie is read from last. It takes effect only if reordering the read
+     * sequence is enabled.
+     *
+     * @return true if the reads are reordered by the latency of the bookies.
+     */
+    public boolean isReorderReadSequenceByLatencyEnabled() {
+        return getBoolean(READ_REORDER_BY_LATENCY_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reordering the reads by the latency of the bookies.
+     *
+     * @param enabled
+     *          flag to enable/disable reordering the reads by the latency of the bookies.
+     * @return client configuration.
+     * @see #isReorderReadSequenceByLatencyEnabled()
+     */
+    public ClientConfiguration setReorderReadSequenceByLatencyEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_LATENCY_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
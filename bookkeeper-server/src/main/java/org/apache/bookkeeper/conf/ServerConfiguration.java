@@ -132,6 +132,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String FILEINFO_CACHE_INITIAL_CAPACITY = "fileInfoCacheInitialCapacity";
     protected static final String FILEINFO_MAX_IDLE_TIME = "fileInfoMaxIdleTime";
     protected static final String FILEINFO_FORMAT_VERSION_TO_WRITE = "fileInfoFormatVersionToWrite";
+    protected static final String NUM_INDEX_FLUSH_THREADS = "numIndexFlushThreads";
     // Journal Parameters
     protected static final String MAX_JOURNAL_SIZE = "journalMaxSizeMB";
     protected static final String MAX_BACKUP_JOURNALS = "journalMaxBackups";
@@ -229,6 +230,18 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String ZERO_COPY_READS_ENABLED = "zeroCopyReadsEnabled";
+    protected static final String READ_COALESCING_ENABLED = "readCoalescingEnabled";
+    protected static final String ADD_ENTRY_BATCHING_ENABLED = "addEntryBatchingEnabled";
+    protected static final String WEIGHTED_FAIR_REQUEST_SCHEDULING_ENABLED = "weightedFairRequestSchedulingEnabled";
+    protected static final String REQUEST_SCHEDULING_WEIGHTS = "requestSchedulingWeights";
+    protected static final String TENANT_MAX_ADDS_PER_SECOND = "tenantMaxAddsPerSecond";
+    protected static final String TENANT_MAX_ADD_BYTES_PER_SECOND = "tenantMaxAddBytesPerSecond";
+    protected static final String TENANT_MAX_READS_PER_SECOND = "tenantMaxReadsPerSecond";
+    protected static final String THREAD_PER_CORE_REQUEST_PROCESSING_ENABLED =
+            "threadPerCoreRequestProcessingEnabled";
+    protected static final String TIERED_READS_ENABLED = "tieredReadsEnabled";
+    protected static final String NUM_DISK_READ_THREADS_PER_LEDGER_DIR = "numDiskReadThreadsPerLedgerDir";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -247,6 +260,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SKIP_LIST_SIZE_LIMIT = "skipListSizeLimit";
     protected static final String SKIP_LIST_CHUNK_SIZE_ENTRY = "skipListArenaChunkSize";
     protected static final String SKIP_LIST_MAX_ALLOC_ENTRY = "skipListArenaMaxAllocSize";
+    protected static final String MEMTABLE_OFF_HEAP_ENABLED = "memtableOffHeapEnabled";
 
     // Statistics Parameters
     protected static final String ENABLE_STATISTICS = "enableStatistics";
@@ -265,6 +279,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String MIN_USABLESIZE_FOR_INDEXFILE_CREATION = "minUsableSizeForIndexFileCreation";
     protected static final String MIN_USABLESIZE_FOR_ENTRYLOG_CREATION = "minUsableSizeForEntryLogCreation";
     protected static final String MIN_USABLESIZE_FOR_HIGH_PRIORITY_WRITES = "minUsableSizeForHighPriorityWrites";
+    protected static final String LOAD_AWARE_LEDGER_DIR_SELECTION_ENABLED = "loadAwareLedgerDirSelectionEnabled";
 
     protected static final String ALLOW_MULTIPLEDIRS_UNDER_SAME_DISKPARTITION =
         "allowMultipleDirsUnderSameDiskPartition";
@@ -741,6 +756,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of threads used to flush the dirty index pages of the ledger cache
+     * at checkpoint time. Ledgers whose index files are in the same directory are flushed
+     * sequentially, so only up to one thread per index directory is effectively used.
+     * If the value is 1, all the ledgers are flushed sequentially by the checkpointing thread.
+     *
+     * @return number of index flush threads.
+     */
+    public int getNumIndexFlushThreads() {
+        return this.getInt(NUM_INDEX_FLUSH_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads used to flush the dirty index pages at checkpoint time.
+     *
+     * @see #getNumIndexFlushThreads()
+     *
+     * @param numThreads
+     *          number of index flush threads.
+     * @return server configuration.
+     */
+    public ServerConfiguration setNumIndexFlushThreads(int numThreads) {
+        this.setProperty(NUM_INDEX_FLUSH_THREADS, numThreads);
+        return this;
+    }
+
     /**
      * Get the minimum total size for the internal file info cache tables.
      * Providing a large enough estimate at construction time avoids the need for
@@ -2033,6 +2074,248 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Send the large entries read from sealed entry logs straight from the files (sendfile),
+     * without copying them to user space. It only applies to v2 protocol reads on connections
+     * without TLS.
+     *
+     * @param enabled
+     *          whether to send read entries without copying them
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadsEnabled(boolean enabled) {
+        setProperty(ZERO_COPY_READS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether large entries read from sealed entry logs are sent without copying them to user space.
+     * @return
+     */
+    public boolean isZeroCopyReadsEnabled() {
+        return getBoolean(ZERO_COPY_READS_ENABLED, false);
+    }
+
+    /**
+     * Serve the concurrent reads of the same entry with a single storage lookup. It only applies to
+     * v2 protocol reads which are neither fencing nor high priority.
+     *
+     * @param enabled
+     *          whether to coalesce the concurrent reads of the same entry
+     * @return server configuration
+     */
+    public ServerConfiguration setReadCoalescingEnabled(boolean enabled) {
+        setProperty(READ_COALESCING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the concurrent reads of the same entry are served with a single storage lookup.
+     * @return
+     */
+    public boolean isReadCoalescingEnabled() {
+        return getBoolean(READ_COALESCING_ENABLED, false);
+    }
+
+    /**
+     * Process the v2 protocol add requests received in a read burst of a connection as a batch: they're
+     * handed to the add worker threads together, and logged to the journal with a single enqueue.
+     *
+     * @param enabled
+     *          whether to batch the add requests of a read burst
+     * @return server configuration
+     */
+    public ServerConfiguration setAddEntryBatchingEnabled(boolean enabled) {
+        setProperty(ADD_ENTRY_BATCHING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the v2 protocol add requests received in a read burst of a connection are processed as a batch.
+     * @return
+     */
+    public boolean isAddEntryBatchingEnabled() {
+        return getBoolean(ADD_ENTRY_BATCHING_ENABLED, false);
+    }
+
+    /**
+     * Schedule the read and add requests with weighted fair queueing across traffic classes (tailing reads,
+     * catch-up reads, adds, recovery and auto-recovery), instead of first-in first-out, so that a busy class
+     * can't starve the other ones. The reads and the adds are scheduled on {@link #getNumReadWorkerThreads()}
+     * and {@link #getNumAddWorkerThreads()} threads, the other requests keep using the worker thread pools.
+     *
+     * @param enabled
+     *          whether to schedule the requests with weighted fair queueing
+     * @return server configuration
+     */
+    public ServerConfiguration setWeightedFairRequestSchedulingEnabled(boolean enabled) {
+        setProperty(WEIGHTED_FAIR_REQUEST_SCHEDULING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the read and add requests are scheduled with weighted fair queueing across traffic classes.
+     * @return
+     */
+    public boolean isWeightedFairRequestSchedulingEnabled() {
+        return getBoolean(WEIGHTED_FAIR_REQUEST_SCHEDULING_ENABLED, false);
+    }
+
+    /**
+     * Set the weights of the traffic classes of the weighted fair request scheduling, as a list of
+     * {@code CLASS:weight} entries, e.g. {@code ADD:8,AUTO_RECOVERY:1}. The classes which are not set keep
+     * their default weight.
+     *
+     * @param weights
+     *          weights of the traffic classes
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestSchedulingWeights(String weights) {
+        setProperty(REQUEST_SCHEDULING_WEIGHTS, weights);
+        return this;
+    }
+
+    /**
+     * Get the weights of the traffic classes of the weighted fair request scheduling.
+     * @return
+     */
+    public String[] getRequestSchedulingWeights() {
+        return getStringArray(REQUEST_SCHEDULING_WEIGHTS);
+    }
+
+    /**
+     * Set the max number of add requests per second of a tenant, the tenant of a connection being its
+     * authorized principal or, for unauthenticated connections, the client host. Once a tenant exceeds its
+     * rate, the bookie stops reading from the connection and rejects the requests of the tenant until
+     * the rate is back under the limit.
+     *
+     * @param maxAdds
+     *          max number of add requests per second of a tenant, 0 or less to not limit them
+     * @return server configuration
+     */
+    public ServerConfiguration setTenantMaxAddsPerSecond(long maxAdds) {
+        setProperty(TENANT_MAX_ADDS_PER_SECOND, maxAdds);
+        return this;
+    }
+
+    /**
+     * Get the max number of add requests per second of a tenant.
+     * @return
+     */
+    public long getTenantMaxAddsPerSecond() {
+        return getLong(TENANT_MAX_ADDS_PER_SECOND, 0);
+    }
+
+    /**
+     * Set the max number of bytes added per second by a tenant.
+     *
+     * @param maxAddBytes
+     *          max number of bytes added per second by a tenant, 0 or less to not limit them
+     * @return server configuration
+     * @see #setTenantMaxAddsPerSecond(long)
+     */
+    public ServerConfiguration setTenantMaxAddBytesPerSecond(long maxAddBytes) {
+        setProperty(TENANT_MAX_ADD_BYTES_PER_SECOND, maxAddBytes);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes added per second by a tenant.
+     * @return
+     */
+    public long getTenantMaxAddBytesPerSecond() {
+        return getLong(TENANT_MAX_ADD_BYTES_PER_SECOND, 0);
+    }
+
+    /**
+     * Set the max number of read requests per second of a tenant.
+     *
+     * @param maxReads
+     *          max number of read requests per second of a tenant, 0 or less to not limit them
+     * @return server configuration
+     * @see #setTenantMaxAddsPerSecond(long)
+     */
+    public ServerConfiguration setTenantMaxReadsPerSecond(long maxReads) {
+        setProperty(TENANT_MAX_READS_PER_SECOND, maxReads);
+        return this;
+    }
+
+    /**
+     * Get the max number of read requests per second of a tenant.
+     * @return
+     */
+    public long getTenantMaxReadsPerSecond() {
+        return getLong(TENANT_MAX_READS_PER_SECOND, 0);
+    }
+
+    /**
+     * Process the read and add requests of a ledger on the same worker thread. The ledgers are sharded
+     * over one worker thread per Netty IO thread (see {@link #getServerNumIOThreads()}), which replace the
+     * read and add worker thread pools. When busy-wait is enabled, the worker threads are pinned to
+     * CPU cores.
+     *
+     * @param enabled
+     *          whether to process the requests of a ledger on a single worker thread
+     * @return server configuration
+     */
+    public ServerConfiguration setThreadPerCoreRequestProcessingEnabled(boolean enabled) {
+        setProperty(THREAD_PER_CORE_REQUEST_PROCESSING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the read and add requests of a ledger are processed on the same worker thread.
+     * @return
+     */
+    public boolean isThreadPerCoreRequestProcessingEnabled() {
+        return getBoolean(THREAD_PER_CORE_REQUEST_PROCESSING_ENABLED, false);
+    }
+
+    /**
+     * Serve the v2 protocol reads in two tiers: the entries found in the bookie caches are sent right
+     * away by the Netty IO thread which received the request, the other ones are read by a pool of
+     * threads of the ledger directory storing the ledger (see {@link #getNumDiskReadThreadsPerLedgerDir()}),
+     * so the reads served from memory never wait behind disk reads.
+     *
+     * @param enabled
+     *          whether to serve the reads from the caches on the IO threads
+     * @return server configuration
+     */
+    public ServerConfiguration setTieredReadsEnabled(boolean enabled) {
+        setProperty(TIERED_READS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the v2 protocol reads are served from the caches on the IO threads, and from the disk
+     * on the threads of the ledger directories.
+     * @return
+     */
+    public boolean isTieredReadsEnabled() {
+        return getBoolean(TIERED_READS_ENABLED, false);
+    }
+
+    /**
+     * Set the max number of threads reading the entries missing from the caches, for each ledger
+     * directory, when tiered reads are enabled. The threads are started on demand and stopped once idle.
+     *
+     * @param numThreads
+     *          max number of disk read threads of a ledger directory
+     * @return server configuration
+     */
+    public ServerConfiguration setNumDiskReadThreadsPerLedgerDir(int numThreads) {
+        setProperty(NUM_DISK_READ_THREADS_PER_LEDGER_DIR, numThreads);
+        return this;
+    }
+
+    /**
+     * Get the max number of threads reading the entries missing from the caches, for each ledger directory.
+     * @return
+     */
+    public int getNumDiskReadThreadsPerLedgerDir() {
+        return getInt(NUM_DISK_READ_THREADS_PER_LEDGER_DIR, 4);
+    }
+
 
 
     /**
@@ -2270,6 +2553,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entry memtable of SortedLedgerStorage keeps the entries in direct memory
+     * chunks instead of a skiplist on the heap. The entries are then only sorted when the
+     * memtable is flushed. It is not used when entryLogPerLedger is enabled.
+     *
+     * @return true if the off-heap memtable is enabled (Default is false)
+     */
+    public boolean isMemtableOffHeapEnabled() {
+        return getBoolean(MEMTABLE_OFF_HEAP_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the off-heap entry memtable of SortedLedgerStorage.
+     *
+     * @param enabled whether to keep the memtable entries off-heap.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setMemtableOffHeapEnabled(boolean enabled) {
+        setProperty(MEMTABLE_OFF_HEAP_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Should the data be fsynced on journal before acknowledgment.
      *
@@ -3533,6 +3838,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the ledger directories of new entry logs and index files are picked based on the observed
+     * write load of the directories (sync latency, pending syncs and unsynced bytes) instead of randomly.
+     *
+     * @return true if load aware ledger directory selection is enabled (Default is false)
+     */
+    public boolean isLoadAwareLedgerDirSelectionEnabled() {
+        return this.getBoolean(LOAD_AWARE_LEDGER_DIR_SELECTION_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable picking the ledger directories of new entry logs and index files based on
+     * their observed write load.
+     *
+     * @param enabled whether to enable load aware ledger directory selection
+     * @return server configuration.
+     */
+    public ServerConfiguration setLoadAwareLedgerDirSelectionEnabled(boolean enabled) {
+        this.setProperty(LOAD_AWARE_LEDGER_DIR_SELECTION_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * returns whether it is allowed to have multiple ledger/index/journal
      * Directories in the same filesystem diskpartition.
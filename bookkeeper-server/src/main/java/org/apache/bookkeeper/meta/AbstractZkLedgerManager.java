@@ -19,7 +19,9 @@ package org.apache.bookkeeper.meta;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NavigableSet;
@@ -57,6 +59,7 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
@@ -74,6 +77,8 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
 
     @VisibleForTesting
     static final int ZK_CONNECT_BACKOFF_MS = 200;
+    // the max number of ledgers of a multi request, whose size is bounded by jute.maxbuffer
+    static final int MAX_OPS_PER_MULTI = 128;
 
     private final LedgerMetadataSerDe serDe;
     protected final AbstractConfiguration conf;
@@ -273,17 +278,29 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> createLedgerMetadata(long ledgerId,
                                                                              LedgerMetadata inputMetadata) {
-        CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
-        /*
-         * Create a random number and use it as creator token.
-         */
-        final long cToken = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
-        final LedgerMetadata metadata;
+        return createLedgerMetadataWithToken(ledgerId, withCreatorToken(ledgerId, inputMetadata));
+    }
+
+    private static LedgerMetadata withCreatorToken(long ledgerId, LedgerMetadata inputMetadata) {
         if (inputMetadata.getMetadataFormatVersion() > LedgerMetadataSerDe.METADATA_FORMAT_VERSION_2) {
-            metadata = LedgerMetadataBuilder.from(inputMetadata).withId(ledgerId).withCToken(cToken).build();
+            /*
+             * Create a random number and use it as creator token.
+             */
+            final long cToken = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            return LedgerMetadataBuilder.from(inputMetadata).withId(ledgerId).withCToken(cToken).build();
         } else {
-            metadata = inputMetadata;
+            return inputMetadata;
         }
+    }
+
+    /**
+     * Create the metadata of a ledger, which carries its creator token if its format supports it. The
+     * creator token tells whether an existing znode was created by this creation, e.g. by a resend.
+     */
+    private CompletableFuture<Versioned<LedgerMetadata>> createLedgerMetadataWithToken(long ledgerId,
+                                                                                      LedgerMetadata metadata) {
+        CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+        final long cToken = metadata.getCToken();
         String ledgerPath = getLedgerPath(ledgerId);
         StringCallback scb = new StringCallback() {
             @Override
@@ -346,6 +363,58 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         return promise;
     }
 
+    /**
+     * Create the metadata of the ledgers with multi requests of up to {@link #MAX_OPS_PER_MULTI} ledgers.
+     * A multi request is atomic, so if it fails, e.g. as a ledger exists or as the parent znode of a
+     * ledger doesn't exist, the ledgers of the request are created one by one, to get a result per ledger.
+     */
+    @Override
+    public List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgersMetadata(List<Long> ledgerIds,
+                                                                                   List<LedgerMetadata> metadatas) {
+        List<CompletableFuture<Versioned<LedgerMetadata>>> promises = new ArrayList<>(ledgerIds.size());
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            promises.add(new CompletableFuture<>());
+        }
+        List<ACL> zkAcls = ZkUtils.getACLs(conf);
+        for (int from = 0; from < ledgerIds.size(); from += MAX_OPS_PER_MULTI) {
+            int to = Math.min(ledgerIds.size(), from + MAX_OPS_PER_MULTI);
+            List<Long> ids = ledgerIds.subList(from, to);
+            List<CompletableFuture<Versioned<LedgerMetadata>>> multiPromises = promises.subList(from, to);
+            List<LedgerMetadata> multiMetadatas = new ArrayList<>(ids.size());
+            List<Op> ops = new ArrayList<>(ids.size());
+            try {
+                for (int i = 0; i < ids.size(); i++) {
+                    LedgerMetadata metadata = withCreatorToken(ids.get(i), metadatas.get(from + i));
+                    multiMetadatas.add(metadata);
+                    ops.add(Op.create(getLedgerPath(ids.get(i)), serDe.serialize(metadata), zkAcls,
+                            CreateMode.PERSISTENT));
+                }
+            } catch (IOException ioe) {
+                for (int i = 0; i < ids.size(); i++) {
+                    multiPromises.get(i).completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
+                }
+                continue;
+            }
+            zk.multi(ops, (rc, path, ctx, opResults) -> {
+                if (rc == Code.OK.intValue()) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        multiPromises.get(i).complete(new Versioned<>(multiMetadatas.get(i), new LongVersion(0)));
+                    }
+                } else {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Failed to create the metadata of ledgers {} at once : {}, creating them one by one",
+                                ids, KeeperException.Code.get(rc));
+                    }
+                    for (int i = 0; i < ids.size(); i++) {
+                        FutureUtils.proxyTo(createLedgerMetadataWithToken(ids.get(i), multiMetadatas.get(i)),
+                                multiPromises.get(i));
+                    }
+                }
+            }, null);
+        }
+        return promises;
+    }
+
     @Override
     public CompletableFuture<Void> removeLedgerMetadata(final long ledgerId, final Version version) {
         CompletableFuture<Void> promise = new CompletableFuture<>();
@@ -404,6 +473,67 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         return promise;
     }
 
+    /**
+     * Remove the metadata of the ledgers with multi requests of up to {@link #MAX_OPS_PER_MULTI} ledgers.
+     * A multi request is atomic, so if it fails, e.g. as a ledger doesn't exist, the ledgers of the
+     * request are removed one by one, to get a result per ledger.
+     */
+    @Override
+    public List<CompletableFuture<Void>> removeLedgersMetadata(List<Long> ledgerIds) {
+        List<CompletableFuture<Void>> promises = new ArrayList<>(ledgerIds.size());
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            promises.add(new CompletableFuture<>());
+        }
+        for (int from = 0; from < ledgerIds.size(); from += MAX_OPS_PER_MULTI) {
+            int to = Math.min(ledgerIds.size(), from + MAX_OPS_PER_MULTI);
+            List<Long> ids = ledgerIds.subList(from, to);
+            List<CompletableFuture<Void>> multiPromises = promises.subList(from, to);
+            List<Op> ops = new ArrayList<>(ids.size());
+            for (long ledgerId : ids) {
+                ops.add(Op.delete(getLedgerPath(ledgerId), -1));
+            }
+            zk.multi(ops, (rc, path, ctx, opResults) -> {
+                if (rc == Code.OK.intValue()) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        listeners.remove(ids.get(i));
+                        FutureUtils.complete(multiPromises.get(i), null);
+                    }
+                    if (this instanceof HierarchicalLedgerManager || this instanceof LongHierarchicalLedgerManager) {
+                        removeEmptyParents(ids);
+                    }
+                } else {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Failed to remove the metadata of ledgers {} at once : {}, removing them one by one",
+                                ids, KeeperException.Code.get(rc));
+                    }
+                    for (int i = 0; i < ids.size(); i++) {
+                        FutureUtils.proxyTo(removeLedgerMetadata(ids.get(i), Version.ANY), multiPromises.get(i));
+                    }
+                }
+            }, null);
+        }
+        return promises;
+    }
+
+    /**
+     * Remove the parent znodes of removed ledgers which are left empty, as the removals of single
+     * ledgers do.
+     */
+    private void removeEmptyParents(List<Long> ledgerIds) {
+        Set<String> parents = new HashSet<>();
+        for (long ledgerId : ledgerIds) {
+            parents.add(new File(getLedgerPath(ledgerId)).getParent().replace("\\", "/"));
+        }
+        for (String parent : parents) {
+            // fails without side effects if the parent isn't empty
+            ZkUtils.asyncDeleteFullPathOptimistic(zk, parent, -1, (rc, path, ctx) -> {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cleaned up parent {} of removed ledgers : {}", parent, KeeperException.Code.get(rc));
+                }
+            }, parent);
+        }
+    }
+
     @Override
     public void registerLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
         if (null != listener) {
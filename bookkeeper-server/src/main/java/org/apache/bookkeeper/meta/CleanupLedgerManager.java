@@ -19,7 +19,9 @@ package org.apache.bookkeeper.meta;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -152,6 +154,47 @@ public class CleanupLedgerManager implements LedgerManager {
         }
     }
 
+    @Override
+    public List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgersMetadata(List<Long> ledgerIds,
+                                                                                   List<LedgerMetadata> metadatas) {
+        closeLock.readLock().lock();
+        try {
+            List<CompletableFuture<Versioned<LedgerMetadata>>> promises;
+            if (closed) {
+                promises = new ArrayList<>(ledgerIds.size());
+                for (int i = 0; i < ledgerIds.size(); i++) {
+                    promises.add(closedPromise());
+                }
+            } else {
+                promises = underlying.createLedgersMetadata(ledgerIds, metadatas);
+                promises.forEach(this::recordPromise);
+            }
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<CompletableFuture<Void>> removeLedgersMetadata(List<Long> ledgerIds) {
+        closeLock.readLock().lock();
+        try {
+            List<CompletableFuture<Void>> promises;
+            if (closed) {
+                promises = new ArrayList<>(ledgerIds.size());
+                for (int i = 0; i < ledgerIds.size(); i++) {
+                    promises.add(closedPromise());
+                }
+            } else {
+                promises = underlying.removeLedgersMetadata(ledgerIds);
+                promises.forEach(this::recordPromise);
+            }
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
         closeLock.readLock().lock();
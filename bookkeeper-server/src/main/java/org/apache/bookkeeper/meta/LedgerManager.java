@@ -19,6 +19,8 @@ package org.apache.bookkeeper.meta;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -73,6 +75,43 @@ public interface LedgerManager extends Closeable {
      */
     CompletableFuture<Void> removeLedgerMetadata(long ledgerId, Version version);
 
+    /**
+     * Create new ledgers with provided ledger ids and metadata. The implementations may batch the
+     * creations, e.g. in a single transaction of the metadata store. Each ledger is created or fails
+     * on its own, as with {@link #createLedgerMetadata(long, LedgerMetadata)}.
+     *
+     * @param ledgerIds
+     *            Ledger ids provided to be created
+     * @param metadatas
+     *            Metadata provided when creating the new ledgers, in the order of the ledger ids
+     * @return Futures of the creations, in the order of the ledger ids
+     */
+    default List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgersMetadata(List<Long> ledgerIds,
+                                                                                    List<LedgerMetadata> metadatas) {
+        List<CompletableFuture<Versioned<LedgerMetadata>>> promises = new ArrayList<>(ledgerIds.size());
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            promises.add(createLedgerMetadata(ledgerIds.get(i), metadatas.get(i)));
+        }
+        return promises;
+    }
+
+    /**
+     * Remove the metadata of ledgers, whatever their version. The implementations may batch the
+     * removals, e.g. in a single transaction of the metadata store. Each ledger is removed or fails
+     * on its own, as with {@link #removeLedgerMetadata(long, Version)}.
+     *
+     * @param ledgerIds
+     *          Ledger ids
+     * @return Futures of the removals, in the order of the ledger ids
+     */
+    default List<CompletableFuture<Void>> removeLedgersMetadata(List<Long> ledgerIds) {
+        List<CompletableFuture<Void>> promises = new ArrayList<>(ledgerIds.size());
+        for (long ledgerId : ledgerIds) {
+            promises.add(removeLedgerMetadata(ledgerId, Version.ANY));
+        }
+        return promises;
+    }
+
     /**
      * Read ledger metadata of a specified ledger.
      *
@@ -42,4 +42,14 @@ public interface RequestProcessor extends AutoCloseable {
      *          channel received the given request <i>r</i>
      */
     void processRequest(Object r, BookieRequestHandler channel);
+
+    /**
+     * Process the requests of a channel which were held back until the end of
+     * its current read burst.
+     *
+     * @param channel
+     *          channel which completed a read burst
+     */
+    default void flushPendingRequests(BookieRequestHandler channel) {
+    }
 }
@@ -366,7 +366,8 @@ class AuthHandler {
                     } else {
                         waitingForAuth.add(msg);
                     }
-                } else if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
+                } else if (msg instanceof ByteBuf || msg instanceof ByteBufList
+                        || msg instanceof BookieProtoV3Codec.V3Message) {
                     waitingForAuth.add(msg);
                 } else {
                     LOG.info("[{}] dropping write of message {}", ctx.channel(), msg);
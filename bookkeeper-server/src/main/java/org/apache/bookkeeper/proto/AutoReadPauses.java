@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * Pauses the reading of a channel for several independent reasons. The channel stops reading when
+ * it's paused for a first reason, and reads again once it's resumed for all the reasons it was paused
+ * for, so a reason doesn't resume a channel another one still holds.
+ */
+final class AutoReadPauses {
+
+    /**
+     * Too many requests are in progress on the bookie.
+     */
+    static final int IN_PROGRESS_LIMIT = 1;
+
+    /**
+     * The tenant of the channel is over its rate limits.
+     */
+    static final int TENANT_RATE_LIMIT = 1 << 1;
+
+    private static final AttributeKey<AutoReadPauses> PAUSES = AttributeKey.valueOf("AutoReadPauses");
+
+    // guarded by this
+    private int reasons = 0;
+
+    private AutoReadPauses() {
+    }
+
+    private static AutoReadPauses of(Channel channel) {
+        Attribute<AutoReadPauses> attr = channel.attr(PAUSES);
+        AutoReadPauses pauses = attr.get();
+        if (pauses == null) {
+            AutoReadPauses newPauses = new AutoReadPauses();
+            pauses = attr.setIfAbsent(newPauses);
+            if (pauses == null) {
+                pauses = newPauses;
+            }
+        }
+        return pauses;
+    }
+
+    /**
+     * Pause the reading of the channel for a reason.
+     *
+     * @return false if the channel was already paused for this reason
+     */
+    static boolean pause(Channel channel, int reason) {
+        AutoReadPauses pauses = of(channel);
+        synchronized (pauses) {
+            if ((pauses.reasons & reason) != 0) {
+                return false;
+            }
+            if (pauses.reasons == 0) {
+                channel.config().setAutoRead(false);
+            }
+            pauses.reasons |= reason;
+            return true;
+        }
+    }
+
+    /**
+     * Resume the reading of the channel for a reason, the channel reads again if it isn't paused for
+     * another reason.
+     */
+    static void resume(Channel channel, int reason) {
+        AutoReadPauses pauses = of(channel);
+        synchronized (pauses) {
+            if ((pauses.reasons & reason) == 0) {
+                return;
+            }
+            pauses.reasons &= ~reason;
+            if (pauses.reasons == 0) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    static boolean isPaused(Channel channel, int reason) {
+        AutoReadPauses pauses = of(channel);
+        synchronized (pauses) {
+            return (pauses.reasons & reason) != 0;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCounted;
 import java.util.concurrent.ExecutorService;
@@ -36,11 +37,13 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
             BookieRequestProcessor requestProcessor,
             ExecutorService fenceThreadPool,
             boolean throttleReadResponses,
-            long maxBatchReadSize) {
+            long maxBatchReadSize,
+            boolean zeroCopyReads) {
         BatchedReadEntryProcessor rep = RECYCLER.get();
         rep.init(request, requestHandler, requestProcessor);
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
+        rep.zeroCopyRead = zeroCopyReads && canSendFileRegions(requestHandler.ctx().channel());
         rep.maxBatchReadSize = maxBatchReadSize;
         requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
         return rep;
@@ -55,6 +58,12 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
             maxCount = Integer.MAX_VALUE;
         }
         long maxSize = Math.min(batchRequest.getMaxSize(), maxBatchReadSize);
+        if (zeroCopyRead) {
+            FileRegionList regions = readRegions(maxCount, maxSize);
+            if (regions != null) {
+                return regions;
+            }
+        }
         //See BookieProtoEncoding.ResponseEnDeCoderPreV3#encode on BatchedReadResponse case.
         long frameSize = 24 + 8 + 4;
         for (int i = 0; i < maxCount; i++) {
@@ -80,8 +89,47 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
         return data;
     }
 
+    /**
+     * Read the batch as file regions. The batch stops at the first entry which can't be sent
+     * as a file region, the client reads the remaining entries with its next request.
+     *
+     * @return the regions of the entries, or null if the first entry can't be sent as a file region.
+     */
+    private FileRegionList readRegions(int maxCount, long maxSize) {
+        FileRegionList regions = null;
+        //See BookieProtoEncoding.ResponseEnDeCoderPreV3#encode on FileRegionReadResponse case.
+        long frameSize = 24 + 8 + 4;
+        for (int i = 0; i < maxCount; i++) {
+            FileRegion region;
+            try {
+                region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId() + i, BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD);
+            } catch (Exception e) {
+                // errors on the first entry are reported by the regular read
+                break;
+            }
+            if (region == null) {
+                break;
+            }
+            frameSize += region.count() + 4;
+            if (regions == null) {
+                regions = FileRegionList.get(region);
+            } else {
+                if (frameSize > maxSize) {
+                    region.release();
+                    break;
+                }
+                regions.add(region);
+            }
+        }
+        return regions;
+    }
+
     @Override
     protected BookieProtocol.Response buildReadResponse(ReferenceCounted data) {
+        if (data instanceof FileRegionList) {
+            return ResponseBuilder.buildFileRegionReadResponse((FileRegionList) data, request);
+        }
         return ResponseBuilder.buildBatchedReadResponse((ByteBufList) data, (BatchedReadRequest) request);
     }
 
@@ -94,6 +142,7 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
 
     protected void recycle() {
         request.recycle();
+        diskRead = false;
         super.reset();
         if (this.recyclerHandle != null) {
             this.recyclerHandle.recycle(this);
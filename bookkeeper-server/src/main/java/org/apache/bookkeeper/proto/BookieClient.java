@@ -29,6 +29,7 @@ import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -222,6 +223,23 @@ public interface BookieClient {
             int maxCount, long maxSize, BatchedReadEntryCallback cb, Object ctx,
             int flags, byte[] masterKey, boolean allowFastFail);
 
+    /**
+     * Read a range of entries from bookie at address {@code address}, as a stream of entries.
+     * The bookie stops at the first of the entry limit, the size limit (which is always exceeded by
+     * at least one entry) or its last add confirmed. Only supported by the v3 protocol, on which it serves
+     * the batch reads of the ledgers.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param startEntryId id of the first entry of the range
+     * @param maxCount the maximum number of entries to read, or 0 for no limit
+     * @param maxSize the maximum total size of the entries to read, or 0 for no limit
+     * @param cb the callback notified of each entry and of the end of the range
+     * @param ctx a context object passed to the callback
+     */
+    void readEntryRange(BookieId address, long ledgerId, long startEntryId,
+                        int maxCount, long maxSize, RangeReadEntryCallback cb, Object ctx);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -59,6 +59,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -495,7 +496,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
-        client.obtain((rc, pcbc) -> {
+        client.obtainLeastLoaded((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 completeRead(rc, ledgerId, entryId, null, cb, ctx);
             } else {
@@ -515,7 +516,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
-        client.obtain((rc, pcbc) -> {
+        client.obtainLeastLoaded((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 completeBatchRead(rc, ledgerId, startEntryId, null, cb, ctx);
             } else {
@@ -525,6 +526,30 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void readEntryRange(final BookieId address, final long ledgerId, final long startEntryId,
+            final int maxCount, final long maxSize, final RangeReadEntryCallback cb, final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(address);
+        if (client == null) {
+            cb.readRangeComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                    ledgerId, startEntryId, ctx);
+            return;
+        }
+
+        client.obtainLeastLoaded((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(ledgerId,
+                            () -> cb.readRangeComplete(rc, ledgerId, startEntryId, ctx));
+                } catch (RejectedExecutionException re) {
+                    cb.readRangeComplete(getRc(BKException.Code.InterruptedException), ledgerId, startEntryId, ctx);
+                }
+            } else {
+                pcbc.readEntryRange(ledgerId, startEntryId, maxCount, maxSize, cb, ctx);
+            }
+        }, ledgerId);
+    }
+
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
                                           final long ledgerId,
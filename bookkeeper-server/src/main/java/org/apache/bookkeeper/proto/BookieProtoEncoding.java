@@ -33,6 +33,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
@@ -332,6 +333,38 @@ public class BookieProtoEncoding {
                         }
                         return byteBufList;
                     }
+                } else if (msg instanceof BookieProtocol.FileRegionReadResponse) {
+                    BookieProtocol.FileRegionReadResponse frr = (BookieProtocol.FileRegionReadResponse) r;
+                    FileRegionList regions = frr.getData();
+                    boolean isBatched = r.getOpCode() == BookieProtocol.BATCH_READ_ENTRY;
+                    int headersSize = RESPONSE_HEADERS_SIZE + (isBatched ? 8 /* request_id */ : 0);
+                    int delimiterSize = isBatched ? regions.size() * 4 : 0; // The size of each entry.
+                    long responseSize = headersSize + delimiterSize + regions.readableBytes();
+
+                    ByteBuf buf = allocator.buffer(4 /* frame size */ + headersSize);
+                    buf.writeInt((int) responseSize);
+                    buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+                    buf.writeInt(r.getErrorCode());
+                    buf.writeLong(r.getLedgerId());
+                    buf.writeLong(r.getEntryId());
+                    if (isBatched) {
+                        buf.writeLong(frr.getRequestId());
+                    }
+
+                    // The entries are transferred from the entry log files, right after their headers
+                    FileRegionList encoded = FileRegionList.get();
+                    encoded.add(buf);
+                    for (int i = 0; i < regions.size(); i++) {
+                        FileRegion region = (FileRegion) regions.get(i);
+                        if (isBatched) {
+                            ByteBuf entryLengthBuf = allocator.buffer(4);
+                            entryLengthBuf.writeInt((int) region.count());
+                            encoded.add(entryLengthBuf);
+                        }
+                        encoded.add(region.retain());
+                    }
+                    frr.release();
+                    return encoded;
                 } else if (msg instanceof BookieProtocol.AddResponse) {
                     ByteBuf buf = allocator.buffer(RESPONSE_HEADERS_SIZE + 4 /* frame size */);
                     buf.writeInt(RESPONSE_HEADERS_SIZE);
@@ -437,6 +470,9 @@ public class BookieProtoEncoding {
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof BookieProtoV3Codec.V3Message) {
+                return encodeV3Message((BookieProtoV3Codec.V3Message) msg, allocator);
+            }
             BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
             return serializeProtobuf(request, allocator);
         }
@@ -461,12 +497,24 @@ public class BookieProtoEncoding {
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof BookieProtoV3Codec.V3Message) {
+                return encodeV3Message((BookieProtoV3Codec.V3Message) msg, allocator);
+            }
             BookkeeperProtocol.Response response = (BookkeeperProtocol.Response) msg;
             return serializeProtobuf(response, allocator);
         }
 
     }
 
+    private static Object encodeV3Message(BookieProtoV3Codec.V3Message msg, ByteBufAllocator allocator) {
+        try {
+            return msg.encode(allocator);
+        } finally {
+            // give the message back to its pool, the encoded frame holds its own references
+            msg.release();
+        }
+    }
+
     private static ByteBuf serializeProtobuf(MessageLite msg, ByteBufAllocator allocator) {
         int size = msg.getSerializedSize();
         int frameSize = size + 4;
@@ -514,7 +562,7 @@ public class BookieProtoEncoding {
             }
             if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
                 ctx.write(msg, promise);
-            } else if (msg instanceof BookkeeperProtocol.Request) {
+            } else if (msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtoV3Codec.V3Message) {
                 ctx.write(reqV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Request) {
                 ctx.write(reqPreV3.encode(msg, ctx.alloc()), promise);
@@ -593,10 +641,15 @@ public class BookieProtoEncoding {
 
             if (msg instanceof ByteBuf) {
                 ctx.write(msg, promise);
-            } else if (msg instanceof BookkeeperProtocol.Response) {
+            } else if (msg instanceof BookkeeperProtocol.Response || msg instanceof BookieProtoV3Codec.V3Message) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Response) {
-                ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
+                Object encoded = repPreV3.encode(msg, ctx.alloc());
+                if (encoded instanceof FileRegionList) {
+                    ((FileRegionList) encoded).writeTo(ctx, promise);
+                } else {
+                    ctx.write(encoded, promise);
+                }
             } else {
                 LOG.error("Invalid response to encode to {}: {}", ctx.channel(), msg.getClass().getName());
                 ctx.write(msg, promise);
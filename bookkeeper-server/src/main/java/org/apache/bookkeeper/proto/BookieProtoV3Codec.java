@@ -0,0 +1,791 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static com.google.protobuf.CodedOutputStream.computeInt32SizeNoTag;
+import static com.google.protobuf.CodedOutputStream.computeInt64SizeNoTag;
+import static com.google.protobuf.CodedOutputStream.computeUInt32SizeNoTag;
+import static com.google.protobuf.CodedOutputStream.computeUInt64SizeNoTag;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.Map;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Hand-rolled codec for the hot messages of the Bookkeeper protocol version 3.
+ *
+ * <p>The codec is made of recycled messages ({@link AddRequestV3}, {@link ReadRequestV3},
+ * {@link AddResponseV3}, {@link ReadResponseV3} and {@link RangeReadResponseV3}) that are serialized straight
+ * into a {@link ByteBuf} without building the protobuf objects first. Entry payloads are never copied: they are
+ * appended to the frame as is.
+ *
+ * <p>The messages are written in the protobuf wire format described in BookkeeperProtocol.proto, so they are
+ * received with the generated protobuf parser.
+ */
+public final class BookieProtoV3Codec {
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    // fields shared by Request and Response
+    private static final int HEADER_TAG = makeTag(1, WIRETYPE_LENGTH_DELIMITED);
+    private static final int READ_TAG = makeTag(100, WIRETYPE_LENGTH_DELIMITED);
+    private static final int ADD_TAG = makeTag(101, WIRETYPE_LENGTH_DELIMITED);
+    private static final int RANGE_READ_TAG = makeTag(109, WIRETYPE_LENGTH_DELIMITED);
+    // Request
+    private static final int REQUEST_CONTEXT_TAG = makeTag(200, WIRETYPE_LENGTH_DELIMITED);
+    // Response
+    private static final int RESPONSE_STATUS_TAG = makeTag(2, WIRETYPE_VARINT);
+
+    // BKPacketHeader
+    private static final int HEADER_VERSION_TAG = makeTag(1, WIRETYPE_VARINT);
+    private static final int HEADER_OPERATION_TAG = makeTag(2, WIRETYPE_VARINT);
+    private static final int HEADER_TXNID_TAG = makeTag(3, WIRETYPE_VARINT);
+    private static final int HEADER_PRIORITY_TAG = makeTag(4, WIRETYPE_VARINT);
+
+    // ContextPair
+    private static final int CONTEXT_KEY_TAG = makeTag(1, WIRETYPE_LENGTH_DELIMITED);
+    private static final int CONTEXT_VALUE_TAG = makeTag(2, WIRETYPE_LENGTH_DELIMITED);
+
+    // AddRequest and ReadRequest
+    private static final int REQ_LEDGERID_TAG = makeTag(1, WIRETYPE_VARINT);
+    private static final int REQ_ENTRYID_TAG = makeTag(2, WIRETYPE_VARINT);
+    private static final int REQ_MASTERKEY_TAG = makeTag(3, WIRETYPE_LENGTH_DELIMITED);
+    private static final int REQ_FLAG_TAG = makeTag(100, WIRETYPE_VARINT);
+    private static final int ADD_BODY_TAG = makeTag(4, WIRETYPE_LENGTH_DELIMITED);
+    private static final int ADD_WRITEFLAGS_TAG = makeTag(5, WIRETYPE_VARINT);
+    private static final int READ_PREVIOUSLAC_TAG = makeTag(4, WIRETYPE_VARINT);
+    private static final int READ_TIMEOUT_TAG = makeTag(5, WIRETYPE_VARINT);
+
+    // AddResponse and ReadResponse
+    private static final int RESP_STATUS_TAG = makeTag(1, WIRETYPE_VARINT);
+    private static final int RESP_LEDGERID_TAG = makeTag(2, WIRETYPE_VARINT);
+    private static final int RESP_ENTRYID_TAG = makeTag(3, WIRETYPE_VARINT);
+    private static final int READ_BODY_TAG = makeTag(4, WIRETYPE_LENGTH_DELIMITED);
+    private static final int READ_MAXLAC_TAG = makeTag(5, WIRETYPE_VARINT);
+    private static final int READ_LACUPDATETIMESTAMP_TAG = makeTag(6, WIRETYPE_VARINT);
+    private static final int RANGE_READ_ENDOFRANGE_TAG = makeTag(5, WIRETYPE_VARINT);
+    private static final int RANGE_READ_MAXLAC_TAG = makeTag(6, WIRETYPE_VARINT);
+
+    private static final int NO_FLAG = -1;
+
+    private BookieProtoV3Codec() {}
+
+    private static int makeTag(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+
+    /**
+     * A v3 message that serializes itself into a frame.
+     *
+     * <p>The message is released by the encoder once it has been serialized, which gives it back to its pool.
+     */
+    public abstract static class V3Message extends AbstractReferenceCounted {
+        long txnId;
+        int priority;
+
+        /**
+         * Serialize the message, including the frame size prefix.
+         *
+         * @return a {@link ByteBuf} or a {@link ByteBufList}
+         */
+        abstract Object encode(ByteBufAllocator allocator);
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * An add request, carrying the entry payload as a retained {@link ByteBufList}.
+     */
+    public static final class AddRequestV3 extends V3Message {
+        long ledgerId;
+        long entryId;
+        byte[] masterKey;
+        boolean recoveryAdd;
+        int writeFlags;
+        Map<String, String> requestContext;
+        ByteBufList data;
+
+        public static AddRequestV3 create(long txnId, int priority, long ledgerId, long entryId, byte[] masterKey,
+                                          ByteBufList data, boolean recoveryAdd, int writeFlags) {
+            AddRequestV3 add = RECYCLER.get();
+            add.setRefCnt(1);
+            add.txnId = txnId;
+            add.priority = priority;
+            add.ledgerId = ledgerId;
+            add.entryId = entryId;
+            add.masterKey = masterKey;
+            add.recoveryAdd = recoveryAdd;
+            add.writeFlags = writeFlags;
+            add.data = ByteBufList.clone(data);
+            return add;
+        }
+
+        /**
+         * Attach the request context pairs, usually a copy of the MDC of the caller.
+         */
+        public AddRequestV3 withRequestContext(Map<String, String> requestContext) {
+            this.requestContext = requestContext;
+            return this;
+        }
+
+        @Override
+        Object encode(ByteBufAllocator allocator) {
+            int bodySize = data.readableBytes();
+            int addSize = 1 + computeInt64SizeNoTag(ledgerId)
+                    + 1 + computeInt64SizeNoTag(entryId)
+                    + 1 + computeUInt32SizeNoTag(masterKey.length) + masterKey.length
+                    + 1 + computeUInt32SizeNoTag(bodySize) + bodySize;
+            if (writeFlags != 0) {
+                addSize += 1 + computeInt32SizeNoTag(writeFlags);
+            }
+            if (recoveryAdd) {
+                addSize += 2 + computeInt32SizeNoTag(AddRequest.Flag.RECOVERY_ADD_VALUE);
+            }
+            int headerSize = computeHeaderSize(OperationType.ADD_ENTRY, txnId, priority);
+            int contextSize = computeRequestContextSize(requestContext);
+            int size = fieldSize(1, headerSize) + contextSize + fieldSize(2, addSize);
+
+            // everything but the payload goes in a single direct buffer, the payload buffers are passed
+            // down to the channel as they are
+            int frameHeaderSize = 4 + size - bodySize;
+            ByteBuf buf = allocator.directBuffer(frameHeaderSize, frameHeaderSize);
+            buf.writeInt(size);
+            writeHeader(buf, headerSize, OperationType.ADD_ENTRY, txnId, priority);
+            writeRequestContext(buf, requestContext);
+            writeVarint32(buf, ADD_TAG);
+            writeVarint32(buf, addSize);
+            writeVarint32(buf, REQ_LEDGERID_TAG);
+            writeVarint64(buf, ledgerId);
+            writeVarint32(buf, REQ_ENTRYID_TAG);
+            writeVarint64(buf, entryId);
+            writeVarint32(buf, REQ_MASTERKEY_TAG);
+            writeVarint32(buf, masterKey.length);
+            buf.writeBytes(masterKey);
+            if (writeFlags != 0) {
+                writeVarint32(buf, ADD_WRITEFLAGS_TAG);
+                writeVarint64(buf, writeFlags);
+            }
+            if (recoveryAdd) {
+                writeVarint32(buf, REQ_FLAG_TAG);
+                writeVarint32(buf, AddRequest.Flag.RECOVERY_ADD_VALUE);
+            }
+            // the body is the last field so that its bytes can directly follow the frame header
+            writeVarint32(buf, ADD_BODY_TAG);
+            writeVarint32(buf, bodySize);
+
+            ByteBufList frame = data;
+            data = null;
+            frame.prepend(buf);
+            return frame;
+        }
+
+        @Override
+        protected void deallocate() {
+            ReferenceCountUtil.release(data);
+            data = null;
+            masterKey = null;
+            requestContext = null;
+            recyclerHandle.recycle(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("AddRequestV3(txnId=%d,ledgerId=%d,entryId=%d)", txnId, ledgerId, entryId);
+        }
+
+        private final Handle<AddRequestV3> recyclerHandle;
+        private AddRequestV3(Handle<AddRequestV3> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<AddRequestV3> RECYCLER = new Recycler<AddRequestV3>() {
+            @Override
+            protected AddRequestV3 newObject(Handle<AddRequestV3> handle) {
+                return new AddRequestV3(handle);
+            }
+        };
+    }
+
+    /**
+     * A read request.
+     */
+    public static final class ReadRequestV3 extends V3Message {
+        long ledgerId;
+        long entryId;
+        byte[] masterKey;
+        int flag;
+        boolean hasPreviousLAC;
+        long previousLAC;
+        boolean hasTimeOut;
+        long timeOut;
+        Map<String, String> requestContext;
+
+        public static ReadRequestV3 create(long txnId, int priority, long ledgerId, long entryId) {
+            ReadRequestV3 read = RECYCLER.get();
+            read.setRefCnt(1);
+            read.txnId = txnId;
+            read.priority = priority;
+            read.ledgerId = ledgerId;
+            read.entryId = entryId;
+            read.masterKey = null;
+            read.flag = NO_FLAG;
+            read.hasPreviousLAC = false;
+            read.hasTimeOut = false;
+            return read;
+        }
+
+        public ReadRequestV3 setPreviousLAC(long previousLAC) {
+            this.hasPreviousLAC = true;
+            this.previousLAC = previousLAC;
+            return this;
+        }
+
+        public ReadRequestV3 setTimeOut(long timeOut) {
+            this.hasTimeOut = true;
+            this.timeOut = timeOut;
+            return this;
+        }
+
+        public ReadRequestV3 setFlag(ReadRequest.Flag flag) {
+            this.flag = flag.getNumber();
+            return this;
+        }
+
+        public ReadRequestV3 setMasterKey(byte[] masterKey) {
+            this.masterKey = masterKey;
+            return this;
+        }
+
+        /**
+         * Attach the request context pairs, usually a copy of the MDC of the caller.
+         */
+        public ReadRequestV3 withRequestContext(Map<String, String> requestContext) {
+            this.requestContext = requestContext;
+            return this;
+        }
+
+        @Override
+        Object encode(ByteBufAllocator allocator) {
+            int readSize = 1 + computeInt64SizeNoTag(ledgerId)
+                    + 1 + computeInt64SizeNoTag(entryId);
+            if (masterKey != null) {
+                readSize += 1 + computeUInt32SizeNoTag(masterKey.length) + masterKey.length;
+            }
+            if (hasPreviousLAC) {
+                readSize += 1 + computeInt64SizeNoTag(previousLAC);
+            }
+            if (hasTimeOut) {
+                readSize += 1 + computeInt64SizeNoTag(timeOut);
+            }
+            if (flag != NO_FLAG) {
+                readSize += 2 + computeInt32SizeNoTag(flag);
+            }
+            int headerSize = computeHeaderSize(OperationType.READ_ENTRY, txnId, priority);
+            int contextSize = computeRequestContextSize(requestContext);
+            int size = fieldSize(1, headerSize) + contextSize + fieldSize(2, readSize);
+
+            int frameSize = 4 + size;
+            ByteBuf buf = allocator.directBuffer(frameSize, frameSize);
+            buf.writeInt(size);
+            writeHeader(buf, headerSize, OperationType.READ_ENTRY, txnId, priority);
+            writeRequestContext(buf, requestContext);
+            writeVarint32(buf, READ_TAG);
+            writeVarint32(buf, readSize);
+            writeVarint32(buf, REQ_LEDGERID_TAG);
+            writeVarint64(buf, ledgerId);
+            writeVarint32(buf, REQ_ENTRYID_TAG);
+            writeVarint64(buf, entryId);
+            if (masterKey != null) {
+                writeVarint32(buf, REQ_MASTERKEY_TAG);
+                writeVarint32(buf, masterKey.length);
+                buf.writeBytes(masterKey);
+            }
+            if (hasPreviousLAC) {
+                writeVarint32(buf, READ_PREVIOUSLAC_TAG);
+                writeVarint64(buf, previousLAC);
+            }
+            if (hasTimeOut) {
+                writeVarint32(buf, READ_TIMEOUT_TAG);
+                writeVarint64(buf, timeOut);
+            }
+            if (flag != NO_FLAG) {
+                writeVarint32(buf, REQ_FLAG_TAG);
+                writeVarint64(buf, flag);
+            }
+            return buf;
+        }
+
+        @Override
+        protected void deallocate() {
+            masterKey = null;
+            requestContext = null;
+            recyclerHandle.recycle(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ReadRequestV3(txnId=%d,ledgerId=%d,entryId=%d)", txnId, ledgerId, entryId);
+        }
+
+        private final Handle<ReadRequestV3> recyclerHandle;
+        private ReadRequestV3(Handle<ReadRequestV3> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<ReadRequestV3> RECYCLER = new Recycler<ReadRequestV3>() {
+            @Override
+            protected ReadRequestV3 newObject(Handle<ReadRequestV3> handle) {
+                return new ReadRequestV3(handle);
+            }
+        };
+    }
+
+    /**
+     * An add response.
+     */
+    public static final class AddResponseV3 extends V3Message {
+        StatusCode status;
+        long ledgerId;
+        long entryId;
+
+        public static AddResponseV3 create(long txnId, StatusCode status, long ledgerId, long entryId) {
+            AddResponseV3 response = RECYCLER.get();
+            response.setRefCnt(1);
+            response.txnId = txnId;
+            response.priority = 0;
+            response.status = status;
+            response.ledgerId = ledgerId;
+            response.entryId = entryId;
+            return response;
+        }
+
+        @Override
+        Object encode(ByteBufAllocator allocator) {
+            int addSize = 1 + computeInt32SizeNoTag(status.getNumber())
+                    + 1 + computeInt64SizeNoTag(ledgerId)
+                    + 1 + computeInt64SizeNoTag(entryId);
+            int headerSize = computeHeaderSize(OperationType.ADD_ENTRY, txnId, priority);
+            int size = fieldSize(1, headerSize)
+                    + 1 + computeInt32SizeNoTag(status.getNumber())
+                    + fieldSize(2, addSize);
+
+            int frameSize = 4 + size;
+            ByteBuf buf = allocator.directBuffer(frameSize, frameSize);
+            buf.writeInt(size);
+            writeHeader(buf, headerSize, OperationType.ADD_ENTRY, txnId, priority);
+            writeVarint32(buf, RESPONSE_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, ADD_TAG);
+            writeVarint32(buf, addSize);
+            writeVarint32(buf, RESP_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, RESP_LEDGERID_TAG);
+            writeVarint64(buf, ledgerId);
+            writeVarint32(buf, RESP_ENTRYID_TAG);
+            writeVarint64(buf, entryId);
+            return buf;
+        }
+
+        @Override
+        protected void deallocate() {
+            status = null;
+            recyclerHandle.recycle(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("AddResponseV3(txnId=%d,status=%s,ledgerId=%d,entryId=%d)",
+                    txnId, status, ledgerId, entryId);
+        }
+
+        private final Handle<AddResponseV3> recyclerHandle;
+        private AddResponseV3(Handle<AddResponseV3> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<AddResponseV3> RECYCLER = new Recycler<AddResponseV3>() {
+            @Override
+            protected AddResponseV3 newObject(Handle<AddResponseV3> handle) {
+                return new AddResponseV3(handle);
+            }
+        };
+    }
+
+    /**
+     * A read response, carrying the entry as a retained {@link ByteBuf}.
+     */
+    public static final class ReadResponseV3 extends V3Message {
+        OperationType operation;
+        StatusCode status;
+        long ledgerId;
+        long entryId;
+        ByteBuf body;
+        boolean hasMaxLAC;
+        long maxLAC;
+        boolean hasLacUpdateTimestamp;
+        long lacUpdateTimestamp;
+
+        /**
+         * Create a read response. The ownership of the body, if any, is passed to the response.
+         */
+        public static ReadResponseV3 create(long txnId, OperationType operation, StatusCode status, long ledgerId,
+                                            long entryId, ByteBuf body) {
+            ReadResponseV3 response = RECYCLER.get();
+            response.setRefCnt(1);
+            response.txnId = txnId;
+            response.priority = 0;
+            response.operation = operation;
+            response.status = status;
+            response.ledgerId = ledgerId;
+            response.entryId = entryId;
+            response.body = body;
+            response.hasMaxLAC = false;
+            response.hasLacUpdateTimestamp = false;
+            return response;
+        }
+
+        public ReadResponseV3 setMaxLAC(long maxLAC) {
+            this.hasMaxLAC = true;
+            this.maxLAC = maxLAC;
+            return this;
+        }
+
+        public ReadResponseV3 setLacUpdateTimestamp(long lacUpdateTimestamp) {
+            this.hasLacUpdateTimestamp = true;
+            this.lacUpdateTimestamp = lacUpdateTimestamp;
+            return this;
+        }
+
+        @Override
+        Object encode(ByteBufAllocator allocator) {
+            int bodySize = body == null ? 0 : body.readableBytes();
+            int readSize = 1 + computeInt32SizeNoTag(status.getNumber())
+                    + 1 + computeInt64SizeNoTag(ledgerId)
+                    + 1 + computeInt64SizeNoTag(entryId);
+            if (hasMaxLAC) {
+                readSize += 1 + computeInt64SizeNoTag(maxLAC);
+            }
+            if (hasLacUpdateTimestamp) {
+                readSize += 1 + computeInt64SizeNoTag(lacUpdateTimestamp);
+            }
+            if (body != null) {
+                readSize += 1 + computeUInt32SizeNoTag(bodySize) + bodySize;
+            }
+            int headerSize = computeHeaderSize(operation, txnId, priority);
+            int size = fieldSize(1, headerSize)
+                    + 1 + computeInt32SizeNoTag(status.getNumber())
+                    + fieldSize(2, readSize);
+
+            int frameHeaderSize = 4 + size - bodySize;
+            ByteBuf buf = allocator.directBuffer(frameHeaderSize, frameHeaderSize);
+            buf.writeInt(size);
+            writeHeader(buf, headerSize, operation, txnId, priority);
+            writeVarint32(buf, RESPONSE_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, READ_TAG);
+            writeVarint32(buf, readSize);
+            writeVarint32(buf, RESP_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, RESP_LEDGERID_TAG);
+            writeVarint64(buf, ledgerId);
+            writeVarint32(buf, RESP_ENTRYID_TAG);
+            writeVarint64(buf, entryId);
+            if (hasMaxLAC) {
+                writeVarint32(buf, READ_MAXLAC_TAG);
+                writeVarint64(buf, maxLAC);
+            }
+            if (hasLacUpdateTimestamp) {
+                writeVarint32(buf, READ_LACUPDATETIMESTAMP_TAG);
+                writeVarint64(buf, lacUpdateTimestamp);
+            }
+            if (body == null) {
+                return buf;
+            }
+            // the body is the last field so that its bytes can directly follow the frame header
+            writeVarint32(buf, READ_BODY_TAG);
+            writeVarint32(buf, bodySize);
+            ByteBufList frame = ByteBufList.get(buf, body);
+            body = null;
+            return frame;
+        }
+
+        @Override
+        protected void deallocate() {
+            ReferenceCountUtil.release(body);
+            body = null;
+            operation = null;
+            status = null;
+            recyclerHandle.recycle(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ReadResponseV3(txnId=%d,status=%s,ledgerId=%d,entryId=%d)",
+                    txnId, status, ledgerId, entryId);
+        }
+
+        private final Handle<ReadResponseV3> recyclerHandle;
+        private ReadResponseV3(Handle<ReadResponseV3> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<ReadResponseV3> RECYCLER = new Recycler<ReadResponseV3>() {
+            @Override
+            protected ReadResponseV3 newObject(Handle<ReadResponseV3> handle) {
+                return new ReadResponseV3(handle);
+            }
+        };
+    }
+
+    /**
+     * A response of a range read stream, carrying either one entry as a retained {@link ByteBuf} or the end of
+     * the range.
+     */
+    public static final class RangeReadResponseV3 extends V3Message {
+        StatusCode status;
+        long ledgerId;
+        long entryId;
+        ByteBuf body;
+        boolean endOfRange;
+        long maxLAC;
+
+        /**
+         * Create a response carrying an entry. The ownership of the body is passed to the response.
+         */
+        public static RangeReadResponseV3 createEntry(long txnId, long ledgerId, long entryId, ByteBuf body) {
+            RangeReadResponseV3 response = create(txnId, StatusCode.EOK, ledgerId, entryId);
+            response.body = body;
+            return response;
+        }
+
+        /**
+         * Create the last response of a stream.
+         *
+         * @param maxLAC the last add confirmed known by the bookie, or a negative value if unknown
+         */
+        public static RangeReadResponseV3 createEnd(long txnId, StatusCode status, long ledgerId, long entryId,
+                                                    long maxLAC) {
+            RangeReadResponseV3 response = create(txnId, status, ledgerId, entryId);
+            response.endOfRange = true;
+            response.maxLAC = maxLAC;
+            return response;
+        }
+
+        private static RangeReadResponseV3 create(long txnId, StatusCode status, long ledgerId, long entryId) {
+            RangeReadResponseV3 response = RECYCLER.get();
+            response.setRefCnt(1);
+            response.txnId = txnId;
+            response.priority = 0;
+            response.status = status;
+            response.ledgerId = ledgerId;
+            response.entryId = entryId;
+            response.body = null;
+            response.endOfRange = false;
+            response.maxLAC = -1L;
+            return response;
+        }
+
+        @Override
+        Object encode(ByteBufAllocator allocator) {
+            int bodySize = body == null ? 0 : body.readableBytes();
+            int rangeSize = 1 + computeInt32SizeNoTag(status.getNumber())
+                    + 1 + computeInt64SizeNoTag(ledgerId)
+                    + 1 + computeInt64SizeNoTag(entryId);
+            if (endOfRange) {
+                rangeSize += 1 + 1;
+            }
+            if (maxLAC >= 0) {
+                rangeSize += 1 + computeInt64SizeNoTag(maxLAC);
+            }
+            if (body != null) {
+                rangeSize += 1 + computeUInt32SizeNoTag(bodySize) + bodySize;
+            }
+            int headerSize = computeHeaderSize(OperationType.RANGE_READ_ENTRY, txnId, priority);
+            int size = fieldSize(1, headerSize)
+                    + 1 + computeInt32SizeNoTag(status.getNumber())
+                    + fieldSize(2, rangeSize);
+
+            int frameHeaderSize = 4 + size - bodySize;
+            ByteBuf buf = allocator.directBuffer(frameHeaderSize, frameHeaderSize);
+            buf.writeInt(size);
+            writeHeader(buf, headerSize, OperationType.RANGE_READ_ENTRY, txnId, priority);
+            writeVarint32(buf, RESPONSE_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, RANGE_READ_TAG);
+            writeVarint32(buf, rangeSize);
+            writeVarint32(buf, RESP_STATUS_TAG);
+            writeVarint64(buf, status.getNumber());
+            writeVarint32(buf, RESP_LEDGERID_TAG);
+            writeVarint64(buf, ledgerId);
+            writeVarint32(buf, RESP_ENTRYID_TAG);
+            writeVarint64(buf, entryId);
+            if (endOfRange) {
+                writeVarint32(buf, RANGE_READ_ENDOFRANGE_TAG);
+                buf.writeByte(1);
+            }
+            if (maxLAC >= 0) {
+                writeVarint32(buf, RANGE_READ_MAXLAC_TAG);
+                writeVarint64(buf, maxLAC);
+            }
+            if (body == null) {
+                return buf;
+            }
+            // the body is the last field so that its bytes can directly follow the frame header
+            writeVarint32(buf, READ_BODY_TAG);
+            writeVarint32(buf, bodySize);
+            ByteBufList frame = ByteBufList.get(buf, body);
+            body = null;
+            return frame;
+        }
+
+        @Override
+        protected void deallocate() {
+            ReferenceCountUtil.release(body);
+            body = null;
+            status = null;
+            recyclerHandle.recycle(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("RangeReadResponseV3(txnId=%d,status=%s,ledgerId=%d,entryId=%d,endOfRange=%b)",
+                    txnId, status, ledgerId, entryId, endOfRange);
+        }
+
+        private final Handle<RangeReadResponseV3> recyclerHandle;
+        private RangeReadResponseV3(Handle<RangeReadResponseV3> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<RangeReadResponseV3> RECYCLER = new Recycler<RangeReadResponseV3>() {
+            @Override
+            protected RangeReadResponseV3 newObject(Handle<RangeReadResponseV3> handle) {
+                return new RangeReadResponseV3(handle);
+            }
+        };
+    }
+
+    //
+    // Encoding helpers
+    //
+
+    /**
+     * Size of a length delimited field, given the size of its content and the size of its tag.
+     */
+    private static int fieldSize(int tagSize, int contentSize) {
+        return tagSize + computeUInt32SizeNoTag(contentSize) + contentSize;
+    }
+
+    private static int computeHeaderSize(OperationType operation, long txnId, int priority) {
+        int size = 1 + computeInt32SizeNoTag(ProtocolVersion.VERSION_THREE_VALUE)
+                + 1 + computeInt32SizeNoTag(operation.getNumber())
+                + 1 + computeUInt64SizeNoTag(txnId);
+        if (priority != 0) {
+            size += 1 + computeUInt32SizeNoTag(priority);
+        }
+        return size;
+    }
+
+    private static void writeHeader(ByteBuf buf, int headerSize, OperationType operation, long txnId,
+                                    int priority) {
+        writeVarint32(buf, HEADER_TAG);
+        writeVarint32(buf, headerSize);
+        writeVarint32(buf, HEADER_VERSION_TAG);
+        writeVarint32(buf, ProtocolVersion.VERSION_THREE_VALUE);
+        writeVarint32(buf, HEADER_OPERATION_TAG);
+        writeVarint32(buf, operation.getNumber());
+        writeVarint32(buf, HEADER_TXNID_TAG);
+        writeVarint64(buf, txnId);
+        if (priority != 0) {
+            writeVarint32(buf, HEADER_PRIORITY_TAG);
+            writeVarint32(buf, priority);
+        }
+    }
+
+    private static int computeContextPairSize(String key, String value) {
+        return fieldSize(1, ByteBufUtil.utf8Bytes(key)) + fieldSize(1, ByteBufUtil.utf8Bytes(value));
+    }
+
+    private static int computeRequestContextSize(Map<String, String> requestContext) {
+        if (requestContext == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Map.Entry<String, String> kv : requestContext.entrySet()) {
+            size += fieldSize(2, computeContextPairSize(kv.getKey(), kv.getValue()));
+        }
+        return size;
+    }
+
+    private static void writeRequestContext(ByteBuf buf, Map<String, String> requestContext) {
+        if (requestContext == null) {
+            return;
+        }
+        for (Map.Entry<String, String> kv : requestContext.entrySet()) {
+            writeVarint32(buf, REQUEST_CONTEXT_TAG);
+            writeVarint32(buf, computeContextPairSize(kv.getKey(), kv.getValue()));
+            writeString(buf, CONTEXT_KEY_TAG, kv.getKey());
+            writeString(buf, CONTEXT_VALUE_TAG, kv.getValue());
+        }
+    }
+
+    private static void writeString(ByteBuf buf, int tag, String value) {
+        writeVarint32(buf, tag);
+        writeVarint32(buf, ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(buf, value);
+    }
+
+    /**
+     * Write an unsigned 32 bits varint. Negative int32 values must go through {@link #writeVarint64} so that they
+     * get sign extended, as protobuf does.
+     */
+    static void writeVarint32(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    static void writeVarint64(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+}
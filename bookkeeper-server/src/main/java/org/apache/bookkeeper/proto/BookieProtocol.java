@@ -620,6 +620,70 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * The response for a read, or a batched read, whose entries are sent straight from the entry log files.
+     * It's encoded the same way as {@link ReadResponse} and {@link BatchedReadResponse}.
+     */
+    class FileRegionReadResponse extends Response implements ReferenceCounted {
+
+        final long requestId;
+        final FileRegionList data;
+
+        FileRegionReadResponse(byte protocolVersion, byte opCode, long ledgerId, long entryId, long requestId,
+                FileRegionList data) {
+            init(protocolVersion, opCode, EOK, ledgerId, entryId);
+            this.requestId = requestId;
+            this.data = data;
+        }
+
+        FileRegionList getData() {
+            return data;
+        }
+
+        long getRequestId() {
+            return requestId;
+        }
+
+        @Override
+        public int refCnt() {
+            return data.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            data.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            data.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            data.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            data.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return data.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return data.release(decrement);
+        }
+    }
+
     /**
      * A response that adds data.
      */
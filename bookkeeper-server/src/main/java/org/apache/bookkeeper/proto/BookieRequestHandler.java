@@ -25,6 +25,8 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.group.ChannelGroup;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
@@ -45,6 +47,9 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     private ByteBuf pendingSendResponses = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
 
+    // add requests of the current read burst, only accessed by the channel event loop
+    private List<BookieProtocol.ParsedAddRequest> pendingAddRequests = null;
+
     BookieRequestHandler(ServerConfiguration conf, RequestProcessor processor, ChannelGroup allChannels) {
         this.requestProcessor = processor;
         this.allChannels = allChannels;
@@ -69,6 +74,7 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channels disconnected: {}", ctx.channel());
+        requestProcessor.flushPendingRequests(this);
     }
 
     @Override
@@ -90,6 +96,28 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
         requestProcessor.processRequest(msg, this);
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        requestProcessor.flushPendingRequests(this);
+        super.channelReadComplete(ctx);
+    }
+
+    void addPendingAddRequest(BookieProtocol.ParsedAddRequest request) {
+        if (pendingAddRequests == null) {
+            pendingAddRequests = new ArrayList<>();
+        }
+        pendingAddRequests.add(request);
+    }
+
+    /**
+     * @return the add requests held back since the last call, or null if there are none.
+     */
+    List<BookieProtocol.ParsedAddRequest> takePendingAddRequests() {
+        List<BookieProtocol.ParsedAddRequest> requests = pendingAddRequests;
+        pendingAddRequests = null;
+        return requests;
+    }
+
     public synchronized void prepareSendResponseV2(int rc, BookieProtocol.ParsedAddRequest req) {
         if (pendingSendResponses == null) {
             pendingSendResponses = ctx().alloc().directBuffer(maxPendingResponsesSize);
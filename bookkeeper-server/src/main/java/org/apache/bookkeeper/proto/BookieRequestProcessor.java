@@ -28,6 +28,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.group.ChannelGroup;
@@ -35,7 +36,10 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
@@ -129,6 +133,28 @@ public class BookieRequestProcessor implements RequestProcessor {
     private final ByteBufAllocator allocator;
 
     private final boolean throttleReadResponses;
+    private final boolean zeroCopyReads;
+    private final ReadCoalescer readCoalescer;
+    private final boolean addEntryBatching;
+
+    /**
+     * The weighted fair schedulers of the read and add requests, null if the requests are executed
+     * on the worker thread pools.
+     */
+    private final RequestScheduler readScheduler;
+    private final RequestScheduler writeScheduler;
+    private final RequestScheduler.Classifier requestClassifier;
+
+    /**
+     * The pools reading the entries missing from the caches, one per ledger directory, null if the reads
+     * aren't served in tiers.
+     */
+    private final DiskReadThreadPools diskReadThreadPools;
+
+    /**
+     * The rate limiter of the add and read requests of each tenant, null if the tenants aren't limited.
+     */
+    private final TenantThrottler tenantThrottler;
 
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
@@ -140,16 +166,57 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
-        this.readThreadPool = createExecutor(
-                this.serverCfg.getNumReadWorkerThreads(),
-                "BookieReadThreadPool",
-                serverCfg.getMaxPendingReadRequestPerThread(),
-                statsLogger);
-        this.writeThreadPool = createExecutor(
-                this.serverCfg.getNumAddWorkerThreads(),
-                "BookieWriteThreadPool",
-                serverCfg.getMaxPendingAddRequestPerThread(),
-                statsLogger);
+        this.zeroCopyReads = serverCfg.isZeroCopyReadsEnabled();
+        this.addEntryBatching = serverCfg.isAddEntryBatchingEnabled();
+        if (serverCfg.isWeightedFairRequestSchedulingEnabled()) {
+            int[] weights = RequestScheduler.parseWeights(serverCfg.getRequestSchedulingWeights());
+            this.requestClassifier = new RequestScheduler.Classifier();
+            this.readScheduler = serverCfg.getNumReadWorkerThreads() <= 0 ? null : new RequestScheduler(
+                    "BookieReadScheduler",
+                    serverCfg.getNumReadWorkerThreads(),
+                    serverCfg.getMaxPendingReadRequestPerThread(),
+                    weights,
+                    preserveMdcForTaskExecution,
+                    statsLogger.scopeLabel("scheduler", "read"));
+            this.writeScheduler = serverCfg.getNumAddWorkerThreads() <= 0 ? null : new RequestScheduler(
+                    "BookieWriteScheduler",
+                    serverCfg.getNumAddWorkerThreads(),
+                    serverCfg.getMaxPendingAddRequestPerThread(),
+                    weights,
+                    preserveMdcForTaskExecution,
+                    statsLogger.scopeLabel("scheduler", "write"));
+        } else {
+            this.requestClassifier = null;
+            this.readScheduler = null;
+            this.writeScheduler = null;
+        }
+        if (serverCfg.isThreadPerCoreRequestProcessingEnabled()) {
+            // reads and adds of a ledger are processed by the same core thread, one per IO thread
+            int maxPendingReads = serverCfg.getMaxPendingReadRequestPerThread();
+            int maxPendingAdds = serverCfg.getMaxPendingAddRequestPerThread();
+            // the schedulers replace the core threads of the requests they execute
+            OrderedExecutor coreThreadPool = null != readScheduler && null != writeScheduler ? null : createExecutor(
+                    this.serverCfg.getServerNumIOThreads(),
+                    "BookieCoreThreadPool",
+                    maxPendingReads > 0 && maxPendingAdds > 0
+                            ? maxPendingReads + maxPendingAdds : OrderedExecutor.NO_TASK_LIMIT,
+                    serverCfg.isBusyWaitEnabled(),
+                    statsLogger);
+            this.readThreadPool = null == readScheduler ? coreThreadPool : null;
+            this.writeThreadPool = null == writeScheduler ? coreThreadPool : null;
+        } else {
+            // the schedulers replace the worker thread pools, so these are only created without them
+            this.readThreadPool = null != readScheduler ? null : createExecutor(
+                    this.serverCfg.getNumReadWorkerThreads(),
+                    "BookieReadThreadPool",
+                    serverCfg.getMaxPendingReadRequestPerThread(),
+                    statsLogger);
+            this.writeThreadPool = null != writeScheduler ? null : createExecutor(
+                    this.serverCfg.getNumAddWorkerThreads(),
+                    "BookieWriteThreadPool",
+                    serverCfg.getMaxPendingAddRequestPerThread(),
+                    statsLogger);
+        }
         if (serverCfg.getNumLongPollWorkerThreads() <= 0 && readThreadPool != null) {
             this.longPollThreadPool = this.readThreadPool;
         } else {
@@ -166,6 +233,17 @@ public class BookieRequestProcessor implements RequestProcessor {
                 this.serverCfg.getNumHighPriorityWorkerThreads(),
                 "BookieHighPriorityThread",
                 OrderedExecutor.NO_TASK_LIMIT, statsLogger);
+        if (serverCfg.isTieredReadsEnabled()) {
+            int numDirs = Math.max(serverCfg.getLedgerDirNames().length, 1);
+            int maxPendingReads = serverCfg.getMaxPendingReadRequestPerThread();
+            this.diskReadThreadPools = new DiskReadThreadPools(
+                    "BookieDiskReadThreadPool",
+                    numDirs,
+                    serverCfg.getNumDiskReadThreadsPerLedgerDir(),
+                    maxPendingReads > 0 ? maxPendingReads * serverCfg.getNumDiskReadThreadsPerLedgerDir() : 0);
+        } else {
+            this.diskReadThreadPools = null;
+        }
         this.shFactory = shFactory;
         if (shFactory != null) {
             shFactory.init(NodeType.Server, serverCfg, allocator);
@@ -198,6 +276,18 @@ public class BookieRequestProcessor implements RequestProcessor {
         // Expose Stats
         this.statsEnabled = serverCfg.isStatisticsEnabled();
         this.requestStats = new RequestStats(statsLogger);
+        this.readCoalescer = serverCfg.isReadCoalescingEnabled()
+                ? new ReadCoalescer(requestStats.getReadEntryCoalescedCounter()) : null;
+        if (serverCfg.getTenantMaxAddsPerSecond() > 0 || serverCfg.getTenantMaxAddBytesPerSecond() > 0
+                || serverCfg.getTenantMaxReadsPerSecond() > 0) {
+            this.tenantThrottler = new TenantThrottler(
+                    serverCfg.getTenantMaxAddsPerSecond(),
+                    serverCfg.getTenantMaxAddBytesPerSecond(),
+                    serverCfg.getTenantMaxReadsPerSecond(),
+                    requestStats.getTenantThrottledCounter());
+        } else {
+            this.tenantThrottler = null;
+        }
 
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
         addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
@@ -206,15 +296,18 @@ public class BookieRequestProcessor implements RequestProcessor {
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
     }
 
-    protected void onAddRequestStart(Channel channel) {
+    protected void onAddRequestStart(Channel channel, long bytes) {
+        if (tenantThrottler != null) {
+            tenantThrottler.onAddRequest(channel, bytes);
+        }
         if (addsSemaphore != null) {
             if (!addsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
+                AutoReadPauses.pause(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
                 LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockAddRequest();
                 addsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                AutoReadPauses.resume(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockAddRequest(delayNanos);
@@ -231,14 +324,17 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     protected void onReadRequestStart(Channel channel) {
+        if (tenantThrottler != null) {
+            tenantThrottler.onReadRequest(channel);
+        }
         if (readsSemaphore != null) {
             if (!readsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
+                AutoReadPauses.pause(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
                 LOG.info("Too many read requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockReadRequest();
                 readsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                AutoReadPauses.resume(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after ReadRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockReadRequest(delayNanos);
@@ -254,6 +350,48 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    /**
+     * Whether the add requests of a channel are rejected, because its tenant is over its rate limits. The
+     * channel is then blacklisted, so that the responses to the requests it already sent don't wait for it
+     * to become writable.
+     */
+    private boolean isTenantAddRateExceeded(Channel channel) {
+        if (tenantThrottler == null || !tenantThrottler.isAddRateExceeded(channel)) {
+            return false;
+        }
+        blacklistChannel(channel);
+        return true;
+    }
+
+    /**
+     * Whether the read requests of a channel are rejected, because its tenant is over its rate limits. The
+     * channel is then blacklisted, as for the add requests.
+     */
+    private boolean isTenantReadRateExceeded(Channel channel) {
+        if (tenantThrottler == null || !tenantThrottler.isReadRateExceeded(channel)) {
+            return false;
+        }
+        blacklistChannel(channel);
+        return true;
+    }
+
+    /**
+     * Reject a request of a tenant over its rate limits, before it's queued on a worker thread.
+     */
+    private void rejectTenantRequest(BookieProtocol.Request r, Channel channel) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Rejecting request {} of channel {}, its tenant is over its rate limits", r, channel);
+        }
+        if (r instanceof BookieProtocol.ParsedAddRequest) {
+            getRequestStats().getAddEntryRejectedCounter().inc();
+            ((BookieProtocol.ParsedAddRequest) r).release();
+        } else {
+            getRequestStats().getReadEntryRejectedCounter().inc();
+        }
+        writeAndFlush(channel, ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r));
+        r.recycle();
+    }
+
     @VisibleForTesting
     int maxAddsInProgressCount() {
         return requestStats.maxAddsInProgressCount();
@@ -268,11 +406,22 @@ public class BookieRequestProcessor implements RequestProcessor {
     public void close() {
         LOG.info("Closing RequestProcessor");
         shutdownExecutor(writeThreadPool);
-        shutdownExecutor(readThreadPool);
+        if (readThreadPool != writeThreadPool) {
+            shutdownExecutor(readThreadPool);
+        }
         if (serverCfg.getNumLongPollWorkerThreads() > 0 || readThreadPool == null) {
             shutdownExecutor(longPollThreadPool);
         }
         shutdownExecutor(highPriorityThreadPool);
+        if (null != writeScheduler) {
+            writeScheduler.shutdown(10, TimeUnit.SECONDS);
+        }
+        if (null != readScheduler) {
+            readScheduler.shutdown(10, TimeUnit.SECONDS);
+        }
+        if (null != diskReadThreadPools) {
+            diskReadThreadPools.shutdown(10, TimeUnit.SECONDS);
+        }
         requestTimer.stop();
         LOG.info("Closed RequestProcessor");
     }
@@ -282,6 +431,15 @@ public class BookieRequestProcessor implements RequestProcessor {
             String nameFormat,
             int maxTasksInQueue,
             StatsLogger statsLogger) {
+        return createExecutor(numThreads, nameFormat, maxTasksInQueue, false, statsLogger);
+    }
+
+    private OrderedExecutor createExecutor(
+            int numThreads,
+            String nameFormat,
+            int maxTasksInQueue,
+            boolean enableBusyWait,
+            StatsLogger statsLogger) {
         if (numThreads <= 0) {
             return null;
         } else {
@@ -292,11 +450,38 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .preserveMdcForTaskExecution(serverCfg.getPreserveMdcForTaskExecution())
                     .statsLogger(statsLogger)
                     .maxTasksInQueue(maxTasksInQueue)
+                    .enableBusyWait(enableBusyWait)
                     .enableThreadScopedMetrics(true)
                     .build();
         }
     }
 
+    /**
+     * Choose the thread which executes an add request.
+     *
+     * @return the thread, or null if the request has to be executed by the caller.
+     */
+    private Executor chooseAddThread(OrderedExecutor threadPool, long ledgerId, long entryId,
+                                     boolean highPriority, boolean recoveryAdd) {
+        if (null != writeScheduler) {
+            return writeScheduler.chooseThread(
+                    requestClassifier.classifyAdd(ledgerId, entryId, highPriority, recoveryAdd), ledgerId);
+        }
+        return null == threadPool ? null : threadPool.chooseThread(ledgerId);
+    }
+
+    /**
+     * Choose the thread which executes a read request.
+     *
+     * @return the thread, or null if the request has to be executed by the caller.
+     */
+    private Executor chooseReadThread(OrderedExecutor threadPool, long ledgerId, long entryId, boolean recovery) {
+        if (null != readScheduler) {
+            return readScheduler.chooseThread(requestClassifier.classifyRead(ledgerId, entryId, recovery), ledgerId);
+        }
+        return null == threadPool ? null : threadPool.chooseThread(ledgerId);
+    }
+
     private void shutdownExecutor(OrderedExecutor service) {
         if (null != service) {
             service.shutdown();
@@ -321,6 +506,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
                         break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, requestHandler);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, requestHandler);
                         break;
@@ -370,6 +558,16 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         } else {
             BookieProtocol.Request r = (BookieProtocol.Request) msg;
+            if (addEntryBatching) {
+                if (r.getOpCode() == BookieProtocol.ADDENTRY && !r.isHighPriority()
+                        && r instanceof BookieProtocol.ParsedAddRequest) {
+                    // processed at the end of the read burst
+                    requestHandler.addPendingAddRequest((BookieProtocol.ParsedAddRequest) r);
+                    return;
+                }
+                // keep the adds held back before this request in order with it
+                flushPendingRequests(requestHandler);
+            }
             // process packet
             switch (r.getOpCode()) {
                 case BookieProtocol.ADDENTRY:
@@ -410,6 +608,62 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    @Override
+    public void flushPendingRequests(BookieRequestHandler requestHandler) {
+        List<BookieProtocol.ParsedAddRequest> requests = requestHandler.takePendingAddRequests();
+        if (requests == null) {
+            return;
+        }
+        if (requests.size() == 1) {
+            processAddRequest(requests.get(0), requestHandler);
+            return;
+        }
+        if (isTenantAddRateExceeded(requestHandler.ctx().channel())) {
+            for (int i = 0; i < requests.size(); i++) {
+                rejectTenantRequest(requests.get(i), requestHandler.ctx().channel());
+            }
+            return;
+        }
+        if (null == writeThreadPool && null == writeScheduler) {
+            WriteEntryBatchProcessor batch = new WriteEntryBatchProcessor(requestHandler, this);
+            for (int i = 0; i < requests.size(); i++) {
+                batch.add(WriteEntryProcessor.create(requests.get(i), requestHandler, this));
+            }
+            batch.run();
+            return;
+        }
+
+        // one batch per write thread, which keeps the adds of each ledger in order
+        List<Executor> threads = new ArrayList<>(2);
+        List<WriteEntryBatchProcessor> batches = new ArrayList<>(2);
+        for (int i = 0; i < requests.size(); i++) {
+            BookieProtocol.ParsedAddRequest r = requests.get(i);
+            Executor thread = chooseAddThread(writeThreadPool, r.getLedgerId(), r.getEntryId(),
+                    r.isHighPriority(), r.isRecoveryAdd());
+            int idx = threads.indexOf(thread);
+            if (idx < 0) {
+                idx = threads.size();
+                threads.add(thread);
+                batches.add(new WriteEntryBatchProcessor(requestHandler, this));
+            }
+            batches.get(idx).add(WriteEntryProcessor.create(r, requestHandler, this));
+        }
+        for (int i = 0; i < threads.size(); i++) {
+            WriteEntryBatchProcessor batch = batches.get(i);
+            try {
+                threads.get(i).execute(batch);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process a batch of {} add requests. Too many pending requests",
+                            batch.size());
+                }
+                for (int j = 0; j < batch.size(); j++) {
+                    rejectAddRequest(batch.get(j));
+                }
+            }
+        }
+    }
+
     private void restoreMdcContextFromRequest(BookkeeperProtocol.Request req) {
         if (preserveMdcForTaskExecution) {
             MDC.clear();
@@ -422,7 +676,10 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processWriteLacRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
         WriteLacProcessorV3 writeLac = new WriteLacProcessorV3(r, requestHandler, this);
-        if (null == writeThreadPool) {
+        if (null != writeScheduler) {
+            writeScheduler.executeOrdered(RequestScheduler.TrafficClass.ADD, r.getWriteLacRequest().getLedgerId(),
+                    writeLac);
+        } else if (null == writeThreadPool) {
             writeLac.run();
         } else {
             writeThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), writeLac);
@@ -432,7 +689,10 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processReadLacRequestV3(final BookkeeperProtocol.Request r,
                                          final BookieRequestHandler requestHandler) {
         ReadLacProcessorV3 readLac = new ReadLacProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
+        if (null != readScheduler) {
+            readScheduler.executeOrdered(RequestScheduler.TrafficClass.TAILING_READ,
+                    r.getReadLacRequest().getLedgerId(), readLac);
+        } else if (null == readThreadPool) {
             readLac.run();
         } else {
             readThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), readLac);
@@ -440,6 +700,19 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processAddRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
+        if (!RequestUtils.isHighPriority(r) && isTenantAddRateExceeded(requestHandler.ctx().channel())) {
+            getRequestStats().getAddEntryRejectedCounter().inc();
+            BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
+                    .setLedgerId(r.getAddRequest().getLedgerId())
+                    .setEntryId(r.getAddRequest().getEntryId())
+                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            writeAndFlush(requestHandler.ctx().channel(), BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(r.getHeader())
+                    .setStatus(addResponse.getStatus())
+                    .setAddResponse(addResponse)
+                    .build());
+            return;
+        }
         WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, requestHandler, this);
 
         final OrderedExecutor threadPool;
@@ -448,12 +721,15 @@ public class BookieRequestProcessor implements RequestProcessor {
         } else {
             threadPool = writeThreadPool;
         }
+        final Executor thread = chooseAddThread(threadPool, r.getAddRequest().getLedgerId(),
+                r.getAddRequest().getEntryId(), RequestUtils.isHighPriority(r),
+                hasFlag(r.getAddRequest(), BookkeeperProtocol.AddRequest.Flag.RECOVERY_ADD));
 
-        if (null == threadPool) {
+        if (null == thread) {
             write.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getAddRequest().getLedgerId(), write);
+                thread.execute(write);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
@@ -485,11 +761,18 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
-        if (null == threadPool) {
+        if (null == threadPool && null == writeScheduler) {
             forceLedger.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getForceLedgerRequest().getLedgerId(), forceLedger);
+                if (null != writeScheduler) {
+                    // queued behind the adds of the ledger on its scheduler thread
+                    writeScheduler.executeOrdered(RequestUtils.isHighPriority(r)
+                            ? RequestScheduler.TrafficClass.RECOVERY : RequestScheduler.TrafficClass.ADD,
+                            r.getForceLedgerRequest().getLedgerId(), forceLedger);
+                } else {
+                    threadPool.executeOrdered(r.getForceLedgerRequest().getLedgerId(), forceLedger);
+                }
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to force ledger {}. Too many pending requests",
@@ -513,17 +796,32 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processReadRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
+        if (!RequestUtils.isHighPriority(r)
+                && !hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER)
+                && isTenantReadRateExceeded(requestHandler.ctx().channel())) {
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
+                    .setLedgerId(r.getReadRequest().getLedgerId())
+                    .setEntryId(r.getReadRequest().getEntryId())
+                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            writeAndFlush(requestHandler.ctx().channel(), BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(r.getHeader())
+                    .setStatus(readResponse.getStatus())
+                    .setReadResponse(readResponse)
+                    .build());
+            return;
+        }
         ExecutorService fenceThread = null == highPriorityThreadPool ? null :
                 highPriorityThreadPool.chooseThread(requestHandler.ctx());
 
         final ReadEntryProcessorV3 read;
-        final OrderedExecutor threadPool;
+        final Executor thread;
         if (RequestUtils.isLongPollReadRequest(r.getReadRequest())) {
             ExecutorService lpThread = longPollThreadPool.chooseThread(requestHandler.ctx());
 
             read = new LongPollReadEntryProcessorV3(r, requestHandler, this, fenceThread,
                                                     lpThread, requestTimer);
-            threadPool = longPollThreadPool;
+            thread = longPollThreadPool.chooseThread(r.getReadRequest().getLedgerId());
         } else {
             read = new ReadEntryProcessorV3(r, requestHandler, this, fenceThread);
 
@@ -532,18 +830,15 @@ public class BookieRequestProcessor implements RequestProcessor {
             // and execute in highPriorityThreadPool
             boolean isHighPriority = RequestUtils.isHighPriority(r)
                 || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER);
-            if (isHighPriority) {
-                threadPool = highPriorityThreadPool;
-            } else {
-                threadPool = readThreadPool;
-            }
+            thread = chooseReadThread(isHighPriority ? highPriorityThreadPool : readThreadPool,
+                    r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId(), isHighPriority);
         }
 
-        if (null == threadPool) {
+        if (null == thread) {
             read.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
+                thread.execute(read);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
@@ -565,6 +860,40 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r,
+                                           final BookieRequestHandler requestHandler) {
+        final BookkeeperProtocol.RangeReadRequest rangeRead = r.getRangeReadRequest();
+        if (isTenantReadRateExceeded(requestHandler.ctx().channel())) {
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            writeAndFlush(requestHandler.ctx().channel(), BookieProtoV3Codec.RangeReadResponseV3.createEnd(
+                    r.getHeader().getTxnId(), BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS, rangeRead.getLedgerId(),
+                    rangeRead.getStartEntryId(), -1L));
+            return;
+        }
+        final Executor thread = chooseReadThread(readThreadPool,
+                rangeRead.getLedgerId(), rangeRead.getStartEntryId(), false);
+        RangeReadEntryProcessorV3 read = new RangeReadEntryProcessorV3(r, requestHandler, this, thread);
+        if (null == thread) {
+            read.run();
+        } else {
+            try {
+                thread.execute(read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to read range at {}:{}. Too many pending requests",
+                              rangeRead.getLedgerId(), rangeRead.getStartEntryId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                read.sendResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS,
+                        BookieProtoV3Codec.RangeReadResponseV3.createEnd(r.getHeader().getTxnId(),
+                                BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS, rangeRead.getLedgerId(),
+                                rangeRead.getStartEntryId(), -1L),
+                        requestStats.getRangeReadRequestStats());
+                onReadRequestFinish();
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
@@ -625,7 +954,10 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processGetBookieInfoRequestV3(final BookkeeperProtocol.Request r,
                                                final BookieRequestHandler requestHandler) {
         GetBookieInfoProcessorV3 getBookieInfo = new GetBookieInfoProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
+        if (null != readScheduler) {
+            readScheduler.executeOrdered(RequestScheduler.TrafficClass.CATCH_UP_READ, r.getHeader().getTxnId(),
+                    getBookieInfo);
+        } else if (null == readThreadPool) {
             getBookieInfo.run();
         } else {
             readThreadPool.submit(getBookieInfo);
@@ -636,7 +968,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                                                             final BookieRequestHandler requestHandler) {
         GetListOfEntriesOfLedgerProcessorV3 getListOfEntriesOfLedger =
                 new GetListOfEntriesOfLedgerProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
+        if (null != readScheduler) {
+            readScheduler.executeOrdered(RequestScheduler.TrafficClass.CATCH_UP_READ,
+                    r.getGetListOfEntriesOfLedgerRequest().getLedgerId(), getListOfEntriesOfLedger);
+        } else if (null == readThreadPool) {
             getListOfEntriesOfLedger.run();
         } else {
             readThreadPool.submit(getListOfEntriesOfLedger);
@@ -644,6 +979,10 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
+        if (!r.isHighPriority() && isTenantAddRateExceeded(requestHandler.ctx().channel())) {
+            rejectTenantRequest(r, requestHandler.ctx().channel());
+            return;
+        }
         WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
 
         // If it's a high priority add (usually as part of recovery process), we want to make sure it gets
@@ -654,60 +993,100 @@ public class BookieRequestProcessor implements RequestProcessor {
         } else {
             threadPool = writeThreadPool;
         }
+        final Executor thread = chooseAddThread(threadPool, r.getLedgerId(), r.getEntryId(),
+                r.isHighPriority(), r.isRecoveryAdd());
 
-        if (null == threadPool) {
+        if (null == thread) {
             write.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getLedgerId(), write);
+                thread.execute(write);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
                 }
-                getRequestStats().getAddEntryRejectedCounter().inc();
-
-                write.sendWriteReqResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getAddRequestStats());
-                r.release();
-                r.recycle();
-                write.recycle();
+                rejectAddRequest(write);
             }
         }
     }
 
+    private void rejectAddRequest(WriteEntryProcessor write) {
+        BookieProtocol.ParsedAddRequest r = write.request;
+        getRequestStats().getAddEntryRejectedCounter().inc();
+
+        write.sendWriteReqResponse(
+            BookieProtocol.ETOOMANYREQUESTS,
+            ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+            requestStats.getAddRequestStats());
+        r.release();
+        r.recycle();
+        write.recycle();
+    }
+
     private void processReadRequest(final BookieProtocol.ReadRequest r, final BookieRequestHandler requestHandler) {
+        if (!r.isHighPriority() && !r.isFencing() && isTenantReadRateExceeded(requestHandler.ctx().channel())) {
+            rejectTenantRequest(r, requestHandler.ctx().channel());
+            return;
+        }
         ExecutorService fenceThreadPool =
                 null == highPriorityThreadPool ? null : highPriorityThreadPool.chooseThread(requestHandler.ctx());
         ReadEntryProcessor read = r instanceof BookieProtocol.BatchedReadRequest
                 ? BatchedReadEntryProcessor.create((BookieProtocol.BatchedReadRequest) r, requestHandler,
-                this, fenceThreadPool, throttleReadResponses, serverCfg.getMaxBatchReadSize())
+                this, fenceThreadPool, throttleReadResponses, serverCfg.getMaxBatchReadSize(), zeroCopyReads)
                 : ReadEntryProcessor.create(r, requestHandler,
-                        this, fenceThreadPool, throttleReadResponses);
+                        this, fenceThreadPool, throttleReadResponses, zeroCopyReads);
 
         // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
         // gets executed as fast as possible, so bypass the normal readThreadPool
         // and execute in highPriorityThreadPool
         final OrderedExecutor threadPool;
-        if (r.isHighPriority() || r.isFencing()) {
+        final boolean isHighPriority = r.isHighPriority() || r.isFencing();
+        final boolean isBatchedRead = r instanceof BookieProtocol.BatchedReadRequest;
+        if (isHighPriority) {
             threadPool = highPriorityThreadPool;
         } else {
             threadPool = readThreadPool;
+            if (null != diskReadThreadPools && !isBatchedRead && readFromCache(read)) {
+                return;
+            }
+            if (null != readCoalescer && !isBatchedRead && readCoalescer.coalesce(read)) {
+                return;
+            }
+        }
+        executeRead(read, threadPool, isHighPriority);
+    }
+
+    /**
+     * Schedule a read coalesced with a leader which couldn't share its result, so it reads the entry
+     * itself on its own read thread instead of the thread completing the leader.
+     */
+    void scheduleCoalescedRead(ReadEntryProcessor read) {
+        executeRead(read, readThreadPool, false);
+    }
+
+    private void executeRead(ReadEntryProcessor read, OrderedExecutor threadPool, boolean isHighPriority) {
+        final BookieProtocol.ReadRequest r = read.request;
+        final Executor thread;
+        read.diskRead = null != diskReadThreadPools && !isHighPriority;
+        if (read.diskRead) {
+            thread = diskReadThreadPools.chooseThread(r.getLedgerId());
+        } else {
+            thread = chooseReadThread(threadPool, r.getLedgerId(), r.getEntryId(), isHighPriority);
         }
 
-        if (null == threadPool) {
+        if (null == thread) {
             read.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
+                thread.execute(read);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
                 }
                 getRequestStats().getReadEntryRejectedCounter().inc();
+                read.completePendingRead(null, BookieProtocol.ETOOMANYREQUESTS);
                 read.sendResponse(
                     BookieProtocol.ETOOMANYREQUESTS,
                     ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
@@ -718,6 +1097,34 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    /**
+     * Serve a read on the calling IO thread if its entry is in the caches of the bookie.
+     *
+     * @return whether the read was served
+     */
+    private boolean readFromCache(ReadEntryProcessor read) {
+        if (!read.requestHandler.ctx().channel().isWritable()
+                || read.request.getProtocolVersion() < BookieProtocol.LOWEST_COMPAT_PROTOCOL_VERSION
+                || read.request.getProtocolVersion() > BookieProtocol.CURRENT_PROTOCOL_VERSION) {
+            // don't wait for the channel on the IO thread, and let the read thread reject the request
+            return false;
+        }
+        ByteBuf entry;
+        try {
+            entry = bookie.readEntryIfCached(read.request.getLedgerId(), read.request.getEntryId());
+        } catch (Exception e) {
+            // the read from the disk reports the error
+            return false;
+        }
+        if (null == entry) {
+            return false;
+        }
+        requestStats.getReadEntryCacheHitInlineCounter().inc();
+        read.setCachedEntry(entry);
+        read.run();
+        return true;
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
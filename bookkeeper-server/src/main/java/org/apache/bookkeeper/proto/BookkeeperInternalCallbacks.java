@@ -232,6 +232,26 @@ public class BookkeeperInternalCallbacks {
         void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for calls from BookieClient objects.
+     * Such calls are for the streamed replies of range read operations: each entry
+     * of the range is delivered as it arrives, then the range is completed once.
+     */
+    public interface RangeReadEntryCallback {
+        /**
+         * An entry of the range was received. The callee owns the buffer.
+         */
+        void readEntryReceived(long ledgerId, long entryId, ByteBuf buffer, Object ctx);
+
+        /**
+         * The range is complete, either because it reached its limits or the last add confirmed
+         * of the bookie ({@code rc} is OK), or because of an error.
+         *
+         * @param nextEntryId the id of the first entry which was not delivered
+         */
+        void readRangeComplete(int rc, long ledgerId, long nextEntryId, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
@@ -22,6 +22,9 @@ package org.apache.bookkeeper.proto;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.conf.ClientConfiguration;
@@ -35,19 +38,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *  Provide a simple round-robin style channel pool. We could improve it later to do more
- *  fantastic things.
+ *  Provide a channel pool which picks the channel of an operation by its key, so the operations of a
+ *  ledger are ordered, or picks the least loaded channel for the reads.
+ *
+ *  <p>If the max number of channels per bookie is greater than the core size, the pool adds channels
+ *  when its least loaded channel is loaded beyond a threshold, and removes them once the load drops.
+ *  The added channels only serve the reads, so adding or removing them doesn't reorder the operations
+ *  of a ledger.
  */
 class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         GenericCallback<PerChannelBookieClient> {
 
     static final Logger LOG = LoggerFactory.getLogger(DefaultPerChannelBookieClientPool.class);
 
+    // the bytes queued for writing in a channel which weigh as much as a pending request in its load
+    private static final long LOAD_BYTES_PER_REQUEST = 64 * 1024;
+
     final PerChannelBookieClientFactory factory;
     final BookieId address;
 
     final PerChannelBookieClient[] clients;
     final PerChannelBookieClient[] clientsV3Enforced;
+    // the channels added when the pool is loaded, which only serve the reads
+    volatile PerChannelBookieClient[] extraClients = new PerChannelBookieClient[0];
+    // the channels removed from the pool, closed once their pending operations completed
+    volatile PerChannelBookieClient[] retiredClients = new PerChannelBookieClient[0];
+    final int maxSize;
+    final int growThreshold;
+    boolean closed = false;
 
     final ClientConfiguration conf;
     SecurityHandlerFactory shFactory;
@@ -64,6 +82,8 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         this.conf = conf;
 
         this.shFactory = SecurityProviderFactoryFactory.getSecurityProviderFactory(conf.getTLSProviderFactoryClass());
+        this.maxSize = Math.max(coreSize, conf.getMaxChannelsPerBookie());
+        this.growThreshold = conf.getChannelPoolGrowThreshold();
 
         this.clients = new PerChannelBookieClient[coreSize];
         for (int i = 0; i < coreSize; i++) {
@@ -120,6 +140,119 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         getClient(key, forceUseV3).connectIfNeededAndDoOp(callback);
     }
 
+    @Override
+    public void obtainLeastLoaded(GenericCallback<PerChannelBookieClient> callback, long key) {
+        if (maxSize == 1) {
+            obtain(callback, key);
+            return;
+        }
+        PerChannelBookieClient[] extra = extraClients;
+        PerChannelBookieClient leastLoaded = null;
+        long minLoad = Long.MAX_VALUE;
+        for (PerChannelBookieClient pcbc : clients) {
+            long load = loadOf(pcbc);
+            if (load < minLoad) {
+                leastLoaded = pcbc;
+                minLoad = load;
+            }
+        }
+        for (PerChannelBookieClient pcbc : extra) {
+            long load = loadOf(pcbc);
+            if (load < minLoad) {
+                leastLoaded = pcbc;
+                minLoad = load;
+            }
+        }
+        if (leastLoaded == null) {
+            // none of the channels is ready to take more operations
+            obtain(callback, key);
+            return;
+        }
+        if (minLoad >= growThreshold && clients.length + extra.length < maxSize) {
+            grow();
+        }
+        leastLoaded.connectIfNeededAndDoOp(callback);
+    }
+
+    /**
+     * The load of a channel: its pending requests, plus the bytes it has queued for writing.
+     * A channel which isn't connected or writable can't take more operations.
+     */
+    private static long loadOf(PerChannelBookieClient pcbc) {
+        if (pcbc.state != PerChannelBookieClient.ConnectionState.CONNECTED || !pcbc.isWritable()) {
+            return Long.MAX_VALUE;
+        }
+        return pcbc.getNumPendingCompletionRequests() + pcbc.getPendingWriteBytes() / LOAD_BYTES_PER_REQUEST;
+    }
+
+    private synchronized void grow() {
+        PerChannelBookieClient[] extra = extraClients;
+        if (closed || clients.length + extra.length >= maxSize) {
+            return;
+        }
+        for (PerChannelBookieClient pcbc : extra) {
+            if (pcbc.state != PerChannelBookieClient.ConnectionState.CONNECTED) {
+                // wait for the last added channel to connect, before adding another one
+                return;
+            }
+        }
+        PerChannelBookieClient pcbc;
+        try {
+            pcbc = factory.create(address, this, shFactory, false);
+        } catch (SecurityException e) {
+            LOG.warn("Failed to add a channel to the pool of bookie {}", address, e);
+            return;
+        }
+        PerChannelBookieClient[] grown = Arrays.copyOf(extra, extra.length + 1);
+        grown[extra.length] = pcbc;
+        extraClients = grown;
+        LOG.info("Added a channel to the pool of bookie {}, which has {} channels", address,
+                clients.length + grown.length);
+        pcbc.connectIfNeededAndDoOp(this);
+    }
+
+    /**
+     * Remove the last added channel once the other channels can take its load, and close the removed
+     * channels whose pending operations completed. At most one channel is removed per call.
+     */
+    private synchronized void maybeShrink() {
+        List<PerChannelBookieClient> retired = new ArrayList<>(Arrays.asList(retiredClients));
+        if (retired.removeIf(pcbc -> {
+            if (pcbc.getNumPendingCompletionRequests() > 0) {
+                return false;
+            }
+            pcbc.close(false);
+            return true;
+        })) {
+            retiredClients = retired.toArray(new PerChannelBookieClient[0]);
+        }
+
+        PerChannelBookieClient[] extra = extraClients;
+        if (closed || extra.length == 0) {
+            return;
+        }
+        long totalLoad = 0;
+        for (PerChannelBookieClient pcbc : clients) {
+            totalLoad += Math.min(loadOf(pcbc), growThreshold);
+        }
+        for (PerChannelBookieClient pcbc : extra) {
+            totalLoad += Math.min(loadOf(pcbc), growThreshold);
+        }
+        int numChannels = clients.length + extra.length;
+        PerChannelBookieClient last = extra[extra.length - 1];
+        PerChannelBookieClient.ConnectionState lastState = last.state;
+        boolean lastFailed = lastState == PerChannelBookieClient.ConnectionState.DISCONNECTED
+                || lastState == PerChannelBookieClient.ConnectionState.CLOSED;
+        if (lastFailed || totalLoad < (long) (numChannels - 1) * growThreshold / 2) {
+            extraClients = Arrays.copyOf(extra, extra.length - 1);
+            PerChannelBookieClient[] retiredNow = Arrays.copyOf(retiredClients, retiredClients.length + 1);
+            retiredNow[retiredClients.length] = last;
+            retiredClients = retiredNow;
+            LOG.info("Removed a channel from the pool of bookie {}, which has {} channels", address,
+                    numChannels - 1);
+        }
+    }
+
     @Override
     public boolean isWritable(long key) {
         return getClient(key).isWritable();
@@ -133,6 +266,15 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
                 clientsV3Enforced[i].checkTimeoutOnPendingOperations();
             }
         }
+        for (PerChannelBookieClient pcbc : extraClients) {
+            pcbc.checkTimeoutOnPendingOperations();
+        }
+        for (PerChannelBookieClient pcbc : retiredClients) {
+            pcbc.checkTimeoutOnPendingOperations();
+        }
+        if (maxSize > clients.length) {
+            maybeShrink();
+        }
     }
 
     @Override
@@ -148,6 +290,9 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
                 clientsV3Enforced[i].disconnect();
             }
         }
+        for (PerChannelBookieClient pcbc : extraClients) {
+            pcbc.disconnect();
+        }
     }
 
     @Override
@@ -158,6 +303,20 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
                 clientsV3Enforced[i].close(wait);
             }
         }
+        PerChannelBookieClient[] extra;
+        PerChannelBookieClient[] retired;
+        synchronized (this) {
+            closed = true;
+            extra = extraClients;
+            retired = retiredClients;
+            retiredClients = new PerChannelBookieClient[0];
+        }
+        for (PerChannelBookieClient pcbc : extra) {
+            pcbc.close(wait);
+        }
+        for (PerChannelBookieClient pcbc : retired) {
+            pcbc.close(wait);
+        }
     }
 
     @Override
@@ -171,6 +330,12 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
                 numPending += pcbc.getNumPendingCompletionRequests();
             }
         }
+        for (PerChannelBookieClient pcbc : extraClients) {
+            numPending += pcbc.getNumPendingCompletionRequests();
+        }
+        for (PerChannelBookieClient pcbc : retiredClients) {
+            numPending += pcbc.getNumPendingCompletionRequests();
+        }
         return numPending;
     }
 }
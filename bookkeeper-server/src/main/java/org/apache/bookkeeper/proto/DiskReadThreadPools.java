@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * The thread pools reading the entries missing from the bookie caches, one per ledger directory. The
+ * ledgers are mapped to the directories as the db ledger storage maps them, so a slow disk only delays
+ * the reads of the ledgers it stores.
+ *
+ * <p>The pools are elastic: a pool starts its threads on demand, up to its max number of threads, and
+ * stops them once they have been idle for a while. The reads of a ledger aren't ordered.
+ */
+class DiskReadThreadPools {
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor[] pools;
+
+    /**
+     * @param numDirs number of ledger directories
+     * @param numThreadsPerDir max number of threads of a directory
+     * @param maxPendingReadsPerDir max number of reads queued for a directory, or 0 or less for no limit
+     */
+    DiskReadThreadPools(String name, int numDirs, int numThreadsPerDir, int maxPendingReadsPerDir) {
+        this.pools = new ThreadPoolExecutor[numDirs];
+        for (int i = 0; i < numDirs; i++) {
+            BlockingQueue<Runnable> queue = maxPendingReadsPerDir > 0
+                    ? new ArrayBlockingQueue<>(maxPendingReadsPerDir) : new LinkedBlockingQueue<>();
+            pools[i] = new ThreadPoolExecutor(numThreadsPerDir, numThreadsPerDir,
+                    IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue,
+                    new ThreadFactoryBuilder().setNameFormat(name + "-" + i + "-%d").build());
+            // the core threads are the elastic part: started by the first reads, stopped when idle
+            pools[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Choose the pool of the directory storing a ledger. The pools reject the reads exceeding their
+     * max number of pending reads with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    Executor chooseThread(long ledgerId) {
+        return pools[MathUtils.signSafeMod(ledgerId, pools.length)];
+    }
+
+    /**
+     * Stop accepting reads, and wait for the queued ones to be executed.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        for (ThreadPoolExecutor pool : pools) {
+            pool.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (ThreadPoolExecutor pool : pools) {
+                if (!pool.awaitTermination(Math.max(deadline - System.nanoTime(), 1), TimeUnit.NANOSECONDS)) {
+                    pool.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+
+/**
+ * A list of {@link FileRegion}s, possibly interleaved with {@link ByteBuf}s, which are written
+ * in order on a channel. It is the {@link org.apache.bookkeeper.util.ByteBufList} counterpart for
+ * entries which are sent straight from the entry log files.
+ */
+class FileRegionList extends AbstractReferenceCounted {
+    private final ArrayList<ReferenceCounted> parts = new ArrayList<>(2);
+
+    static FileRegionList get() {
+        return new FileRegionList();
+    }
+
+    static FileRegionList get(FileRegion region) {
+        FileRegionList list = new FileRegionList();
+        list.add(region);
+        return list;
+    }
+
+    /**
+     * Append a {@link FileRegion} or a {@link ByteBuf} to the list, the list takes its ownership.
+     */
+    void add(ReferenceCounted part) {
+        assert part instanceof FileRegion || part instanceof ByteBuf;
+        parts.add(part);
+    }
+
+    int size() {
+        return parts.size();
+    }
+
+    ReferenceCounted get(int index) {
+        return parts.get(index);
+    }
+
+    /**
+     * @return the number of bytes of the parts of the list.
+     */
+    long readableBytes() {
+        long size = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            ReferenceCounted part = parts.get(i);
+            if (part instanceof FileRegion) {
+                size += ((FileRegion) part).count();
+            } else {
+                size += ((ByteBuf) part).readableBytes();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Write each part of the list on the channel and release the list. The promise is notified
+     * when the last part is written.
+     */
+    void writeTo(ChannelHandlerContext ctx, ChannelPromise promise) {
+        try {
+            int partsCount = parts.size();
+            if (partsCount == 0) {
+                promise.setSuccess();
+            }
+            for (int i = 0; i < partsCount; i++) {
+                ReferenceCounted part = parts.get(i);
+                Object msg = part instanceof ByteBuf ? ((ByteBuf) part).retainedDuplicate() : part.retain();
+                ctx.write(msg, i == (partsCount - 1) ? promise : ctx.voidPromise());
+            }
+        } finally {
+            ReferenceCountUtil.release(this);
+        }
+    }
+
+    @Override
+    protected void deallocate() {
+        for (int i = 0; i < parts.size(); i++) {
+            ReferenceCountUtil.release(parts.get(i));
+        }
+        parts.clear();
+    }
+
+    @Override
+    public FileRegionList touch(Object hint) {
+        for (int i = 0; i < parts.size(); i++) {
+            parts.get(i).touch(hint);
+        }
+        return this;
+    }
+}
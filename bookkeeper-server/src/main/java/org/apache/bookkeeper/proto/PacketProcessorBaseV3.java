@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
@@ -83,6 +84,8 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                // the recycled v3 messages hold the entry they carry
+                ReferenceCountUtil.release(response);
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
@@ -110,6 +113,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
         } else {
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            ReferenceCountUtil.release(response);
         }
     }
 
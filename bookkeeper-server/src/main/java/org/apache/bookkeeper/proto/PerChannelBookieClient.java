@@ -87,7 +87,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -107,13 +106,13 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetListOfEntriesOfLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StartTLSCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
-import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
@@ -124,6 +123,8 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -145,6 +146,7 @@ import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.StringUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
 import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
@@ -175,6 +177,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         BKException.Code.WriteOnReadOnlyBookieException));
     private static final int DEFAULT_HIGH_PRIORITY_VALUE = 100; // We may add finer grained priority later.
     private static final AtomicLong txnIdGenerator = new AtomicLong(0);
+    private static final long NO_TXN_ID = -1L;
+    // the timeouts of the pending operations are checked with a resolution of 100ms, and a revolution
+    // of the wheel lasts about 50 seconds
+    private static final long TIMEOUT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
 
     final BookieId bookieId;
     final BookieAddressResolver bookieAddressResolver;
@@ -187,6 +194,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
+    // the pending v3 operations and v2 batched reads, by txn id
+    private final ConcurrentLongHashMap<CompletionValue> txnCompletionObjects =
+            ConcurrentLongHashMap.<CompletionValue>newBuilder().autoShrink(true).build();
+
+    // the pending v2 operations, by ledger and entry
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
 
@@ -195,6 +207,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
         new SynchronizedHashMultiMap<>();
 
+    private final TimeoutWheel<CompletionValue> completionTimeouts =
+        new TimeoutWheel<>(TIMEOUT_TICK_NANOS, TIMEOUT_WHEEL_SIZE, MathUtils.nowInNano());
+
     private final StatsLogger statsLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_READ_OP,
@@ -527,7 +542,19 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        return txnCompletionObjects.size() + completionObjects.size();
+    }
+
+    /**
+     * The bytes queued in the channel, which weren't written to the socket yet, as far as the write
+     * buffer high water mark. A channel which isn't writable has at least that many bytes queued.
+     */
+    long getPendingWriteBytes() {
+        Channel c = channel;
+        if (c == null) {
+            return 0;
+        }
+        return Math.max(c.config().getWriteBufferHighWaterMark() - c.bytesBeforeUnwritable(), 0);
     }
 
     protected ChannelFuture connect() {
@@ -688,12 +715,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     void writeLac(final long ledgerId, final byte[] masterKey, final long lac, ByteBufList toSend, WriteLacCallback cb,
             Object ctx) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new TxnCompletionKey(txnId,
-                                                                OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new WriteLacCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        final CompletionValue completion = new WriteLacCompletion(cb, ctx, ledgerId);
+        putTxnCompletion(txnId, OperationType.WRITE_LAC, completion);
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -718,7 +742,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setHeader(headerBuilder)
                 .setWriteLacRequest(writeLacBuilder)
                 .build();
-        writeAndFlush(channel, completionKey, writeLacRequest);
+        writeAndFlush(channel, completion, writeLacRequest);
     }
 
     void forceLedger(final long ledgerId, ForceLedgerCallback cb, Object ctx) {
@@ -730,12 +754,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return;
         }
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new TxnCompletionKey(txnId,
-                                                                OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new ForceLedgerCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        final CompletionValue completion = new ForceLedgerCompletion(cb, ctx, ledgerId);
+        putTxnCompletion(txnId, OperationType.FORCE_LEDGER, completion);
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -749,7 +770,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setHeader(headerBuilder)
                 .setForceLedgerRequest(writeLacBuilder)
                 .build();
-        writeAndFlush(channel, completionKey, forceLedgerRequest);
+        writeAndFlush(channel, completion, forceLedgerRequest);
     }
 
     /**
@@ -777,6 +798,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                   Object ctx, final int options, boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
         Object request = null;
         CompletionKey completionKey = null;
+        long txnId = NO_TXN_ID;
         if (useV2WireProtocol) {
             if (writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
                 LOG.error("invalid writeflags {} for v2 protocol", writeFlags);
@@ -791,78 +813,53 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 request = ByteBufList.clone((ByteBufList) toSend);
             }
         } else {
-            final long txnId = getTxnId();
-            completionKey = new TxnCompletionKey(txnId, OperationType.ADD_ENTRY);
+            txnId = getTxnId();
 
-            // Build the request and calculate the total size to be included in the packet.
-            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
-                    .setVersion(ProtocolVersion.VERSION_THREE)
-                    .setOperation(OperationType.ADD_ENTRY)
-                    .setTxnId(txnId);
+            // The add request is serialized by hand, the payload buffers are written as they are
+            int priority = 0;
             if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
-                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
-            }
-
-            ByteString body = null;
-            ByteBufList bufToSend = (ByteBufList) toSend;
-
-            if (bufToSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
-                        bufToSend.readableBytes());
-            } else {
-                for (int i = 0; i < bufToSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
-            AddRequest.Builder addBuilder = AddRequest.newBuilder()
-                    .setLedgerId(ledgerId)
-                    .setEntryId(entryId)
-                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
-
-            if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
-                addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
-            }
-
-            if (!writeFlags.isEmpty()) {
-                // add flags only if needed, in order to be able to talk with old bookies
-                addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+                priority = DEFAULT_HIGH_PRIORITY_VALUE;
             }
+            boolean recoveryAdd =
+                    ((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD;
+            // add flags only if needed, in order to be able to talk with old bookies
+            int writeFlagsValue = writeFlags.isEmpty() ? 0 : WriteFlag.getWriteFlagsValue(writeFlags);
 
-            request = withRequestContext(Request.newBuilder())
-                    .setHeader(headerBuilder)
-                    .setAddRequest(addBuilder)
-                    .build();
+            request = BookieProtoV3Codec.AddRequestV3.create(txnId, priority, ledgerId, entryId, masterKey,
+                    (ByteBufList) toSend, recoveryAdd, writeFlagsValue)
+                    .withRequestContext(requestContext());
         }
 
-        putCompletionKeyValue(completionKey,
-                              acquireAddCompletion(completionKey,
-                                                   cb, ctx, ledgerId, entryId));
+        AddCompletion completion = acquireAddCompletion(cb, ctx, ledgerId, entryId);
+        if (completionKey != null) {
+            putCompletionKeyValue(completionKey, completion);
+        } else {
+            putTxnCompletion(txnId, OperationType.ADD_ENTRY, completion);
+        }
         final Channel c = channel;
         if (c == null) {
             // usually checked in writeAndFlush, but we have extra check
             // because we need to release toSend.
-            errorOut(completionKey);
+            errorOut(completion);
             ReferenceCountUtil.release(toSend);
+            ReferenceCountUtil.release(request);
             return;
         } else {
             // addEntry times out on backpressure
-            writeAndFlush(c, completionKey, request, allowFastFail);
+            writeAndFlush(c, completion, request, allowFastFail);
         }
     }
 
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
+        long txnId = NO_TXN_ID;
         if (useV2WireProtocol) {
             request = BookieProtocol.ReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                                                      ledgerId, 0, (short) 0, null);
             completionKey = acquireV2Key(ledgerId, 0, OperationType.READ_LAC);
         } else {
-            final long txnId = getTxnId();
-            completionKey = new TxnCompletionKey(txnId, OperationType.READ_LAC);
+            txnId = getTxnId();
 
             // Build the request and calculate the total size to be included in the packet.
             BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -876,16 +873,19 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .setReadLacRequest(readLacBuilder)
                     .build();
         }
-        putCompletionKeyValue(completionKey,
-                              new ReadLacCompletion(completionKey, cb,
-                                                    ctx, ledgerId));
-        writeAndFlush(channel, completionKey, request);
+        ReadLacCompletion completion = new ReadLacCompletion(cb, ctx, ledgerId);
+        if (completionKey != null) {
+            putCompletionKeyValue(completionKey, completion);
+        } else {
+            putTxnCompletion(txnId, OperationType.READ_LAC, completion);
+        }
+        writeAndFlush(channel, completion, request);
     }
 
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        final CompletionValue completion = new GetListOfEntriesOfLedgerCompletion(cb, ledgerId);
+        putTxnCompletion(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER, completion);
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -897,7 +897,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final Request getListOfEntriesOfLedgerRequest = Request.newBuilder().setHeader(headerBuilder)
                 .setGetListOfEntriesOfLedgerRequest(getListOfEntriesOfLedgerRequestBuilder).build();
 
-        writeAndFlush(channel, completionKey, getListOfEntriesOfLedgerRequest);
+        writeAndFlush(channel, completion, getListOfEntriesOfLedgerRequest);
     }
 
     /**
@@ -940,72 +940,71 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                    boolean allowFastFail) {
         Object request = null;
         CompletionKey completionKey = null;
+        long txnId = NO_TXN_ID;
         if (useV2WireProtocol) {
             request = BookieProtocol.ReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                     ledgerId, entryId, (short) flags, masterKey);
             completionKey = acquireV2Key(ledgerId, entryId, OperationType.READ_ENTRY);
         } else {
-            final long txnId = getTxnId();
-            completionKey = new TxnCompletionKey(txnId, OperationType.READ_ENTRY);
+            txnId = getTxnId();
 
-            // Build the request and calculate the total size to be included in the packet.
-            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
-                    .setVersion(ProtocolVersion.VERSION_THREE)
-                    .setOperation(OperationType.READ_ENTRY)
-                    .setTxnId(txnId);
+            int priority = 0;
             if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
-                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+                priority = DEFAULT_HIGH_PRIORITY_VALUE;
             }
 
-            ReadRequest.Builder readBuilder = ReadRequest.newBuilder()
-                    .setLedgerId(ledgerId)
-                    .setEntryId(entryId);
+            BookieProtoV3Codec.ReadRequestV3 readRequest =
+                    BookieProtoV3Codec.ReadRequestV3.create(txnId, priority, ledgerId, entryId);
 
             if (null != previousLAC) {
-                readBuilder = readBuilder.setPreviousLAC(previousLAC);
+                readRequest.setPreviousLAC(previousLAC);
             }
 
             if (null != timeOutInMillis) {
                 // Long poll requires previousLAC
                 if (null == previousLAC) {
+                    readRequest.release();
                     cb.readEntryComplete(BKException.Code.IncorrectParameterException,
                         ledgerId, entryId, null, ctx);
                     return;
                 }
-                readBuilder = readBuilder.setTimeOut(timeOutInMillis);
+                readRequest.setTimeOut(timeOutInMillis);
             }
 
             if (piggyBackEntry) {
                 // Long poll requires previousLAC
                 if (null == previousLAC) {
+                    readRequest.release();
                     cb.readEntryComplete(BKException.Code.IncorrectParameterException,
                         ledgerId, entryId, null, ctx);
                     return;
                 }
-                readBuilder = readBuilder.setFlag(ReadRequest.Flag.ENTRY_PIGGYBACK);
+                readRequest.setFlag(ReadRequest.Flag.ENTRY_PIGGYBACK);
             }
 
             // Only one flag can be set on the read requests
             if (((short) flags & BookieProtocol.FLAG_DO_FENCING) == BookieProtocol.FLAG_DO_FENCING) {
-                readBuilder.setFlag(ReadRequest.Flag.FENCE_LEDGER);
+                readRequest.setFlag(ReadRequest.Flag.FENCE_LEDGER);
                 if (masterKey == null) {
+                    readRequest.release();
                     cb.readEntryComplete(BKException.Code.IncorrectParameterException,
                                          ledgerId, entryId, null, ctx);
                     return;
                 }
-                readBuilder.setMasterKey(ByteString.copyFrom(masterKey));
+                readRequest.setMasterKey(masterKey);
             }
 
-            request = withRequestContext(Request.newBuilder())
-                    .setHeader(headerBuilder)
-                    .setReadRequest(readBuilder)
-                    .build();
+            request = readRequest.withRequestContext(requestContext());
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
-        putCompletionKeyValue(completionKey, readCompletion);
+        ReadCompletion readCompletion = acquireReadCompletion(cb, ctx, ledgerId, entryId);
+        if (completionKey != null) {
+            putCompletionKeyValue(completionKey, readCompletion);
+        } else {
+            putTxnCompletion(txnId, OperationType.READ_ENTRY, readCompletion);
+        }
 
-        writeAndFlush(channel, completionKey, request, allowFastFail);
+        writeAndFlush(channel, readCompletion, request, allowFastFail);
     }
 
     public void batchReadEntries(final long ledgerId,
@@ -1035,28 +1034,58 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                      byte[] masterKey,
                                      boolean allowFastFail) {
         Object request;
-        CompletionKey completionKey;
         final long txnId = getTxnId();
         if (useV2WireProtocol) {
             request = BookieProtocol.BatchedReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                     ledgerId, startEntryId, (short) flags, masterKey, txnId, maxCount, maxSize);
-            completionKey = new TxnCompletionKey(txnId, OperationType.BATCH_READ_ENTRY);
         } else {
             throw new UnsupportedOperationException("Unsupported batch read entry operation for v3 protocol.");
         }
         BatchedReadCompletion readCompletion = new BatchedReadCompletion(
-                completionKey, cb, ctx, ledgerId, startEntryId);
-        putCompletionKeyValue(completionKey, readCompletion);
+                cb, ctx, ledgerId, startEntryId);
+        putTxnCompletion(txnId, OperationType.BATCH_READ_ENTRY, readCompletion);
+
+        writeAndFlush(channel, readCompletion, request, allowFastFail);
+    }
 
-        writeAndFlush(channel, completionKey, request, allowFastFail);
+    void readEntryRange(final long ledgerId, final long startEntryId, final int maxCount, final long maxSize,
+                        RangeReadEntryCallback cb, Object ctx) {
+        if (useV2WireProtocol) {
+            LOG.error("range read is not allowed with v2 protocol");
+            executor.executeOrdered(ledgerId, () -> {
+                cb.readRangeComplete(BKException.Code.IllegalOpException, ledgerId, startEntryId, ctx);
+            });
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionValue completion = new RangeReadCompletion(cb, ctx, ledgerId, startEntryId);
+        putTxnCompletion(txnId, OperationType.RANGE_READ_ENTRY, completion);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_READ_ENTRY)
+                .setTxnId(txnId);
+        RangeReadRequest.Builder rangeReadBuilder = RangeReadRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setStartEntryId(startEntryId);
+        if (maxCount > 0) {
+            rangeReadBuilder.setMaxCount(maxCount);
+        }
+        if (maxSize > 0) {
+            rangeReadBuilder.setMaxSize(maxSize);
+        }
+
+        final Request rangeReadRequest = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeReadRequest(rangeReadBuilder)
+                .build();
+        writeAndFlush(channel, completion, rangeReadRequest);
     }
 
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
-                              new GetBookieInfoCompletion(
-                                      completionKey, cb, ctx));
+        final CompletionValue completion = new GetBookieInfoCompletion(cb, ctx);
+        putTxnCompletion(txnId, OperationType.GET_BOOKIE_INFO, completion);
 
         // Build the request and calculate the total size to be included in the packet.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -1072,17 +1101,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setGetBookieInfoRequest(getBookieInfoBuilder)
                 .build();
 
-        writeAndFlush(channel, completionKey, getBookieInfoRequest);
+        writeAndFlush(channel, completion, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
-
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
-
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        final long nowNanos = MathUtils.nowInNano();
+        int timedOutOperations = completionTimeouts.expire(nowNanos, completion -> {
+            // the completion was claimed by the expiry, a response can't complete or recycle it anymore
+            removeCompletion(completion);
+            completion.timeout();
+        });
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1168,18 +1196,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void writeAndFlush(final Channel channel,
-                               final CompletionKey key,
+                               final CompletionValue completion,
                                final Object request) {
-        writeAndFlush(channel, key, request, false);
+        writeAndFlush(channel, completion, request, false);
     }
 
     private void writeAndFlush(final Channel channel,
-                           final CompletionKey key,
+                           final CompletionValue completion,
                            final Object request,
                            final boolean allowFastFail) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
-            errorOut(key);
+            errorOut(completion);
             return;
         }
 
@@ -1193,19 +1221,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             LOG.warn("Operation {} failed: TooManyRequestsException",
                     StringUtils.requestToString(request));
 
-            errorOut(key, BKException.Code.TooManyRequestsException);
+            errorOut(completion, BKException.Code.TooManyRequestsException);
             return;
         }
 
+        // the completion may be recycled by the time the write completes
+        final long txnId = completion.txnId;
+        final CompletionKey key = completion.key;
         try {
             final long startTime = MathUtils.nowInNano();
 
             ChannelPromise promise = channel.newPromise().addListener(future -> {
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
-                    if (completion != null) {
-                        completion.setOutstanding();
+                    CompletionValue outstanding = txnId != NO_TXN_ID
+                            ? txnCompletionObjects.get(txnId) : completionObjects.get(key);
+                    if (outstanding != null) {
+                        outstanding.setOutstanding();
                     }
                 } else {
                     nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
@@ -1214,20 +1246,27 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             channel.writeAndFlush(request, promise);
         } catch (Throwable e) {
             LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
-            errorOut(key);
+            errorOut(completion);
         }
     }
 
-    void errorOut(final CompletionKey key) {
+    void errorOut(final CompletionValue completion) {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Removing completion key: {}", key);
+            LOG.debug("Removing completion: {}", completion);
         }
-        CompletionValue completion = completionObjects.remove(key);
-        if (completion != null) {
+        if (removeCompletion(completion) && completion.claim()) {
+            completionTimeouts.cancel(completion);
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
+        }
+    }
+
+    void errorOut(final CompletionValue completion, final int rc) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing completion: {}", completion);
+        }
+        if (removeCompletion(completion) && completion.claim()) {
+            completionTimeouts.cancel(completion);
+            completion.errorOut(rc);
         }
     }
 
@@ -1235,12 +1274,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1277,6 +1313,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         for (CompletionKey key : completionObjects.keys()) {
             errorOut(key, rc);
         }
+        for (long txnId : txnCompletionObjects.keys()) {
+            CompletionValue completion = removeTxnCompletion(txnId, null);
+            if (completion != null) {
+                completion.errorOut(rc);
+            }
+        }
     }
 
     void recordError() {
@@ -1399,14 +1441,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key;
+        CompletionValue completionValue;
         if (OperationType.BATCH_READ_ENTRY == operationType) {
-            key = new TxnCompletionKey(((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType);
+            completionValue = removeTxnCompletion(((BookieProtocol.BatchedReadResponse) response).getRequestId(),
+                    operationType);
         } else {
-            key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+            CompletionKey key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+            completionValue = getCompletionValue(key);
+            key.release();
         }
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1523,8 +1566,17 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private void readV3Response(final Response response) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        final CompletionValue completionValue;
+        if (header.getOperation() == OperationType.RANGE_READ_ENTRY && response.hasRangeReadResponse()
+                && !response.getRangeReadResponse().getEndOfRange()) {
+            // more entries of the range are coming
+            completionValue = getTxnCompletion(header.getTxnId(), header.getOperation());
+            if (completionValue instanceof RangeReadCompletion) {
+                ((RangeReadCompletion) completionValue).lastResponseNanos = MathUtils.nowInNano();
+            }
+        } else {
+            completionValue = removeTxnCompletion(header.getTxnId(), header.getOperation());
+        }
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1549,8 +1601,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 }
             });
         }
-
-        completionObjects.remove(key);
     }
 
     void initTLSHandshake() {
@@ -1645,15 +1695,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     // visible for testing
-    abstract class CompletionValue {
+    abstract class CompletionValue extends TimeoutWheel.Timeout {
         private final OpStatsLogger opLogger;
         private final OpStatsLogger timeoutOpLogger;
         private final String operationName;
-        private final Map<String, String> mdcContextMap;
+        private Map<String, String> mdcContextMap;
         protected Object ctx;
         protected long ledgerId;
         protected long entryId;
         protected long startTime;
+        // the operation is identified by its txn id, or by its key for the v2 operations. They are
+        // read by the expiry, which may run on another thread than the one which sent the operation
+        volatile long txnId = NO_TXN_ID;
+        volatile CompletionKey key;
+        volatile OperationType operationType;
 
         public CompletionValue(String operationName,
                                Object ctx,
@@ -1670,6 +1725,17 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             this.mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
         }
 
+        /**
+         * Reinitialize a recycled completion for a new operation.
+         */
+        protected void reset(Object ctx, long ledgerId, long entryId) {
+            this.ctx = ctx;
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.startTime = MathUtils.nowInNano();
+            this.mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
+        }
+
         private long latency() {
             return MathUtils.elapsedNanos(startTime);
         }
@@ -1687,19 +1753,32 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        @Override
+        long deadlineNanos() {
+            return startTime + readEntryTimeoutNanos;
         }
 
         void timeout() {
-            errorOut(BKException.Code.TimeoutException);
+            // before erroring out, a recycled completion may be reused once its callback ran
             timeoutOpLogger.registerSuccessfulEvent(latency(),
                                                     TimeUnit.NANOSECONDS);
+            errorOut(BKException.Code.TimeoutException);
+        }
+
+        /**
+         * Release the v2 key of the operation, once it completed.
+         */
+        protected void releaseKey() {
+            if (key != null) {
+                key.release();
+                key = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(txnId=%d, key=%s, ledger=%d, entry=%d)",
+                                 operationName, txnId, key, ledgerId, entryId);
         }
 
         protected void logResponse(StatusCode status, Object... extraInfo) {
@@ -1761,8 +1840,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class WriteLacCompletion extends CompletionValue {
         final WriteLacCallback cb;
 
-        public WriteLacCompletion(final CompletionKey key,
-                                  final WriteLacCallback originalCallback,
+        public WriteLacCompletion(final WriteLacCallback originalCallback,
                                   final Object originalCtx,
                                   final long ledgerId) {
             super("WriteLAC",
@@ -1776,7 +1854,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.writeLacComplete(rc, ledgerId,
                                                           addr, originalCtx);
-                        key.release();
+                        releaseKey();
                     }
                 };
         }
@@ -1810,8 +1888,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class ForceLedgerCompletion extends CompletionValue {
         final ForceLedgerCallback cb;
 
-        public ForceLedgerCompletion(final CompletionKey key,
-                                  final ForceLedgerCallback originalCallback,
+        public ForceLedgerCompletion(final ForceLedgerCallback originalCallback,
                                   final Object originalCtx,
                                   final long ledgerId) {
             super("ForceLedger",
@@ -1825,7 +1902,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.forceLedgerComplete(rc, ledgerId,
                                                           addr, originalCtx);
-                        key.release();
+                        releaseKey();
                     }
                 };
         }
@@ -1860,8 +1937,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class ReadLacCompletion extends CompletionValue {
         final ReadLacCallback cb;
 
-        public ReadLacCompletion(final CompletionKey key,
-                                 ReadLacCallback originalCallback,
+        public ReadLacCompletion(ReadLacCallback originalCallback,
                                  final Object ctx, final long ledgerId) {
             super("ReadLAC", ctx, ledgerId, BookieProtocol.LAST_ADD_CONFIRMED,
                   readLacOpLogger, readLacTimeoutOpLogger);
@@ -1874,7 +1950,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.readLacComplete(
                                 rc, ledgerId, lacBuffer, lastEntryBuffer, ctx);
-                        key.release();
+                        releaseKey();
                     }
                 };
         }
@@ -1916,29 +1992,48 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private final Recycler<ReadCompletion> readCompletionRecycler = new Recycler<ReadCompletion>() {
+            @Override
+            protected ReadCompletion newObject(Recycler.Handle<ReadCompletion> handle) {
+                return new ReadCompletion(handle);
+            }
+        };
+
+    ReadCompletion acquireReadCompletion(final ReadEntryCallback originalCallback,
+                                         final Object originalCtx,
+                                         final long ledgerId, final long entryId) {
+        ReadCompletion completion = readCompletionRecycler.get();
+        completion.reset(originalCallback, originalCtx, ledgerId, entryId);
+        return completion;
+    }
+
     // visible for testing
-    class ReadCompletion extends CompletionValue {
-        final ReadEntryCallback cb;
-
-        public ReadCompletion(final CompletionKey key,
-                              final ReadEntryCallback originalCallback,
-                              final Object originalCtx,
-                              long ledgerId, final long entryId) {
-            super("Read", originalCtx, ledgerId, entryId,
-                  readEntryOpLogger, readTimeoutOpLogger);
+    class ReadCompletion extends CompletionValue implements ReadEntryCallback {
+        final Recycler.Handle<ReadCompletion> handle;
 
-            this.cb = new ReadEntryCallback() {
-                    @Override
-                    public void readEntryComplete(int rc, long ledgerId,
-                                                  long entryId, ByteBuf buffer,
-                                                  Object ctx) {
-                        logOpResult(rc);
-                        originalCallback.readEntryComplete(rc,
-                                                           ledgerId, entryId,
-                                                           buffer, originalCtx);
-                        key.release();
-                    }
-                };
+        ReadEntryCallback originalCallback = null;
+
+        ReadCompletion(Recycler.Handle<ReadCompletion> handle) {
+            super("Read", null, -1, -1, readEntryOpLogger, readTimeoutOpLogger);
+            this.handle = handle;
+        }
+
+        void reset(final ReadEntryCallback originalCallback,
+                   final Object originalCtx,
+                   final long ledgerId, final long entryId) {
+            this.originalCallback = originalCallback;
+            reset(originalCtx, ledgerId, entryId);
+        }
+
+        @Override
+        public void readEntryComplete(int rc, long ledgerId,
+                                      long entryId, ByteBuf buffer,
+                                      Object ctx) {
+            logOpResult(rc);
+            originalCallback.readEntryComplete(rc, ledgerId, entryId, buffer, ctx);
+            releaseKey();
+            originalCallback = null;
+            handle.recycle(this);
         }
 
         @Override
@@ -1949,8 +2044,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         @Override
         public void errorOut(final int rc) {
             errorOutAndRunCallback(
-                    () -> cb.readEntryComplete(rc, ledgerId,
-                                               entryId, null, ctx));
+                    () -> readEntryComplete(rc, ledgerId,
+                                            entryId, null, ctx));
         }
 
         @Override
@@ -2015,7 +2110,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             if (lacUpdateTimestamp > -1L && (ctx instanceof ReadLastConfirmedAndEntryContext)) {
                 ((ReadLastConfirmedAndEntryContext) ctx).setLacUpdateTimestamp(lacUpdateTimestamp);
             }
-            cb.readEntryComplete(rc, ledgerId, entryId, buffer.slice(), ctx);
+            readEntryComplete(rc, ledgerId, entryId, buffer.slice(), ctx);
         }
     }
 
@@ -2023,8 +2118,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         final BatchedReadEntryCallback cb;
 
-        public BatchedReadCompletion(final CompletionKey key,
-                                     final BatchedReadEntryCallback originalCallback,
+        public BatchedReadCompletion(final BatchedReadEntryCallback originalCallback,
                                      final Object originalCtx,
                                      long ledgerId, final long entryId) {
             super("BatchedRead", originalCtx, ledgerId, entryId,
@@ -2041,7 +2135,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     originalCallback.readEntriesComplete(rc,
                             ledgerId, entryId,
                             bufList, originalCtx);
-                    key.release();
+                    releaseKey();
                 }
             };
         }
@@ -2096,17 +2190,98 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    class RangeReadCompletion extends CompletionValue {
+        final RangeReadEntryCallback cb;
+        // the range read only times out when the bookie stops streaming entries
+        volatile long lastResponseNanos;
+
+        public RangeReadCompletion(final RangeReadEntryCallback originalCallback,
+                                   final Object originalCtx,
+                                   long ledgerId, final long startEntryId) {
+            super("RangeRead", originalCtx, ledgerId, startEntryId,
+                  readEntryOpLogger, readTimeoutOpLogger);
+            this.lastResponseNanos = startTime;
+            this.cb = new RangeReadEntryCallback() {
+                    @Override
+                    public void readEntryReceived(long ledgerId, long entryId, ByteBuf buffer, Object ctx) {
+                        originalCallback.readEntryReceived(ledgerId, entryId, buffer, originalCtx);
+                    }
+
+                    @Override
+                    public void readRangeComplete(int rc, long ledgerId, long nextEntryId, Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.readRangeComplete(rc, ledgerId, nextEntryId, originalCtx);
+                        releaseKey();
+                    }
+                };
+        }
+
+        @Override
+        long deadlineNanos() {
+            return lastResponseNanos + readEntryTimeoutNanos;
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readRangeComplete(rc, ledgerId, entryId, ctx));
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            if (!response.hasRangeReadResponse()) {
+                // e.g. a bookie which doesn't know about range reads
+                StatusCode status = response.getStatus() == StatusCode.EOK ? StatusCode.EBADREQ : response.getStatus();
+                if (LOG.isDebugEnabled()) {
+                    logResponse(status, "ledger", ledgerId, "entry", entryId);
+                }
+                // an unsupported operation fails as on the v2 protocol, so that the caller can fall back
+                int rc = status == StatusCode.EBADREQ
+                        ? BKException.Code.IllegalOpException : convertStatus(status, BKException.Code.ReadException);
+                cb.readRangeComplete(rc, ledgerId, entryId, ctx);
+                return;
+            }
+            RangeReadResponse rangeReadResponse = response.getRangeReadResponse();
+            if (!rangeReadResponse.getEndOfRange()) {
+                ByteBuf buffer = Unpooled.EMPTY_BUFFER;
+                if (rangeReadResponse.hasBody()) {
+                    buffer = Unpooled.wrappedBuffer(rangeReadResponse.getBody().asReadOnlyByteBuffer());
+                }
+                cb.readEntryReceived(rangeReadResponse.getLedgerId(), rangeReadResponse.getEntryId(), buffer, ctx);
+                return;
+            }
+
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeReadResponse.getStatus() : response.getStatus();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", rangeReadResponse.getLedgerId(),
+                        "nextEntry", rangeReadResponse.getEntryId());
+            }
+            if (rangeReadResponse.hasMaxLAC() && rangeReadResponse.getMaxLAC() > INVALID_ENTRY_ID
+                    && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(rangeReadResponse.getMaxLAC());
+            }
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            cb.readRangeComplete(rc, rangeReadResponse.getLedgerId(), rangeReadResponse.getEntryId(), ctx);
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
-        public StartTLSCompletion(final CompletionKey key) {
+        public StartTLSCompletion() {
             super("StartTLS", null, -1, -1,
                   startTLSOpLogger, startTLSTimeoutOpLogger);
             this.cb = new StartTLSCallback() {
                 @Override
                 public void startTLSComplete(int rc, Object ctx) {
                     logOpResult(rc);
-                    key.release();
+                    releaseKey();
                 }
             };
         }
@@ -2151,8 +2326,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class GetBookieInfoCompletion extends CompletionValue {
         final GetBookieInfoCallback cb;
 
-        public GetBookieInfoCompletion(final CompletionKey key,
-                                       final GetBookieInfoCallback origCallback,
+        public GetBookieInfoCompletion(final GetBookieInfoCallback origCallback,
                                        final Object origCtx) {
             super("GetBookieInfo", origCtx, 0L, 0L,
                   getBookieInfoOpLogger, getBookieInfoTimeoutOpLogger);
@@ -2162,19 +2336,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   Object ctx) {
                     logOpResult(rc);
                     origCallback.getBookieInfoComplete(rc, bInfo, origCtx);
-                    key.release();
+                    releaseKey();
                 }
             };
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long deadlineNanos() {
+            return startTime + getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2211,8 +2380,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class GetListOfEntriesOfLedgerCompletion extends CompletionValue {
         final GetListOfEntriesOfLedgerCallback cb;
 
-        public GetListOfEntriesOfLedgerCompletion(final CompletionKey key,
-                final GetListOfEntriesOfLedgerCallback origCallback, final long ledgerId) {
+        public GetListOfEntriesOfLedgerCompletion(final GetListOfEntriesOfLedgerCallback origCallback,
+                final long ledgerId) {
             super("GetListOfEntriesOfLedger", null, ledgerId, 0L, getListOfEntriesOfLedgerCompletionOpLogger,
                     getListOfEntriesOfLedgerCompletionTimeoutOpLogger);
             this.cb = new GetListOfEntriesOfLedgerCallback() {
@@ -2221,7 +2390,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         AvailabilityOfEntriesOfLedger availabilityOfEntriesOfLedger) {
                     logOpResult(rc);
                     origCallback.getListOfEntriesOfLedgerComplete(rc, ledgerId, availabilityOfEntriesOfLedger);
-                    key.release();
+                    releaseKey();
                 }
             };
         }
@@ -2270,12 +2439,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         };
 
-    AddCompletion acquireAddCompletion(final CompletionKey key,
-                                       final WriteCallback originalCallback,
+    AddCompletion acquireAddCompletion(final WriteCallback originalCallback,
                                        final Object originalCtx,
                                        final long ledgerId, final long entryId) {
         AddCompletion completion = addCompletionRecycler.get();
-        completion.reset(key, originalCallback, originalCtx, ledgerId, entryId);
+        completion.reset(originalCallback, originalCtx, ledgerId, entryId);
         return completion;
     }
 
@@ -2283,7 +2451,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class AddCompletion extends CompletionValue implements WriteCallback {
         final Recycler.Handle<AddCompletion> handle;
 
-        CompletionKey key = null;
         WriteCallback originalCallback = null;
 
         AddCompletion(Recycler.Handle<AddCompletion> handle) {
@@ -2291,16 +2458,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             this.handle = handle;
         }
 
-        void reset(final CompletionKey key,
-                   final WriteCallback originalCallback,
+        void reset(final WriteCallback originalCallback,
                    final Object originalCtx,
                    final long ledgerId, final long entryId) {
-            this.key = key;
             this.originalCallback = originalCallback;
-            this.ctx = originalCtx;
-            this.ledgerId = ledgerId;
-            this.entryId = entryId;
-            this.startTime = MathUtils.nowInNano();
+            reset(originalCtx, ledgerId, entryId);
         }
 
         @Override
@@ -2309,18 +2471,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   Object ctx) {
             logOpResult(rc);
             originalCallback.writeComplete(rc, ledgerId, entryId, addr, ctx);
-            key.release();
+            releaseKey();
+            originalCallback = null;
             handle.recycle(this);
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long deadlineNanos() {
+            return startTime + addEntryTimeoutNanos;
         }
 
         @Override
@@ -2369,40 +2527,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    // visable for testing
-    CompletionKey newCompletionKey(long txnId, OperationType operationType) {
-        return new TxnCompletionKey(txnId, operationType);
-    }
-
-    class TxnCompletionKey extends CompletionKey {
-        final long txnId;
-
-        public TxnCompletionKey(long txnId, OperationType operationType) {
-            super(operationType);
-            this.txnId = txnId;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof TxnCompletionKey)) {
-                return false;
-            }
-            TxnCompletionKey that = (TxnCompletionKey) obj;
-            return this.txnId == that.txnId && this.operationType == that.operationType;
-        }
-
-        @Override
-        public int hashCode() {
-            return ((int) txnId);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("TxnId(%d), OperationType(%s)", txnId, operationType);
-        }
-
-    }
-
     abstract class CompletionKey {
         OperationType operationType;
 
@@ -2446,7 +2570,56 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private void putTxnCompletion(long txnId, OperationType operationType, CompletionValue completion) {
+        completion.txnId = txnId;
+        completion.key = null;
+        completion.operationType = operationType;
+        // scheduled before the completion can be found by a response, which claims it
+        completionTimeouts.schedule(completion);
+        txnCompletionObjects.put(txnId, completion);
+    }
+
+    private CompletionValue getTxnCompletion(long txnId, OperationType operationType) {
+        CompletionValue completion = txnCompletionObjects.get(txnId);
+        if (completion == null || (operationType != null && completion.operationType != operationType)) {
+            return null;
+        }
+        return completion;
+    }
+
+    /**
+     * Remove the completion of an operation identified by its txn id.
+     *
+     * @return the completion, or null if the operation already completed or timed out
+     */
+    private CompletionValue removeTxnCompletion(long txnId, OperationType operationType) {
+        CompletionValue completion = getTxnCompletion(txnId, operationType);
+        if (completion == null || !txnCompletionObjects.remove(txnId, completion) || !completion.claim()) {
+            return null;
+        }
+        completionTimeouts.cancel(completion);
+        return completion;
+    }
+
+    /**
+     * Remove a completion from the pending operations, without cancelling its timeout.
+     *
+     * @return false if the operation already completed or timed out
+     */
+    private boolean removeCompletion(CompletionValue completion) {
+        if (completion.txnId != NO_TXN_ID) {
+            return txnCompletionObjects.remove(completion.txnId, completion);
+        }
+        return completion.key != null
+            && (completionObjects.remove(completion.key, completion)
+                || completionObjectsV2Conflicts.remove(completion.key, completion));
+    }
+
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        value.txnId = NO_TXN_ID;
+        value.key = key;
+        value.operationType = key.operationType;
+        completionTimeouts.schedule(value);
         CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
         if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
             // There's a pending read request on same ledger/entry. Use the multimap to track all of them
@@ -2456,10 +2629,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private CompletionValue getCompletionValue(CompletionKey key) {
         CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
+        // If there's no completion object here, or if it timed out, try in the multimap
+        while (completionValue == null || !completionValue.claim()) {
             completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
+            if (completionValue == null) {
+                return null;
+            }
         }
+        completionTimeouts.cancel(completionValue);
         return completionValue;
     }
 
@@ -2532,6 +2709,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return builder;
     }
 
+    /**
+     * The request context to attach to the hand serialized v3 requests, or null if there is none.
+     */
+    Map<String, String> requestContext() {
+        if (preserveMdcForTaskExecution) {
+            return MDC.getCopyOfContextMap();
+        }
+        return null;
+    }
+
     static Request.Builder appendRequestContext(Request.Builder builder) {
         final Map<String, String> mdcContextMap = MDC.getCopyOfContextMap();
         if (mdcContextMap == null || mdcContextMap.isEmpty()) {
@@ -2691,9 +2878,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         LOG.info("Initializing TLS to {}", channel);
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
-                              new StartTLSCompletion(completionKey));
+        final CompletionValue completion = new StartTLSCompletion();
+        putTxnCompletion(txnId, OperationType.START_TLS, completion);
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
                 .setVersion(ProtocolVersion.VERSION_THREE)
@@ -2702,7 +2888,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         h.setHeader(headerBuilder.build());
         h.setStartTLSRequest(BookkeeperProtocol.StartTLSRequest.newBuilder().build());
         state = ConnectionState.START_TLS;
-        writeAndFlush(channel, completionKey, h.build());
+        writeAndFlush(channel, completion, h.build());
     }
 
     private void failTLS(int rc) {
@@ -50,6 +50,17 @@ public interface PerChannelBookieClientPool {
      */
     void obtain(GenericCallback<PerChannelBookieClient> callback, long key, boolean forceUseV3);
 
+    /**
+     * Obtain the least loaded channel from channel pool, for an operation which doesn't need to be
+     * ordered with the other operations of the same key.
+     *
+     * @param callback
+     *          callback to return channel from channel pool.
+     */
+    default void obtainLeastLoaded(GenericCallback<PerChannelBookieClient> callback, long key) {
+        obtain(callback, key);
+    }
+
     /**
      * Returns status of a client.
      * It is suggested to delay/throttle requests to this channel if isWritable is false.
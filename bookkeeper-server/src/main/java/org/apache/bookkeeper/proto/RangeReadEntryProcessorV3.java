@@ -0,0 +1,228 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 range read requests, which streams the entries of the range as one response per entry
+ * and ends the stream with a response flagged as the end of the range.
+ *
+ * <p>The stream is flow controlled with the writability of the channel. Each round writes entries until the
+ * channel isn't writable anymore, or until a high water mark worth of entries has been written (writes issued
+ * outside of the event loop only count towards the writability once they reach the channel). The processor
+ * then gives its thread back and is resubmitted once the last entry it wrote has been flushed.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    private final RangeReadRequest rangeReadRequest;
+    private final long ledgerId;
+    private final long startEntryId;
+    // the thread running the rounds of the stream, null to run them on the current thread
+    private final Executor executor;
+
+    private boolean started = false;
+    private long nextEntryId;
+    private long lastEntryId;
+    private long remainingBytes;
+    private long maxLAC = -1L;
+
+    RangeReadEntryProcessorV3(Request request,
+                              BookieRequestHandler requestHandler,
+                              BookieRequestProcessor requestProcessor,
+                              Executor executor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.startEntryId = rangeReadRequest.getStartEntryId();
+        this.nextEntryId = startEntryId;
+        this.remainingBytes = rangeReadRequest.hasMaxSize() && rangeReadRequest.getMaxSize() > 0
+                ? rangeReadRequest.getMaxSize() : Long.MAX_VALUE;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+        final Channel channel = requestHandler.ctx().channel();
+        if (!channel.isOpen()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropping range read of ledger {} at entry {} for closed channel: {}",
+                        ledgerId, nextEntryId, channel);
+            }
+            abort();
+            return;
+        }
+
+        if (!started) {
+            started = true;
+            requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+            if (!isVersionCompatible()) {
+                endOfRange(StatusCode.EBADVERSION);
+                return;
+            }
+            try {
+                maxLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+            } catch (Exception e) {
+                endOfRange(toStatus(e));
+                return;
+            }
+            // the range isn't capped at the lac of the bookie, which lags behind the entries it stores (the lac
+            // of the last entry of a closed ledger is the entry before it). As for a v2 batch read, the range ends
+            // at the max count, the max size or the first entry the bookie doesn't have.
+            if (rangeReadRequest.hasMaxCount() && rangeReadRequest.getMaxCount() > 0) {
+                lastEntryId = startEntryId + rangeReadRequest.getMaxCount() - 1;
+            } else {
+                lastEntryId = Long.MAX_VALUE;
+            }
+        }
+
+        streamEntries(channel);
+    }
+
+    private void streamEntries(Channel channel) {
+        final long credit = channel.config().getWriteBufferHighWaterMark();
+        long written = 0;
+        ChannelFuture lastWrite = null;
+        while (nextEntryId <= lastEntryId) {
+            if (lastWrite != null && (written >= credit || !channel.isWritable())) {
+                requestProcessor.getRequestStats().getRangeReadPausedCounter().inc();
+                channel.flush();
+                lastWrite.addListener(future -> resume());
+                return;
+            }
+
+            final long startNanos = MathUtils.nowInNano();
+            final ByteBuf entry;
+            try {
+                entry = requestProcessor.getBookie().readEntry(ledgerId, nextEntryId);
+            } catch (Exception e) {
+                if (nextEntryId > startEntryId) {
+                    // the entries read so far are the range, the client reads the remaining ones with its next read
+                    break;
+                }
+                requestProcessor.getRequestStats().getReadEntryStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+                endOfRange(toStatus(e));
+                return;
+            }
+            requestProcessor.getRequestStats().getReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+
+            int size = entry.readableBytes();
+            if (size > remainingBytes && nextEntryId > startEntryId) {
+                entry.release();
+                break;
+            }
+            remainingBytes -= size;
+            written += size;
+            lastWrite = channel.write(BookieProtoV3Codec.RangeReadResponseV3.createEntry(
+                    request.getHeader().getTxnId(), ledgerId, nextEntryId, entry));
+            nextEntryId++;
+        }
+        endOfRange(StatusCode.EOK);
+    }
+
+    private void resume() {
+        if (!requestHandler.ctx().channel().isActive()) {
+            abort();
+            return;
+        }
+        if (null == executor) {
+            run();
+            return;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to resume range read of ledger {} at entry {}. Too many pending requests",
+                        ledgerId, nextEntryId);
+            }
+            requestProcessor.getRequestStats().getReadEntryRejectedCounter().inc();
+            endOfRange(StatusCode.ETOOMANYREQUESTS);
+        }
+    }
+
+    private StatusCode toStatus(Exception e) {
+        if (e instanceof Bookie.NoLedgerException) {
+            LOG.info("No ledger found while range reading entry: {} from ledger: {}", nextEntryId, ledgerId);
+            return StatusCode.ENOLEDGER;
+        } else if (e instanceof Bookie.NoEntryException) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while range reading entry: {} from ledger: {}", nextEntryId, ledgerId);
+            }
+            return StatusCode.ENOENTRY;
+        } else if (e instanceof IOException) {
+            LOG.error("IOException while range reading entry: {} from ledger {} ", nextEntryId, ledgerId, e);
+            return StatusCode.EIO;
+        } else if (e instanceof BookieException.DataUnknownException) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", nextEntryId, ledgerId);
+            }
+            return StatusCode.EUNKNOWNLEDGERSTATE;
+        } else if (e instanceof BookieException) {
+            LOG.error("Unauthorized access to ledger:{} while range reading entry:{} in request from address: {}",
+                    ledgerId, nextEntryId, requestHandler.ctx().channel().remoteAddress());
+            return StatusCode.EUA;
+        } else {
+            LOG.error("Unexpected exception while range reading {}@{} : ", nextEntryId, ledgerId, e);
+            return StatusCode.EBADREQ;
+        }
+    }
+
+    private void endOfRange(StatusCode status) {
+        sendResponse(status,
+                BookieProtoV3Codec.RangeReadResponseV3.createEnd(
+                        request.getHeader().getTxnId(), status, ledgerId, nextEntryId, maxLAC),
+                requestProcessor.getRequestStats().getRangeReadRequestStats());
+        requestProcessor.onReadRequestFinish();
+    }
+
+    private void abort() {
+        requestProcessor.getRequestStats().getRangeReadRequestStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RangeReadEntry(%d, %d, next=%d)", ledgerId, startEntryId, nextEntryId);
+    }
+}
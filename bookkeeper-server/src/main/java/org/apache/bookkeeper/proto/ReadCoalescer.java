@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Coalesces the concurrent v2 reads of the same entry, so that they share a single storage
+ * lookup: the first read of an entry becomes the leader of the pending read, and the reads of
+ * the same entry received before the leader completes are attached to it as followers, instead
+ * of being scheduled on the read thread pool. When the leader completes, the followers respond
+ * with a duplicate of the leader entry buffer.
+ *
+ * <p>Only one pending read per ledger is tracked, which is the entry the tailing readers of the
+ * ledger are all waiting for.
+ */
+class ReadCoalescer {
+
+    /**
+     * A read of an entry, with the reads waiting for its result.
+     */
+    static final class PendingRead {
+        final long entryId;
+        // guarded by this
+        private List<ReadEntryProcessor> followers = null;
+        private boolean completed = false;
+
+        PendingRead(long entryId) {
+            this.entryId = entryId;
+        }
+
+        synchronized boolean addFollower(ReadEntryProcessor read) {
+            if (completed) {
+                return false;
+            }
+            if (followers == null) {
+                followers = new ArrayList<>(4);
+            }
+            followers.add(read);
+            return true;
+        }
+
+        synchronized List<ReadEntryProcessor> complete() {
+            completed = true;
+            return followers == null ? Collections.emptyList() : followers;
+        }
+    }
+
+    private final ConcurrentLongHashMap<PendingRead> pendingReads =
+            ConcurrentLongHashMap.<PendingRead>newBuilder().build();
+    private final Counter coalescedReadsCounter;
+
+    ReadCoalescer(Counter coalescedReadsCounter) {
+        this.coalescedReadsCounter = coalescedReadsCounter;
+    }
+
+    /**
+     * Attach the read to the pending read of the same entry, or make it the leader of a new
+     * pending read if there's no pending read of the ledger.
+     *
+     * @return true if the read was attached to a pending read and must not be scheduled.
+     */
+    boolean coalesce(ReadEntryProcessor read) {
+        long ledgerId = read.request.getLedgerId();
+        long entryId = read.request.getEntryId();
+        PendingRead pending = pendingReads.get(ledgerId);
+        if (pending == null) {
+            pending = new PendingRead(entryId);
+            if (pendingReads.putIfAbsent(ledgerId, pending) == null) {
+                read.pendingRead = pending;
+            }
+            return false;
+        }
+        if (pending.entryId == entryId && pending.addFollower(read)) {
+            coalescedReadsCounter.inc();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Complete the pending read led by a read.
+     *
+     * @return the reads attached to the pending read.
+     */
+    List<ReadEntryProcessor> complete(long ledgerId, PendingRead pending) {
+        pendingReads.remove(ledgerId, pending);
+        return pending.complete();
+    }
+}
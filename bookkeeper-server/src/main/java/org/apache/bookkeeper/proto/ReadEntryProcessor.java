@@ -18,10 +18,15 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -42,22 +47,41 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     protected ExecutorService fenceThreadPool;
     protected boolean throttleReadResponses;
+    protected boolean zeroCopyRead;
+    ReadCoalescer.PendingRead pendingRead;
+    // the entry found in the caches of the bookie before the read was processed
+    private ByteBuf cachedEntry;
+    // whether the read is executed by the disk read thread of its ledger dir
+    boolean diskRead;
 
     public static ReadEntryProcessor create(ReadRequest request,
                                             BookieRequestHandler requestHandler,
                                             BookieRequestProcessor requestProcessor,
                                             ExecutorService fenceThreadPool,
-                                            boolean throttleReadResponses) {
+                                            boolean throttleReadResponses,
+                                            boolean zeroCopyReads) {
         ReadEntryProcessor rep = RECYCLER.get();
         rep.init(request, requestHandler, requestProcessor);
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
+        rep.zeroCopyRead = zeroCopyReads && canSendFileRegions(requestHandler.ctx().channel());
         requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
         return rep;
     }
 
+    /**
+     * File regions are transferred with sendfile, which is only possible on plain socket channels.
+     */
+    static boolean canSendFileRegions(Channel channel) {
+        return channel instanceof SocketChannel && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     @Override
     protected void processPacket() {
+        if (diskRead) {
+            requestProcessor.getRequestStats().getReadEntryDiskSchedulingDelayStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Received new read request: {}", request);
         }
@@ -65,6 +89,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
+            completePendingRead(null, BookieProtocol.EOK);
             requestProcessor.onReadRequestFinish();
             recycle();
             return;
@@ -124,10 +149,63 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Read entry rc = {} for {}", errorCode, request);
         }
+        completePendingRead(data, errorCode);
         sendResponse(data, errorCode, startTimeNanos);
     }
 
+    /**
+     * Respond to the reads coalesced with this one. They share the entry buffer or the error of this
+     * read, otherwise (this read was dropped or read a file region) they are scheduled to read the
+     * entry themselves.
+     */
+    void completePendingRead(ReferenceCounted data, int errorCode) {
+        if (pendingRead == null) {
+            return;
+        }
+        List<ReadEntryProcessor> followers =
+                requestProcessor.getReadCoalescer().complete(request.getLedgerId(), pendingRead);
+        pendingRead = null;
+        for (int i = 0; i < followers.size(); i++) {
+            ReadEntryProcessor follower = followers.get(i);
+            if (errorCode != BookieProtocol.EOK) {
+                follower.sendResponse(null, errorCode, follower.enqueueNanos);
+            } else if (data instanceof ByteBuf) {
+                follower.sendResponse(((ByteBuf) data).retainedDuplicate(), errorCode, follower.enqueueNanos);
+            } else {
+                requestProcessor.scheduleCoalescedRead(follower);
+            }
+        }
+    }
+
+    /**
+     * Serve the read with an entry found in the caches of the bookie. The read takes ownership of the entry.
+     */
+    void setCachedEntry(ByteBuf entry) {
+        this.cachedEntry = entry;
+    }
+
     protected ReferenceCounted readData() throws Exception {
+        if (null != cachedEntry) {
+            ByteBuf entry = cachedEntry;
+            cachedEntry = null;
+            return entry;
+        }
+        if (zeroCopyRead) {
+            FileRegion region = null;
+            try {
+                region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId(), BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD);
+            } catch (Exception e) {
+                // errors are reported by the regular read
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to read entry {}@{} as a file region, reading it into a buffer",
+                            request.getEntryId(), request.getLedgerId(), e);
+                }
+            }
+            if (null != region) {
+                return FileRegionList.get(region);
+            }
+        }
         return requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
     }
 
@@ -151,6 +229,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected BookieProtocol.Response buildReadResponse(ReferenceCounted data) {
+        if (data instanceof FileRegionList) {
+            return ResponseBuilder.buildFileRegionReadResponse((FileRegionList) data, request);
+        }
         return ResponseBuilder.buildReadResponse((ByteBuf) data, request);
     }
 
@@ -199,6 +280,12 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     void recycle() {
+        pendingRead = null;
+        diskRead = false;
+        if (null != cachedEntry) {
+            cachedEntry.release();
+            cachedEntry = null;
+        }
         request.recycle();
         super.reset();
         if (this.recyclerHandle != null) {
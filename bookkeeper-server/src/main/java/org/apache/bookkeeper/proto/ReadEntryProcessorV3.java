@@ -18,7 +18,6 @@
 package org.apache.bookkeeper.proto;
 
 import com.google.common.base.Stopwatch;
-import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.util.ReferenceCountUtil;
@@ -32,7 +31,6 @@ import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
-import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
@@ -47,6 +45,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     private final ExecutorService fenceThreadPool;
 
     private CompletableFuture<Boolean> fenceResult = null;
+    // the entry sent with the response, passed as is to the response instead of being copied into the
+    // protobuf message
+    private ByteBuf responseBody = null;
 
     protected final ReadRequest readRequest;
     protected final long ledgerId;
@@ -176,7 +177,6 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             return null;
         } else {
             try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
                 if (readLACPiggyBack) {
                     readResponseBuilder.setEntryId(entryId);
                 } else {
@@ -185,6 +185,8 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 }
                 registerSuccessfulEvent(readStats, startTimeSw);
                 readResponseBuilder.setStatus(StatusCode.EOK);
+                responseBody = entryBody;
+                entryBody = null;
                 return readResponseBuilder.build();
             } finally {
                 ReferenceCountUtil.release(entryBody);
@@ -287,7 +289,8 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             registerFailedEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         } else {
             status = StatusCode.EOK;
-            readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            responseBody = entryBody;
+            entryBody = null;
             registerSuccessfulEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         }
 
@@ -320,13 +323,17 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     }
 
     protected void sendResponse(ReadResponse readResponse) {
-        Response.Builder response = Response.newBuilder()
-                .setHeader(getHeader())
-                .setStatus(readResponse.getStatus())
-                .setReadResponse(readResponse);
-        sendResponse(response.getStatus(),
-                     response.build(),
-                     reqStats);
+        BookieProtoV3Codec.ReadResponseV3 response = BookieProtoV3Codec.ReadResponseV3.create(
+                request.getHeader().getTxnId(), request.getHeader().getOperation(), readResponse.getStatus(),
+                readResponse.getLedgerId(), readResponse.getEntryId(), responseBody);
+        responseBody = null;
+        if (readResponse.hasMaxLAC()) {
+            response.setMaxLAC(readResponse.getMaxLAC());
+        }
+        if (readResponse.hasLacUpdateTimestamp()) {
+            response.setLacUpdateTimestamp(readResponse.getLacUpdateTimestamp());
+        }
+        sendResponse(readResponse.getStatus(), response, reqStats);
         requestProcessor.onReadRequestFinish();
     }
 
@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_QUEUE_DEPTH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_QUEUE_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_REJECTED;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MdcUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Schedules the requests on a set of worker threads with weighted fair queueing across traffic
+ * classes. The requests of a ledger are executed by the same thread, each thread has a queue per
+ * traffic class and serves its queues in weighted round robin: a class gets up to its weight of
+ * requests executed in a row before the next non-empty class is served. A busy class can't starve
+ * the other ones.
+ *
+ * <p>The requests of a ledger are executed in the order they were scheduled: while a ledger has
+ * requests queued on its thread, its new requests join the queue of the class of these requests.
+ */
+class RequestScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestScheduler.class);
+
+    /**
+     * Traffic classes of the requests, with their default weights.
+     */
+    enum TrafficClass {
+        // reads close to the last added entry of the ledger
+        TAILING_READ(8),
+        // reads of older entries, e.g. from catching up readers or replication
+        CATCH_UP_READ(2),
+        ADD(8),
+        // fencing and high priority requests, from the ledger recovery
+        RECOVERY(16),
+        // recovery adds which aren't high priority, from the re-replication of the auto-recovery
+        AUTO_RECOVERY(2);
+
+        final int defaultWeight;
+
+        TrafficClass(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    /**
+     * Reads of entries less than this number of entries behind the last added entry of a ledger are tailing reads.
+     */
+    static final int TAILING_READ_WINDOW = 128;
+
+    /**
+     * Classifies the requests, by tracking the last added entry of the ledgers. The tracking is lossy:
+     * ledgers sharing a slot overwrite each other, which only makes their reads classified as catch-up reads.
+     */
+    static class Classifier {
+        private static final int NUM_SLOTS = 4096;
+        private static final int NUM_LOCKS = 64;
+        private static final long NO_LEDGER = -1L;
+        // pairs of ledger id and last added entry id, each slot is guarded by a lock of the locks
+        private final long[] slots = new long[NUM_SLOTS * 2];
+        private final Object[] locks = new Object[NUM_LOCKS];
+
+        Classifier() {
+            for (int i = 0; i < NUM_SLOTS; i++) {
+                slots[i * 2] = NO_LEDGER;
+            }
+            for (int i = 0; i < NUM_LOCKS; i++) {
+                locks[i] = new Object();
+            }
+        }
+
+        TrafficClass classifyAdd(long ledgerId, long entryId, boolean highPriority, boolean recoveryAdd) {
+            if (highPriority) {
+                return TrafficClass.RECOVERY;
+            } else if (recoveryAdd) {
+                return TrafficClass.AUTO_RECOVERY;
+            }
+            int slot = MathUtils.signSafeMod(ledgerId, NUM_SLOTS);
+            synchronized (locks[slot % NUM_LOCKS]) {
+                // the adds of a ledger may be received out of order, keep the last one
+                if (slots[slot * 2] != ledgerId || slots[slot * 2 + 1] < entryId) {
+                    slots[slot * 2] = ledgerId;
+                    slots[slot * 2 + 1] = entryId;
+                }
+            }
+            return TrafficClass.ADD;
+        }
+
+        TrafficClass classifyRead(long ledgerId, long entryId, boolean recovery) {
+            if (recovery) {
+                return TrafficClass.RECOVERY;
+            }
+            int slot = MathUtils.signSafeMod(ledgerId, NUM_SLOTS);
+            boolean tracked;
+            long lastAddedEntryId;
+            synchronized (locks[slot % NUM_LOCKS]) {
+                tracked = slots[slot * 2] == ledgerId;
+                lastAddedEntryId = slots[slot * 2 + 1];
+            }
+            if (tracked && entryId + TAILING_READ_WINDOW > lastAddedEntryId) {
+                return TrafficClass.TAILING_READ;
+            }
+            return TrafficClass.CATCH_UP_READ;
+        }
+    }
+
+    /**
+     * Parse the weights of the traffic classes, given as {@code CLASS:weight} entries.
+     */
+    static int[] parseWeights(String[] entries) {
+        TrafficClass[] classes = TrafficClass.values();
+        int[] weights = new int[classes.length];
+        for (TrafficClass cls : classes) {
+            weights[cls.ordinal()] = cls.defaultWeight;
+        }
+        if (entries != null) {
+            for (String entry : entries) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid traffic class weight : " + entry);
+                }
+                int weight = Integer.parseInt(parts[1].trim());
+                if (weight <= 0) {
+                    throw new IllegalArgumentException("Traffic class weight must be positive : " + entry);
+                }
+                weights[TrafficClass.valueOf(parts[0].trim()).ordinal()] = weight;
+            }
+        }
+        return weights;
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long ledgerId;
+        final long enqueueNanos;
+        // the MDC context of the thread which scheduled the task, null if it isn't preserved
+        final Map<String, String> mdcContextMap;
+
+        Task(Runnable runnable, long ledgerId, long enqueueNanos, Map<String, String> mdcContextMap) {
+            this.runnable = runnable;
+            this.ledgerId = ledgerId;
+            this.enqueueNanos = enqueueNanos;
+            this.mdcContextMap = mdcContextMap;
+        }
+    }
+
+    private final String name;
+    private final boolean preserveMdcForTaskExecution;
+    private final Worker[] workers;
+    private final int[] weights;
+    private final int maxTasksPerClass;
+    private final AtomicInteger[] queueDepths;
+    private final OpStatsLogger[] queueLatencies;
+    private final Counter[] rejectedCounters;
+    private volatile boolean shutdown = false;
+
+    RequestScheduler(String name, int numThreads, int maxTasksPerClass, int[] weights,
+                     boolean preserveMdcForTaskExecution, StatsLogger statsLogger) {
+        this.name = name;
+        this.preserveMdcForTaskExecution = preserveMdcForTaskExecution;
+        this.weights = weights;
+        this.maxTasksPerClass = maxTasksPerClass;
+
+        TrafficClass[] classes = TrafficClass.values();
+        this.queueDepths = new AtomicInteger[classes.length];
+        this.queueLatencies = new OpStatsLogger[classes.length];
+        this.rejectedCounters = new Counter[classes.length];
+        for (TrafficClass cls : classes) {
+            StatsLogger classStatsLogger = statsLogger.scopeLabel("class", cls.name().toLowerCase());
+            AtomicInteger queueDepth = new AtomicInteger();
+            queueDepths[cls.ordinal()] = queueDepth;
+            queueLatencies[cls.ordinal()] = classStatsLogger.getOpStatsLogger(REQUEST_SCHEDULER_QUEUE_LATENCY);
+            rejectedCounters[cls.ordinal()] = classStatsLogger.getCounter(REQUEST_SCHEDULER_REJECTED);
+            classStatsLogger.registerGauge(REQUEST_SCHEDULER_QUEUE_DEPTH, new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return queueDepth.get();
+                }
+            });
+        }
+
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(name + "-%d").build();
+        this.workers = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = new Worker(i, threadFactory);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Get the executor of a traffic class on the thread of a ledger. The executor throws
+     * {@link RejectedExecutionException} when the queue of the class is full.
+     */
+    Executor chooseThread(TrafficClass cls, long ledgerId) {
+        Worker worker = workers[MathUtils.signSafeMod(ledgerId, workers.length)];
+        return task -> worker.enqueue(cls.ordinal(), ledgerId, task);
+    }
+
+    void executeOrdered(TrafficClass cls, long ledgerId, Runnable task) {
+        chooseThread(cls, ledgerId).execute(task);
+    }
+
+    /**
+     * Stop accepting requests, and wait for the queued ones to be executed.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        shutdown = true;
+        for (Worker worker : workers) {
+            // wake up the idle workers
+            worker.available.release();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Worker worker : workers) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                worker.thread.join(Math.max(remainingMillis, 1));
+                if (worker.thread.isAlive()) {
+                    worker.thread.interrupt();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final int index;
+        final Thread thread;
+        final Queue<Task>[] queues;
+        final AtomicIntegerArray pendingTasks;
+        // one permit per queued task
+        final Semaphore available = new Semaphore(0);
+        // the class of the queued tasks of each ledger and their number, guarded by this
+        final ConcurrentLongLongHashMap ledgerTasks = ConcurrentLongLongHashMap.newBuilder()
+                .concurrencyLevel(1)
+                .build();
+
+        // class being served and number of tasks it can still execute in a row, only accessed by the thread
+        int current = 0;
+        int credits;
+
+        @SuppressWarnings("unchecked")
+        Worker(int index, ThreadFactory threadFactory) {
+            int numClasses = TrafficClass.values().length;
+            this.index = index;
+            this.queues = new Queue[numClasses];
+            this.pendingTasks = new AtomicIntegerArray(numClasses);
+            for (int i = 0; i < numClasses; i++) {
+                queues[i] = new ConcurrentLinkedQueue<>();
+            }
+            this.credits = weights[0];
+            this.thread = threadFactory.newThread(this);
+        }
+
+        void enqueue(int cls, long ledgerId, Runnable task) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Request scheduler is shut down");
+            }
+            Map<String, String> mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
+            synchronized (this) {
+                // the number of queued tasks of the ledger in the low 32 bits, and their class in the high bits
+                long queued = ledgerTasks.get(ledgerId);
+                // a task of a ledger with queued tasks joins their queue, to be executed after them
+                int queueCls = queued < 0 ? cls : (int) (queued >>> 32);
+                if (maxTasksPerClass > 0 && pendingTasks.get(queueCls) >= maxTasksPerClass) {
+                    rejectedCounters[queueCls].inc();
+                    throw new RejectedExecutionException("Queue of " + TrafficClass.values()[queueCls]
+                            + " requests is full");
+                }
+                ledgerTasks.put(ledgerId, queued < 0 ? ((long) queueCls << 32) | 1 : queued + 1);
+                pendingTasks.incrementAndGet(queueCls);
+                queueDepths[queueCls].incrementAndGet();
+                queues[queueCls].add(new Task(task, ledgerId, MathUtils.nowInNano(), mdcContextMap));
+            }
+            available.release();
+        }
+
+        private synchronized void dequeued(Task task) {
+            long queued = ledgerTasks.get(task.ledgerId);
+            if ((queued & 0xFFFFFFFFL) <= 1) {
+                ledgerTasks.remove(task.ledgerId);
+            } else {
+                ledgerTasks.put(task.ledgerId, queued - 1);
+            }
+        }
+
+        /**
+         * Take the next task in weighted round robin order, there must be a queued task.
+         */
+        private Task next() {
+            while (true) {
+                if (credits > 0) {
+                    Task task = queues[current].poll();
+                    if (task != null) {
+                        credits--;
+                        return task;
+                    }
+                }
+                current = (current + 1) % queues.length;
+                credits = weights[current];
+            }
+        }
+
+        private boolean hasPendingTasks() {
+            for (int i = 0; i < queues.length; i++) {
+                if (pendingTasks.get(i) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            ThreadRegistry.register(name, index);
+            while (true) {
+                try {
+                    available.acquire();
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        return;
+                    }
+                    continue;
+                }
+                if (shutdown && !hasPendingTasks()) {
+                    return;
+                }
+                Task task = next();
+                int cls = current;
+                dequeued(task);
+                pendingTasks.decrementAndGet(cls);
+                queueDepths[cls].decrementAndGet();
+                queueLatencies[cls].registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(task.enqueueNanos), TimeUnit.NANOSECONDS);
+                if (task.mdcContextMap != null) {
+                    MdcUtils.restoreContext(task.mdcContextMap);
+                }
+                try {
+                    task.runnable.run();
+                } catch (Throwable t) {
+                    LOG.error("Unexpected exception while processing a {} request",
+                            TrafficClass.values()[cls], t);
+                } finally {
+                    if (preserveMdcForTaskExecution) {
+                        MDC.clear();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -36,6 +36,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENT
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_CACHE_HIT_INLINE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_COALESCED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_DISK_SCHEDULING_DELAY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_READ;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_WAIT;
@@ -44,6 +47,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG_POLL_READ;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG_POLL_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG_POLL_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_RANGE_PAUSED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_RANGE_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_SCHEDULING_DELAY;
@@ -51,6 +56,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.TENANT_THROTTLED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_THREAD_QUEUED_LATENCY;
@@ -124,6 +130,40 @@ public class RequestStats {
             parent = READ_ENTRY_REQUEST
     )
     private final Counter readEntryRejectedCounter;
+    @StatsDoc(
+            name = READ_ENTRY_COALESCED,
+            help = "Counter for reads served by a concurrent read of the same entry on a bookie",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final Counter readEntryCoalescedCounter;
+    @StatsDoc(
+            name = READ_ENTRY_CACHE_HIT_INLINE,
+            help = "Counter for reads served from the caches by the IO threads, without queueing, on a bookie",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final Counter readEntryCacheHitInlineCounter;
+    @StatsDoc(
+        name = READ_ENTRY_DISK_SCHEDULING_DELAY,
+        help = "operation stats of the delays of the reads missing the caches for a disk read thread on a bookie",
+        parent = READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger readEntryDiskSchedulingDelayStats;
+    @StatsDoc(
+        name = READ_ENTRY_RANGE_REQUEST,
+        help = "request stats of RangeReadEntry streams on a bookie"
+    )
+    final OpStatsLogger rangeReadRequestStats;
+    @StatsDoc(
+            name = READ_ENTRY_RANGE_PAUSED,
+            help = "Counter for range read streams paused until their channel is writable again on a bookie",
+            parent = READ_ENTRY_RANGE_REQUEST
+    )
+    private final Counter rangeReadPausedCounter;
+    @StatsDoc(
+            name = TENANT_THROTTLED,
+            help = "Counter for channels throttled because their tenant exceeded its rate limits on a bookie"
+    )
+    private final Counter tenantThrottledCounter;
     @StatsDoc(
         name = FORCE_LEDGER,
         help = "operation stats of ForceLedger on a bookie",
@@ -254,6 +294,12 @@ public class RequestStats {
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
+        this.readEntryCoalescedCounter = statsLogger.getCounter(READ_ENTRY_COALESCED);
+        this.readEntryCacheHitInlineCounter = statsLogger.getCounter(READ_ENTRY_CACHE_HIT_INLINE);
+        this.readEntryDiskSchedulingDelayStats = statsLogger.getOpStatsLogger(READ_ENTRY_DISK_SCHEDULING_DELAY);
+        this.rangeReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_RANGE_REQUEST);
+        this.rangeReadPausedCounter = statsLogger.getCounter(READ_ENTRY_RANGE_PAUSED);
+        this.tenantThrottledCounter = statsLogger.getCounter(TENANT_THROTTLED);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
         this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
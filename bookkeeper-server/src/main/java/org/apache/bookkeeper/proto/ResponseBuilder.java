@@ -48,6 +48,13 @@ class ResponseBuilder {
                 r.getLedgerId(), r.getEntryId(), data);
     }
 
+    static BookieProtocol.Response buildFileRegionReadResponse(FileRegionList data, BookieProtocol.Request r) {
+        long requestId = r instanceof BookieProtocol.BatchedReadRequest
+                ? ((BookieProtocol.BatchedReadRequest) r).getRequestId() : 0L;
+        return new BookieProtocol.FileRegionReadResponse(r.getProtocolVersion(), r.getOpCode(),
+                r.getLedgerId(), r.getEntryId(), requestId, data);
+    }
+
     static BookieProtocol.Response buildBatchedReadResponse(ByteBufList data, BookieProtocol.BatchedReadRequest r) {
         return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), r.getRequestId(), data);
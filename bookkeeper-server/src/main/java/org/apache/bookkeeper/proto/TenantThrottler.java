@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.channel.Channel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of the add and read requests of each tenant of a bookie. The tenant of a
+ * channel is its authorized principal or, for the channels which are not authenticated, the
+ * address of the client host.
+ *
+ * <p>Each tenant is given token buckets of add requests, add bytes and read requests per second,
+ * shared by all of its channels. Once a tenant has used more tokens than its buckets hold, the
+ * channel of the request stops reading until the tokens it owes are refilled, and the requests of
+ * the tenant received meanwhile, e.g. the ones its channels already sent, are rejected rather than
+ * queued. The backpressure is thus applied to the channels of the noisy tenant only, instead of to
+ * all the channels of the bookie as the in progress limits do.
+ */
+class TenantThrottler {
+    private static final Logger LOG = LoggerFactory.getLogger(TenantThrottler.class);
+
+    private static final long IDLE_TENANT_EXPIRY_SECONDS = 600;
+
+    /**
+     * A token bucket refilled at a fixed rate, holding up to one second of tokens. The tokens can
+     * be overdrawn, the deficit is then paid before the bucket holds tokens again.
+     */
+    static class TokenBucket {
+        private final long ratePerSecond;
+        private long tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(long ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = ratePerSecond;
+            this.lastRefillNanos = MathUtils.nowInNano();
+        }
+
+        /**
+         * Take tokens from the bucket.
+         *
+         * @return the nanos until the bucket is no longer overdrawn, 0 if it isn't.
+         */
+        synchronized long acquire(long count) {
+            refill();
+            tokens -= count;
+            return delayNanos();
+        }
+
+        synchronized long deficitNanos() {
+            refill();
+            return delayNanos();
+        }
+
+        private long delayNanos() {
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) Math.ceil((double) -tokens * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        }
+
+        private void refill() {
+            long now = MathUtils.nowInNano();
+            // the bucket holds one second of tokens, so refilling longer than that is useless
+            long elapsedNanos = Math.min(now - lastRefillNanos, TimeUnit.SECONDS.toNanos(1));
+            long refill = (long) ((double) elapsedNanos * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+            if (refill > 0) {
+                tokens = Math.min(ratePerSecond, tokens + refill);
+                lastRefillNanos = now;
+            }
+        }
+    }
+
+    /**
+     * The token buckets of a tenant, null for the rates which aren't limited.
+     */
+    private class Tenant {
+        final TokenBucket adds = maxAddsPerSecond > 0 ? new TokenBucket(maxAddsPerSecond) : null;
+        final TokenBucket addBytes = maxAddBytesPerSecond > 0 ? new TokenBucket(maxAddBytesPerSecond) : null;
+        final TokenBucket reads = maxReadsPerSecond > 0 ? new TokenBucket(maxReadsPerSecond) : null;
+
+        long deficitNanos() {
+            long delay = 0;
+            if (adds != null) {
+                delay = Math.max(delay, adds.deficitNanos());
+            }
+            if (addBytes != null) {
+                delay = Math.max(delay, addBytes.deficitNanos());
+            }
+            if (reads != null) {
+                delay = Math.max(delay, reads.deficitNanos());
+            }
+            return delay;
+        }
+
+        boolean isAddRateExceeded() {
+            return (adds != null && adds.deficitNanos() > 0) || (addBytes != null && addBytes.deficitNanos() > 0);
+        }
+
+        boolean isReadRateExceeded() {
+            return reads != null && reads.deficitNanos() > 0;
+        }
+    }
+
+    private final long maxAddsPerSecond;
+    private final long maxAddBytesPerSecond;
+    private final long maxReadsPerSecond;
+    private final Counter throttledCounter;
+    private final Cache<String, Tenant> tenants = CacheBuilder.newBuilder()
+            .expireAfterAccess(IDLE_TENANT_EXPIRY_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    TenantThrottler(long maxAddsPerSecond, long maxAddBytesPerSecond, long maxReadsPerSecond,
+                    Counter throttledCounter) {
+        this.maxAddsPerSecond = maxAddsPerSecond;
+        this.maxAddBytesPerSecond = maxAddBytesPerSecond;
+        this.maxReadsPerSecond = maxReadsPerSecond;
+        this.throttledCounter = throttledCounter;
+    }
+
+    /**
+     * Whether the tenant of the channel is over its add rate limits, its add requests are then rejected
+     * until the tokens it owes are refilled.
+     */
+    boolean isAddRateExceeded(Channel channel) {
+        if (maxAddsPerSecond <= 0 && maxAddBytesPerSecond <= 0) {
+            return false;
+        }
+        return getTenant(channel).isAddRateExceeded();
+    }
+
+    /**
+     * Whether the tenant of the channel is over its read rate limit, its read requests are then rejected
+     * until the tokens it owes are refilled.
+     */
+    boolean isReadRateExceeded(Channel channel) {
+        if (maxReadsPerSecond <= 0) {
+            return false;
+        }
+        return getTenant(channel).isReadRateExceeded();
+    }
+
+    void onAddRequest(Channel channel, long bytes) {
+        if (maxAddsPerSecond <= 0 && maxAddBytesPerSecond <= 0) {
+            return;
+        }
+        Tenant tenant = getTenant(channel);
+        long delay = 0;
+        if (tenant.adds != null) {
+            delay = tenant.adds.acquire(1);
+        }
+        if (tenant.addBytes != null) {
+            delay = Math.max(delay, tenant.addBytes.acquire(bytes));
+        }
+        if (delay > 0) {
+            throttle(channel, tenant, delay);
+        }
+    }
+
+    void onReadRequest(Channel channel) {
+        if (maxReadsPerSecond <= 0) {
+            return;
+        }
+        Tenant tenant = getTenant(channel);
+        long delay = tenant.reads.acquire(1);
+        if (delay > 0) {
+            throttle(channel, tenant, delay);
+        }
+    }
+
+    /**
+     * Stop reading from the channel until the tenant is no longer overdrawn. The requests are still
+     * accounted while the channel is throttled, e.g. the ones it already sent.
+     */
+    private void throttle(Channel channel, Tenant tenant, long delayNanos) {
+        if (!AutoReadPauses.pause(channel, AutoReadPauses.TENANT_RATE_LIMIT)) {
+            // the channel is already throttled until its tenant is no longer overdrawn
+            return;
+        }
+        throttledCounter.inc();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Tenant of channel {} is over its rate limits, disabling autoread for {} nanos",
+                    channel, delayNanos);
+        }
+        scheduleResume(channel, tenant, delayNanos);
+    }
+
+    private void scheduleResume(Channel channel, Tenant tenant, long delayNanos) {
+        channel.eventLoop().schedule(() -> {
+            long remaining = tenant.deficitNanos();
+            if (remaining > 0 && channel.isActive()) {
+                scheduleResume(channel, tenant, remaining);
+            } else {
+                AutoReadPauses.resume(channel, AutoReadPauses.TENANT_RATE_LIMIT);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Tenant getTenant(Channel channel) {
+        try {
+            return tenants.get(tenantOf(channel), Tenant::new);
+        } catch (ExecutionException e) {
+            // the tenant constructor doesn't throw
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    static String tenantOf(Channel channel) {
+        AuthHandler.ServerSideHandler authHandler = channel.pipeline().get(AuthHandler.ServerSideHandler.class);
+        if (authHandler != null) {
+            BookKeeperPrincipal principal = authHandler.connectionPeer.getAuthorizedId();
+            if (principal != null && !BookKeeperPrincipal.ANONYMOUS.equals(principal)) {
+                return principal.getName();
+            }
+        }
+        SocketAddress address = channel.remoteAddress();
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getHostString();
+        }
+        return String.valueOf(address);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel of the timeouts of the pending operations of a channel.
+ *
+ * <p>The timeouts are linked in the buckets of the wheel by their own fields, so scheduling and
+ * cancelling a timeout doesn't allocate. Expiring the timeouts only walks the buckets of the ticks
+ * elapsed since the previous expiry, instead of all the pending operations. A timeout whose deadline
+ * is more than a revolution of the wheel away stays in its bucket until its deadline passes.
+ *
+ * <p>A scheduled timeout is claimed exactly once, either by its owner, e.g. when the response of the
+ * operation arrives, or by the expiry. Only the claimer may complete the operation, then cancel the
+ * timeout and schedule it again for another operation. The claim compares the generation of the
+ * timeout, so an expiry racing with the reuse of the timeout can't claim the next operation.
+ */
+class TimeoutWheel<T extends TimeoutWheel.Timeout> {
+
+    private static final int NUM_LOCKS = 16;
+
+    /**
+     * A timeout, linked in a bucket of the wheel.
+     */
+    abstract static class Timeout {
+        private static final AtomicLongFieldUpdater<Timeout> GENERATION_UPDATER =
+                AtomicLongFieldUpdater.newUpdater(Timeout.class, "generation");
+
+        // odd while the timeout is scheduled and not claimed yet
+        private volatile long generation = 0;
+        private volatile int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * Get the deadline of the timeout. It may be pushed back while the timeout is scheduled.
+         */
+        abstract long deadlineNanos();
+
+        /**
+         * Claim the timeout for its owner.
+         *
+         * @return false if the timeout isn't scheduled, or if it was already claimed
+         */
+        boolean claim() {
+            while (true) {
+                long current = generation;
+                if ((current & 1) == 0) {
+                    return false;
+                }
+                if (GENERATION_UPDATER.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean claim(long expectedGeneration) {
+            return (expectedGeneration & 1) == 1
+                && GENERATION_UPDATER.compareAndSet(this, expectedGeneration, expectedGeneration + 1);
+        }
+
+        private void arm() {
+            long current = generation;
+            generation = (current & 1) == 0 ? current + 1 : current + 2;
+        }
+    }
+
+    private final long startNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final Object[] locks;
+    // the last tick whose bucket was walked by the expiry
+    private volatile long lastExpiredTick = -1;
+
+    /**
+     * @param tickNanos the duration of a tick, i.e. the resolution of the timeouts
+     * @param numBuckets the number of buckets, rounded up to a power of 2
+     */
+    TimeoutWheel(long tickNanos, int numBuckets, long nowNanos) {
+        int size = Integer.highestOneBit(Math.max(numBuckets, NUM_LOCKS) - 1) << 1;
+        this.startNanos = nowNanos;
+        this.tickNanos = tickNanos;
+        this.mask = size - 1;
+        this.buckets = new Timeout[size];
+        this.locks = new Object[NUM_LOCKS];
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Schedule a timeout at its deadline, for a new generation. A timeout must be scheduled by its
+     * owner, before the operation can be claimed by anyone else.
+     */
+    void schedule(T timeout) {
+        timeout.arm();
+        long tick = tickOf(timeout.deadlineNanos());
+        while (true) {
+            tick = Math.max(tick, lastExpiredTick + 1);
+            int bucket = (int) (tick & mask);
+            synchronized (lockOf(bucket)) {
+                // the expiry advances the last expired tick under the lock of the bucket it walks,
+                // so the bucket can't have been walked for this tick yet
+                if (tick > lastExpiredTick) {
+                    link(timeout, bucket);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a timeout from the wheel, once its owner claimed it.
+     */
+    void cancel(T timeout) {
+        while (true) {
+            int bucket = timeout.bucket;
+            if (bucket < 0) {
+                return;
+            }
+            synchronized (lockOf(bucket)) {
+                if (timeout.bucket == bucket) {
+                    unlink(timeout, bucket);
+                    timeout.bucket = -1;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Expire the timeouts whose deadline passed. The timeouts are claimed and removed from the wheel
+     * under the lock of their bucket, then the expirer is called for each of them, outside of the
+     * locks. A timeout already claimed by its owner is removed from the wheel without being expired.
+     *
+     * @return the number of expired timeouts
+     */
+    @SuppressWarnings("unchecked")
+    synchronized int expire(long nowNanos, Consumer<T> expirer) {
+        long nowTick = tickOf(nowNanos);
+        // walk every bucket at most once
+        long fromTick = Math.max(lastExpiredTick + 1, nowTick - buckets.length + 1);
+        List<T> expired = null;
+        for (long tick = fromTick; tick <= nowTick; tick++) {
+            int bucket = (int) (tick & mask);
+            synchronized (lockOf(bucket)) {
+                lastExpiredTick = tick;
+                Timeout timeout = buckets[bucket];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    long generation = timeout.generation;
+                    long deadlineNanos = timeout.deadlineNanos();
+                    if ((generation & 1) == 0) {
+                        // claimed by its owner, which is about to cancel it
+                        unlink(timeout, bucket);
+                        timeout.bucket = -1;
+                    } else if (deadlineNanos - nowNanos > 0) {
+                        // the deadline was pushed back, e.g. by the entries streamed by a range read
+                        int deadlineBucket = (int) (Math.max(tickOf(deadlineNanos), tick + 1) & mask);
+                        if (deadlineBucket != bucket) {
+                            move(timeout, bucket, deadlineBucket);
+                        }
+                    } else if (timeout.claim(generation)) {
+                        unlink(timeout, bucket);
+                        timeout.bucket = -1;
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add((T) timeout);
+                    }
+                    timeout = next;
+                }
+            }
+        }
+        if (expired == null) {
+            return 0;
+        }
+        for (T timeout : expired) {
+            expirer.accept(timeout);
+        }
+        return expired.size();
+    }
+
+    private void move(Timeout timeout, int fromBucket, int toBucket) {
+        // both locks are held while the timeout is moved, so a concurrent cancel either finds it in
+        // its previous bucket once the move is done, or in its new bucket
+        synchronized (lockOf(toBucket)) {
+            unlink(timeout, fromBucket);
+            link(timeout, toBucket);
+        }
+    }
+
+    private void link(Timeout timeout, int bucket) {
+        Timeout head = buckets[bucket];
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        timeout.bucket = bucket;
+    }
+
+    private void unlink(Timeout timeout, int bucket) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private long tickOf(long nanos) {
+        return Math.max((nanos - startNanos) / tickNanos, 0);
+    }
+
+    private Object lockOf(int bucket) {
+        return locks[bucket & (NUM_LOCKS - 1)];
+    }
+}
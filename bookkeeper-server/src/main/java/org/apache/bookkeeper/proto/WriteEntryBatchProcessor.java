@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Processes the add entry requests received in a read burst of a channel, which are added to
+ * the bookie together. Each request is still answered by its {@link WriteEntryProcessor}.
+ */
+class WriteEntryBatchProcessor implements Runnable {
+
+    private final BookieRequestHandler requestHandler;
+    private final BookieRequestProcessor requestProcessor;
+    private final List<WriteEntryProcessor> writes = new ArrayList<>();
+
+    WriteEntryBatchProcessor(BookieRequestHandler requestHandler, BookieRequestProcessor requestProcessor) {
+        this.requestHandler = requestHandler;
+        this.requestProcessor = requestProcessor;
+    }
+
+    void add(WriteEntryProcessor write) {
+        writes.add(write);
+    }
+
+    int size() {
+        return writes.size();
+    }
+
+    WriteEntryProcessor get(int index) {
+        return writes.get(index);
+    }
+
+    @Override
+    public void run() {
+        int size = writes.size();
+        WriteEntryProcessor[] batch = new WriteEntryProcessor[size];
+        ByteBuf[] entries = new ByteBuf[size];
+        byte[][] masterKeys = new byte[size][];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            WriteEntryProcessor write = writes.get(i);
+            if (!write.isVersionCompatible() || write.request.isRecoveryAdd()) {
+                // sends the error response, or adds the entry on its own
+                write.run();
+                continue;
+            }
+            requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(write.enqueueNanos), TimeUnit.NANOSECONDS);
+            if (write.rejectIfReadOnly()) {
+                continue;
+            }
+            write.startTimeNanos = MathUtils.nowInNano();
+            batch[count] = write;
+            entries[count] = write.request.getData();
+            masterKeys[count] = write.request.getMasterKey();
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // the entries which can't be added, e.g. because the bookie is shutting down, fail with their own response
+        Exception[] failures = requestProcessor.getBookie().addEntries(entries, batch, count, false,
+                requestHandler, masterKeys);
+        if (failures != null) {
+            for (int i = 0; i < count; i++) {
+                if (failures[i] != null) {
+                    batch[i].addFailed(failures[i]);
+                }
+            }
+        }
+    }
+}
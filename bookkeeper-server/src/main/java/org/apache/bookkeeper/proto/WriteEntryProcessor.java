@@ -50,27 +50,17 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
                                              BookieRequestProcessor requestProcessor) {
         WriteEntryProcessor wep = RECYCLER.get();
         wep.init(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), request.getData().readableBytes());
         return wep;
     }
 
     @Override
     protected void processPacket() {
-        if (requestProcessor.getBookie().isReadOnly()
-            && !(request.isHighPriority() && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
-            LOG.warn("BookieServer is running in readonly mode,"
-                    + " so rejecting the request from the client!");
-            sendWriteReqResponse(BookieProtocol.EREADONLY,
-                         ResponseBuilder.buildErrorResponse(BookieProtocol.EREADONLY, request),
-                         requestProcessor.getRequestStats().getAddRequestStats());
-            request.release();
-            request.recycle();
-            recycle();
+        if (rejectIfReadOnly()) {
             return;
         }
 
         startTimeNanos = MathUtils.nowInNano();
-        int rc = BookieProtocol.EOK;
         ByteBuf addData = request.getData();
         try {
             if (request.isRecoveryAdd()) {
@@ -79,39 +69,68 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
                 requestProcessor.getBookie().addEntry(addData, false, this,
                         requestHandler, request.getMasterKey());
             }
-        } catch (OperationRejectedException e) {
+        } catch (Throwable t) {
+            addFailed(t);
+        }
+    }
+
+    /**
+     * Reject the request if the bookie is in readonly mode.
+     *
+     * @return true if the request was rejected.
+     */
+    boolean rejectIfReadOnly() {
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(request.isHighPriority() && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            LOG.warn("BookieServer is running in readonly mode,"
+                    + " so rejecting the request from the client!");
+            sendWriteReqResponse(BookieProtocol.EREADONLY,
+                         ResponseBuilder.buildErrorResponse(BookieProtocol.EREADONLY, request),
+                         requestProcessor.getRequestStats().getAddRequestStats());
+            request.release();
+            request.recycle();
+            recycle();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Send the error response of an add which failed before being logged to the journal.
+     */
+    void addFailed(Throwable t) {
+        int rc;
+        if (t instanceof OperationRejectedException) {
             requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
             // Avoid to log each occurence of this exception as this can happen when the ledger storage is
             // unable to keep up with the write rate.
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Operation rejected while writing {}", request, e);
+                LOG.debug("Operation rejected while writing {}", request, t);
             }
             rc = BookieProtocol.ETOOMANYREQUESTS;
-        } catch (IOException e) {
-            LOG.error("Error writing {}", request, e);
+        } else if (t instanceof IOException) {
+            LOG.error("Error writing {}", request, t);
             rc = BookieProtocol.EIO;
-        } catch (BookieException.LedgerFencedException lfe) {
-            LOG.error("Attempt to write to fenced ledger", lfe);
+        } else if (t instanceof BookieException.LedgerFencedException) {
+            LOG.error("Attempt to write to fenced ledger", t);
             rc = BookieProtocol.EFENCED;
-        } catch (BookieException e) {
-            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+        } else if (t instanceof BookieException) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), t);
             rc = BookieProtocol.EUA;
-        } catch (Throwable t) {
+        } else {
             LOG.error("Unexpected exception while writing {}@{} : {}",
                       request.ledgerId, request.entryId, t.getMessage(), t);
             // some bad request which cause unexpected exception
             rc = BookieProtocol.EBADREQ;
         }
 
-        if (rc != BookieProtocol.EOK) {
-            requestProcessor.getRequestStats().getAddEntryStats()
-                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
-            sendWriteReqResponse(rc,
-                         ResponseBuilder.buildErrorResponse(rc, request),
-                         requestProcessor.getRequestStats().getAddRequestStats());
-            request.recycle();
-            recycle();
-        }
+        requestProcessor.getRequestStats().getAddEntryStats()
+            .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        sendWriteReqResponse(rc,
+                     ResponseBuilder.buildErrorResponse(rc, request),
+                     requestProcessor.getRequestStats().getAddRequestStats());
+        request.recycle();
+        recycle();
     }
 
     @Override
@@ -32,7 +32,6 @@ import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
-import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
@@ -45,7 +44,8 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     public WriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
         super(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(),
+                request.getAddRequest().getBody().size());
     }
 
     // Returns null if there is no exception thrown
@@ -96,13 +96,9 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                         status = StatusCode.EUA;
                         break;
                 }
-                addResponse.setStatus(status);
-                Response.Builder response = Response.newBuilder()
-                        .setHeader(getHeader())
-                        .setStatus(addResponse.getStatus())
-                        .setAddResponse(addResponse);
-                Response resp = response.build();
-                sendResponse(status, resp, requestProcessor.getRequestStats().getAddRequestStats());
+                sendResponse(status, BookieProtoV3Codec.AddResponseV3.create(
+                                request.getHeader().getTxnId(), status, ledgerId, entryId),
+                        requestProcessor.getRequestStats().getAddRequestStats());
             }
         };
         final EnumSet<WriteFlag> writeFlags;
@@ -167,12 +163,9 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         AddResponse addResponse = getAddResponse();
         if (null != addResponse) {
             // This means there was an error and we should send this back.
-            Response.Builder response = Response.newBuilder()
-                    .setHeader(getHeader())
-                    .setStatus(addResponse.getStatus())
-                    .setAddResponse(addResponse);
-            Response resp = response.build();
-            sendResponse(addResponse.getStatus(), resp,
+            sendResponse(addResponse.getStatus(), BookieProtoV3Codec.AddResponseV3.create(
+                            request.getHeader().getTxnId(), addResponse.getStatus(),
+                            addResponse.getLedgerId(), addResponse.getEntryId()),
                          requestProcessor.getRequestStats().getAddRequestStats());
         }
     }
@@ -51,6 +51,7 @@ import org.apache.bookkeeper.server.http.service.ExpandStorageService;
 import org.apache.bookkeeper.server.http.service.GCDetailsService;
 import org.apache.bookkeeper.server.http.service.GetLastLogMarkService;
 import org.apache.bookkeeper.server.http.service.GetLedgerMetaService;
+import org.apache.bookkeeper.server.http.service.HotLedgersService;
 import org.apache.bookkeeper.server.http.service.ListBookieInfoService;
 import org.apache.bookkeeper.server.http.service.ListBookiesService;
 import org.apache.bookkeeper.server.http.service.ListDiskFilesService;
@@ -220,6 +221,8 @@ public class BKHttpServiceProvider implements HttpServiceProvider {
                 return new TriggerGCService(configuration, bookieServer);
             case GC_DETAILS:
                 return new GCDetailsService(configuration, bookieServer);
+            case HOT_LEDGERS:
+                return new HotLedgersService(configuration, bookieServer);
             case BOOKIE_STATE:
                 return new BookieStateService(bookieServer.getBookie());
             case BOOKIE_SANITY:
@@ -61,6 +61,18 @@ public class SynchronizedHashMultiMap<K, V> {
         return pair.map(p -> p.getRight());
     }
 
+    public synchronized boolean remove(K k, V v) {
+        Set<Pair<K, V>> set = map.get(k.hashCode());
+        if (set == null) {
+            return false;
+        }
+        boolean removed = set.removeIf(p -> p.getLeft().equals(k) && p.getRight() == v);
+        if (set.isEmpty()) {
+            map.remove(k.hashCode());
+        }
+        return removed;
+    }
+
     public synchronized int removeIf(BiPredicate<K, V> predicate) {
         int removedSum = map.values().stream().mapToInt(
                 pairs -> {
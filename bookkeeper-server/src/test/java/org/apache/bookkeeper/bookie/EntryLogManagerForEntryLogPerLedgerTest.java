@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the eviction of the ledgers of {@link EntryLogManagerForEntryLogPerLedger}.
+ */
+public class EntryLogManagerForEntryLogPerLedgerTest {
+
+    private File ledgerDir;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws IOException {
+        ledgerDir = File.createTempFile("EntryLogPerLedgerTest", ".dir");
+        ledgerDir.delete();
+        ledgerDir.mkdir();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+    }
+
+    private EntryLogManagerForEntryLogPerLedger newEntryLogManager(int maxActiveEntryLogs, int expirySeconds)
+            throws IOException {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.toString() });
+        conf.setEntryLogPerLedgerEnabled(true);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        conf.setMaximumNumberOfActiveEntryLogs(maxActiveEntryLogs);
+        conf.setEntrylogMapAccessExpiryTimeInSeconds(expirySeconds);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+        return (EntryLogManagerForEntryLogPerLedger) entryLogger.getEntryLogManager();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeBytes(("entry-" + entryId).getBytes());
+        return entry;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedLedgerIsEvicted() throws Exception {
+        EntryLogManagerForEntryLogPerLedger entryLogManager = newEntryLogManager(3, 3600);
+        for (long ledgerId = 0; ledgerId < 3; ledgerId++) {
+            entryLogManager.createNewLog(ledgerId);
+            Thread.sleep(5);
+        }
+        // ledger 0 becomes the most recently used one, ledger 1 the least recently used one
+        entryLogManager.addEntry(0L, entry(0L, 0L), true);
+        Thread.sleep(5);
+
+        entryLogManager.createNewLog(3L);
+        assertEquals(new HashSet<>(Arrays.asList(0L, 2L, 3L)), entryLogManager.getCacheAsMap().keySet());
+
+        entryLogManager.createNewLog(4L);
+        assertEquals(new HashSet<>(Arrays.asList(0L, 3L, 4L)), entryLogManager.getCacheAsMap().keySet());
+        assertEquals(2, entryLogManager.getRotatedLogChannels().size());
+    }
+
+    @Test
+    public void testRotatingLogOfLedgerDoesNotEvictIt() throws Exception {
+        EntryLogManagerForEntryLogPerLedger entryLogManager = newEntryLogManager(2, 3600);
+        entryLogManager.createNewLog(0L);
+        entryLogManager.createNewLog(1L);
+        // a new entry log for a ledger already in the map doesn't change the number of active ledgers
+        entryLogManager.createNewLog(0L);
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L)), entryLogManager.getCacheAsMap().keySet());
+    }
+
+    @Test
+    public void testIdleLedgersAreExpiredWhenLedgerIsAdded() throws Exception {
+        EntryLogManagerForEntryLogPerLedger entryLogManager = newEntryLogManager(10, 1);
+        for (long ledgerId = 0; ledgerId < 5; ledgerId++) {
+            entryLogManager.createNewLog(ledgerId);
+        }
+        Thread.sleep(1100);
+
+        entryLogManager.createNewLog(5L);
+        assertEquals(new HashSet<>(Arrays.asList(5L)), entryLogManager.getCacheAsMap().keySet());
+    }
+
+    @Test
+    public void testIdleLedgerIsNotExpiredOnAdd() throws Exception {
+        EntryLogManagerForEntryLogPerLedger entryLogManager = newEntryLogManager(10, 1);
+        entryLogManager.createNewLog(0L);
+        entryLogManager.createNewLog(1L);
+        Thread.sleep(1100);
+
+        // the add to ledger 1 makes it the most recently used one, ledger 0 is left to the next checkpoint
+        entryLogManager.addEntry(1L, entry(1L, 0L), true);
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L)), entryLogManager.getCacheAsMap().keySet());
+
+        entryLogManager.checkpoint();
+        assertEquals(new HashSet<>(Arrays.asList(1L)), entryLogManager.getCacheAsMap().keySet());
+    }
+
+    @Test
+    public void testIdleLedgersAreExpiredAtCheckpoint() throws Exception {
+        EntryLogManagerForEntryLogPerLedger entryLogManager = newEntryLogManager(10, 1);
+        for (long ledgerId = 0; ledgerId < 5; ledgerId++) {
+            entryLogManager.createNewLog(ledgerId);
+        }
+        Thread.sleep(1100);
+
+        entryLogManager.checkpoint();
+        assertEquals(0, entryLogManager.getCacheAsMap().size());
+        // the entry logs of the expired ledgers are flushed and closed by the checkpoint
+        assertEquals(0, entryLogManager.getRotatedLogChannels().size());
+    }
+}
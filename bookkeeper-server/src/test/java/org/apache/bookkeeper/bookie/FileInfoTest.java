@@ -161,4 +161,40 @@ public class FileInfoTest {
         }
     }
 
+    @Test
+    public void testWriteWithoutForceIsReadableOnceForced() throws IOException {
+        File indexFile = createTemporaryFile("testFileInfoForce");
+        byte[] masterKey = "master".getBytes();
+        FileInfo fileInfo = new FileInfo(indexFile, masterKey, 0);
+
+        byte[] firstRun = "first run of pages".getBytes();
+        byte[] secondRun = "second run".getBytes();
+        fileInfo.write(new ByteBuffer[] { ByteBuffer.wrap(firstRun) }, 0, false);
+        fileInfo.write(new ByteBuffer[] { ByteBuffer.wrap(secondRun) }, 64, false);
+        fileInfo.force();
+        Assert.assertEquals(64 + secondRun.length, fileInfo.size());
+        fileInfo.close(true);
+
+        FileInfo reopened = new FileInfo(indexFile, masterKey, 0);
+        ByteBuffer first = ByteBuffer.allocate(firstRun.length);
+        reopened.read(first, 0, false);
+        Assert.assertArrayEquals(firstRun, first.array());
+        ByteBuffer second = ByteBuffer.allocate(secondRun.length);
+        reopened.read(second, 64, false);
+        Assert.assertArrayEquals(secondRun, second.array());
+        reopened.close(false);
+    }
+
+    @Test
+    public void testForceOfDeletedFileFails() throws IOException {
+        FileInfo fileInfo = new FileInfo(createTemporaryFile("testFileInfoForceDeleted"), "master".getBytes(), 0);
+        fileInfo.write(new ByteBuffer[] { ByteBuffer.wrap("data".getBytes()) }, 0, false);
+        fileInfo.delete();
+        try {
+            fileInfo.force();
+            Assert.fail("Should not force a deleted index file");
+        } catch (FileInfo.FileInfoDeletedException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test the heat of the ledgers tracked by {@link HotLedgerTracker}.
+ */
+public class HotLedgerTrackerTest {
+
+    @Test
+    public void testReadsAndWritesAreCounted() {
+        HotLedgerTracker tracker = new HotLedgerTracker(4, 2);
+        tracker.recordWrite(1L);
+        tracker.recordWrite(1L);
+        tracker.recordRead(1L, false);
+        tracker.recordRead(1L, true);
+        tracker.recordRead(2L, true);
+
+        List<HotLedgerTracker.LedgerHeat> heats = tracker.getLedgerHeats();
+        assertEquals(2, heats.size());
+        HotLedgerTracker.LedgerHeat hottest = heats.get(0);
+        assertEquals(1L, hottest.getLedgerId());
+        assertEquals(4L, hottest.getHeat());
+        assertEquals(2L, hottest.getWrites());
+        assertEquals(2L, hottest.getReads());
+        assertEquals(1L, hottest.getReadMisses());
+        assertEquals(0L, hottest.getError());
+        assertEquals(2L, heats.get(1).getLedgerId());
+        assertEquals(1L, heats.get(1).getHeat());
+    }
+
+    @Test
+    public void testColdestLedgerIsReplaced() {
+        HotLedgerTracker tracker = new HotLedgerTracker(2, 1);
+        for (int i = 0; i < 3; i++) {
+            tracker.recordWrite(1L);
+        }
+        tracker.recordWrite(2L);
+
+        // ledger 2 is the coldest one, ledger 3 inherits its heat as an error margin
+        tracker.recordWrite(3L);
+        List<HotLedgerTracker.LedgerHeat> heats = tracker.getLedgerHeats();
+        assertEquals(2, heats.size());
+        assertEquals(1L, heats.get(0).getLedgerId());
+        assertEquals(3L, heats.get(0).getHeat());
+        HotLedgerTracker.LedgerHeat replaced = heats.get(1);
+        assertEquals(3L, replaced.getLedgerId());
+        assertEquals(2L, replaced.getHeat());
+        assertEquals(1L, replaced.getError());
+        assertEquals(1L, replaced.getWrites());
+    }
+
+    @Test
+    public void testNoLedgerIsHotBeforeTheFirstDecay() {
+        HotLedgerTracker tracker = new HotLedgerTracker(4, 2);
+        tracker.recordWrite(1L);
+        assertFalse(tracker.isHot(1L));
+        assertFalse(tracker.isHot(2L));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the replacement of the index pages of {@link IndexInMemPageMgr}.
+ */
+public class IndexInMemPageMgrTest {
+
+    private static final int ENTRIES_PER_PAGE = 8;
+    private static final int PAGE_SIZE = ENTRIES_PER_PAGE * LedgerEntryPage.getIndexEntrySize();
+
+    private IndexPersistenceMgr persistenceMgr;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        persistenceMgr = mock(IndexPersistenceMgr.class);
+        when(persistenceMgr.updatePage(any(LedgerEntryPage.class))).thenReturn(true);
+        // a flush of the pages of a ledger makes them clean, as the real persistence manager does
+        doAnswer(invocation -> {
+            for (LedgerEntryPage lep : (List<LedgerEntryPage>) invocation.getArgument(1)) {
+                lep.setClean(lep.getVersion());
+            }
+            return null;
+        }).when(persistenceMgr).flushLedgerEntries(anyLong(), anyList());
+    }
+
+    private IndexInMemPageMgr newPageMgr(int pageLimit) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setPageLimit(pageLimit);
+        return new IndexInMemPageMgr(PAGE_SIZE, ENTRIES_PER_PAGE, conf, persistenceMgr,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static void usePage(IndexInMemPageMgr pageMgr, long ledgerId) throws Exception {
+        pageMgr.getLedgerEntryPage(ledgerId, 0).releasePage();
+    }
+
+    private static boolean isCached(IndexInMemPageMgr pageMgr, long ledgerId) {
+        LedgerEntryPage lep = pageMgr.getLedgerEntryPageFromCache(ledgerId, 0, false);
+        if (lep == null) {
+            return false;
+        }
+        lep.releasePage();
+        return true;
+    }
+
+    @Test
+    public void testUnusedPagesAreReclaimedInClockOrder() throws Exception {
+        IndexInMemPageMgr pageMgr = newPageMgr(3);
+        usePage(pageMgr, 1L);
+        usePage(pageMgr, 2L);
+        usePage(pageMgr, 3L);
+
+        // the first revolution clears the reference bits, the page of ledger 1 is the first one visited again
+        usePage(pageMgr, 4L);
+        assertFalse(isCached(pageMgr, 1L));
+        assertTrue(isCached(pageMgr, 2L));
+
+        // the page of ledger 2 was used since the hand passed over it, so it gets a second chance
+        usePage(pageMgr, 5L);
+        assertTrue(isCached(pageMgr, 2L));
+        assertFalse(isCached(pageMgr, 3L));
+        assertTrue(isCached(pageMgr, 4L));
+        assertTrue(isCached(pageMgr, 5L));
+    }
+
+    @Test
+    public void testPageInUseIsNotReclaimed() throws Exception {
+        IndexInMemPageMgr pageMgr = newPageMgr(2);
+        LedgerEntryPage inUse = pageMgr.getLedgerEntryPage(1L, 0);
+        usePage(pageMgr, 2L);
+
+        usePage(pageMgr, 3L);
+        assertFalse(isCached(pageMgr, 2L));
+        assertTrue(isCached(pageMgr, 1L));
+        assertEquals(1L, inUse.getLedger());
+
+        usePage(pageMgr, 4L);
+        assertFalse(isCached(pageMgr, 3L));
+        assertTrue(isCached(pageMgr, 1L));
+        inUse.releasePage();
+    }
+
+    @Test
+    public void testDirtyPagesAreFlushedBeforeReclaim() throws Exception {
+        IndexInMemPageMgr pageMgr = newPageMgr(2);
+        pageMgr.putEntryOffset(1L, 0L, 100L);
+        pageMgr.putEntryOffset(2L, 0L, 200L);
+
+        // no page is clean, so a ledger has to be flushed to get one
+        usePage(pageMgr, 3L);
+        verify(persistenceMgr, atLeastOnce()).flushLedgerEntries(anyLong(), anyList());
+        assertTrue(isCached(pageMgr, 3L));
+        assertTrue(isCached(pageMgr, 1L) ^ isCached(pageMgr, 2L));
+    }
+
+    @Test
+    public void testPageIsReclaimedOnceClean() throws Exception {
+        IndexInMemPageMgr pageMgr = newPageMgr(2);
+        pageMgr.putEntryOffset(1L, 0L, 100L);
+        usePage(pageMgr, 2L);
+
+        // the only clean page is the one of ledger 2
+        usePage(pageMgr, 3L);
+        assertTrue(isCached(pageMgr, 1L));
+        assertFalse(isCached(pageMgr, 2L));
+
+        pageMgr.flushOneOrMoreLedgers(true);
+        usePage(pageMgr, 4L);
+        usePage(pageMgr, 5L);
+        assertFalse(isCached(pageMgr, 1L));
+    }
+
+    private IndexInMemPageMgr newParallelFlushPageMgr(File... ledgerDirs) throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setPageLimit(16);
+        conf.setNumIndexFlushThreads(ledgerDirs.length);
+        when(persistenceMgr.getLedgerDirForLedger(anyLong())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            return ledgerDirs[(int) (ledgerId % ledgerDirs.length)];
+        });
+        return new IndexInMemPageMgr(PAGE_SIZE, ENTRIES_PER_PAGE, conf, persistenceMgr,
+                NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelFlushIsSequentialPerLedgerDir() throws Exception {
+        File[] ledgerDirs = { new File("dir0"), new File("dir1") };
+        IndexInMemPageMgr pageMgr = newParallelFlushPageMgr(ledgerDirs);
+        for (long ledgerId = 0; ledgerId < 8; ledgerId++) {
+            pageMgr.putEntryOffset(ledgerId, 0L, 100L);
+        }
+
+        AtomicInteger[] flushesInProgress = { new AtomicInteger(), new AtomicInteger() };
+        AtomicBoolean overlappingFlushes = new AtomicBoolean(false);
+        // the first flush of each dir waits for the first flush of the other dir
+        CountDownLatch bothDirsFlushing = new CountDownLatch(2);
+        AtomicBoolean dirsFlushedInParallel = new AtomicBoolean(true);
+        Set<Long> flushedLedgers = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            int dir = (int) (ledgerId % ledgerDirs.length);
+            if (flushesInProgress[dir].incrementAndGet() > 1) {
+                overlappingFlushes.set(true);
+            }
+            if (ledgerId < ledgerDirs.length) {
+                bothDirsFlushing.countDown();
+                if (!bothDirsFlushing.await(10, TimeUnit.SECONDS)) {
+                    dirsFlushedInParallel.set(false);
+                }
+            }
+            Thread.sleep(5);
+            for (LedgerEntryPage lep : (List<LedgerEntryPage>) invocation.getArgument(1)) {
+                lep.setClean(lep.getVersion());
+            }
+            flushedLedgers.add(ledgerId);
+            flushesInProgress[dir].decrementAndGet();
+            return null;
+        }).when(persistenceMgr).flushLedgerEntries(anyLong(), anyList());
+
+        try {
+            pageMgr.flushOneOrMoreLedgers(true);
+        } finally {
+            pageMgr.close();
+        }
+        assertEquals(8, flushedLedgers.size());
+        assertFalse(overlappingFlushes.get());
+        assertTrue(dirsFlushedInParallel.get());
+    }
+
+    @Test
+    public void testParallelFlushFailsOnceAllDirsAreFlushed() throws Exception {
+        File[] ledgerDirs = { new File("dir0"), new File("dir1") };
+        IndexInMemPageMgr pageMgr = newParallelFlushPageMgr(ledgerDirs);
+        for (long ledgerId = 0; ledgerId < 8; ledgerId++) {
+            pageMgr.putEntryOffset(ledgerId, 0L, 100L);
+        }
+
+        Set<Long> flushedLedgers = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            if (ledgerId == 0L) {
+                throw new IOException("injected flush failure");
+            }
+            Thread.sleep(5);
+            flushedLedgers.add(ledgerId);
+            return null;
+        }).when(persistenceMgr).flushLedgerEntries(anyLong(), anyList());
+
+        try {
+            pageMgr.flushOneOrMoreLedgers(true);
+            fail("The flush failure should be rethrown");
+        } catch (IOException ioe) {
+            assertEquals("injected flush failure", ioe.getMessage());
+        } finally {
+            pageMgr.close();
+        }
+        // the ledgers of the other dir are all flushed before the failure is rethrown
+        assertTrue(flushedLedgers.containsAll(Arrays.asList(1L, 3L, 5L, 7L)));
+    }
+}
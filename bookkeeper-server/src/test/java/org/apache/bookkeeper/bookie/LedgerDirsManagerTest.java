@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.DirWriteLoad;
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.bookie.confUtils.TestStatsProvider;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the write load tracking of {@link LedgerDirsManager}.
+ */
+public class LedgerDirsManagerTest {
+
+    private final List<File> tempDirs = new ArrayList<>();
+    private File[] dirs;
+    private TestStatsProvider statsProvider;
+
+    @Before
+    public void setUp() throws IOException {
+        dirs = new File[2];
+        for (int i = 0; i < dirs.length; i++) {
+            File dir = File.createTempFile("LedgerDirsManagerTest", ".dir");
+            dir.delete();
+            dir.mkdir();
+            tempDirs.add(dir);
+            dirs[i] = dir;
+        }
+        statsProvider = new TestStatsProvider();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (File dir : tempDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private LedgerDirsManager newLedgerDirsManager(boolean loadAware) throws IOException {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLoadAwareLedgerDirSelectionEnabled(loadAware);
+        return new LedgerDirsManager(conf, dirs,
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()),
+                statsProvider.getStatsLogger(""));
+    }
+
+    private static String statName(File dir, String suffix) {
+        return "dir_" + dir.getPath().replace('/', '_') + suffix;
+    }
+
+    @Test
+    public void testWriteLoadIsNotTrackedByDefault() throws Exception {
+        LedgerDirsManager ledgerDirsManager = newLedgerDirsManager(false);
+        for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
+            assertNull(ledgerDirsManager.getDirWriteLoad(ledgerDir));
+            assertEquals(0L, ledgerDirsManager.getEstimatedSyncDelayNanos(ledgerDir));
+        }
+        for (File dir : dirs) {
+            assertNotNull(statsProvider.getGauge(statName(dir, "_usage")));
+            assertNull(statsProvider.getGauge(statName(dir, "_sync_latency_micros")));
+            assertNull(statsProvider.getGauge(statName(dir, "_pending_syncs")));
+            assertNull(statsProvider.getGauge(statName(dir, "_unsynced_bytes")));
+        }
+    }
+
+    @Test
+    public void testWriteLoadIsTrackedWhenEnabled() throws Exception {
+        LedgerDirsManager ledgerDirsManager = newLedgerDirsManager(true);
+        File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(0);
+        DirWriteLoad writeLoad = ledgerDirsManager.getDirWriteLoad(ledgerDir);
+        assertNotNull(writeLoad);
+
+        writeLoad.onWrite(4096);
+        writeLoad.onSyncStarted();
+        assertEquals(1, statsProvider.getGauge(statName(dirs[0], "_pending_syncs")).getSample().intValue());
+        assertEquals(4096L, statsProvider.getGauge(statName(dirs[0], "_unsynced_bytes")).getSample().longValue());
+
+        writeLoad.onSyncCompleted(4096, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(0, statsProvider.getGauge(statName(dirs[0], "_pending_syncs")).getSample().intValue());
+        assertEquals(0L, statsProvider.getGauge(statName(dirs[0], "_unsynced_bytes")).getSample().longValue());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(2),
+                statsProvider.getGauge(statName(dirs[0], "_sync_latency_micros")).getSample().longValue());
+    }
+
+    @Test
+    public void testLeastLoadedDirIsPicked() throws Exception {
+        LedgerDirsManager ledgerDirsManager = newLedgerDirsManager(true);
+        List<File> ledgerDirs = ledgerDirsManager.getAllLedgerDirs();
+        File slowDir = ledgerDirs.get(0);
+        File fastDir = ledgerDirs.get(1);
+        DirWriteLoad slowLoad = ledgerDirsManager.getDirWriteLoad(slowDir);
+        slowLoad.onSyncStarted();
+        slowLoad.onSyncCompleted(4096, TimeUnit.SECONDS.toNanos(1));
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(fastDir, ledgerDirsManager.pickDirForNewLog(ledgerDirs));
+            assertEquals(fastDir, ledgerDirsManager.pickRandomDir(ledgerDirs, null));
+            assertEquals(slowDir, ledgerDirsManager.pickRandomDir(ledgerDirs, fastDir));
+        }
+    }
+
+    @Test
+    public void testIdleDirLoadDecays() throws Exception {
+        LedgerDirsManager ledgerDirsManager = newLedgerDirsManager(true);
+        File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(0);
+        DirWriteLoad writeLoad = ledgerDirsManager.getDirWriteLoad(ledgerDir);
+        writeLoad.onSyncStarted();
+        writeLoad.onSyncCompleted(4096, TimeUnit.SECONDS.toNanos(1));
+        long delay = ledgerDirsManager.getEstimatedSyncDelayNanos(ledgerDir);
+
+        // the dir synced since the previous check, its load is kept
+        ledgerDirsManager.decayIdleDirWriteLoads();
+        assertEquals(delay, ledgerDirsManager.getEstimatedSyncDelayNanos(ledgerDir));
+        // the dir was idle since the previous check
+        ledgerDirsManager.decayIdleDirWriteLoads();
+        assertEquals(delay / 2, ledgerDirsManager.getEstimatedSyncDelayNanos(ledgerDir));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link OffHeapEntryMemTable}.
+ */
+public class OffHeapEntryMemTableTest {
+
+    /**
+     * Checkpoints ordered by the time they were taken.
+     */
+    private static class TestCheckpoint implements Checkpoint {
+        final long id;
+
+        TestCheckpoint(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            }
+            if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(id, ((TestCheckpoint) o).id);
+        }
+    }
+
+    private final AtomicLong nextCheckpoint = new AtomicLong(0);
+    private final CheckpointSource checkpointSource = new CheckpointSource() {
+        @Override
+        public Checkpoint newCheckpoint() {
+            return new TestCheckpoint(nextCheckpoint.incrementAndGet());
+        }
+
+        @Override
+        public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+        }
+    };
+    private final CacheCallback noopCallback = cp -> { };
+
+    private OffHeapEntryMemTable memTable;
+
+    @Before
+    public void setUp() {
+        memTable = new OffHeapEntryMemTable(TestBKConfiguration.newServerConfiguration(), checkpointSource,
+                NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        memTable.close();
+    }
+
+    private static byte[] payload(long ledgerId, long entryId) {
+        return ("ledger-" + ledgerId + "-entry-" + entryId).getBytes();
+    }
+
+    private void add(long ledgerId, long entryId) throws Exception {
+        memTable.addEntry(ledgerId, entryId, ByteBuffer.wrap(payload(ledgerId, entryId)), noopCallback);
+    }
+
+    private static List<Long> toList(PrimitiveIterator.OfLong iterator) {
+        List<Long> entries = new ArrayList<>();
+        iterator.forEachRemaining((long entryId) -> entries.add(entryId));
+        return entries;
+    }
+
+    @Test
+    public void testSkipListsAreNotAllocated() {
+        EntryMemTable base = memTable;
+        assertTrue(base.kvmap.isEmpty());
+        assertNull(base.allocator);
+    }
+
+    @Test
+    public void testGetEntries() throws Exception {
+        add(1L, 0L);
+        add(1L, 1L);
+        add(2L, 0L);
+        memTable.snapshot();
+        add(1L, 2L);
+
+        EntryKeyValue kv = memTable.getEntry(1L, 1L);
+        assertNotNull(kv);
+        assertArrayEquals(payload(1L, 1L), kv.getBuffer());
+        assertEquals(2L, memTable.getLastEntry(1L).getEntryId());
+        assertEquals(0L, memTable.getLastEntry(2L).getEntryId());
+        assertNull(memTable.getEntry(2L, 1L));
+        assertNull(memTable.getLastEntry(3L));
+    }
+
+    @Test
+    public void testListOfEntriesOfLedger() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            add(1L, entryId);
+            add(2L, entryId);
+        }
+        memTable.snapshot();
+        for (long entryId = 5; entryId < 10; entryId++) {
+            add(1L, entryId);
+        }
+        // a gap in the entries of the ledger
+        add(1L, 12L);
+        // an entry far from the others, its range is sparser than the table
+        add(2L, 1000L);
+
+        List<Long> expected = new ArrayList<>();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            expected.add(entryId);
+        }
+        expected.add(12L);
+        assertEquals(expected, toList(memTable.getListOfEntriesOfLedger(1L)));
+        List<Long> expectedOfLedger2 = new ArrayList<>();
+        for (long entryId = 0; entryId < 5; entryId++) {
+            expectedOfLedger2.add(entryId);
+        }
+        expectedOfLedger2.add(1000L);
+        assertEquals(expectedOfLedger2, toList(memTable.getListOfEntriesOfLedger(2L)));
+        assertFalse(memTable.getListOfEntriesOfLedger(3L).hasNext());
+    }
+
+    @Test
+    public void testFlushIsSorted() throws Exception {
+        add(2L, 1L);
+        add(1L, 3L);
+        add(2L, 0L);
+        add(1L, 0L);
+
+        List<EntryKey> flushed = new ArrayList<>();
+        long size = memTable.flush((ledgerId, entryId, entry) -> {
+            byte[] bytes = new byte[entry.readableBytes()];
+            entry.getBytes(entry.readerIndex(), bytes);
+            assertArrayEquals(payload(ledgerId, entryId), bytes);
+            flushed.add(new EntryKey(ledgerId, entryId));
+        }, Checkpoint.MAX);
+
+        assertTrue(size > 0);
+        List<EntryKey> expected = new ArrayList<>();
+        expected.add(new EntryKey(1L, 0L));
+        expected.add(new EntryKey(1L, 3L));
+        expected.add(new EntryKey(2L, 0L));
+        expected.add(new EntryKey(2L, 1L));
+        assertEquals(expected, flushed);
+        assertTrue(memTable.isEmpty());
+        assertNull(memTable.getEntry(1L, 0L));
+    }
+
+    @Test
+    public void testConcurrentAddsAndFlushes() throws Exception {
+        final int numWriters = 4;
+        final int entriesPerWriter = 2000;
+        Set<EntryKey> flushed = ConcurrentHashMap.newKeySet();
+        SkipListFlusher flusher = (ledgerId, entryId, entry) -> {
+            assertTrue("entry flushed twice", flushed.add(new EntryKey(ledgerId, entryId)));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+        CountDownLatch writersDone = new CountDownLatch(numWriters);
+        List<Future<?>> writers = new ArrayList<>();
+        try {
+            for (int w = 0; w < numWriters; w++) {
+                final long ledgerId = w;
+                writers.add(executor.submit(() -> {
+                    try {
+                        for (long entryId = 0; entryId < entriesPerWriter; entryId++) {
+                            add(ledgerId, entryId);
+                            // readers pin the tables as well
+                            memTable.getLastEntry(ledgerId);
+                        }
+                    } finally {
+                        writersDone.countDown();
+                    }
+                    return null;
+                }));
+            }
+            while (!writersDone.await(1, TimeUnit.MILLISECONDS)) {
+                memTable.flush(flusher, Checkpoint.MAX);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        memTable.flush(flusher, Checkpoint.MAX);
+
+        assertEquals(numWriters * entriesPerWriter, flushed.size());
+        assertTrue(memTable.isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Test;
+
+/**
+ * Test the configuration of the hot ledgers of {@link DbLedgerStorage}.
+ */
+public class DbLedgerStorageHotLedgersTest {
+
+    @Test
+    public void testTrackerIsDisabledByDefault() {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        assertEquals(0, DbLedgerStorage.getHotLedgersTrackerSize(conf));
+        assertEquals(0, DbLedgerStorage.getReadAheadCacheHotLedgersPercent(conf));
+    }
+
+    @Test
+    public void testTrackerIsEnabledByTheProtectedRegion() {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT, 20);
+        assertEquals(100, DbLedgerStorage.getHotLedgersTrackerSize(conf));
+
+        conf.setProperty(DbLedgerStorage.HOT_LEDGERS_TRACKER_SIZE, 500);
+        assertEquals(500, DbLedgerStorage.getHotLedgersTrackerSize(conf));
+    }
+
+    @Test
+    public void testTrackerCanBeEnabledAlone() {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setProperty(DbLedgerStorage.HOT_LEDGERS_TRACKER_SIZE, 50);
+        assertEquals(50, DbLedgerStorage.getHotLedgersTrackerSize(conf));
+    }
+
+    @Test
+    public void testInvalidHotLedgersPercent() {
+        for (int percent : new int[] { -1, 100, 150 }) {
+            ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+            conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT, percent);
+            try {
+                DbLedgerStorage.getReadAheadCacheHotLedgersPercent(conf);
+                fail("The percent " + percent + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+            try {
+                DbLedgerStorage.getHotLedgersTrackerSize(conf);
+                fail("The percent " + percent + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_HOT_LEDGERS_PERCENT, 99);
+        assertEquals(99, DbLedgerStorage.getReadAheadCacheHotLedgersPercent(conf));
+    }
+}
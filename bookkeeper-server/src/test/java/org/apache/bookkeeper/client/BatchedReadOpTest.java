@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Test the range reads which serve the batch reads of {@link BatchedReadOp} on the v3 protocol.
+ */
+public class BatchedReadOpTest {
+
+    private static final Object CTX = new Object();
+
+    /**
+     * Record the completion of a batch read.
+     */
+    private static class BatchResult implements BatchedReadEntryCallback {
+        int rc = Integer.MIN_VALUE;
+        long startEntryId;
+        Object ctx;
+        final List<Long> firstBytes = new ArrayList<>();
+
+        @Override
+        public void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx) {
+            this.rc = rc;
+            this.startEntryId = startEntryId;
+            this.ctx = ctx;
+            for (int i = 0; i < bufList.size(); i++) {
+                firstBytes.add((long) bufList.getBuffer(i).getByte(0));
+            }
+        }
+    }
+
+    private static ByteBuf entry(long entryId) {
+        return Unpooled.wrappedBuffer(new byte[] { (byte) entryId, 0, 0, 0 });
+    }
+
+    @Test
+    public void testStreamedEntriesCompleteTheBatch() {
+        BatchResult result = new BatchResult();
+        BatchedReadOp.RangeReadCollector collector = new BatchedReadOp.RangeReadCollector(result, 5L);
+        List<ByteBuf> entries = new ArrayList<>();
+        for (long entryId = 5; entryId < 8; entryId++) {
+            ByteBuf entry = entry(entryId);
+            entries.add(entry);
+            collector.readEntryReceived(1L, entryId, entry, CTX);
+        }
+        collector.readRangeComplete(BKException.Code.OK, 1L, 8L, CTX);
+
+        assertEquals(BKException.Code.OK, result.rc);
+        assertEquals(5L, result.startEntryId);
+        assertEquals(CTX, result.ctx);
+        assertEquals(Arrays.asList(5L, 6L, 7L), result.firstBytes);
+        // the entries are owned by the batch read once it completes
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testEmptyRangeIsMissingEntry() {
+        BatchResult result = new BatchResult();
+        new BatchedReadOp.RangeReadCollector(result, 5L).readRangeComplete(BKException.Code.OK, 1L, 5L, CTX);
+        assertEquals(BKException.Code.NoSuchEntryException, result.rc);
+    }
+
+    @Test
+    public void testRangeErrorIsPassedToTheBatch() {
+        BatchResult result = new BatchResult();
+        BatchedReadOp.RangeReadCollector collector = new BatchedReadOp.RangeReadCollector(result, 5L);
+        ByteBuf entry = entry(5L);
+        collector.readEntryReceived(1L, 5L, entry, CTX);
+        collector.readRangeComplete(BKException.Code.ReadException, 1L, 6L, CTX);
+
+        assertEquals(BKException.Code.ReadException, result.rc);
+        assertEquals(0, entry.refCnt());
+    }
+
+    @Test
+    public void testEntriesAfterAGapAreDropped() {
+        BatchResult result = new BatchResult();
+        BatchedReadOp.RangeReadCollector collector = new BatchedReadOp.RangeReadCollector(result, 5L);
+        collector.readEntryReceived(1L, 5L, entry(5L), CTX);
+        ByteBuf outOfOrder = entry(7L);
+        collector.readEntryReceived(1L, 7L, outOfOrder, CTX);
+        collector.readRangeComplete(BKException.Code.OK, 1L, 8L, CTX);
+
+        assertEquals(0, outOfOrder.refCnt());
+        assertEquals(Arrays.asList(5L), result.firstBytes);
+    }
+}
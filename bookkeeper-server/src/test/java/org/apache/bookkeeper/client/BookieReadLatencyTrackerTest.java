@@ -0,0 +1,242 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Test;
+
+/**
+ * Test the read latencies of the bookies tracked by {@link BookieReadLatencyTracker}, and the order of
+ * the reads they drive.
+ */
+public class BookieReadLatencyTrackerTest {
+
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+
+    /**
+     * The health of the bookies, with fixed read scores.
+     */
+    private static class TestBookiesHealthInfo implements BookiesHealthInfo {
+        final Map<BookieId, Long> scores = new HashMap<>();
+
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return 0L;
+        }
+
+        @Override
+        public long getBookieReadScore(BookieId bookieSocketAddress) {
+            return scores.getOrDefault(bookieSocketAddress, -1L);
+        }
+    }
+
+    private static List<Integer> toList(DistributionSchedule.WriteSet writeSet) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < writeSet.size(); i++) {
+            indexes.add(writeSet.get(i));
+        }
+        return indexes;
+    }
+
+    private static DistributionSchedule.WriteSet newWriteSet() {
+        return new RoundRobinDistributionSchedule(3, 2, 3).getWriteSet(0L);
+    }
+
+    @Test
+    public void testLatencyIsMovingAverage() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker();
+        BookieId bookie = ENSEMBLE.get(0);
+        assertEquals(0L, tracker.getReadLatencyNanos(bookie));
+
+        tracker.recordReadLatency(bookie, 1000L);
+        assertEquals(1000L, tracker.getReadLatencyNanos(bookie));
+        tracker.recordReadLatency(bookie, 2000L);
+        assertEquals(1250L, tracker.getReadLatencyNanos(bookie));
+        // the other bookies aren't affected
+        assertEquals(0L, tracker.getReadLatencyNanos(ENSEMBLE.get(1)));
+    }
+
+    @Test
+    public void testScoreIsScaledByPendingRequests() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker();
+        BookieId bookie = ENSEMBLE.get(0);
+        tracker.recordReadLatency(bookie, 1000L);
+
+        assertEquals(1000L, tracker.getReadScore(bookie, 0L));
+        assertEquals(4000L, tracker.getReadScore(bookie, 3L));
+        // a bookie which isn't writable is the last choice
+        assertEquals(Long.MAX_VALUE, tracker.getReadScore(bookie, BookieClient.PENDINGREQ_NOTWRITABLE_MASK));
+        // no overflow
+        tracker.recordReadLatency(ENSEMBLE.get(1), Long.MAX_VALUE / 2);
+        assertEquals(Long.MAX_VALUE, tracker.getReadScore(ENSEMBLE.get(1), 4L));
+        // a bookie which wasn't read from is tried first
+        assertEquals(0L, tracker.getReadScore(ENSEMBLE.get(2), 10L));
+    }
+
+    @Test
+    public void testReorderByReadScore() {
+        TestBookiesHealthInfo healthInfo = new TestBookiesHealthInfo();
+        healthInfo.scores.put(ENSEMBLE.get(0), 300L);
+        healthInfo.scores.put(ENSEMBLE.get(1), 100L);
+        healthInfo.scores.put(ENSEMBLE.get(2), 200L);
+
+        DistributionSchedule.WriteSet writeSet = newWriteSet();
+        try {
+            assertTrue(BookieReadLatencyTracker.reorderByReadScore(ENSEMBLE, healthInfo, writeSet, 0, 3));
+            assertEquals(Arrays.asList(1, 2, 0), toList(writeSet));
+            // already ordered
+            assertFalse(BookieReadLatencyTracker.reorderByReadScore(ENSEMBLE, healthInfo, writeSet, 0, 3));
+        } finally {
+            writeSet.recycle();
+        }
+
+        // only the range is reordered
+        writeSet = newWriteSet();
+        try {
+            assertTrue(BookieReadLatencyTracker.reorderByReadScore(ENSEMBLE, healthInfo, writeSet, 0, 2));
+            assertEquals(Arrays.asList(1, 0, 2), toList(writeSet));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testEqualScoresKeepTheirOrder() {
+        TestBookiesHealthInfo healthInfo = new TestBookiesHealthInfo();
+        healthInfo.scores.put(ENSEMBLE.get(0), 100L);
+        healthInfo.scores.put(ENSEMBLE.get(1), 100L);
+        healthInfo.scores.put(ENSEMBLE.get(2), 50L);
+
+        DistributionSchedule.WriteSet writeSet = newWriteSet();
+        try {
+            assertTrue(BookieReadLatencyTracker.reorderByReadScore(ENSEMBLE, healthInfo, writeSet, 0, 3));
+            assertEquals(Arrays.asList(2, 0, 1), toList(writeSet));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testUntrackedLatenciesKeepTheOrder() {
+        TestBookiesHealthInfo healthInfo = new TestBookiesHealthInfo();
+        healthInfo.scores.put(ENSEMBLE.get(1), 100L);
+        healthInfo.scores.put(ENSEMBLE.get(2), 50L);
+
+        DistributionSchedule.WriteSet writeSet = newWriteSet();
+        try {
+            assertFalse(BookieReadLatencyTracker.reorderByReadScore(ENSEMBLE, healthInfo, writeSet, 0, 3));
+            assertEquals(Arrays.asList(0, 1, 2), toList(writeSet));
+            writeSet = new DefaultEnsemblePlacementPolicy().reorderReadSequence(ENSEMBLE, healthInfo, writeSet);
+            assertEquals(Arrays.asList(0, 1, 2), toList(writeSet));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testDefaultPolicyReadsFromTheFastestBookieFirst() {
+        TestBookiesHealthInfo healthInfo = new TestBookiesHealthInfo();
+        healthInfo.scores.put(ENSEMBLE.get(0), 500L);
+        healthInfo.scores.put(ENSEMBLE.get(1), 100L);
+        healthInfo.scores.put(ENSEMBLE.get(2), 0L);
+
+        DistributionSchedule.WriteSet writeSet = newWriteSet();
+        try {
+            writeSet = new DefaultEnsemblePlacementPolicy().reorderReadSequence(ENSEMBLE, healthInfo, writeSet);
+            assertEquals(Arrays.asList(2, 1, 0), toList(writeSet));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    private static LedgerHandle newLedgerHandle(boolean reorderByLatency, BookieReadLatencyTracker tracker,
+                                                OrderedExecutor mainWorkerPool) throws Exception {
+        byte[] password = "password".getBytes(UTF_8);
+        BookieClient bookieClient = mock(BookieClient.class);
+        when(bookieClient.getNumPendingRequests(any(), anyLong())).thenReturn(1L);
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setThrottleValue(0);
+        conf.setReorderReadSequenceByLatencyEnabled(reorderByLatency);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getReadLatencyTracker()).thenReturn(tracker);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(1L)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C).withPassword(password)
+                .newEnsembleEntry(0L, ENSEMBLE).build();
+        return new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32C, password, WriteFlag.NONE);
+    }
+
+    @Test
+    public void testLedgerReadScoresFollowTheConfiguration() throws Exception {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker();
+        tracker.recordReadLatency(ENSEMBLE.get(0), 1000L);
+        OrderedExecutor mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(1).build();
+        try {
+            LedgerHandle disabled = newLedgerHandle(false, tracker, mainWorkerPool);
+            assertEquals(-1L, disabled.bookiesHealthInfo.getBookieReadScore(ENSEMBLE.get(0)));
+
+            LedgerHandle enabled = newLedgerHandle(true, tracker, mainWorkerPool);
+            // scaled by the pending requests of the bookie
+            assertEquals(2000L, enabled.bookiesHealthInfo.getBookieReadScore(ENSEMBLE.get(0)));
+            assertEquals(0L, enabled.bookiesHealthInfo.getBookieReadScore(ENSEMBLE.get(1)));
+        } finally {
+            mainWorkerPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Test;
+
+/**
+ * Test the caching of the entries read by a client in {@link ClientEntryCache}.
+ */
+public class ClientEntryCacheTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 10;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+
+    private static byte[] payload(long ledgerId, long entryId) {
+        byte[] payload = new byte[ENTRY_SIZE];
+        Arrays.fill(payload, (byte) (ledgerId * 16 + entryId));
+        return payload;
+    }
+
+    /**
+     * An entry whose buffer is only used by the entry, as the reader owns it.
+     */
+    private static LedgerEntry entry(long ledgerId, long entryId) {
+        return LedgerEntryImpl.create(ledgerId, entryId, ENTRY_SIZE,
+                Unpooled.wrappedBuffer(payload(ledgerId, entryId)));
+    }
+
+    /**
+     * Cache an entry, and close it as a reader does once it has read it.
+     *
+     * @return the buffer of the entry
+     */
+    private static ByteBuf put(ClientEntryCache cache, long ledgerId, long entryId) {
+        LedgerEntry entry = entry(ledgerId, entryId);
+        ByteBuf buf = entry.getEntryBuffer();
+        cache.put(entry);
+        entry.close();
+        return buf;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+        new ClientEntryCache(0);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ClientEntryCache cache = new ClientEntryCache(1024);
+        for (long entryId = 0; entryId < 3; entryId++) {
+            put(cache, LEDGER_ID, entryId);
+        }
+        assertEquals(3 * ENTRY_SIZE, cache.getSizeBytes());
+
+        try (LedgerEntries entries = cache.getEntries(LEDGER_ID, 0L, 2L)) {
+            assertNotNull(entries);
+            long entryId = 0;
+            for (LedgerEntry entry : entries) {
+                assertEquals(LEDGER_ID, entry.getLedgerId());
+                assertEquals(entryId, entry.getEntryId());
+                assertEquals(ENTRY_SIZE, entry.getLength());
+                assertArrayEquals(payload(LEDGER_ID, entryId), entry.getEntryBytes());
+                entryId++;
+            }
+            assertEquals(3L, entryId);
+        }
+        // a range is only served when all its entries are cached
+        assertNull(cache.getEntries(LEDGER_ID, 1L, 3L));
+        assertNull(cache.getEntries(LEDGER_ID + 1, 0L, 0L));
+        // an entry cached twice is accounted once
+        put(cache, LEDGER_ID, 0L);
+        assertEquals(3 * ENTRY_SIZE, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testEntriesAreEvictedInTheOrderTheyWereCached() {
+        ClientEntryCache cache = new ClientEntryCache(3 * ENTRY_SIZE);
+        ByteBuf[] bufs = new ByteBuf[5];
+        for (long entryId = 0; entryId < 5; entryId++) {
+            bufs[(int) entryId] = put(cache, LEDGER_ID, entryId);
+        }
+        assertEquals(3 * ENTRY_SIZE, cache.getSizeBytes());
+        assertNull(cache.getEntries(LEDGER_ID, 0L, 0L));
+        assertNull(cache.getEntries(LEDGER_ID, 1L, 1L));
+        cache.getEntries(LEDGER_ID, 2L, 4L).close();
+        // the evicted entries don't hold their buffers anymore
+        assertEquals(0, bufs[0].refCnt());
+        assertEquals(0, bufs[1].refCnt());
+        assertEquals(1, bufs[2].refCnt());
+        assertEquals(3, cache.getNumQueuedEntries());
+
+        // an entry bigger than the cache isn't cached
+        LedgerEntry big = LedgerEntryImpl.create(LEDGER_ID, 5L, 4 * ENTRY_SIZE, Unpooled.buffer(4 * ENTRY_SIZE)
+                .writeZero(4 * ENTRY_SIZE));
+        cache.put(big);
+        big.close();
+        assertNull(cache.getEntries(LEDGER_ID, 5L, 5L));
+        assertEquals(3 * ENTRY_SIZE, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testServedEntriesOutliveTheirEviction() {
+        ClientEntryCache cache = new ClientEntryCache(ENTRY_SIZE);
+        ByteBuf buf = put(cache, LEDGER_ID, 0L);
+        LedgerEntries served = cache.getEntries(LEDGER_ID, 0L, 0L);
+        assertEquals(2, buf.refCnt());
+
+        put(cache, LEDGER_ID, 1L);
+        assertNull(cache.getEntries(LEDGER_ID, 0L, 0L));
+        assertEquals(1, buf.refCnt());
+        assertArrayEquals(payload(LEDGER_ID, 0L), served.getEntry(0L).getEntryBytes());
+        served.close();
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void testInvalidateAndClearReleaseTheEntries() {
+        ClientEntryCache cache = new ClientEntryCache(1024);
+        ByteBuf buf1 = put(cache, LEDGER_ID, 0L);
+        ByteBuf buf2 = put(cache, LEDGER_ID + 1, 0L);
+        ByteBuf buf3 = put(cache, LEDGER_ID + 2, 0L);
+
+        cache.invalidateLedger(LEDGER_ID);
+        assertEquals(0, buf1.refCnt());
+        assertEquals(2 * ENTRY_SIZE, cache.getSizeBytes());
+        assertNull(cache.getEntries(LEDGER_ID, 0L, 0L));
+        cache.getEntries(LEDGER_ID + 1, 0L, 0L).close();
+
+        cache.clear();
+        assertEquals(0, buf2.refCnt());
+        assertEquals(0, buf3.refCnt());
+        assertEquals(0L, cache.getSizeBytes());
+        assertEquals(0, cache.getNumQueuedEntries());
+    }
+
+    @Test
+    public void testInvalidatedEntriesAreRemovedFromTheQueue() {
+        ClientEntryCache cache = new ClientEntryCache(1024 * 1024);
+        put(cache, LEDGER_ID, 0L);
+        for (long ledgerId = LEDGER_ID + 1; ledgerId < 1000; ledgerId++) {
+            for (long entryId = 0; entryId < 4; entryId++) {
+                put(cache, ledgerId, entryId);
+            }
+            cache.invalidateLedger(ledgerId);
+            // the queue is compacted once the dead entries outnumber the cached ones
+            assertTrue(cache.getNumQueuedEntries() <= 2 + 4);
+        }
+        assertEquals(ENTRY_SIZE, cache.getSizeBytes());
+        cache.getEntries(LEDGER_ID, 0L, 0L).close();
+
+        // the compacted queue still evicts the cached entries
+        cache.invalidateLedger(LEDGER_ID);
+        assertEquals(0L, cache.getSizeBytes());
+        assertEquals(0, cache.getNumQueuedEntries());
+    }
+
+    @Test
+    public void testSmallSliceOfLargeBufferIsCopied() {
+        ClientEntryCache cache = new ClientEntryCache(1024);
+        // e.g. an entry of a batch read, which shares the buffer of the response with the other entries
+        ByteBuf response = Unpooled.buffer(100).writeZero(100);
+        LedgerEntry entry = LedgerEntryImpl.create(LEDGER_ID, 0L, ENTRY_SIZE, response.retainedSlice(20, ENTRY_SIZE));
+        cache.put(entry);
+        entry.close();
+        assertEquals(ENTRY_SIZE, cache.getSizeBytes());
+        // the response isn't pinned by the cache
+        assertEquals(1, response.refCnt());
+        response.release();
+        try (LedgerEntries cached = cache.getEntries(LEDGER_ID, 0L, 0L)) {
+            assertArrayEquals(new byte[ENTRY_SIZE], cached.getEntry(0L).getEntryBytes());
+        }
+    }
+
+    @Test
+    public void testLargeSliceIsAccountedByTheBufferItPins() {
+        ClientEntryCache cache = new ClientEntryCache(1024);
+        ByteBuf response = Unpooled.buffer(100).writeZero(100);
+        LedgerEntry entry = LedgerEntryImpl.create(LEDGER_ID, 0L, 60, response.retainedSlice(20, 60));
+        cache.put(entry);
+        entry.close();
+        assertEquals(100L, cache.getSizeBytes());
+        assertEquals(2, response.refCnt());
+        cache.invalidateLedger(LEDGER_ID);
+        assertEquals(0L, cache.getSizeBytes());
+        assertEquals(1, response.refCnt());
+    }
+
+    @Test
+    public void testOnlyConfirmedEntriesAreCachedByTheLedgerHandle() throws Exception {
+        OrderedExecutor mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(1).build();
+        try {
+            ClientEntryCache cache = new ClientEntryCache(1024 * 1024);
+            BookieClient bookieClient = mock(BookieClient.class);
+            LedgerHandle lh = newLedgerHandle(bookieClient, cache, mainWorkerPool);
+            doAnswer(invocation -> {
+                long ledgerId = invocation.getArgument(1);
+                long entryId = invocation.getArgument(2);
+                ReadEntryCallback cb = invocation.getArgument(3);
+                Object ctx = invocation.getArgument(4);
+                ByteBufList toSend = (ByteBufList) lh.getDigestManager().computeDigestAndPackageForSending(entryId,
+                        1L, (entryId + 1) * ENTRY_SIZE, Unpooled.wrappedBuffer(payload(ledgerId, entryId)), PASSWORD,
+                        0);
+                ByteBuf response = ByteBufList.coalesce(toSend);
+                toSend.release();
+                mainWorkerPool.executeOrdered(ledgerId, () -> {
+                    cb.readEntryComplete(BKException.Code.OK, ledgerId, entryId, response, ctx);
+                    response.release();
+                });
+                return null;
+            }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+            lh.setLastAddConfirmed(1L);
+
+            try (LedgerEntries entries = lh.readUnconfirmedAsync(0L, 3L).get()) {
+                assertArrayEquals(payload(LEDGER_ID, 3L), entries.getEntry(3L).getEntryBytes());
+            }
+            verify(bookieClient, times(4)).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+            try (LedgerEntries cached = cache.getEntries(LEDGER_ID, 0L, 1L)) {
+                assertNotNull(cached);
+            }
+            assertNull(cache.getEntries(LEDGER_ID, 2L, 2L));
+            assertNull(cache.getEntries(LEDGER_ID, 3L, 3L));
+
+            // the confirmed entries are then served from the cache
+            try (LedgerEntries entries = lh.readAsync(0L, 1L).get()) {
+                assertArrayEquals(payload(LEDGER_ID, 1L), entries.getEntry(1L).getEntryBytes());
+            }
+            verify(bookieClient, times(4)).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+        } finally {
+            mainWorkerPool.shutdown();
+        }
+    }
+
+    private static LedgerHandle newLedgerHandle(BookieClient bookieClient, ClientEntryCache cache,
+                                                OrderedExecutor mainWorkerPool) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setThrottleValue(0);
+        conf.setSpeculativeReadTimeout(0);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getEntryCache()).thenReturn(cache);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C).withPassword(PASSWORD)
+                .newEnsembleEntry(0L, ENSEMBLE).build();
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.confUtils.TestStatsProvider;
+import org.apache.bookkeeper.client.api.CompressionType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the compression of the entries of a ledger by {@link EntryCompressor}.
+ */
+public class EntryCompressorTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private OrderedExecutor mainWorkerPool;
+
+    @Before
+    public void setUp() {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(1).build();
+    }
+
+    @After
+    public void tearDown() {
+        mainWorkerPool.shutdown();
+    }
+
+    private static LedgerMetadata metadata(String compressionType) {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C).withPassword(PASSWORD)
+                .newEnsembleEntry(0L, ENSEMBLE);
+        if (compressionType != null) {
+            builder.withCustomMetadata(Collections.singletonMap(CompressionType.CUSTOM_METADATA_KEY,
+                    compressionType.getBytes(UTF_8)));
+        }
+        return builder.build();
+    }
+
+    private static EntryCompressor compressor(CompressionType type, Counter savedBytes) {
+        return EntryCompressor.of(metadata(type.name()), UnpooledByteBufAllocator.DEFAULT, savedBytes);
+    }
+
+    private static byte[] compressible(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + (i / 16) % 4);
+        }
+        return data;
+    }
+
+    private static byte[] incompressible(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] roundTrip(EntryCompressor compressor, byte[] data) throws IOException {
+        ByteBuf payload = Unpooled.wrappedBuffer(data);
+        ByteBuf compressed = compressor.compress(payload);
+        assertEquals(0, payload.refCnt());
+        try {
+            ByteBuf decompressed = compressor.decompress(compressed);
+            try {
+                return ByteBufUtil.getBytes(decompressed);
+            } finally {
+                decompressed.release();
+            }
+        } finally {
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testLedgersWithoutCompression() {
+        assertNull(EntryCompressor.of(metadata(null), UnpooledByteBufAllocator.DEFAULT, mock(Counter.class)));
+        assertNull(EntryCompressor.of(metadata("NONE"), UnpooledByteBufAllocator.DEFAULT, mock(Counter.class)));
+    }
+
+    @Test
+    public void testUnknownCompressionTypeIsRejected() {
+        assertNull(EntryCompressor.parseType("ZSTD".getBytes(UTF_8)));
+        assertEquals(CompressionType.SNAPPY, EntryCompressor.parseType("SNAPPY".getBytes(UTF_8)));
+        try {
+            EntryCompressor.of(metadata("ZSTD"), UnpooledByteBufAllocator.DEFAULT, mock(Counter.class));
+            fail("An unknown compression type should be rejected");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (CompressionType type : Arrays.asList(CompressionType.SNAPPY, CompressionType.DEFLATE)) {
+            TestStatsProvider stats = new TestStatsProvider();
+            Counter savedBytes = stats.getStatsLogger("").getCounter("saved");
+            EntryCompressor compressor = compressor(type, savedBytes);
+            for (int size : new int[] { 0, 1, 100, 64 * 1024 }) {
+                byte[] data = compressible(size);
+                assertArrayEquals(type + " entry of " + size + " bytes", data, roundTrip(compressor, data));
+            }
+            assertTrue(type.toString(), savedBytes.get() > 0);
+        }
+    }
+
+    @Test
+    public void testIncompressibleEntriesAreStored() throws Exception {
+        for (CompressionType type : Arrays.asList(CompressionType.SNAPPY, CompressionType.DEFLATE)) {
+            TestStatsProvider stats = new TestStatsProvider();
+            Counter savedBytes = stats.getStatsLogger("").getCounter("saved");
+            EntryCompressor compressor = compressor(type, savedBytes);
+            byte[] data = incompressible(4096);
+
+            ByteBuf compressed = compressor.compress(Unpooled.wrappedBuffer(data));
+            try {
+                // stored as it is, behind the header
+                assertEquals(HEADER_SIZE + data.length, compressed.readableBytes());
+            } finally {
+                compressed.release();
+            }
+            assertArrayEquals(data, roundTrip(compressor, data));
+            assertEquals(0L, savedBytes.get().longValue());
+        }
+    }
+
+    @Test
+    public void testCorruptedEntriesFailToDecompress() throws Exception {
+        for (CompressionType type : Arrays.asList(CompressionType.SNAPPY, CompressionType.DEFLATE)) {
+            EntryCompressor compressor = compressor(type, mock(Counter.class));
+            ByteBuf compressed = compressor.compress(Unpooled.wrappedBuffer(compressible(4096)));
+            try {
+                assertDecompressFails(compressor, Unpooled.wrappedBuffer(new byte[] { 1, 2 }));
+                // an unknown flag
+                ByteBuf unknownFlag = Unpooled.copiedBuffer(compressed);
+                unknownFlag.setByte(0, 7);
+                assertDecompressFails(compressor, unknownFlag);
+                // a header which doesn't match the size of the uncompressed data
+                ByteBuf wrongLength = Unpooled.copiedBuffer(compressed);
+                wrongLength.setInt(Byte.BYTES, 4097);
+                assertDecompressFails(compressor, wrongLength);
+                // a truncated entry
+                assertDecompressFails(compressor, compressed.slice(compressed.readerIndex(),
+                        compressed.readableBytes() / 2));
+            } finally {
+                compressed.release();
+            }
+        }
+    }
+
+    private static void assertDecompressFails(EntryCompressor compressor, ByteBuf entry) {
+        try {
+            compressor.decompress(entry).release();
+            fail("A corrupted entry should fail to decompress");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompressFailureReleasesThePayload() {
+        ByteBufAllocator failingAllocator = new UnpooledByteBufAllocator(false) {
+            @Override
+            public ByteBuf heapBuffer(int initialCapacity) {
+                throw new IllegalStateException("injected allocation failure");
+            }
+        };
+        EntryCompressor compressor = EntryCompressor.of(metadata("DEFLATE"), failingAllocator,
+                mock(Counter.class));
+        ByteBuf payload = Unpooled.wrappedBuffer(compressible(100));
+        try {
+            compressor.compress(payload);
+            fail("The compression should fail");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertEquals(0, payload.refCnt());
+    }
+
+    private ClientContext newClientContext(ByteBufAllocator allocator) {
+        BookieClient bookieClient = mock(BookieClient.class);
+        when(bookieClient.isWritable(any(), anyLong())).thenReturn(true);
+        doAnswer(invocation -> {
+            BookieId addr = invocation.getArgument(0);
+            long ledgerId = invocation.getArgument(1);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            mainWorkerPool.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, addr, ctx));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setThrottleValue(0);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(allocator);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        return clientCtx;
+    }
+
+    private static LedgerHandle newLedgerHandle(ClientContext clientCtx, String compressionType) throws Exception {
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata(compressionType), new LongVersion(0)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+    }
+
+    private static int addEntry(LedgerHandle lh, byte[] data) throws Exception {
+        CompletableFuture<Integer> rc = new CompletableFuture<>();
+        lh.asyncAddEntry(data, (code, handle, entryId, ctx) -> rc.complete(code), null);
+        return rc.get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLedgerWithUnknownCompressionTypeCantBeOpened() throws Exception {
+        try {
+            newLedgerHandle(newClientContext(UnpooledByteBufAllocator.DEFAULT), "ZSTD");
+            fail("A ledger with an unknown compression type should not be opened");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAddsOfCompressedLedger() throws Exception {
+        LedgerHandle lh = newLedgerHandle(newClientContext(UnpooledByteBufAllocator.DEFAULT), "SNAPPY");
+        assertEquals(BKException.Code.OK, addEntry(lh, compressible(1024)));
+        assertEquals(BKException.Code.OK, addEntry(lh, incompressible(1024)));
+        assertEquals(1L, lh.getLastAddConfirmed());
+    }
+
+    @Test
+    public void testCompressFailureCompletesTheAdd() throws Exception {
+        int failingCapacity = HEADER_SIZE + 1024;
+        ByteBufAllocator allocator = new UnpooledByteBufAllocator(true) {
+            @Override
+            public ByteBuf heapBuffer(int initialCapacity) {
+                if (initialCapacity == failingCapacity) {
+                    throw new IllegalStateException("injected allocation failure");
+                }
+                return super.heapBuffer(initialCapacity);
+            }
+        };
+        LedgerHandle lh = newLedgerHandle(newClientContext(allocator), "DEFLATE");
+        assertEquals(BKException.Code.UnexpectedConditionException, addEntry(lh, compressible(1024)));
+        // the failed add doesn't block the adds which follow it
+        assertEquals(BKException.Code.OK, addEntry(lh, compressible(512)));
+        assertEquals(0L, lh.getLastAddConfirmed());
+    }
+}
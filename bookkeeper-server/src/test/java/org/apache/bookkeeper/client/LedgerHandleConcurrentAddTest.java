@@ -0,0 +1,270 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the adds of several producers to a {@link LedgerHandle}, concurrently with its close and its
+ * ensemble changes.
+ */
+public class LedgerHandleConcurrentAddTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final byte[] ENTRY = "0123456789".getBytes(UTF_8);
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    private static final BookieId REPLACEMENT = BookieId.parse("bookie-3:3181");
+
+    private final Set<BookieId> failedBookies = ConcurrentHashMap.newKeySet();
+    private final AtomicLong metadataVersion = new AtomicLong(0);
+    private OrderedExecutor mainWorkerPool;
+    private ExecutorService producers;
+    private ClientContext clientCtx;
+
+    @Before
+    public void setUp() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(2).build();
+        producers = Executors.newCachedThreadPool();
+
+        BookieClient bookieClient = mock(BookieClient.class);
+        when(bookieClient.isWritable(any(), anyLong())).thenReturn(true);
+        doAnswer(invocation -> {
+            BookieId addr = invocation.getArgument(0);
+            long ledgerId = invocation.getArgument(1);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            int rc = failedBookies.contains(addr)
+                    ? BKException.Code.BookieHandleNotAvailableException : BKException.Code.OK;
+            // the responses are completed by the thread of the ledger, as the bookie client does
+            mainWorkerPool.executeOrdered(ledgerId, () -> cb.writeComplete(rc, ledgerId, entryId, addr, ctx));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.writeLedgerMetadata(anyLong(), any(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(new Versioned<>((LedgerMetadata) invocation.getArgument(1),
+                        new LongVersion(metadataVersion.incrementAndGet()))));
+
+        BookieWatcher bookieWatcher = mock(BookieWatcher.class);
+        when(bookieWatcher.replaceBookie(anyInt(), anyInt(), anyInt(), any(), any(), anyInt(), any()))
+                .thenReturn(REPLACEMENT);
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setThrottleValue(0);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getBookieWatcher()).thenReturn(bookieWatcher);
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        producers.shutdownNow();
+        mainWorkerPool.shutdown();
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C).withPassword(PASSWORD)
+                .newEnsembleEntry(0L, ENSEMBLE).build();
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+    }
+
+    /**
+     * Record the completions of the adds, in the order they are delivered.
+     */
+    private static class AddResults implements AddCallback {
+        final Queue<Long> confirmed = new ConcurrentLinkedQueue<>();
+        final Queue<Integer> failures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch done;
+
+        AddResults(int numAdds) {
+            this.done = new CountDownLatch(numAdds);
+        }
+
+        @Override
+        public void addComplete(int rc, LedgerHandle lh, long entryId, Object ctx) {
+            if (rc == BKException.Code.OK) {
+                confirmed.add(entryId);
+            } else {
+                failures.add(rc);
+            }
+            done.countDown();
+        }
+    }
+
+    private List<Future<?>> startProducers(LedgerHandle lh, int numProducers, int addsPerProducer,
+                                           AddResults results) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < numProducers; p++) {
+            futures.add(producers.submit(() -> {
+                start.await();
+                for (int i = 0; i < addsPerProducer; i++) {
+                    lh.asyncAddEntry(ENTRY, results, null);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private static void awaitProducers(List<Future<?>> futures, AddResults results) throws Exception {
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertTrue("Not all the adds completed", results.done.await(30, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The confirmed entries must be delivered in order, without gaps.
+     */
+    private static long assertConfirmedInOrder(AddResults results) {
+        long expectedEntryId = 0;
+        for (long entryId : results.confirmed) {
+            assertEquals(expectedEntryId, entryId);
+            expectedEntryId++;
+        }
+        return expectedEntryId;
+    }
+
+    @Test
+    public void testConcurrentAddsAreConfirmedInOrder() throws Exception {
+        final int numProducers = 8;
+        final int addsPerProducer = 500;
+        final int numAdds = numProducers * addsPerProducer;
+        LedgerHandle lh = newLedgerHandle();
+        AddResults results = new AddResults(numAdds);
+
+        awaitProducers(startProducers(lh, numProducers, addsPerProducer, results), results);
+
+        assertTrue(results.failures.isEmpty());
+        assertEquals(numAdds, assertConfirmedInOrder(results));
+        assertEquals(numAdds - 1, lh.getLastAddConfirmed());
+        assertEquals(numAdds - 1, lh.getLastAddPushed());
+        assertEquals((long) numAdds * ENTRY.length, lh.getLength());
+        assertEquals(0, lh.pendingAddOps.size());
+    }
+
+    @Test
+    public void testConcurrentAddsAndClose() throws Exception {
+        final int numProducers = 4;
+        final int addsPerProducer = 1000;
+        final int numAdds = numProducers * addsPerProducer;
+        LedgerHandle lh = newLedgerHandle();
+        AddResults results = new AddResults(numAdds);
+
+        List<Future<?>> futures = startProducers(lh, numProducers, addsPerProducer, results);
+        while (results.confirmed.size() < 100) {
+            Thread.sleep(1);
+        }
+        lh.close();
+        awaitProducers(futures, results);
+
+        // the adds pushed before the close are either confirmed or failed by it, the later ones fail
+        long numConfirmed = assertConfirmedInOrder(results);
+        assertEquals(numAdds, numConfirmed + results.failures.size());
+        for (int rc : results.failures) {
+            assertEquals(BKException.Code.LedgerClosedException, rc);
+        }
+        LedgerMetadata metadata = lh.getLedgerMetadata();
+        assertTrue(metadata.isClosed());
+        assertEquals(numConfirmed - 1, metadata.getLastEntryId());
+        assertEquals(numConfirmed * ENTRY.length, metadata.getLength());
+        assertEquals(numConfirmed * ENTRY.length, lh.getLength());
+        assertEquals(0, lh.pendingAddOps.size());
+    }
+
+    @Test
+    public void testConcurrentAddsDuringEnsembleChange() throws Exception {
+        final int numProducers = 4;
+        final int addsPerProducer = 500;
+        final int numAdds = numProducers * addsPerProducer;
+        LedgerHandle lh = newLedgerHandle();
+        AddResults results = new AddResults(numAdds);
+        // the writes to the bookie fail until it is replaced
+        failedBookies.add(ENSEMBLE.get(2));
+
+        awaitProducers(startProducers(lh, numProducers, addsPerProducer, results), results);
+
+        assertTrue(results.failures.isEmpty());
+        assertEquals(numAdds, assertConfirmedInOrder(results));
+        assertEquals(numAdds - 1, lh.getLastAddConfirmed());
+        assertEquals((long) numAdds * ENTRY.length, lh.getLength());
+        List<BookieId> ensemble = LedgerMetadataUtils.getLastEnsembleValue(lh.getLedgerMetadata());
+        assertTrue(ensemble.contains(REPLACEMENT));
+        assertFalse(ensemble.contains(ENSEMBLE.get(2)));
+        assertEquals(0, lh.pendingAddOps.size());
+    }
+}
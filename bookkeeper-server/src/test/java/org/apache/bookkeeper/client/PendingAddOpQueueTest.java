@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Test the ordering and the counting of the pending adds of {@link PendingAddOpQueue}.
+ */
+public class PendingAddOpQueueTest {
+
+    private static PendingAddOp op(long entryId) {
+        PendingAddOp op = mock(PendingAddOp.class);
+        op.entryId = entryId;
+        return op;
+    }
+
+    @Test
+    public void testOpsAreOrderedByEntryId() {
+        PendingAddOpQueue queue = new PendingAddOpQueue();
+        PendingAddOp op0 = op(0L);
+        PendingAddOp op1 = op(1L);
+        PendingAddOp op2 = op(2L);
+        queue.add(op2);
+        queue.add(op0);
+        queue.add(op1);
+
+        assertEquals(3, queue.size());
+        assertSame(op0, queue.peek());
+        assertSame(op0, queue.poll());
+        assertSame(op1, queue.remove());
+        assertEquals(1, queue.size());
+        assertSame(op2, queue.poll());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testSizeIsCountedOnRemovals() {
+        PendingAddOpQueue queue = new PendingAddOpQueue();
+        PendingAddOp op0 = op(0L);
+        assertTrue(queue.offer(op0));
+        // an op of the same entry isn't added twice
+        assertFalse(queue.offer(op(0L)));
+        assertEquals(1, queue.size());
+
+        assertFalse(queue.remove(op(1L)));
+        assertEquals(1, queue.size());
+        assertTrue(queue.remove(op0));
+        assertFalse(queue.remove(op0));
+        assertEquals(0, queue.size());
+
+        for (long entryId = 0; entryId < 5; entryId++) {
+            queue.add(op(entryId));
+        }
+        Iterator<PendingAddOp> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().entryId % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(2, queue.size());
+        assertEquals(1L, queue.poll().entryId);
+        assertEquals(3L, queue.poll().entryId);
+
+        queue.add(op(7L));
+        queue.add(op(8L));
+        queue.clear();
+        assertEquals(0, queue.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentProducersAndConsumer() throws Exception {
+        final int numProducers = 4;
+        final int opsPerProducer = 5000;
+        final int numOps = numProducers * opsPerProducer;
+        PendingAddOpQueue queue = new PendingAddOpQueue();
+        AtomicLong nextEntryId = new AtomicLong(0);
+        ExecutorService executor = Executors.newFixedThreadPool(numProducers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = new ArrayList<>();
+        try {
+            for (int p = 0; p < numProducers; p++) {
+                producers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < opsPerProducer; i++) {
+                        queue.add(op(nextEntryId.getAndIncrement()));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            // the consumer completes the ops in order, as the ledger handle does
+            long expectedEntryId = 0;
+            while (expectedEntryId < numOps) {
+                PendingAddOp head = queue.peek();
+                if (head != null && head.entryId == expectedEntryId) {
+                    assertSame(head, queue.poll());
+                    expectedEntryId++;
+                }
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+}
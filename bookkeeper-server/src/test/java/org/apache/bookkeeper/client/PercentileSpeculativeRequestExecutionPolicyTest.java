@@ -0,0 +1,220 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.PercentileSpeculativeRequestExecutionPolicy.LatencyHistogram;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the timing and the budget of the speculative requests of
+ * {@link PercentileSpeculativeRequestExecutionPolicy}.
+ */
+public class PercentileSpeculativeRequestExecutionPolicyTest {
+
+    private static final BookieId BOOKIE = BookieId.parse("bookie-0:3181");
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void record(PercentileSpeculativeRequestExecutionPolicy policy, int samples, long latencyNanos) {
+        for (int i = 0; i < samples; i++) {
+            policy.recordRequestLatency(BOOKIE, latencyNanos);
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        for (double percentile : new double[] { 0, 100, -1 }) {
+            try {
+                new PercentileSpeculativeRequestExecutionPolicy(percentile, 10, 100, 0.05);
+                fail("The percentile " + percentile + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+        try {
+            new PercentileSpeculativeRequestExecutionPolicy(95, 10, 100, -0.1);
+            fail("A negative budget ratio should be rejected");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDefaultTimeoutUntilEnoughSamples() {
+        PercentileSpeculativeRequestExecutionPolicy policy =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 10, 100, 0.05);
+        assertEquals(millis(10), policy.getSpeculativeRequestTimeoutNanos(null));
+        assertEquals(millis(10), policy.getSpeculativeRequestTimeoutNanos(BOOKIE));
+        record(policy, 50, millis(2));
+        assertEquals(millis(10), policy.getSpeculativeRequestTimeoutNanos(BOOKIE));
+    }
+
+    @Test
+    public void testTimeoutIsPercentileOfTheBookie() {
+        PercentileSpeculativeRequestExecutionPolicy policy =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 10, 100, 0.05);
+        record(policy, 95, millis(2));
+        record(policy, 5, millis(50));
+        long timeoutNanos = policy.getSpeculativeRequestTimeoutNanos(BOOKIE);
+        // the upper bound of the bucket of 2ms
+        assertTrue(String.valueOf(timeoutNanos), timeoutNanos >= millis(2) && timeoutNanos < millis(3));
+        // another bookie isn't affected
+        assertEquals(millis(10), policy.getSpeculativeRequestTimeoutNanos(BookieId.parse("bookie-1:3181")));
+
+        PercentileSpeculativeRequestExecutionPolicy p99 =
+                new PercentileSpeculativeRequestExecutionPolicy(99, 10, 100, 0.05);
+        record(p99, 95, millis(2));
+        record(p99, 5, millis(50));
+        timeoutNanos = p99.getSpeculativeRequestTimeoutNanos(BOOKIE);
+        assertTrue(String.valueOf(timeoutNanos), timeoutNanos >= millis(50) && timeoutNanos < millis(70));
+    }
+
+    @Test
+    public void testTimeoutIsBounded() {
+        PercentileSpeculativeRequestExecutionPolicy slow =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 10, 20, 0.05);
+        record(slow, 100, millis(500));
+        assertEquals(millis(20), slow.getSpeculativeRequestTimeoutNanos(BOOKIE));
+
+        PercentileSpeculativeRequestExecutionPolicy fast =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 10, 20, 0.05);
+        record(fast, 100, TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(millis(1), fast.getSpeculativeRequestTimeoutNanos(BOOKIE));
+    }
+
+    @Test
+    public void testBucketsContainTheirLatencies() {
+        int previousBucket = -1;
+        for (long micros = 1; micros < TimeUnit.SECONDS.toMicros(100); micros = micros * 5 / 4 + 1) {
+            long latencyNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+            int bucket = LatencyHistogram.bucketOf(latencyNanos);
+            assertTrue(micros + "us", bucket >= previousBucket);
+            assertTrue(micros + "us", LatencyHistogram.upperBoundOf(bucket) >= latencyNanos);
+            // the buckets are at most a quarter of a power of two wide
+            assertTrue(micros + "us", LatencyHistogram.upperBoundOf(bucket) <= latencyNanos * 3 / 2 + 1000);
+            previousBucket = bucket;
+        }
+    }
+
+    /**
+     * A request which issues a speculative request whenever it is asked to.
+     */
+    private static class TestRequest implements SpeculativeRequestExecutor {
+        final AtomicInteger speculativeRequests = new AtomicInteger();
+        final boolean issueMore;
+        final CountDownLatch issued;
+
+        TestRequest(boolean issueMore, int expectedRequests) {
+            this.issueMore = issueMore;
+            this.issued = new CountDownLatch(expectedRequests);
+        }
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            speculativeRequests.incrementAndGet();
+            issued.countDown();
+            return Futures.immediateFuture(issueMore);
+        }
+
+        @Override
+        public BookieId getLastRequestTarget() {
+            return BOOKIE;
+        }
+    }
+
+    @Test
+    public void testSpeculativeRequestsAreBoundedByTheBudget() throws Exception {
+        // the requests don't earn any budget, only the initial burst can be spent
+        PercentileSpeculativeRequestExecutionPolicy policy =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 1, 1, 0.0);
+        TestRequest request = new TestRequest(true, PercentileSpeculativeRequestExecutionPolicy.MAX_BUDGET);
+        policy.initiateSpeculativeRequest(scheduler, request);
+        assertTrue(request.issued.await(30, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BUDGET, request.speculativeRequests.get());
+
+        // the budget is exhausted for the other requests as well
+        TestRequest other = new TestRequest(true, 1);
+        policy.initiateSpeculativeRequest(scheduler, other);
+        Thread.sleep(100);
+        assertEquals(0, other.speculativeRequests.get());
+    }
+
+    @Test
+    public void testRequestsEarnBudget() throws Exception {
+        PercentileSpeculativeRequestExecutionPolicy policy =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 1, 1, 0.5);
+        TestRequest request = new TestRequest(true, PercentileSpeculativeRequestExecutionPolicy.MAX_BUDGET);
+        policy.initiateSpeculativeRequest(scheduler, request);
+        assertTrue(request.issued.await(30, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        // the budget earned by the request doesn't accumulate beyond the max budget
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BUDGET, request.speculativeRequests.get());
+
+        // two requests earn a speculative request
+        TestRequest first = new TestRequest(true, 1);
+        TestRequest second = new TestRequest(true, 1);
+        policy.initiateSpeculativeRequest(scheduler, first);
+        policy.initiateSpeculativeRequest(scheduler, second);
+        Thread.sleep(100);
+        assertEquals(1, first.speculativeRequests.get() + second.speculativeRequests.get());
+    }
+
+    @Test
+    public void testUnissuedRequestGivesTheBudgetBack() throws Exception {
+        PercentileSpeculativeRequestExecutionPolicy policy =
+                new PercentileSpeculativeRequestExecutionPolicy(95, 1, 1, 0.0);
+        int numRequests = 2 * PercentileSpeculativeRequestExecutionPolicy.MAX_BUDGET;
+        for (int i = 0; i < numRequests; i++) {
+            TestRequest request = new TestRequest(false, 1);
+            policy.initiateSpeculativeRequest(scheduler, request);
+            assertTrue(request.issued.await(30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.Record;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batching of the records of {@link BatchingWriteHandleImpl}.
+ */
+public class BatchingWriteHandleImplTest {
+
+    private final ByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+    private WriteHandle handle;
+    private BatchingWriteHandleImpl batchingHandle;
+    // the entries appended to the ledger and the futures of their appends, guarded by this
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final List<CompletableFuture<Long>> appends = new ArrayList<>();
+    private volatile boolean completeAppends = true;
+    private volatile boolean appendedHoldingLock = false;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        handle = mock(WriteHandle.class);
+        when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            if (batchingHandle != null && Thread.holdsLock(batchingHandle)) {
+                appendedHoldingLock = true;
+            }
+            CompletableFuture<Long> append = new CompletableFuture<>();
+            synchronized (this) {
+                entries.add(invocation.getArgument(0));
+                appends.add(append);
+                if (completeAppends) {
+                    append.complete((long) entries.size() - 1);
+                }
+            }
+            return append;
+        });
+        when(handle.closeAsync()).thenReturn(FutureUtils.Void());
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        synchronized (this) {
+            entries.forEach(ByteBuf::release);
+        }
+        assertFalse("An entry was appended holding the lock of the handle", appendedHoldingLock);
+    }
+
+    private BatchingWriteHandleImpl newBatchingHandle(int maxBatchSize, int maxBatchRecords, long maxBatchDelayMs) {
+        batchingHandle = new BatchingWriteHandleImpl(handle, allocator, maxBatchSize, maxBatchRecords,
+                maxBatchDelayMs, TimeUnit.MILLISECONDS, scheduler);
+        return batchingHandle;
+    }
+
+    private static ByteBuf record(String data) {
+        return Unpooled.wrappedBuffer(data.getBytes(UTF_8));
+    }
+
+    private synchronized List<String> decode(int entryIndex) {
+        List<Record> records = new ArrayList<>();
+        assertTrue(RecordBatches.decode(entryIndex, entries.get(entryIndex), records));
+        List<String> data = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(new RecordBatches.Position(entryIndex, i), records.get(i).getPosition());
+            data.add(new String(records.get(i).getData(), UTF_8));
+        }
+        return data;
+    }
+
+    private synchronized int numEntries() {
+        return entries.size();
+    }
+
+    private static void assertPosition(long entryId, int index, CompletableFuture<RecordPosition> future)
+            throws Exception {
+        RecordPosition position = future.get(10, TimeUnit.SECONDS);
+        assertEquals(entryId, position.getEntryId());
+        assertEquals(index, position.getIndex());
+    }
+
+    @Test
+    public void testBatchesAreCutByNumberOfRecords() throws Exception {
+        BatchingWriteHandleImpl batching = newBatchingHandle(1024, 3, 0);
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            futures.add(batching.appendAsync(record("record-" + i)));
+        }
+        assertEquals(2, numEntries());
+        assertFalse(futures.get(6).isDone());
+
+        batching.flushAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(3, numEntries());
+        for (int i = 0; i < 7; i++) {
+            assertPosition(i / 3, i % 3, futures.get(i));
+        }
+        assertEquals(Arrays.asList("record-0", "record-1", "record-2"), decode(0));
+        assertEquals(Arrays.asList("record-6"), decode(2));
+        synchronized (this) {
+            // the entries are allocated by the allocator of the client
+            assertSame(allocator, entries.get(0).alloc());
+        }
+    }
+
+    @Test
+    public void testBatchesAreCutBySize() throws Exception {
+        int recordSize = RecordBatches.RECORD_HEADER_SIZE + "record-0".length();
+        BatchingWriteHandleImpl batching = newBatchingHandle(RecordBatches.HEADER_SIZE + 2 * recordSize, 100, 0);
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(batching.appendAsync(record("record-" + i)));
+        }
+        assertEquals(2, numEntries());
+        assertEquals(Arrays.asList("record-0", "record-1"), decode(0));
+        assertEquals(Arrays.asList("record-2", "record-3"), decode(1));
+        assertPosition(1, 1, futures.get(3));
+
+        // a record bigger than a batch is appended alone
+        CompletableFuture<RecordPosition> big = batching.appendAsync(record("a record bigger than the max batch size"));
+        assertEquals(3, numEntries());
+        assertPosition(2, 0, big);
+    }
+
+    @Test
+    public void testBatchIsAppendedAfterTheDelay() throws Exception {
+        BatchingWriteHandleImpl batching = newBatchingHandle(1024, 100, 100);
+        CompletableFuture<RecordPosition> first = batching.appendAsync(record("first"));
+        CompletableFuture<RecordPosition> second = batching.appendAsync(record("second"));
+        assertPosition(0, 0, first);
+        assertPosition(0, 1, second);
+        assertEquals(1, numEntries());
+    }
+
+    @Test
+    public void testFlushWaitsForAllTheAppends() throws Exception {
+        completeAppends = false;
+        BatchingWriteHandleImpl batching = newBatchingHandle(1024, 1, 0);
+        CompletableFuture<RecordPosition> first = batching.appendAsync(record("first"));
+        CompletableFuture<RecordPosition> second = batching.appendAsync(record("second"));
+        CompletableFuture<Void> flushed = batching.flushAsync();
+
+        synchronized (this) {
+            appends.get(1).complete(1L);
+        }
+        assertPosition(1, 0, second);
+        assertFalse(flushed.isDone());
+
+        // the failure of an earlier append fails the flush, even if the last append succeeded
+        synchronized (this) {
+            appends.get(0).completeExceptionally(new BKException.BKNotEnoughBookiesException());
+        }
+        try {
+            flushed.get(10, TimeUnit.SECONDS);
+            fail("The flush should fail with the failed append");
+        } catch (ExecutionException ee) {
+            assertTrue(first.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForTheAppendsInFlight() throws Exception {
+        completeAppends = false;
+        BatchingWriteHandleImpl batching = newBatchingHandle(1024, 100, 0);
+        CompletableFuture<RecordPosition> record = batching.appendAsync(record("record"));
+        CompletableFuture<Void> closed = batching.closeAsync();
+        assertEquals(1, numEntries());
+        verify(handle, never()).closeAsync();
+
+        CompletableFuture<RecordPosition> afterClose = batching.appendAsync(record("after close"));
+        try {
+            afterClose.get(10, TimeUnit.SECONDS);
+            fail("The append should fail once the handle is closed");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof BKException.BKLedgerClosedException);
+        }
+
+        synchronized (this) {
+            appends.get(0).complete(0L);
+        }
+        closed.get(10, TimeUnit.SECONDS);
+        assertPosition(0, 0, record);
+        verify(handle).closeAsync();
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int numProducers = 4;
+        final int recordsPerProducer = 1000;
+        BatchingWriteHandleImpl batching = newBatchingHandle(64 * 1024, 10, 1);
+        ExecutorService producers = Executors.newFixedThreadPool(numProducers);
+        List<Future<List<CompletableFuture<RecordPosition>>>> results = new ArrayList<>();
+        try {
+            for (int p = 0; p < numProducers; p++) {
+                final int producer = p;
+                results.add(producers.submit(() -> {
+                    List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+                    for (int i = 0; i < recordsPerProducer; i++) {
+                        futures.add(batching.appendAsync(record(producer + "-" + i)));
+                    }
+                    return futures;
+                }));
+            }
+            List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+            for (Future<List<CompletableFuture<RecordPosition>>> result : results) {
+                futures.addAll(result.get(30, TimeUnit.SECONDS));
+            }
+            batching.flushAsync().get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<RecordPosition> future : futures) {
+                assertTrue(future.isDone());
+            }
+        } finally {
+            producers.shutdown();
+        }
+
+        // the records of each producer are appended in the order it appended them
+        int[] nextRecord = new int[numProducers];
+        for (int entry = 0; entry < numEntries(); entry++) {
+            for (String data : decode(entry)) {
+                String[] parts = data.split("-");
+                int producer = Integer.parseInt(parts[0]);
+                assertEquals(nextRecord[producer], Integer.parseInt(parts[1]));
+                nextRecord[producer]++;
+            }
+        }
+        for (int p = 0; p < numProducers; p++) {
+            assertEquals(recordsPerProducer, nextRecord[p]);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BookKeeper;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerSequenceReader;
+import org.apache.bookkeeper.client.api.LedgerSequenceReaderBuilder;
+import org.apache.bookkeeper.client.api.OpenBuilder;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the read ahead and the ordered delivery of the entries of {@link LedgerSequenceReaderImpl}.
+ */
+public class LedgerSequenceReaderImplTest {
+
+    private static final int ENTRY_SIZE = 100;
+
+    /**
+     * A read issued by the reader, completed by the test.
+     */
+    private static class Read {
+        final long ledgerId;
+        final long firstEntry;
+        final long lastEntry;
+        final boolean batch;
+        final long maxSize;
+        final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+        Read(long ledgerId, long firstEntry, long lastEntry, boolean batch, long maxSize) {
+            this.ledgerId = ledgerId;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.batch = batch;
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Open the ledgers with the futures of the test.
+     */
+    private class TestOpenBuilder implements OpenBuilder {
+        long ledgerId;
+
+        @Override
+        public OpenBuilder withLedgerId(long ledgerId) {
+            this.ledgerId = ledgerId;
+            return this;
+        }
+
+        @Override
+        public OpenBuilder withRecovery(boolean recovery) {
+            assertFalse(recovery);
+            return this;
+        }
+
+        @Override
+        public OpenBuilder withPassword(byte[] password) {
+            return this;
+        }
+
+        @Override
+        public OpenBuilder withDigestType(DigestType digestType) {
+            return this;
+        }
+
+        @Override
+        public CompletableFuture<ReadHandle> execute() {
+            return open(ledgerId);
+        }
+    }
+
+    private BookKeeper client;
+    // the opens of the ledgers, by ledger id
+    private final Map<Long, CompletableFuture<ReadHandle>> opens = new HashMap<>();
+    // the reads, in the order they were issued
+    private final List<Read> reads = new ArrayList<>();
+    // the buffers of the entries read
+    private final List<ByteBuf> buffers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        client = mock(BookKeeper.class);
+        when(client.newOpenLedgerOp()).thenAnswer(invocation -> new TestOpenBuilder());
+    }
+
+    private CompletableFuture<ReadHandle> open(long ledgerId) {
+        return opens.computeIfAbsent(ledgerId, id -> new CompletableFuture<>());
+    }
+
+    private ReadHandle handle(long ledgerId, long lastAddConfirmed, boolean batchReads) {
+        ReadHandle handle = mock(ReadHandle.class);
+        when(handle.getId()).thenReturn(ledgerId);
+        when(handle.getLastAddConfirmed()).thenReturn(lastAddConfirmed);
+        when(handle.closeAsync()).thenReturn(FutureUtils.Void());
+        when(handle.batchReadAsync(anyLong(), anyInt(), anyLong())).thenAnswer(invocation -> {
+            if (!batchReads) {
+                return FutureUtils.exception(new UnsupportedOperationException());
+            }
+            long startEntry = invocation.getArgument(0);
+            int maxCount = invocation.getArgument(1);
+            Read read = new Read(ledgerId, startEntry, startEntry + maxCount - 1, true, invocation.getArgument(2));
+            reads.add(read);
+            return read.future;
+        });
+        when(handle.readAsync(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Read read = new Read(ledgerId, invocation.getArgument(0), invocation.getArgument(1), false, -1L);
+            reads.add(read);
+            return read.future;
+        });
+        return handle;
+    }
+
+    private LedgerEntries entries(long ledgerId, long firstEntry, long lastEntry) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            ByteBuf buf = Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE);
+            buffers.add(buf);
+            entries.add(LedgerEntryImpl.create(ledgerId, entryId, ENTRY_SIZE, buf));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    private void complete(Read read) {
+        read.future.complete(entries(read.ledgerId, read.firstEntry, read.lastEntry));
+    }
+
+    private LedgerSequenceReaderBuilder newReader() {
+        return new LedgerSequenceReaderImpl.BuilderImpl(client);
+    }
+
+    /**
+     * Consume the next entries of the reader.
+     *
+     * @return the ledger id and the ids of the entries, or null once the sequence is read
+     */
+    private static List<Long> readNext(LedgerSequenceReader reader) throws Exception {
+        try (LedgerEntries entries = reader.readNext()) {
+            if (entries == null) {
+                return null;
+            }
+            List<Long> ids = new ArrayList<>();
+            for (LedgerEntry entry : entries) {
+                if (ids.isEmpty()) {
+                    ids.add(entry.getLedgerId());
+                }
+                ids.add(entry.getEntryId());
+            }
+            return ids;
+        }
+    }
+
+    private void assertBuffersReleased() {
+        for (ByteBuf buf : buffers) {
+            assertEquals(0, buf.refCnt());
+        }
+    }
+
+    @Test
+    public void testInvalidReader() {
+        try {
+            newReader().build();
+            fail("A reader needs a ledger to read");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            newReader().addLedger(1L, 5L, 4L);
+            fail("The range of entries is invalid");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            newReader().addLedger(1L).withMaxBytesInFlight(0).build();
+            fail("The window is invalid");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        assertTrue(opens.isEmpty());
+    }
+
+    @Test
+    public void testEntriesAreDeliveredInOrderAcrossLedgers() throws Exception {
+        ReadHandle handle1 = handle(1L, 2L, true);
+        ReadHandle handle2 = handle(2L, 5L, true);
+        LedgerSequenceReader reader = newReader().addLedger(1L).addLedger(2L, 1L, 3L)
+                .withMaxLedgersOpenAhead(1).withMaxEntriesPerRead(2).build();
+        // the next ledger is opened ahead of the one being read
+        assertEquals(2, opens.size());
+
+        // the ledgers are read in order whatever the order they are opened in
+        open(2L).complete(handle2);
+        assertTrue(reads.isEmpty());
+        open(1L).complete(handle1);
+        assertEquals(4, reads.size());
+        assertEquals(Arrays.asList(1L, 1L, 2L, 2L),
+                Arrays.asList(reads.get(0).ledgerId, reads.get(1).ledgerId, reads.get(2).ledgerId,
+                        reads.get(3).ledgerId));
+        assertEquals(0L, reads.get(0).firstEntry);
+        assertEquals(2L, reads.get(1).firstEntry);
+        assertEquals(2L, reads.get(1).lastEntry);
+        assertEquals(1L, reads.get(2).firstEntry);
+        assertEquals(3L, reads.get(3).lastEntry);
+
+        // the reads complete out of order
+        for (int i = reads.size() - 1; i >= 0; i--) {
+            complete(reads.get(i));
+        }
+        assertEquals(Arrays.asList(1L, 0L, 1L), readNext(reader));
+        assertEquals(Arrays.asList(1L, 2L), readNext(reader));
+        assertEquals(Arrays.asList(2L, 1L, 2L), readNext(reader));
+        assertEquals(Arrays.asList(2L, 3L), readNext(reader));
+        assertNull(readNext(reader));
+
+        verify(handle1, times(1)).closeAsync();
+        verify(handle2, times(1)).closeAsync();
+        reader.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testPendingReadIsCompletedOnceItsEntriesAreRead() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).build();
+        CompletableFuture<LedgerEntries> next = reader.readNextAsync();
+        // a single read of the consumer can be outstanding
+        assertTrue(reader.readNextAsync().isCompletedExceptionally());
+
+        open(1L).complete(handle(1L, 0L, true));
+        assertFalse(next.isDone());
+        complete(reads.get(0));
+        next.get().close();
+        assertNull(readNext(reader));
+        reader.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testReadAheadIsBoundedByTheWindow() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).withMaxEntriesPerRead(10)
+                .withMaxBytesInFlight(25000).build();
+        open(1L).complete(handle(1L, 999L, true));
+        // the reads reserve 1024 bytes per entry until some entries are read
+        assertEquals(2, reads.size());
+        assertEquals(25000L, reads.get(0).maxSize);
+
+        // then the actual size of the entries read, 1000 bytes per read
+        complete(reads.get(0));
+        assertEquals(2 + 13, reads.size());
+        // the entries consumed leave the window
+        assertEquals(Arrays.asList(1L, 0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), readNext(reader));
+        assertEquals(2 + 13 + 1, reads.size());
+        reader.close();
+    }
+
+    @Test
+    public void testBatchReadCutShortReadsTheRestOfTheRange() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).withMaxEntriesPerRead(10).build();
+        open(1L).complete(handle(1L, 9L, true));
+        assertEquals(1, reads.size());
+        assertTrue(reads.get(0).batch);
+
+        // the batch read exceeded its max size
+        reads.get(0).future.complete(entries(1L, 0L, 3L));
+        assertEquals(2, reads.size());
+        assertTrue(reads.get(1).batch);
+        assertEquals(4L, reads.get(1).firstEntry);
+        assertEquals(9L, reads.get(1).lastEntry);
+        complete(reads.get(1));
+
+        assertEquals(Arrays.asList(1L, 0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), readNext(reader));
+        assertNull(readNext(reader));
+        reader.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testEmptyBatchReadFailsTheRead() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).build();
+        open(1L).complete(handle(1L, 9L, true));
+        LedgerEntries empty = mock(LedgerEntries.class);
+        when(empty.iterator()).thenReturn(Collections.emptyIterator());
+        reads.get(0).future.complete(empty);
+        verify(empty, times(1)).close();
+        try {
+            reader.readNext();
+            fail("The read should fail when no entry is returned");
+        } catch (BKException.BKReadException e) {
+            // expected
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testRangeReadsWhenBatchReadsAreUnsupported() throws Exception {
+        ReadHandle handle = handle(1L, 9L, false);
+        LedgerSequenceReader reader = newReader().addLedger(1L).withMaxEntriesPerRead(5).build();
+        open(1L).complete(handle);
+
+        assertEquals(2, reads.size());
+        assertFalse(reads.get(0).batch);
+        assertFalse(reads.get(1).batch);
+        assertEquals(5L, reads.get(1).firstEntry);
+        assertEquals(9L, reads.get(1).lastEntry);
+        // the reader doesn't try batch reads anymore once they failed as unsupported
+        verify(handle, times(1)).batchReadAsync(anyLong(), anyInt(), anyLong());
+
+        complete(reads.get(0));
+        complete(reads.get(1));
+        assertEquals(Arrays.asList(1L, 0L, 1L, 2L, 3L, 4L), readNext(reader));
+        assertEquals(Arrays.asList(1L, 5L, 6L, 7L, 8L, 9L), readNext(reader));
+        assertNull(readNext(reader));
+        reader.close();
+    }
+
+    @Test
+    public void testOpenFailureIsDeliveredAfterTheEntriesBeforeIt() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).addLedger(2L).build();
+        open(2L).completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
+        CompletableFuture<LedgerEntries> next = reader.readNextAsync();
+        open(1L).complete(handle(1L, 0L, true));
+        complete(reads.get(0));
+        next.get().close();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                reader.readNext();
+                fail("The failure should be delivered once the first ledger is read");
+            } catch (BKException.BKNoSuchLedgerExistsException e) {
+                // expected
+            }
+        }
+        reader.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testReadFailureIsDeliveredInOrder() throws Exception {
+        ReadHandle handle = handle(1L, 14L, true);
+        LedgerSequenceReader reader = newReader().addLedger(1L).withMaxEntriesPerRead(5).build();
+        open(1L).complete(handle);
+        assertEquals(3, reads.size());
+
+        reads.get(1).future.completeExceptionally(new BKException.BKReadException());
+        // the read ahead stops at the failure
+        assertEquals(3, reads.size());
+        complete(reads.get(2));
+        complete(reads.get(0));
+
+        assertEquals(Arrays.asList(1L, 0L, 1L, 2L, 3L, 4L), readNext(reader));
+        try {
+            reader.readNext();
+            fail("The failed read should be delivered after the entries before it");
+        } catch (BKException.BKReadException e) {
+            // expected
+        }
+        // the entries read after the failure are released
+        assertBuffersReleased();
+        verify(handle, times(1)).closeAsync();
+        reader.close();
+    }
+
+    @Test
+    public void testCloseReleasesTheEntriesAndTheHandles() throws Exception {
+        ReadHandle handle1 = handle(1L, 8L, true);
+        ReadHandle handle2 = handle(2L, 8L, true);
+        LedgerSequenceReader reader = newReader().addLedger(1L).addLedger(2L).withMaxEntriesPerRead(3)
+                .withMaxLedgersOpenAhead(1).build();
+        open(1L).complete(handle1);
+        assertEquals(3, reads.size());
+        complete(reads.get(0));
+        complete(reads.get(1));
+        assertEquals(Arrays.asList(1L, 0L, 1L, 2L), readNext(reader));
+
+        // the entries of the second read are read but not consumed, the third read is in flight
+        reader.close();
+        verify(handle1, never()).closeAsync();
+        complete(reads.get(2));
+        verify(handle1, times(1)).closeAsync();
+        assertBuffersReleased();
+
+        // the ledger opened after the close is closed without being read
+        open(2L).complete(handle2);
+        verify(handle2, times(1)).closeAsync();
+        assertEquals(3, reads.size());
+
+        try {
+            reader.readNextAsync().get();
+            fail("The reader is closed");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof BKException.BKIllegalOpException);
+        }
+    }
+
+    @Test
+    public void testCloseFailsThePendingRead() throws Exception {
+        LedgerSequenceReader reader = newReader().addLedger(1L).build();
+        CompletableFuture<LedgerEntries> next = reader.readNextAsync();
+        reader.close();
+        try {
+            next.get();
+            fail("The pending read should fail once the reader is closed");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof BKException.BKIllegalOpException);
+        }
+        ReadHandle handle = handle(1L, 8L, true);
+        open(1L).complete(handle);
+        verify(handle, times(1)).closeAsync();
+        assertTrue(reads.isEmpty());
+    }
+}
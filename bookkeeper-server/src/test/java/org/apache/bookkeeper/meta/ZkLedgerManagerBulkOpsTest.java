@@ -0,0 +1,336 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.MultiCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the bulk creations and removals of ledgers of the ZooKeeper ledger managers, which are batched
+ * in multi requests.
+ */
+public class ZkLedgerManagerBulkOpsTest {
+
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+
+    // the znodes of the in-memory ZooKeeper, by path
+    private final TreeMap<String, byte[]> znodes = new TreeMap<>();
+    // the ops of the multi requests, and the paths of the single creations
+    private final List<List<Op>> multis = new ArrayList<>();
+    private final List<String> creates = new ArrayList<>();
+    // whether the multi requests are applied but fail as if the connection was lost before their response
+    private boolean loseConnectionAfterMulti = false;
+    private HierarchicalLedgerManager ledgerManager;
+
+    @Before
+    public void setUp() {
+        ledgerManager = new HierarchicalLedgerManager(new ClientConfiguration(), newZooKeeper());
+        znodes.put(ledgerManager.ledgerRootPath, new byte[0]);
+        // the root of the ledgers is never empty
+        znodes.put(ledgerManager.ledgerRootPath + "/LAYOUT", new byte[0]);
+    }
+
+    @After
+    public void tearDown() {
+        ledgerManager.close();
+    }
+
+    /**
+     * A ZooKeeper client of the in-memory znodes, which completes the requests inline.
+     */
+    @SuppressWarnings("unchecked")
+    private ZooKeeper newZooKeeper() {
+        ZooKeeper zk = mock(ZooKeeper.class);
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            creates.add(path);
+            int rc = create(znodes, path, invocation.getArgument(1));
+            ((StringCallback) invocation.getArgument(4)).processResult(rc, path, invocation.getArgument(5), path);
+            return null;
+        }).when(zk).create(anyString(), any(byte[].class), anyList(), any(CreateMode.class), any(StringCallback.class),
+                any());
+        doAnswer(invocation -> {
+            List<Op> ops = new ArrayList<>();
+            ((Iterable<Op>) invocation.getArgument(0)).forEach(ops::add);
+            multis.add(ops);
+            // a multi request is atomic
+            TreeMap<String, byte[]> applied = new TreeMap<>(znodes);
+            int rc = Code.OK.intValue();
+            for (Op op : ops) {
+                if (op.getType() == ZooDefs.OpCode.create) {
+                    rc = create(applied, op.getPath(), ((CreateRequest) op.toRequestRecord()).getData());
+                } else {
+                    rc = delete(applied, op.getPath());
+                }
+                if (rc != Code.OK.intValue()) {
+                    break;
+                }
+            }
+            if (rc == Code.OK.intValue()) {
+                znodes.clear();
+                znodes.putAll(applied);
+                if (loseConnectionAfterMulti) {
+                    rc = Code.CONNECTIONLOSS.intValue();
+                }
+            }
+            ((MultiCallback) invocation.getArgument(1)).processResult(rc, null, invocation.getArgument(2), null);
+            return null;
+        }).when(zk).multi(any(), any(MultiCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            getData(path, invocation.getArgument(2), invocation.getArgument(3));
+            return null;
+        }).when(zk).getData(anyString(), nullable(Watcher.class), any(DataCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            getData(path, invocation.getArgument(2), invocation.getArgument(3));
+            return null;
+        }).when(zk).getData(anyString(), anyBoolean(), any(DataCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            int rc = delete(znodes, path);
+            ((VoidCallback) invocation.getArgument(2)).processResult(rc, path, invocation.getArgument(3));
+            return null;
+        }).when(zk).delete(anyString(), anyInt(), any(VoidCallback.class), any());
+        return zk;
+    }
+
+    private static int create(Map<String, byte[]> znodes, String path, byte[] data) {
+        if (znodes.containsKey(path)) {
+            return Code.NODEEXISTS.intValue();
+        }
+        String parent = path.substring(0, path.lastIndexOf('/'));
+        if (!parent.isEmpty() && !znodes.containsKey(parent)) {
+            return Code.NONODE.intValue();
+        }
+        znodes.put(path, data);
+        return Code.OK.intValue();
+    }
+
+    private static int delete(Map<String, byte[]> znodes, String path) {
+        if (!znodes.containsKey(path)) {
+            return Code.NONODE.intValue();
+        }
+        if (numChildren(znodes, path) > 0) {
+            return Code.NOTEMPTY.intValue();
+        }
+        znodes.remove(path);
+        return Code.OK.intValue();
+    }
+
+    private static int numChildren(Map<String, byte[]> znodes, String path) {
+        int numChildren = 0;
+        for (String child : znodes.keySet()) {
+            if (child.startsWith(path + "/") && child.indexOf('/', path.length() + 1) < 0) {
+                numChildren++;
+            }
+        }
+        return numChildren;
+    }
+
+    private void getData(String path, DataCallback cb, Object ctx) {
+        byte[] data = znodes.get(path);
+        if (data == null) {
+            cb.processResult(Code.NONODE.intValue(), path, ctx, null, null);
+            return;
+        }
+        Stat stat = new Stat();
+        stat.setCtime(1L);
+        stat.setNumChildren(numChildren(znodes, path));
+        cb.processResult(Code.OK.intValue(), path, ctx, data, stat);
+    }
+
+    private void createParents(long ledgerId) {
+        String path = ledgerManager.getLedgerPath(ledgerId);
+        for (int i = path.indexOf('/', 1); i > 0; i = path.indexOf('/', i + 1)) {
+            znodes.putIfAbsent(path.substring(0, i), new byte[0]);
+        }
+    }
+
+    private static LedgerMetadata metadata() {
+        return LedgerMetadataBuilder.create().withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withDigestType(DigestType.CRC32C).withPassword(PASSWORD).newEnsembleEntry(0L, ENSEMBLE).build();
+    }
+
+    private List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgers(List<Long> ledgerIds) {
+        List<LedgerMetadata> metadatas = new ArrayList<>();
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            metadatas.add(metadata());
+        }
+        return ledgerManager.createLedgersMetadata(ledgerIds, metadatas);
+    }
+
+    private long storedCToken(long ledgerId) throws Exception {
+        byte[] data = znodes.get(ledgerManager.getLedgerPath(ledgerId));
+        return new LedgerMetadataSerDe().parseConfig(data, ledgerId, Optional.of(1L)).getCToken();
+    }
+
+    @Test
+    public void testLedgersAreCreatedWithAMultiPerBatch() throws Exception {
+        int numLedgers = AbstractZkLedgerManager.MAX_OPS_PER_MULTI + 2;
+        List<Long> ledgerIds = new ArrayList<>();
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            ledgerIds.add(ledgerId);
+        }
+        createParents(0L);
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(ledgerIds);
+
+        assertEquals(2, multis.size());
+        assertEquals(AbstractZkLedgerManager.MAX_OPS_PER_MULTI, multis.get(0).size());
+        assertEquals(2, multis.get(1).size());
+        assertTrue(creates.isEmpty());
+        for (int i = 0; i < numLedgers; i++) {
+            Versioned<LedgerMetadata> created = results.get(i).get();
+            assertEquals(new LongVersion(0), created.getVersion());
+            assertEquals(i, created.getValue().getLedgerId());
+            assertNotEquals(0L, created.getValue().getCToken());
+            assertEquals(created.getValue().getCToken(), storedCToken(i));
+        }
+    }
+
+    @Test
+    public void testMissingParentFallsBackToSingleCreations() throws Exception {
+        // the first ledger of a new parent znode, e.g. when the ledger ids enter a new range
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(Arrays.asList(1L, 20000L));
+
+        assertEquals(1, multis.size());
+        assertTrue(creates.contains(ledgerManager.getLedgerPath(1L)));
+        assertTrue(creates.contains(ledgerManager.getLedgerPath(20000L)));
+        assertEquals(results.get(0).get().getValue().getCToken(), storedCToken(1L));
+        assertEquals(results.get(1).get().getValue().getCToken(), storedCToken(20000L));
+    }
+
+    @Test
+    public void testExistingLedgerFailsOnlyItsCreation() throws Exception {
+        createParents(1L);
+        LedgerMetadata existing = LedgerMetadataBuilder.from(metadata()).withId(2L).withCToken(12345L).build();
+        znodes.put(ledgerManager.getLedgerPath(2L), new LedgerMetadataSerDe().serialize(existing));
+
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(Arrays.asList(1L, 2L, 3L));
+
+        assertEquals(1, multis.size());
+        assertEquals(3, creates.size());
+        results.get(0).get();
+        results.get(2).get();
+        try {
+            results.get(1).get();
+            fail("The ledger exists");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof BKException.BKLedgerExistException);
+        }
+        assertEquals(12345L, storedCToken(2L));
+    }
+
+    @Test
+    public void testMultiAppliedBeforeConnectionLossIsRecognizedByItsCreatorToken() throws Exception {
+        createParents(1L);
+        loseConnectionAfterMulti = true;
+
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(Arrays.asList(1L, 2L));
+
+        // the single creations find the znodes of the multi, which carry their creator tokens
+        assertEquals(1, multis.size());
+        assertEquals(2, creates.size());
+        assertEquals(results.get(0).get().getValue().getCToken(), storedCToken(1L));
+        assertEquals(results.get(1).get().getValue().getCToken(), storedCToken(2L));
+    }
+
+    @Test
+    public void testLedgersAreRemovedWithAMulti() throws Exception {
+        createLedgers(Arrays.asList(1L, 2L)).forEach(CompletableFuture::join);
+        String parent = ledgerManager.getLedgerPath(1L).substring(0, ledgerManager.getLedgerPath(1L).lastIndexOf('/'));
+        assertTrue(znodes.containsKey(parent));
+        multis.clear();
+
+        List<CompletableFuture<Void>> results = ledgerManager.removeLedgersMetadata(Arrays.asList(1L, 2L));
+        for (CompletableFuture<Void> result : results) {
+            result.get();
+        }
+        assertEquals(1, multis.size());
+        assertEquals(2, multis.get(0).size());
+        assertFalse(znodes.containsKey(ledgerManager.getLedgerPath(1L)));
+        assertFalse(znodes.containsKey(ledgerManager.getLedgerPath(2L)));
+        // the parents left empty are removed, as with the removals of single ledgers
+        assertFalse(znodes.containsKey(parent));
+        assertTrue(znodes.containsKey(ledgerManager.ledgerRootPath));
+    }
+
+    @Test
+    public void testMissingLedgerFallsBackToSingleRemovals() throws Exception {
+        createLedgers(Arrays.asList(1L, 3L)).forEach(CompletableFuture::join);
+        multis.clear();
+
+        List<CompletableFuture<Void>> results = ledgerManager.removeLedgersMetadata(Arrays.asList(1L, 2L, 3L));
+        // a missing ledger is removed, as with the removals of single ledgers
+        for (CompletableFuture<Void> result : results) {
+            result.get();
+        }
+        assertEquals(1, multis.size());
+        assertFalse(znodes.containsKey(ledgerManager.getLedgerPath(1L)));
+        assertFalse(znodes.containsKey(ledgerManager.getLedgerPath(3L)));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.AddRequestV3;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.AddResponseV3;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.RangeReadResponseV3;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.ReadRequestV3;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.ReadResponseV3;
+import org.apache.bookkeeper.proto.BookieProtoV3Codec.V3Message;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ContextPair;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Test that {@link BookieProtoV3Codec} writes the protobuf wire format.
+ */
+public class BookieProtoV3CodecTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    /**
+     * Serialize a message and strip the frame size prefix.
+     */
+    private static byte[] encode(V3Message message) {
+        Object frame = message.encode(UnpooledByteBufAllocator.DEFAULT);
+        message.release();
+        byte[] bytes;
+        if (frame instanceof ByteBufList) {
+            bytes = ((ByteBufList) frame).toArray();
+        } else {
+            bytes = ByteBufUtil.getBytes((ByteBuf) frame);
+        }
+        ReferenceCountUtil.release(frame);
+        assertEquals(bytes.length - 4, Unpooled.wrappedBuffer(bytes).readInt());
+        return Arrays.copyOfRange(bytes, 4, bytes.length);
+    }
+
+    private static BKPacketHeader header(OperationType operation, long txnId, int priority) {
+        BKPacketHeader.Builder header = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(operation)
+                .setTxnId(txnId);
+        if (priority != 0) {
+            header.setPriority(priority);
+        }
+        return header.build();
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) i;
+        }
+        return payload;
+    }
+
+    @Test
+    public void testAddRequestIsParsedByProtobuf() throws Exception {
+        byte[] payload = payload(1024 * 1024);
+        Map<String, String> context = new LinkedHashMap<>();
+        context.put("key", "value");
+        // a large entry in two buffers, as the client sends the digest apart from the entry
+        ByteBufList data = ByteBufList.get(Unpooled.wrappedBuffer(payload, 0, 16),
+                Unpooled.wrappedBuffer(payload, 16, payload.length - 16));
+        AddRequestV3 add = AddRequestV3.create(Long.MAX_VALUE, 5, 1L, 1000L, MASTER_KEY, data, true, 3)
+                .withRequestContext(context);
+        data.release();
+
+        Request expected = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY, Long.MAX_VALUE, 5))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(1L)
+                        .setEntryId(1000L)
+                        .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                        .setBody(ByteString.copyFrom(payload))
+                        .setWriteFlags(3)
+                        .setFlag(AddRequest.Flag.RECOVERY_ADD))
+                .addRequestContext(ContextPair.newBuilder().setKey("key").setValue("value"))
+                .build();
+        // the fields aren't written in the order of their numbers, so only the sizes of the bytes can match
+        byte[] bytes = encode(add);
+        assertEquals(expected.getSerializedSize(), bytes.length);
+        assertEquals(expected, Request.parseFrom(bytes));
+    }
+
+    @Test
+    public void testAddRequestWithoutOptionalFields() throws Exception {
+        byte[] payload = payload(100);
+        ByteBufList data = ByteBufList.get(Unpooled.wrappedBuffer(payload));
+        AddRequestV3 add = AddRequestV3.create(1L, 0, 2L, 0L, new byte[0], data, false, 0);
+        data.release();
+
+        Request expected = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY, 1L, 0))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(2L)
+                        .setEntryId(0L)
+                        .setMasterKey(ByteString.EMPTY)
+                        .setBody(ByteString.copyFrom(payload)))
+                .build();
+        byte[] bytes = encode(add);
+        Request parsed = Request.parseFrom(bytes);
+        assertEquals(expected, parsed);
+        assertFalse(parsed.getAddRequest().hasFlag());
+        assertFalse(parsed.getAddRequest().hasWriteFlags());
+        assertFalse(parsed.getHeader().hasPriority());
+    }
+
+    @Test
+    public void testReadRequestMatchesProtobufBytes() throws Exception {
+        ReadRequestV3 read = ReadRequestV3.create(300L, 1, 7L, -1L)
+                .setMasterKey(MASTER_KEY)
+                .setPreviousLAC(99L)
+                .setTimeOut(1000L)
+                .setFlag(ReadRequest.Flag.ENTRY_PIGGYBACK);
+        Request expected = Request.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 300L, 1))
+                .setReadRequest(ReadRequest.newBuilder()
+                        .setLedgerId(7L)
+                        .setEntryId(-1L)
+                        .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                        .setPreviousLAC(99L)
+                        .setTimeOut(1000L)
+                        .setFlag(ReadRequest.Flag.ENTRY_PIGGYBACK))
+                .build();
+        byte[] bytes = encode(read);
+        assertArrayEquals(expected.toByteArray(), bytes);
+
+        ReadRequestV3 plainRead = ReadRequestV3.create(301L, 0, 7L, 5L);
+        Request plainExpected = Request.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 301L, 0))
+                .setReadRequest(ReadRequest.newBuilder().setLedgerId(7L).setEntryId(5L))
+                .build();
+        assertArrayEquals(plainExpected.toByteArray(), encode(plainRead));
+    }
+
+    @Test
+    public void testAddResponseMatchesProtobufBytes() throws Exception {
+        AddResponseV3 add = AddResponseV3.create(12345L, StatusCode.EFENCED, 3L, 4L);
+        Response expected = Response.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY, 12345L, 0))
+                .setStatus(StatusCode.EFENCED)
+                .setAddResponse(AddResponse.newBuilder()
+                        .setStatus(StatusCode.EFENCED)
+                        .setLedgerId(3L)
+                        .setEntryId(4L))
+                .build();
+        byte[] bytes = encode(add);
+        assertArrayEquals(expected.toByteArray(), bytes);
+    }
+
+    @Test
+    public void testRangeReadResponsesRoundTrip() throws Exception {
+        byte[] payload = payload(70000);
+        RangeReadResponseV3 entry = RangeReadResponseV3.createEntry(8L, 3L, 10L, Unpooled.wrappedBuffer(payload));
+        Response expectedEntry = Response.newBuilder()
+                .setHeader(header(OperationType.RANGE_READ_ENTRY, 8L, 0))
+                .setStatus(StatusCode.EOK)
+                .setRangeReadResponse(RangeReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(3L)
+                        .setEntryId(10L)
+                        .setBody(ByteString.copyFrom(payload)))
+                .build();
+        byte[] bytes = encode(entry);
+        assertEquals(expectedEntry, Response.parseFrom(bytes));
+
+        RangeReadResponseV3 end = RangeReadResponseV3.createEnd(8L, StatusCode.EOK, 3L, 11L, 10L);
+        Response expectedEnd = Response.newBuilder()
+                .setHeader(header(OperationType.RANGE_READ_ENTRY, 8L, 0))
+                .setStatus(StatusCode.EOK)
+                .setRangeReadResponse(RangeReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(3L)
+                        .setEntryId(11L)
+                        .setEndOfRange(true)
+                        .setMaxLAC(10L))
+                .build();
+        bytes = encode(end);
+        assertArrayEquals(expectedEnd.toByteArray(), bytes);
+    }
+
+    @Test
+    public void testReadResponseIsParsedByProtobuf() throws Exception {
+        byte[] payload = payload(70000);
+        ReadResponseV3 read = ReadResponseV3.create(9L, OperationType.READ_ENTRY, StatusCode.EOK, 3L, 10L,
+                Unpooled.wrappedBuffer(payload))
+                .setMaxLAC(9L)
+                .setLacUpdateTimestamp(1000L);
+        Response expected = Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 9L, 0))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(3L)
+                        .setEntryId(10L)
+                        .setBody(ByteString.copyFrom(payload))
+                        .setMaxLAC(9L)
+                        .setLacUpdateTimestamp(1000L))
+                .build();
+        // the body is written last, so only the sizes of the bytes can match
+        byte[] bytes = encode(read);
+        assertEquals(expected.getSerializedSize(), bytes.length);
+        assertEquals(expected, Response.parseFrom(bytes));
+
+        ReadResponseV3 error = ReadResponseV3.create(10L, OperationType.READ_ENTRY, StatusCode.ENOENTRY, 3L, 11L,
+                null);
+        Response expectedError = Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 10L, 0))
+                .setStatus(StatusCode.ENOENTRY)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.ENOENTRY)
+                        .setLedgerId(3L)
+                        .setEntryId(11L))
+                .build();
+        assertArrayEquals(expectedError.toByteArray(), encode(error));
+    }
+
+    @Test
+    public void testBodyIsReleasedWithUnsentResponse() {
+        ByteBuf body = Unpooled.wrappedBuffer(payload(10));
+        ReadResponseV3.create(11L, OperationType.READ_ENTRY, StatusCode.EOK, 3L, 12L, body).release();
+        assertEquals(0, body.refCnt());
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.ChannelGroup;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.confUtils.TestBKConfiguration;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Test the request processing modes of {@link BookieRequestProcessor}.
+ */
+public class BookieRequestProcessorTest {
+
+    private static BookieRequestProcessor newRequestProcessor(ServerConfiguration conf) {
+        return newRequestProcessor(conf, mock(Bookie.class));
+    }
+
+    private static BookieRequestProcessor newRequestProcessor(ServerConfiguration conf, Bookie bookie) {
+        return new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, mock(ChannelGroup.class));
+    }
+
+    private static ServerConfiguration newTieredReadsConfiguration() {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { "dir0", "dir1" });
+        conf.setTieredReadsEnabled(true);
+        conf.setNumDiskReadThreadsPerLedgerDir(1);
+        conf.setReadWorkerThreadsThrottlingEnabled(false);
+        return conf;
+    }
+
+    /**
+     * A request handler of a channel which records the responses written to it.
+     */
+    private static BookieRequestHandler newRequestHandler(Queue<Object> responses) {
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.writeAndFlush(any(), any())).thenAnswer(invocation -> {
+            responses.add(invocation.getArgument(0));
+            return null;
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        return requestHandler;
+    }
+
+    private static BookieProtocol.ReadRequest newReadRequest(long ledgerId, long entryId) {
+        return BookieProtocol.ReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId,
+                BookieProtocol.FLAG_NONE, null);
+    }
+
+    private static void assertReadResponse(Object response, long ledgerId) {
+        assertTrue(response instanceof BookieProtocol.ReadResponse);
+        BookieProtocol.ReadResponse readResponse = (BookieProtocol.ReadResponse) response;
+        assertEquals(BookieProtocol.EOK, readResponse.getErrorCode());
+        assertEquals(ledgerId, readResponse.getLedgerId());
+        readResponse.release();
+    }
+
+    private static Set<Thread> threadsOf(OrderedExecutor executor, int numKeys) throws Exception {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (long key = 0; key < numKeys; key++) {
+            executor.chooseThread(key).submit(() -> threads.add(Thread.currentThread())).get(10, TimeUnit.SECONDS);
+        }
+        return threads;
+    }
+
+    @Test
+    public void testThreadPerCoreSharesOnePoolForReadsAndAdds() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setThreadPerCoreRequestProcessingEnabled(true);
+        conf.setServerNumIOThreads(3);
+        conf.setNumReadWorkerThreads(8);
+        conf.setNumAddWorkerThreads(8);
+        BookieRequestProcessor requestProcessor = newRequestProcessor(conf);
+        OrderedExecutor corePool = requestProcessor.getReadThreadPool();
+        try {
+            assertSame(corePool, requestProcessor.getWriteThreadPool());
+            // one thread per IO thread, whatever the number of read and add worker threads
+            assertEquals(3, threadsOf(corePool, 64).size());
+            for (long ledgerId = 0; ledgerId < 16; ledgerId++) {
+                assertSame(requestProcessor.getReadThreadPool().chooseThread(ledgerId),
+                        requestProcessor.getWriteThreadPool().chooseThread(ledgerId));
+            }
+        } finally {
+            requestProcessor.close();
+        }
+        assertTrue(corePool.isShutdown());
+    }
+
+    @Test
+    public void testSeparatePoolsByDefault() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setNumReadWorkerThreads(2);
+        conf.setNumAddWorkerThreads(1);
+        BookieRequestProcessor requestProcessor = newRequestProcessor(conf);
+        OrderedExecutor readPool = requestProcessor.getReadThreadPool();
+        OrderedExecutor writePool = requestProcessor.getWriteThreadPool();
+        try {
+            assertNotSame(readPool, writePool);
+            assertEquals(2, threadsOf(readPool, 64).size());
+            assertEquals(1, threadsOf(writePool, 64).size());
+        } finally {
+            requestProcessor.close();
+        }
+        assertTrue(readPool.isShutdown());
+        assertTrue(writePool.isShutdown());
+    }
+
+    @Test
+    public void testSchedulerReplacesWorkerPools() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setWeightedFairRequestSchedulingEnabled(true);
+        conf.setNumReadWorkerThreads(2);
+        conf.setNumAddWorkerThreads(1);
+        conf.setReadWorkerThreadsThrottlingEnabled(false);
+        Bookie bookie = mock(Bookie.class);
+        Map<Long, String> readThreads = new ConcurrentHashMap<>();
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            readThreads.put(invocation.getArgument(0), Thread.currentThread().getName());
+            return Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 });
+        });
+        BookieRequestProcessor requestProcessor = newRequestProcessor(conf, bookie);
+        Queue<Object> responses = new ConcurrentLinkedQueue<>();
+        try {
+            assertNull(requestProcessor.getReadThreadPool());
+            assertNull(requestProcessor.getWriteThreadPool());
+
+            requestProcessor.processRequest(newReadRequest(1L, 0L), newRequestHandler(responses));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (responses.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, responses.size());
+            assertReadResponse(responses.poll(), 1L);
+            assertTrue(readThreads.get(1L), readThreads.get(1L).startsWith("BookieReadScheduler-"));
+        } finally {
+            requestProcessor.close();
+        }
+    }
+
+    @Test
+    public void testSchedulerReplacesCoreThreadPool() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setThreadPerCoreRequestProcessingEnabled(true);
+        conf.setWeightedFairRequestSchedulingEnabled(true);
+        conf.setNumReadWorkerThreads(2);
+        conf.setNumAddWorkerThreads(0);
+        BookieRequestProcessor requestProcessor = newRequestProcessor(conf);
+        try {
+            // the adds have no scheduler, so they keep the core threads
+            assertNull(requestProcessor.getReadThreadPool());
+            assertNotNull(requestProcessor.getWriteThreadPool());
+        } finally {
+            requestProcessor.close();
+        }
+        assertTrue(requestProcessor.getWriteThreadPool().isShutdown());
+    }
+
+    @Test
+    public void testRequestsOfThrottledTenantAreRejected() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setTenantMaxReadsPerSecond(1);
+        conf.setNumReadWorkerThreads(0);
+        conf.setReadWorkerThreadsThrottlingEnabled(false);
+        conf.setWaitTimeoutOnResponseBackpressureMillis(TimeUnit.MINUTES.toMillis(1));
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(
+                invocation -> Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 }));
+        BookieRequestProcessor requestProcessor = newRequestProcessor(conf, bookie);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        try {
+            // the second read overdraws the tenant, which pauses its channel
+            requestProcessor.processRequest(newReadRequest(1L, 0L), requestHandler);
+            requestProcessor.processRequest(newReadRequest(1L, 1L), requestHandler);
+            assertReadResponse(channel.readOutbound(), 1L);
+            assertReadResponse(channel.readOutbound(), 1L);
+            assertFalse(channel.config().isAutoRead());
+            assertFalse(requestProcessor.isBlacklisted(channel));
+
+            // a read sent before the channel was paused is rejected rather than queued
+            requestProcessor.processRequest(newReadRequest(1L, 2L), requestHandler);
+            BookieProtocol.ReadResponse rejected = channel.readOutbound();
+            assertEquals(BookieProtocol.ETOOMANYREQUESTS, rejected.getErrorCode());
+            assertEquals(2L, rejected.getEntryId());
+            rejected.release();
+            assertTrue(requestProcessor.isBlacklisted(channel));
+            verify(bookie, times(2)).readEntry(anyLong(), anyLong());
+        } finally {
+            requestProcessor.close();
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testCacheHitIsServedOnTheCallingThread() throws Exception {
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.readEntryIfCached(1L, 2L)).thenReturn(Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 }));
+        BookieRequestProcessor requestProcessor = newRequestProcessor(newTieredReadsConfiguration(), bookie);
+        Queue<Object> responses = new ConcurrentLinkedQueue<>();
+        try {
+            requestProcessor.processRequest(newReadRequest(1L, 2L), newRequestHandler(responses));
+
+            // the response is sent before the request is handed to any read thread
+            assertEquals(1, responses.size());
+            assertReadResponse(responses.poll(), 1L);
+            verify(bookie, never()).readEntry(anyLong(), anyLong());
+        } finally {
+            requestProcessor.close();
+        }
+    }
+
+    @Test
+    public void testCacheMissesAreReadByTheThreadsOfTheirLedgerDir() throws Exception {
+        Bookie bookie = mock(Bookie.class);
+        Map<Long, String> readThreads = new ConcurrentHashMap<>();
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            readThreads.put(invocation.getArgument(0), Thread.currentThread().getName());
+            return Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 });
+        });
+        BookieRequestProcessor requestProcessor = newRequestProcessor(newTieredReadsConfiguration(), bookie);
+        Queue<Object> responses = new ConcurrentLinkedQueue<>();
+        try {
+            BookieRequestHandler requestHandler = newRequestHandler(responses);
+            for (long ledgerId = 0; ledgerId < 4; ledgerId++) {
+                requestProcessor.processRequest(newReadRequest(ledgerId, 0L), requestHandler);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (responses.size() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, responses.size());
+            for (long ledgerId = 0; ledgerId < 4; ledgerId++) {
+                assertTrue(readThreads.get(ledgerId),
+                        readThreads.get(ledgerId).startsWith("BookieDiskReadThreadPool-" + (ledgerId % 2) + "-"));
+            }
+            Object response;
+            while ((response = responses.poll()) != null) {
+                ((BookieProtocol.ReadResponse) response).release();
+            }
+        } finally {
+            requestProcessor.close();
+        }
+    }
+}
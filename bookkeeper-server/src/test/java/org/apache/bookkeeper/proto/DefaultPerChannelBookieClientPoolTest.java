@@ -0,0 +1,252 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.ConnectionState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the growth and the shrinking of the channels of {@link DefaultPerChannelBookieClientPool}.
+ */
+public class DefaultPerChannelBookieClientPoolTest {
+
+    private static final BookieId BOOKIE = BookieId.parse("bookie-0:3181");
+    private static final int GROW_THRESHOLD = 10;
+
+    private final List<PerChannelBookieClient> created = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch createBlocker = null;
+    private volatile CountDownLatch createStarted = null;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private final PerChannelBookieClientFactory factory = (address, pcbcPool, shFactory, forceUseV3) -> {
+        CountDownLatch started = createStarted;
+        CountDownLatch blocker = createBlocker;
+        if (started != null && blocker != null) {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        PerChannelBookieClient pcbc = mock(PerChannelBookieClient.class);
+        when(pcbc.isWritable()).thenReturn(true);
+        created.add(pcbc);
+        return pcbc;
+    };
+
+    private DefaultPerChannelBookieClientPool newPool(int coreSize, int maxSize) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setMaxChannelsPerBookie(maxSize);
+        conf.setChannelPoolGrowThreshold(GROW_THRESHOLD);
+        DefaultPerChannelBookieClientPool pool = new DefaultPerChannelBookieClientPool(conf, factory, BOOKIE,
+                coreSize);
+        for (PerChannelBookieClient pcbc : created) {
+            connected(pcbc, 0);
+        }
+        return pool;
+    }
+
+    private static void connected(PerChannelBookieClient pcbc, long numPending) {
+        pcbc.state = ConnectionState.CONNECTED;
+        when(pcbc.getNumPendingCompletionRequests()).thenReturn(numPending);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static GenericCallback<PerChannelBookieClient> callback() {
+        return mock(GenericCallback.class);
+    }
+
+    @Test
+    public void testLeastLoadedChannelServesTheReads() throws Exception {
+        DefaultPerChannelBookieClientPool pool = newPool(2, 2);
+        PerChannelBookieClient first = created.get(0);
+        PerChannelBookieClient second = created.get(1);
+        connected(first, 0);
+        connected(second, 5);
+        // the bytes queued in a channel weigh in its load
+        when(first.getPendingWriteBytes()).thenReturn(8 * 64 * 1024L);
+
+        GenericCallback<PerChannelBookieClient> cb = callback();
+        pool.obtainLeastLoaded(cb, 0L);
+        verify(second).connectIfNeededAndDoOp(cb);
+
+        // a channel which isn't writable can't take more operations
+        when(second.isWritable()).thenReturn(false);
+        GenericCallback<PerChannelBookieClient> otherCb = callback();
+        pool.obtainLeastLoaded(otherCb, 0L);
+        verify(first).connectIfNeededAndDoOp(otherCb);
+        assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testPoolGrowsWithItsLoad() throws Exception {
+        DefaultPerChannelBookieClientPool pool = newPool(1, 3);
+        PerChannelBookieClient core = created.get(0);
+        connected(core, GROW_THRESHOLD);
+
+        GenericCallback<PerChannelBookieClient> cb = callback();
+        pool.obtainLeastLoaded(cb, 0L);
+        // the read goes to the loaded channel, while the added channel connects
+        verify(core).connectIfNeededAndDoOp(cb);
+        assertEquals(2, created.size());
+        PerChannelBookieClient added = created.get(1);
+        verify(added).connectIfNeededAndDoOp(pool);
+
+        // no other channel is added before the added one connected
+        pool.obtainLeastLoaded(callback(), 0L);
+        assertEquals(2, created.size());
+
+        connected(added, 0);
+        GenericCallback<PerChannelBookieClient> addedCb = callback();
+        pool.obtainLeastLoaded(addedCb, 0L);
+        verify(added).connectIfNeededAndDoOp(addedCb);
+
+        // the pool grows up to its max size
+        connected(added, GROW_THRESHOLD);
+        pool.obtainLeastLoaded(callback(), 0L);
+        assertEquals(3, created.size());
+        connected(created.get(2), GROW_THRESHOLD);
+        pool.obtainLeastLoaded(callback(), 0L);
+        assertEquals(3, created.size());
+
+        // the writes stay on the core channels
+        GenericCallback<PerChannelBookieClient> writeCb = callback();
+        pool.obtain(writeCb, 1L);
+        verify(core).connectIfNeededAndDoOp(writeCb);
+    }
+
+    @Test
+    public void testPoolShrinksWhenItsLoadDrops() throws Exception {
+        DefaultPerChannelBookieClientPool pool = newPool(1, 2);
+        PerChannelBookieClient core = created.get(0);
+        connected(core, GROW_THRESHOLD);
+        pool.obtainLeastLoaded(callback(), 0L);
+        PerChannelBookieClient added = created.get(1);
+        connected(added, GROW_THRESHOLD);
+
+        // still loaded
+        pool.checkTimeoutOnPendingOperations();
+        GenericCallback<PerChannelBookieClient> cb = callback();
+        connected(core, GROW_THRESHOLD + 1);
+        pool.obtainLeastLoaded(cb, 0L);
+        verify(added).connectIfNeededAndDoOp(cb);
+
+        // the load drops, the added channel is retired but not closed while it has pending operations
+        connected(core, 0);
+        connected(added, 2);
+        pool.checkTimeoutOnPendingOperations();
+        verify(added, never()).close(anyBoolean());
+        assertEquals(2L, pool.getNumPendingCompletionRequests());
+        GenericCallback<PerChannelBookieClient> retiredCb = callback();
+        pool.obtainLeastLoaded(retiredCb, 0L);
+        verify(core).connectIfNeededAndDoOp(retiredCb);
+        verify(added, never()).connectIfNeededAndDoOp(retiredCb);
+        // the pending operations of the retired channel still time out
+        pool.checkTimeoutOnPendingOperations();
+        verify(added, times(3)).checkTimeoutOnPendingOperations();
+        verify(added, never()).close(anyBoolean());
+
+        // closed once drained
+        connected(added, 0);
+        pool.checkTimeoutOnPendingOperations();
+        verify(added).close(false);
+    }
+
+    @Test
+    public void testFailedChannelIsRemoved() throws Exception {
+        DefaultPerChannelBookieClientPool pool = newPool(1, 2);
+        PerChannelBookieClient core = created.get(0);
+        connected(core, GROW_THRESHOLD);
+        pool.obtainLeastLoaded(callback(), 0L);
+        PerChannelBookieClient added = created.get(1);
+        added.state = ConnectionState.DISCONNECTED;
+
+        pool.checkTimeoutOnPendingOperations();
+        pool.checkTimeoutOnPendingOperations();
+        verify(added).close(false);
+
+        // the pool can grow again
+        pool.obtainLeastLoaded(callback(), 0L);
+        assertEquals(3, created.size());
+    }
+
+    @Test
+    public void testCloseDuringGrow() throws Exception {
+        DefaultPerChannelBookieClientPool pool = newPool(1, 2);
+        PerChannelBookieClient core = created.get(0);
+        connected(core, GROW_THRESHOLD);
+
+        createStarted = new CountDownLatch(1);
+        createBlocker = new CountDownLatch(1);
+        Future<?> grow = executor.submit(() -> pool.obtainLeastLoaded(callback(), 0L));
+        assertTrue(createStarted.await(10, TimeUnit.SECONDS));
+        Future<?> close = executor.submit(() -> pool.close(true));
+        // the close waits for the channel being added
+        Thread.sleep(100);
+        assertFalse(close.isDone());
+
+        createBlocker.countDown();
+        grow.get(10, TimeUnit.SECONDS);
+        close.get(10, TimeUnit.SECONDS);
+        assertEquals(2, created.size());
+        verify(core).close(true);
+        verify(created.get(1)).close(true);
+
+        // a closed pool doesn't grow anymore
+        createStarted = null;
+        createBlocker = null;
+        pool.obtainLeastLoaded(callback(), 0L);
+        assertEquals(2, created.size());
+    }
+}
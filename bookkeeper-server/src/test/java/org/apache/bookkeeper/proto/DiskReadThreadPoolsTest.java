@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the dispatch of the reads to the pools of the ledger dirs by {@link DiskReadThreadPools}.
+ */
+public class DiskReadThreadPoolsTest {
+
+    private DiskReadThreadPools pools;
+
+    @After
+    public void tearDown() {
+        if (pools != null) {
+            pools.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testLedgersAreReadByThePoolOfTheirDir() throws Exception {
+        pools = new DiskReadThreadPools("test-disk-read", 3, 2, 0);
+        Map<Long, String> readThreads = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(9);
+        for (long ledgerId = 0; ledgerId < 9; ledgerId++) {
+            final long id = ledgerId;
+            pools.chooseThread(ledgerId).execute(() -> {
+                readThreads.put(id, Thread.currentThread().getName());
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (long ledgerId = 0; ledgerId < 9; ledgerId++) {
+            assertTrue(readThreads.get(ledgerId), readThreads.get(ledgerId).startsWith("test-disk-read-"
+                    + (ledgerId % 3) + "-"));
+        }
+        assertSame(pools.chooseThread(1L), pools.chooseThread(4L));
+        // negative ledger ids are mapped as well
+        assertSame(pools.chooseThread(-1L), pools.chooseThread(2L));
+    }
+
+    @Test
+    public void testBlockedDirDoesNotDelayTheOtherDirs() throws Exception {
+        pools = new DiskReadThreadPools("test-disk-read", 2, 1, 0);
+        CountDownLatch unblock = new CountDownLatch(1);
+        pools.chooseThread(0L).execute(() -> {
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            CountDownLatch otherDirRead = new CountDownLatch(1);
+            pools.chooseThread(1L).execute(otherDirRead::countDown);
+            assertTrue(otherDirRead.await(10, TimeUnit.SECONDS));
+        } finally {
+            unblock.countDown();
+        }
+    }
+
+    @Test
+    public void testReadsOverTheLimitOfTheDirAreRejected() throws Exception {
+        pools = new DiskReadThreadPools("test-disk-read", 2, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        Executor dir0 = pools.chooseThread(0L);
+        try {
+            dir0.execute(() -> {
+                started.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // the thread of the dir is busy, a single read can wait for it
+            dir0.execute(() -> { });
+            try {
+                dir0.execute(() -> { });
+                fail("The read should be rejected once the queue of the dir is full");
+            } catch (RejectedExecutionException ree) {
+                // expected
+            }
+            // the other dir still accepts reads
+            CountDownLatch otherDirRead = new CountDownLatch(1);
+            pools.chooseThread(1L).execute(otherDirRead::countDown);
+            assertTrue(otherDirRead.await(10, TimeUnit.SECONDS));
+        } finally {
+            unblock.countDown();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the responses streamed by {@link RangeReadEntryProcessorV3}, as they are seen on the wire.
+ */
+public class RangeReadEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 10;
+
+    private EmbeddedChannel channel;
+    private Bookie bookie;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    // the last entry of the ledger stored by the bookie
+    private long lastStoredEntryId = 100L;
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel();
+        bookie = mock(Bookie.class);
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            if (entryId > lastStoredEntryId) {
+                throw new Bookie.NoEntryException(LEDGER_ID, entryId);
+            }
+            return Unpooled.wrappedBuffer(entry(entryId));
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private static byte[] entry(long entryId) {
+        byte[] entry = new byte[ENTRY_SIZE];
+        entry[0] = (byte) entryId;
+        return entry;
+    }
+
+    private void rangeRead(long startEntryId, int maxCount, long maxSize) {
+        RangeReadRequest.Builder rangeRead = RangeReadRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setStartEntryId(startEntryId);
+        if (maxCount > 0) {
+            rangeRead.setMaxCount(maxCount);
+        }
+        if (maxSize > 0) {
+            rangeRead.setMaxSize(maxSize);
+        }
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.RANGE_READ_ENTRY)
+                        .setTxnId(7L))
+                .setRangeReadRequest(rangeRead)
+                .build();
+        new RangeReadEntryProcessorV3(request, requestHandler, requestProcessor, null).run();
+    }
+
+    /**
+     * Serialize the responses written to the channel and parse them back, as the client does.
+     */
+    private List<Response> responses() throws Exception {
+        List<Response> responses = new ArrayList<>();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            Object frame = ((BookieProtoV3Codec.V3Message) message).encode(UnpooledByteBufAllocator.DEFAULT);
+            ReferenceCountUtil.release(message);
+            byte[] bytes = frame instanceof ByteBufList
+                    ? ((ByteBufList) frame).toArray() : ByteBufUtil.getBytes((ByteBuf) frame);
+            ReferenceCountUtil.release(frame);
+            ByteBuf packet = Unpooled.wrappedBuffer(bytes);
+            assertEquals(bytes.length - 4, packet.readInt());
+            Response response = Response.parseFrom(new ByteBufInputStream(packet));
+            assertEquals(7L, response.getHeader().getTxnId());
+            assertEquals(OperationType.RANGE_READ_ENTRY, response.getHeader().getOperation());
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    private static void assertEntries(List<Response> responses, long firstEntryId, long lastEntryId) {
+        assertEquals(lastEntryId - firstEntryId + 2, responses.size());
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            RangeReadResponse response = responses.get((int) (entryId - firstEntryId)).getRangeReadResponse();
+            assertFalse(response.getEndOfRange());
+            assertEquals(StatusCode.EOK, response.getStatus());
+            assertEquals(LEDGER_ID, response.getLedgerId());
+            assertEquals(entryId, response.getEntryId());
+            assertEquals(ByteString.copyFrom(entry(entryId)), response.getBody());
+        }
+    }
+
+    private static RangeReadResponse endOfRange(List<Response> responses) {
+        RangeReadResponse end = responses.get(responses.size() - 1).getRangeReadResponse();
+        assertTrue(end.getEndOfRange());
+        assertFalse(end.hasBody());
+        return end;
+    }
+
+    @Test
+    public void testRangeStopsAtLastStoredEntry() throws Exception {
+        lastStoredEntryId = 4L;
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(3L);
+        rangeRead(2L, 0, 0);
+
+        List<Response> responses = responses();
+        assertEntries(responses, 2L, 4L);
+        RangeReadResponse end = endOfRange(responses);
+        assertEquals(StatusCode.EOK, end.getStatus());
+        assertEquals(5L, end.getEntryId());
+        assertEquals(3L, end.getMaxLAC());
+    }
+
+    @Test
+    public void testLastEntryOfClosedLedgerIsRead() throws Exception {
+        // the lac stored with the last entry of a closed ledger is the entry before it
+        lastStoredEntryId = 4L;
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(3L);
+        rangeRead(4L, 10, 0);
+
+        List<Response> responses = responses();
+        assertEntries(responses, 4L, 4L);
+        RangeReadResponse end = endOfRange(responses);
+        assertEquals(StatusCode.EOK, end.getStatus());
+        assertEquals(5L, end.getEntryId());
+    }
+
+    @Test
+    public void testRangeStopsAtMaxCount() throws Exception {
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(100L);
+        rangeRead(2L, 2, 0);
+
+        List<Response> responses = responses();
+        assertEntries(responses, 2L, 3L);
+        assertEquals(4L, endOfRange(responses).getEntryId());
+    }
+
+    @Test
+    public void testRangeStopsAtMaxSize() throws Exception {
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(100L);
+        rangeRead(2L, 0, 2 * ENTRY_SIZE + 1);
+        List<Response> responses = responses();
+        assertEntries(responses, 2L, 3L);
+        assertEquals(4L, endOfRange(responses).getEntryId());
+
+        // the first entry is always returned, even if it is larger than the max size
+        rangeRead(2L, 0, 1);
+        responses = responses();
+        assertEntries(responses, 2L, 2L);
+        assertEquals(3L, endOfRange(responses).getEntryId());
+    }
+
+    @Test
+    public void testMissingEntryEndsRange() throws Exception {
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(100L);
+        when(bookie.readEntry(LEDGER_ID, 4L)).thenThrow(new Bookie.NoEntryException(LEDGER_ID, 4L));
+        rangeRead(2L, 0, 0);
+
+        List<Response> responses = responses();
+        assertEntries(responses, 2L, 3L);
+        RangeReadResponse end = endOfRange(responses);
+        assertEquals(StatusCode.EOK, end.getStatus());
+        assertEquals(4L, end.getEntryId());
+    }
+
+    @Test
+    public void testMissingFirstEntryEndsRangeWithError() throws Exception {
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(100L);
+        when(bookie.readEntry(LEDGER_ID, 2L)).thenThrow(new Bookie.NoEntryException(LEDGER_ID, 2L));
+        rangeRead(2L, 0, 0);
+
+        List<Response> responses = responses();
+        assertEquals(1, responses.size());
+        RangeReadResponse end = endOfRange(responses);
+        assertEquals(StatusCode.ENOENTRY, end.getStatus());
+        assertEquals(2L, end.getEntryId());
+    }
+
+    @Test
+    public void testStreamIsResumedOnceFlushed() throws Exception {
+        lastStoredEntryId = 9L;
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(9L);
+        // every entry uses up the credit of a round, so the stream pauses after each of them
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 2));
+        rangeRead(0L, 0, 0);
+
+        List<Response> responses = responses();
+        assertEntries(responses, 0L, 9L);
+        assertEquals(10L, endOfRange(responses).getEntryId());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FileRegion;
+import io.netty.channel.socket.SocketChannel;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the coalescing of the reads of the same entry by {@link ReadCoalescer}.
+ */
+public class ReadCoalescerTest {
+
+    private Counter coalescedReads;
+    private ReadCoalescer coalescer;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setUp() {
+        coalescedReads = mock(Counter.class);
+        coalescer = new ReadCoalescer(coalescedReads);
+        SocketChannel channel = mock(SocketChannel.class);
+        when(channel.pipeline()).thenReturn(mock(ChannelPipeline.class));
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(mock(Bookie.class));
+        when(requestProcessor.getReadCoalescer()).thenReturn(coalescer);
+    }
+
+    private ReadEntryProcessor newRead(long ledgerId, long entryId) {
+        BookieProtocol.ReadRequest request = BookieProtocol.ReadRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId, (short) 0, null);
+        return ReadEntryProcessor.create(request, requestHandler, requestProcessor, null, false, false);
+    }
+
+    @Test
+    public void testReadsOfTheSameEntryAreCoalesced() {
+        ReadEntryProcessor leader = newRead(1L, 5L);
+        assertFalse(coalescer.coalesce(leader));
+        assertNotNull(leader.pendingRead);
+
+        ReadEntryProcessor follower = newRead(1L, 5L);
+        assertTrue(coalescer.coalesce(follower));
+        assertNull(follower.pendingRead);
+        verify(coalescedReads, times(1)).inc();
+
+        // another entry of the ledger, and an entry of another ledger, aren't coalesced
+        ReadEntryProcessor otherEntry = newRead(1L, 6L);
+        assertFalse(coalescer.coalesce(otherEntry));
+        assertNull(otherEntry.pendingRead);
+        ReadEntryProcessor otherLedger = newRead(2L, 5L);
+        assertFalse(coalescer.coalesce(otherLedger));
+        assertNotNull(otherLedger.pendingRead);
+
+        List<ReadEntryProcessor> followers = coalescer.complete(1L, leader.pendingRead);
+        assertEquals(1, followers.size());
+        assertTrue(followers.get(0) == follower);
+    }
+
+    @Test
+    public void testReadAfterCompletionLeadsANewPendingRead() {
+        ReadEntryProcessor leader = newRead(1L, 5L);
+        coalescer.coalesce(leader);
+        ReadCoalescer.PendingRead pending = leader.pendingRead;
+        assertTrue(coalescer.complete(1L, pending).isEmpty());
+        // a follower can't join a completed read
+        assertFalse(pending.addFollower(newRead(1L, 5L)));
+
+        ReadEntryProcessor next = newRead(1L, 5L);
+        assertFalse(coalescer.coalesce(next));
+        assertNotNull(next.pendingRead);
+        assertFalse(next.pendingRead == pending);
+    }
+
+    @Test
+    public void testFollowersAreScheduledWhenLeaderCannotShareItsEntry() {
+        ReadEntryProcessor leader = newRead(1L, 5L);
+        coalescer.coalesce(leader);
+        ReadEntryProcessor first = newRead(1L, 5L);
+        ReadEntryProcessor second = newRead(1L, 5L);
+        assertTrue(coalescer.coalesce(first));
+        assertTrue(coalescer.coalesce(second));
+
+        // the entry of the leader was read as a file region, which can't be shared
+        FileRegionList region = FileRegionList.get(mock(FileRegion.class));
+        leader.completePendingRead(region, BookieProtocol.EOK);
+
+        // the followers are handed back to their read threads, not run on the thread of the leader
+        verify(requestProcessor).scheduleCoalescedRead(first);
+        verify(requestProcessor).scheduleCoalescedRead(second);
+        verify(requestProcessor, never()).getBookie();
+        assertNull(leader.pendingRead);
+        region.release();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FileRegion;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.ReferenceCounted;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the zero copy reads of {@link ReadEntryProcessor}.
+ */
+public class ReadEntryProcessorTest {
+
+    private Bookie bookie;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setUp() {
+        bookie = mock(Bookie.class);
+        SocketChannel channel = mock(SocketChannel.class);
+        when(channel.pipeline()).thenReturn(mock(ChannelPipeline.class));
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+    }
+
+    private ReadEntryProcessor newProcessor() {
+        BookieProtocol.ReadRequest request = BookieProtocol.ReadRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, 1L, 2L, (short) 0, null);
+        return ReadEntryProcessor.create(request, requestHandler, requestProcessor, null, false, true);
+    }
+
+    @Test
+    public void testEntryIsReadAsFileRegion() throws Exception {
+        FileRegion region = mock(FileRegion.class);
+        when(bookie.readEntryRegion(anyLong(), anyLong(), anyInt())).thenReturn(region);
+
+        ReferenceCounted data = newProcessor().readData();
+        assertTrue(data instanceof FileRegionList);
+        assertSame(region, ((FileRegionList) data).get(0));
+    }
+
+    @Test
+    public void testFallbackToBufferedReadWhenRegionReadFails() throws Exception {
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 });
+        when(bookie.readEntryRegion(anyLong(), anyLong(), anyInt())).thenThrow(new IOException("injected"));
+        when(bookie.readEntry(1L, 2L)).thenReturn(entry);
+
+        assertSame(entry, newProcessor().readData());
+    }
+
+    @Test
+    public void testFallbackToBufferedReadForSmallEntries() throws Exception {
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 });
+        when(bookie.readEntryRegion(anyLong(), anyLong(), anyInt())).thenReturn(null);
+        when(bookie.readEntry(1L, 2L)).thenReturn(entry);
+
+        assertSame(entry, newProcessor().readData());
+    }
+
+    @Test
+    public void testFileRegionReadResponseRetainReturnsItself() {
+        BookieProtocol.ReadRequest request = BookieProtocol.ReadRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, 1L, 2L, (short) 0, null);
+        BookieProtocol.FileRegionReadResponse response = (BookieProtocol.FileRegionReadResponse)
+                ResponseBuilder.buildFileRegionReadResponse(FileRegionList.get(), request);
+
+        assertSame(response, response.retain());
+        assertSame(response, response.retain(2));
+        assertEquals(4, response.refCnt());
+        response.release(3);
+        assertTrue(response.release());
+        assertEquals(0, response.refCnt());
+    }
+}
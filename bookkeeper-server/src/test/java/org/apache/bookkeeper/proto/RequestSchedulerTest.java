@@ -0,0 +1,180 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.proto.RequestScheduler.TrafficClass;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+/**
+ * Test the scheduling of the requests by {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+    private RequestScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private RequestScheduler newScheduler(int maxTasksPerClass, boolean preserveMdc) {
+        scheduler = new RequestScheduler("test-scheduler", 1, maxTasksPerClass, RequestScheduler.parseWeights(null),
+                preserveMdc, NullStatsLogger.INSTANCE);
+        return scheduler;
+    }
+
+    /**
+     * Block the thread of the scheduler until the returned latch is counted down.
+     */
+    private CountDownLatch blockThread(TrafficClass cls) throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.executeOrdered(cls, 1000L, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void awaitTasks(RequestScheduler scheduler, TrafficClass cls, long ledgerId) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.executeOrdered(cls, ledgerId, done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRequestsOfALedgerAreExecutedInOrder() throws Exception {
+        newScheduler(0, false);
+        CountDownLatch release = blockThread(TrafficClass.TAILING_READ);
+        TrafficClass[] classes = { TrafficClass.CATCH_UP_READ, TrafficClass.TAILING_READ, TrafficClass.RECOVERY };
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            final int request = i;
+            scheduler.executeOrdered(classes[i % classes.length], 1L, () -> executed.add(request));
+            expected.add(request);
+        }
+        release.countDown();
+        awaitTasks(scheduler, TrafficClass.CATCH_UP_READ, 1L);
+
+        assertEquals(expected, executed);
+    }
+
+    @Test
+    public void testBusyClassDoesNotStarveOtherClasses() throws Exception {
+        newScheduler(0, false);
+        CountDownLatch release = blockThread(TrafficClass.TAILING_READ);
+        List<TrafficClass> executed = Collections.synchronizedList(new ArrayList<>());
+        for (long ledgerId = 0; ledgerId < 20; ledgerId++) {
+            scheduler.executeOrdered(TrafficClass.TAILING_READ, ledgerId,
+                    () -> executed.add(TrafficClass.TAILING_READ));
+        }
+        scheduler.executeOrdered(TrafficClass.CATCH_UP_READ, 100L, () -> executed.add(TrafficClass.CATCH_UP_READ));
+        release.countDown();
+        awaitTasks(scheduler, TrafficClass.TAILING_READ, 200L);
+
+        assertEquals(21, executed.size());
+        assertTrue(executed.indexOf(TrafficClass.CATCH_UP_READ) <= TrafficClass.TAILING_READ.defaultWeight);
+    }
+
+    @Test
+    public void testRequestJoiningAFullQueueIsRejected() throws Exception {
+        newScheduler(1, false);
+        CountDownLatch release = blockThread(TrafficClass.RECOVERY);
+        scheduler.executeOrdered(TrafficClass.CATCH_UP_READ, 1L, () -> { });
+        try {
+            // joins the queue of the catch-up read of the ledger
+            scheduler.executeOrdered(TrafficClass.TAILING_READ, 1L, () -> { });
+            fail("The request should join the full catch-up read queue");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        // the tailing reads of another ledger have their own queue
+        scheduler.executeOrdered(TrafficClass.TAILING_READ, 2L, () -> { });
+        release.countDown();
+    }
+
+    @Test
+    public void testMdcIsPreserved() throws Exception {
+        newScheduler(0, true);
+        AtomicReference<String> withContext = new AtomicReference<>();
+        AtomicReference<String> withoutContext = new AtomicReference<>("unexpected");
+        CountDownLatch done = new CountDownLatch(2);
+        MDC.put("request", "ledger-1");
+        try {
+            scheduler.executeOrdered(TrafficClass.ADD, 1L, () -> {
+                withContext.set(MDC.get("request"));
+                done.countDown();
+            });
+        } finally {
+            MDC.remove("request");
+        }
+        scheduler.executeOrdered(TrafficClass.ADD, 1L, () -> {
+            withoutContext.set(MDC.get("request"));
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals("ledger-1", withContext.get());
+        assertNull(withoutContext.get());
+    }
+
+    @Test
+    public void testClassifier() {
+        RequestScheduler.Classifier classifier = new RequestScheduler.Classifier();
+        // the ledger isn't tracked yet
+        assertEquals(TrafficClass.CATCH_UP_READ, classifier.classifyRead(0L, 0L, false));
+
+        assertEquals(TrafficClass.ADD, classifier.classifyAdd(1L, 1000L, false, false));
+        assertEquals(TrafficClass.TAILING_READ, classifier.classifyRead(1L, 950L, false));
+        assertEquals(TrafficClass.CATCH_UP_READ, classifier.classifyRead(1L, 10L, false));
+        assertEquals(TrafficClass.RECOVERY, classifier.classifyRead(1L, 10L, true));
+
+        // an add received out of order doesn't move the last added entry back
+        classifier.classifyAdd(1L, 500L, false, false);
+        assertEquals(TrafficClass.TAILING_READ, classifier.classifyRead(1L, 950L, false));
+
+        assertEquals(TrafficClass.RECOVERY, classifier.classifyAdd(1L, 1001L, true, true));
+        assertEquals(TrafficClass.AUTO_RECOVERY, classifier.classifyAdd(1L, 1001L, false, true));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the per tenant rate limits of {@link TenantThrottler}.
+ */
+public class TenantThrottlerTest {
+
+    private EmbeddedChannel channel;
+    private Counter throttledCounter;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        throttledCounter = mock(Counter.class);
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testTenantOverItsLimitIsPaused() {
+        TenantThrottler throttler = new TenantThrottler(0, 0, 2, throttledCounter);
+        throttler.onReadRequest(channel);
+        throttler.onReadRequest(channel);
+        assertTrue(channel.config().isAutoRead());
+
+        throttler.onReadRequest(channel);
+        assertFalse(channel.config().isAutoRead());
+        // the requests of a paused channel are still accounted, the channel is paused once
+        throttler.onReadRequest(channel);
+        assertFalse(channel.config().isAutoRead());
+        verify(throttledCounter, times(1)).inc();
+    }
+
+    @Test
+    public void testTenantOverItsLimitIsRejected() {
+        TenantThrottler throttler = new TenantThrottler(0, 0, 2, throttledCounter);
+        throttler.onReadRequest(channel);
+        throttler.onReadRequest(channel);
+        // the tenant used all its tokens, but doesn't owe any
+        assertFalse(throttler.isReadRateExceeded(channel));
+
+        throttler.onReadRequest(channel);
+        assertTrue(throttler.isReadRateExceeded(channel));
+        // the adds of the tenant aren't limited
+        assertFalse(throttler.isAddRateExceeded(channel));
+    }
+
+    @Test
+    public void testInProgressLimitDoesNotResumeThrottledChannel() {
+        TenantThrottler throttler = new TenantThrottler(1, 0, 0, throttledCounter);
+        throttler.onAddRequest(channel, 100);
+        throttler.onAddRequest(channel, 100);
+        assertFalse(channel.config().isAutoRead());
+
+        // an add waiting for the in progress limit pauses and resumes the channel
+        assertTrue(AutoReadPauses.pause(channel, AutoReadPauses.IN_PROGRESS_LIMIT));
+        AutoReadPauses.resume(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
+        assertFalse(channel.config().isAutoRead());
+        assertTrue(AutoReadPauses.isPaused(channel, AutoReadPauses.TENANT_RATE_LIMIT));
+    }
+
+    @Test
+    public void testChannelResumesOnceTheDeficitIsPaid() throws Exception {
+        TenantThrottler throttler = new TenantThrottler(0, 100, 0, throttledCounter);
+        // 20 bytes over the 100 bytes per second of the tenant, paid in 200ms
+        throttler.onAddRequest(channel, 120);
+        assertFalse(channel.config().isAutoRead());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!channel.config().isAutoRead() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            channel.runScheduledPendingTasks();
+        }
+        assertTrue(channel.config().isAutoRead());
+        assertFalse(AutoReadPauses.isPaused(channel, AutoReadPauses.TENANT_RATE_LIMIT));
+    }
+
+    @Test
+    public void testChannelReadsOnceResumedForAllReasons() {
+        assertTrue(AutoReadPauses.pause(channel, AutoReadPauses.TENANT_RATE_LIMIT));
+        assertFalse(AutoReadPauses.pause(channel, AutoReadPauses.TENANT_RATE_LIMIT));
+        assertTrue(AutoReadPauses.pause(channel, AutoReadPauses.IN_PROGRESS_LIMIT));
+        assertFalse(channel.config().isAutoRead());
+
+        AutoReadPauses.resume(channel, AutoReadPauses.TENANT_RATE_LIMIT);
+        assertFalse(channel.config().isAutoRead());
+        AutoReadPauses.resume(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
+        assertTrue(channel.config().isAutoRead());
+        // resuming a reason the channel isn't paused for is a no-op
+        AutoReadPauses.resume(channel, AutoReadPauses.IN_PROGRESS_LIMIT);
+        assertTrue(channel.config().isAutoRead());
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * Test the scheduling, the claims and the expiry of the timeouts of {@link TimeoutWheel}.
+ */
+public class TimeoutWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static class TestTimeout extends TimeoutWheel.Timeout {
+        final String name;
+        volatile long deadlineNanos;
+        final AtomicInteger completions = new AtomicInteger();
+
+        TestTimeout(String name, long deadlineNanos) {
+            this.name = name;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        long deadlineNanos() {
+            return deadlineNanos;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static List<TestTimeout> expire(TimeoutWheel<TestTimeout> wheel, long nowNanos) {
+        List<TestTimeout> expired = new ArrayList<>();
+        assertEquals(wheel.expire(nowNanos, expired::add), expired.size());
+        return expired;
+    }
+
+    @Test
+    public void testOnlyPassedDeadlinesExpire() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        TestTimeout first = new TestTimeout("first", millis(5));
+        TestTimeout second = new TestTimeout("second", millis(20));
+        wheel.schedule(first);
+        wheel.schedule(second);
+
+        assertEquals(Arrays.asList(first), expire(wheel, millis(10)));
+        assertTrue(expire(wheel, millis(15)).isEmpty());
+        assertEquals(Arrays.asList(second), expire(wheel, millis(25)));
+        assertTrue(expire(wheel, millis(100)).isEmpty());
+    }
+
+    @Test
+    public void testExpiredTimeoutCantBeClaimed() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        TestTimeout timeout = new TestTimeout("timeout", millis(5));
+        wheel.schedule(timeout);
+        assertEquals(Arrays.asList(timeout), expire(wheel, millis(10)));
+        // the response of the operation arrives too late
+        assertFalse(timeout.claim());
+    }
+
+    @Test
+    public void testClaimedTimeoutDoesntExpire() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        TestTimeout claimed = new TestTimeout("claimed", millis(5));
+        TestTimeout other = new TestTimeout("other", millis(5));
+        wheel.schedule(claimed);
+        wheel.schedule(other);
+        assertTrue(claimed.claim());
+        assertFalse(claimed.claim());
+
+        // claimed, but not cancelled yet
+        assertEquals(Arrays.asList(other), expire(wheel, millis(10)));
+        wheel.cancel(claimed);
+
+        // the timeout can be reused for another operation once claimed
+        claimed.deadlineNanos = millis(20);
+        wheel.schedule(claimed);
+        assertTrue(claimed.claim());
+        wheel.cancel(claimed);
+        assertTrue(expire(wheel, millis(30)).isEmpty());
+        assertFalse(claimed.claim());
+    }
+
+    @Test
+    public void testCancelledTimeoutIsRemoved() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        List<TestTimeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestTimeout timeout = new TestTimeout("timeout-" + i, millis(5));
+            timeouts.add(timeout);
+            wheel.schedule(timeout);
+        }
+        // cancel the head, the middle and the tail of the bucket
+        for (int i : new int[] { 0, 2, 4 }) {
+            assertTrue(timeouts.get(i).claim());
+            wheel.cancel(timeouts.get(i));
+            // cancelling twice is harmless
+            wheel.cancel(timeouts.get(i));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(timeouts.get(1), timeouts.get(3))),
+                new HashSet<>(expire(wheel, millis(10))));
+    }
+
+    @Test
+    public void testPushedBackDeadline() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        TestTimeout timeout = new TestTimeout("timeout", millis(5));
+        wheel.schedule(timeout);
+        timeout.deadlineNanos = millis(50);
+
+        assertTrue(expire(wheel, millis(10)).isEmpty());
+        assertTrue(expire(wheel, millis(40)).isEmpty());
+        assertEquals(Arrays.asList(timeout), expire(wheel, millis(55)));
+    }
+
+    @Test
+    public void testDeadlineBeyondRevolution() {
+        // a revolution of the wheel is 16 ticks
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 16, 0L);
+        TestTimeout timeout = new TestTimeout("timeout", millis(100));
+        wheel.schedule(timeout);
+
+        assertTrue(expire(wheel, millis(20)).isEmpty());
+        assertTrue(expire(wheel, millis(60)).isEmpty());
+        assertTrue(expire(wheel, millis(99)).isEmpty());
+        assertEquals(Arrays.asList(timeout), expire(wheel, millis(101)));
+    }
+
+    @Test
+    public void testPassedDeadlineExpiresAtNextTick() {
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 64, 0L);
+        assertTrue(expire(wheel, millis(50)).isEmpty());
+
+        // the bucket of its deadline was already walked
+        TestTimeout timeout = new TestTimeout("timeout", millis(10));
+        wheel.schedule(timeout);
+        assertEquals(Arrays.asList(timeout), expire(wheel, millis(51)));
+    }
+
+    /**
+     * The owners of the timeouts claim them concurrently with the expiry, and reuse them for the next
+     * operation as soon as the operation completed, as the completions of the channel are recycled.
+     * Every operation must complete exactly once, and the wheel must stay consistent.
+     */
+    @Test
+    public void testClaimsRaceWithExpiry() throws Exception {
+        final int numOwners = 4;
+        final int timeoutsPerOwner = 8;
+        final int operationsPerTimeout = 300;
+        TimeoutWheel<TestTimeout> wheel = new TimeoutWheel<>(TICK_NANOS, 16, System.nanoTime());
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicInteger expiredOperations = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numOwners + 1);
+        try {
+            Future<?> expirer = executor.submit(() -> {
+                while (!stopped.get()) {
+                    wheel.expire(System.nanoTime(), timeout -> {
+                        expiredOperations.incrementAndGet();
+                        timeout.completions.incrementAndGet();
+                    });
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+            });
+
+            List<Future<?>> owners = new ArrayList<>();
+            List<TestTimeout> allTimeouts = new ArrayList<>();
+            for (int o = 0; o < numOwners; o++) {
+                List<TestTimeout> timeouts = new ArrayList<>();
+                for (int t = 0; t < timeoutsPerOwner; t++) {
+                    timeouts.add(new TestTimeout("timeout-" + o + "-" + t, 0L));
+                }
+                allTimeouts.addAll(timeouts);
+                owners.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int op = 0; op < operationsPerTimeout; op++) {
+                        for (TestTimeout timeout : timeouts) {
+                            timeout.deadlineNanos = System.nanoTime() + random.nextLong(millis(2));
+                            wheel.schedule(timeout);
+                            if (random.nextInt(4) == 0) {
+                                // the entries of a range read push the deadline back
+                                timeout.deadlineNanos = System.nanoTime() + random.nextLong(millis(3));
+                            }
+                        }
+                        LockSupport.parkNanos(random.nextLong(millis(2)));
+                        for (TestTimeout timeout : timeouts) {
+                            if (timeout.claim()) {
+                                wheel.cancel(timeout);
+                                timeout.completions.incrementAndGet();
+                            }
+                            // wait for the expiry to complete the operation, before reusing the timeout
+                            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+                            while (timeout.completions.get() < op + 1) {
+                                if (System.nanoTime() - waitUntil > 0) {
+                                    failure.compareAndSet(null, timeout + " never completed operation " + op);
+                                    return null;
+                                }
+                                Thread.yield();
+                            }
+                            if (timeout.completions.get() != op + 1) {
+                                failure.compareAndSet(null, timeout + " completed operation " + op + " twice");
+                                return null;
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> owner : owners) {
+                owner.get(60, TimeUnit.SECONDS);
+            }
+            stopped.set(true);
+            expirer.get(60, TimeUnit.SECONDS);
+            assertNull(failure.get(), failure.get());
+            assertTrue("No operation raced with the expiry", expiredOperations.get() > 0);
+            for (TestTimeout timeout : allTimeouts) {
+                assertEquals(timeout.toString(), operationsPerTimeout, timeout.completions.get());
+            }
+
+            // the wheel is still consistent: every timeout scheduled again expires exactly once
+            long nowNanos = System.nanoTime();
+            for (TestTimeout timeout : allTimeouts) {
+                timeout.deadlineNanos = nowNanos;
+                wheel.schedule(timeout);
+            }
+            List<TestTimeout> expired = expire(wheel, nowNanos + TimeUnit.SECONDS.toNanos(1));
+            assertEquals(allTimeouts.size(), expired.size());
+            assertEquals(new HashSet<>(allTimeouts), new HashSet<>(expired));
+        } finally {
+            stopped.set(true);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test the responses of the adds processed by {@link WriteEntryBatchProcessor}.
+ */
+public class WriteEntryBatchProcessorTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    private Bookie bookie;
+    private Channel channel;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setUp() {
+        bookie = mock(Bookie.class);
+        channel = mock(Channel.class);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.voidPromise()).thenReturn(mock(ChannelPromise.class));
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+    }
+
+    private WriteEntryProcessor newWrite(long ledgerId, long entryId) {
+        ByteBuf data = Unpooled.buffer(32);
+        data.writeLong(ledgerId);
+        data.writeLong(entryId);
+        data.writeBytes("payload".getBytes());
+        BookieProtocol.ParsedAddRequest request = BookieProtocol.ParsedAddRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId, (short) 0, MASTER_KEY, data);
+        data.release();
+        return WriteEntryProcessor.create(request, requestHandler, requestProcessor);
+    }
+
+    @Test
+    public void testEachAddIsAnsweredOnce() {
+        WriteEntryBatchProcessor batch = new WriteEntryBatchProcessor(requestHandler, requestProcessor);
+        batch.add(newWrite(1L, 0L));
+        batch.add(newWrite(1L, 1L));
+        batch.add(newWrite(1L, 2L));
+        // the first and the last entries are logged to the journal, the second one can't be added
+        doAnswer(invocation -> {
+            WriteCallback[] cbs = invocation.getArgument(1);
+            cbs[0].writeComplete(BookieProtocol.EOK, 1L, 0L, null, requestHandler);
+            cbs[2].writeComplete(BookieProtocol.EOK, 1L, 2L, null, requestHandler);
+            return new Exception[] { null, new IOException("injected"), null };
+        }).when(bookie).addEntries(any(), any(), eq(3), anyBoolean(), any(), any());
+
+        batch.run();
+
+        verify(requestHandler, times(2)).prepareSendResponseV2(eq(BookieProtocol.EOK), any());
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(channel).writeAndFlush(response.capture(), any());
+        assertEquals(BookieProtocol.EIO, ((BookieProtocol.Response) response.getValue()).getErrorCode());
+        assertEquals(1L, ((BookieProtocol.Response) response.getValue()).getEntryId());
+        verify(requestProcessor, times(3)).onAddRequestFinish();
+    }
+
+    @Test
+    public void testAddsFailWhenTheBookieIsInterrupted() {
+        WriteEntryBatchProcessor batch = new WriteEntryBatchProcessor(requestHandler, requestProcessor);
+        batch.add(newWrite(1L, 0L));
+        batch.add(newWrite(2L, 0L));
+        // the bookie was interrupted before logging the entries to the journal
+        when(bookie.addEntries(any(), any(), eq(2), anyBoolean(), any(), any())).thenReturn(
+                new Exception[] { new IOException("interrupted"), new IOException("interrupted") });
+
+        batch.run();
+
+        verify(requestHandler, never()).prepareSendResponseV2(anyInt(), any());
+        ArgumentCaptor<Object> responses = ArgumentCaptor.forClass(Object.class);
+        verify(channel, times(2)).writeAndFlush(responses.capture(), any());
+        for (Object response : responses.getAllValues()) {
+            assertEquals(BookieProtocol.EIO, ((BookieProtocol.Response) response).getErrorCode());
+        }
+        verify(requestProcessor, times(2)).onAddRequestFinish();
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.bookkeeper.metadata.etcd;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.Client;
@@ -33,6 +34,7 @@ import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -44,6 +46,7 @@ import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
 import org.apache.bookkeeper.metadata.etcd.helpers.KeyIterator;
@@ -63,6 +66,9 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 @Slf4j
 class EtcdLedgerManager implements LedgerManager {
 
+    // the max number of ledgers of a transaction, below the default max number of operations of etcd
+    private static final int MAX_OPS_PER_TXN = 128;
+
     private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
 
     private final String scope;
@@ -78,10 +84,18 @@ class EtcdLedgerManager implements LedgerManager {
 
     EtcdLedgerManager(Client client,
                       String scope) {
+        this(client, client.getKVClient(), new EtcdWatchClient(client), scope);
+    }
+
+    @VisibleForTesting
+    EtcdLedgerManager(Client client,
+                      KV kvClient,
+                      EtcdWatchClient watchClient,
+                      String scope) {
         this.client = client;
-        this.kvClient = client.getKVClient();
+        this.kvClient = kvClient;
         this.scope = scope;
-        this.watchClient = new EtcdWatchClient(client);
+        this.watchClient = watchClient;
     }
 
     private boolean isClosed() {
@@ -144,6 +158,64 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    /**
+     * Create the metadata of the ledgers with transactions of up to {@link #MAX_OPS_PER_TXN} ledgers. If
+     * a transaction fails as a ledger exists, the ledgers of the transaction are created one by one, to get
+     * a result per ledger.
+     */
+    @Override
+    public List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgersMetadata(List<Long> ledgerIds,
+                                                                                   List<LedgerMetadata> metadatas) {
+        List<CompletableFuture<Versioned<LedgerMetadata>>> promises = new ArrayList<>(ledgerIds.size());
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            promises.add(new CompletableFuture<>());
+        }
+        for (int from = 0; from < ledgerIds.size(); from += MAX_OPS_PER_TXN) {
+            int to = Math.min(ledgerIds.size(), from + MAX_OPS_PER_TXN);
+            List<Long> ids = ledgerIds.subList(from, to);
+            List<LedgerMetadata> txnMetadatas = metadatas.subList(from, to);
+            List<CompletableFuture<Versioned<LedgerMetadata>>> txnPromises = promises.subList(from, to);
+            Cmp[] cmps = new Cmp[ids.size()];
+            io.etcd.jetcd.op.Op[] puts = new io.etcd.jetcd.op.Op[ids.size()];
+            try {
+                for (int i = 0; i < ids.size(); i++) {
+                    ByteSequence ledgerKeyBs = ByteSequence.from(
+                        EtcdUtils.getLedgerKey(scope, ids.get(i)), StandardCharsets.UTF_8);
+                    cmps[i] = new Cmp(ledgerKeyBs, Cmp.Op.EQUAL, CmpTarget.createRevision(0L));
+                    puts[i] = io.etcd.jetcd.op.Op.put(
+                        ledgerKeyBs, ByteSequence.from(serDe.serialize(txnMetadatas.get(i))), PutOption.DEFAULT);
+                }
+            } catch (IOException ioe) {
+                txnPromises.forEach(promise ->
+                    promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe)));
+                continue;
+            }
+            kvClient.txn()
+                .If(cmps)
+                .Then(puts)
+                .commit()
+                .thenAccept(resp -> {
+                    if (resp.isSucceeded()) {
+                        for (int i = 0; i < ids.size(); i++) {
+                            txnPromises.get(i).complete(new Versioned<>(txnMetadatas.get(i),
+                                new LongVersion(resp.getHeader().getRevision())));
+                        }
+                    } else {
+                        // some of the ledgers exist
+                        for (int i = 0; i < ids.size(); i++) {
+                            FutureUtils.proxyTo(createLedgerMetadata(ids.get(i), txnMetadatas.get(i)),
+                                txnPromises.get(i));
+                        }
+                    }
+                })
+                .exceptionally(cause -> {
+                    txnPromises.forEach(promise -> promise.completeExceptionally(new BKException.MetaStoreException()));
+                    return null;
+                });
+        }
+        return promises;
+    }
+
     @Override
     public CompletableFuture<Void> removeLedgerMetadata(long ledgerId, Version version) {
         CompletableFuture<Void> promise = new CompletableFuture<>();
@@ -209,6 +281,51 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    /**
+     * Remove the metadata of the ledgers with transactions of up to {@link #MAX_OPS_PER_TXN} ledgers. If
+     * a transaction fails as a ledger doesn't exist, the ledgers of the transaction are removed one by one,
+     * to get a result per ledger.
+     */
+    @Override
+    public List<CompletableFuture<Void>> removeLedgersMetadata(List<Long> ledgerIds) {
+        List<CompletableFuture<Void>> promises = new ArrayList<>(ledgerIds.size());
+        for (int i = 0; i < ledgerIds.size(); i++) {
+            promises.add(new CompletableFuture<>());
+        }
+        for (int from = 0; from < ledgerIds.size(); from += MAX_OPS_PER_TXN) {
+            int to = Math.min(ledgerIds.size(), from + MAX_OPS_PER_TXN);
+            List<Long> ids = ledgerIds.subList(from, to);
+            List<CompletableFuture<Void>> txnPromises = promises.subList(from, to);
+            Cmp[] cmps = new Cmp[ids.size()];
+            io.etcd.jetcd.op.Op[] deletes = new io.etcd.jetcd.op.Op[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                ByteSequence ledgerKeyBs = ByteSequence.from(
+                    EtcdUtils.getLedgerKey(scope, ids.get(i)), StandardCharsets.UTF_8);
+                cmps[i] = new Cmp(ledgerKeyBs, Cmp.Op.GREATER, CmpTarget.createRevision(0L));
+                deletes[i] = io.etcd.jetcd.op.Op.delete(ledgerKeyBs, DeleteOption.DEFAULT);
+            }
+            kvClient.txn()
+                .If(cmps)
+                .Then(deletes)
+                .commit()
+                .thenAccept(resp -> {
+                    if (resp.isSucceeded()) {
+                        txnPromises.forEach(promise -> promise.complete(null));
+                    } else {
+                        // some of the ledgers don't exist
+                        for (int i = 0; i < ids.size(); i++) {
+                            FutureUtils.proxyTo(removeLedgerMetadata(ids.get(i), Version.ANY), txnPromises.get(i));
+                        }
+                    }
+                })
+                .exceptionally(cause -> {
+                    txnPromises.forEach(promise -> promise.completeExceptionally(new BKException.MetaStoreException()));
+                    return null;
+                });
+        }
+        return promises;
+    }
+
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
         CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
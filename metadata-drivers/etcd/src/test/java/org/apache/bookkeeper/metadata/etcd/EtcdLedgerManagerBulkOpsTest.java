@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.etcd.jetcd.Client;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.Txn;
+import io.etcd.jetcd.kv.GetResponse;
+import io.etcd.jetcd.kv.TxnResponse;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the bulk creations and removals of ledgers of {@link EtcdLedgerManager}, which are batched in
+ * transactions.
+ */
+public class EtcdLedgerManagerBulkOpsTest {
+
+    private static final int MAX_OPS_PER_TXN = 128;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+
+    /**
+     * The shape of a transaction committed by the ledger manager.
+     */
+    private static class TxnRecord {
+        int numCmps = 0;
+        int numThens = 0;
+        int numElses = 0;
+    }
+
+    private final List<TxnRecord> txns = new ArrayList<>();
+    // the responses to the transactions, in the order they are committed
+    private final Queue<CompletableFuture<TxnResponse>> responses = new ArrayDeque<>();
+    private EtcdLedgerManager ledgerManager;
+
+    @Before
+    public void setUp() {
+        KV kvClient = mock(KV.class);
+        when(kvClient.txn()).thenAnswer(invocation -> newTxn());
+        ledgerManager = new EtcdLedgerManager(mock(Client.class), kvClient, mock(EtcdWatchClient.class), "test");
+    }
+
+    private Txn newTxn() {
+        TxnRecord record = new TxnRecord();
+        txns.add(record);
+        return mock(Txn.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "If":
+                    record.numCmps += invocation.getArguments().length;
+                    return invocation.getMock();
+                case "Then":
+                    record.numThens += invocation.getArguments().length;
+                    return invocation.getMock();
+                case "Else":
+                    record.numElses += invocation.getArguments().length;
+                    return invocation.getMock();
+                case "commit":
+                    return responses.remove();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Respond to the next transaction.
+     *
+     * @param succeeded whether the comparisons of the transaction succeeded
+     * @param revision the revision of the store after the transaction
+     * @param count the count of the get of the transaction, if any
+     */
+    private void respond(boolean succeeded, long revision, long count) {
+        TxnResponse response = mock(TxnResponse.class, RETURNS_DEEP_STUBS);
+        when(response.isSucceeded()).thenReturn(succeeded);
+        when(response.getHeader().getRevision()).thenReturn(revision);
+        GetResponse getResponse = mock(GetResponse.class);
+        when(getResponse.getCount()).thenReturn(count);
+        when(response.getGetResponses()).thenReturn(Collections.singletonList(getResponse));
+        responses.add(CompletableFuture.completedFuture(response));
+    }
+
+    private static LedgerMetadata metadata(long ledgerId) {
+        return LedgerMetadataBuilder.create().withId(ledgerId).withEnsembleSize(3).withWriteQuorumSize(3)
+                .withAckQuorumSize(2).withDigestType(DigestType.CRC32C).withPassword(PASSWORD)
+                .newEnsembleEntry(0L, ENSEMBLE).build();
+    }
+
+    private List<CompletableFuture<Versioned<LedgerMetadata>>> createLedgers(List<Long> ledgerIds) {
+        List<LedgerMetadata> metadatas = new ArrayList<>();
+        for (long ledgerId : ledgerIds) {
+            metadatas.add(metadata(ledgerId));
+        }
+        return ledgerManager.createLedgersMetadata(ledgerIds, metadatas);
+    }
+
+    private static void assertFailure(CompletableFuture<?> result, Class<? extends Throwable> expected)
+            throws InterruptedException {
+        try {
+            result.get();
+            fail("The operation should fail with " + expected.getSimpleName());
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause().toString(), expected.isInstance(ee.getCause()));
+        }
+    }
+
+    private void assertBulkTxn(TxnRecord txn, int numLedgers) {
+        assertEquals(numLedgers, txn.numCmps);
+        assertEquals(numLedgers, txn.numThens);
+        assertEquals(0, txn.numElses);
+    }
+
+    private void assertSingleTxn(TxnRecord txn) {
+        assertEquals(1, txn.numCmps);
+        assertEquals(1, txn.numThens);
+        assertEquals(1, txn.numElses);
+    }
+
+    @Test
+    public void testLedgersAreCreatedWithATxnPerBatch() throws Exception {
+        int numLedgers = MAX_OPS_PER_TXN + 2;
+        List<Long> ledgerIds = new ArrayList<>();
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            ledgerIds.add(ledgerId);
+        }
+        respond(true, 7L, 0L);
+        respond(true, 8L, 0L);
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(ledgerIds);
+
+        assertEquals(2, txns.size());
+        assertBulkTxn(txns.get(0), MAX_OPS_PER_TXN);
+        assertBulkTxn(txns.get(1), 2);
+        for (int i = 0; i < numLedgers; i++) {
+            Versioned<LedgerMetadata> created = results.get(i).get();
+            assertEquals(i, created.getValue().getLedgerId());
+            assertEquals(new LongVersion(i < MAX_OPS_PER_TXN ? 7L : 8L), created.getVersion());
+        }
+    }
+
+    @Test
+    public void testExistingLedgerFailsOnlyItsCreation() throws Exception {
+        // the transaction fails as a ledger exists, the ledgers are then created one by one
+        respond(false, 9L, 0L);
+        respond(false, 10L, 0L);
+        respond(true, 10L, 1L);
+        respond(false, 11L, 0L);
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(Arrays.asList(1L, 2L, 3L));
+
+        assertEquals(4, txns.size());
+        assertBulkTxn(txns.get(0), 3);
+        for (int i = 1; i < 4; i++) {
+            assertSingleTxn(txns.get(i));
+        }
+        assertEquals(new LongVersion(10L), results.get(0).get().getVersion());
+        assertFailure(results.get(1), BKException.BKLedgerExistException.class);
+        assertEquals(new LongVersion(11L), results.get(2).get().getVersion());
+    }
+
+    @Test
+    public void testStoreFailureFailsTheLedgersOfTheTxn() throws Exception {
+        responses.add(FutureUtils.exception(new Exception("injected failure")));
+        List<CompletableFuture<Versioned<LedgerMetadata>>> results = createLedgers(Arrays.asList(1L, 2L));
+
+        assertEquals(1, txns.size());
+        for (CompletableFuture<Versioned<LedgerMetadata>> result : results) {
+            assertFailure(result, BKException.MetaStoreException.class);
+        }
+    }
+
+    @Test
+    public void testLedgersAreRemovedWithATxn() throws Exception {
+        respond(true, 12L, 0L);
+        List<CompletableFuture<Void>> results = ledgerManager.removeLedgersMetadata(Arrays.asList(1L, 2L));
+
+        assertEquals(1, txns.size());
+        assertBulkTxn(txns.get(0), 2);
+        for (CompletableFuture<Void> result : results) {
+            result.get();
+        }
+    }
+
+    @Test
+    public void testMissingLedgerFallsBackToSingleRemovals() throws Exception {
+        // the transaction fails as a ledger doesn't exist, the ledgers are then removed one by one
+        respond(false, 12L, 0L);
+        respond(true, 13L, 0L);
+        respond(false, 13L, 0L);
+        List<CompletableFuture<Void>> results = ledgerManager.removeLedgersMetadata(Arrays.asList(1L, 2L));
+
+        assertEquals(3, txns.size());
+        assertBulkTxn(txns.get(0), 2);
+        assertSingleTxn(txns.get(1));
+        assertSingleTxn(txns.get(2));
+        results.get(0).get();
+        assertFailure(results.get(1), BKException.BKNoSuchLedgerExistsException.class);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures addEntry throughput of the entry logger when entryLogPerLedger is
+ * enabled and many ledgers are being written to concurrently.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLogPerLedgerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"10000", "20000"})
+        int numLedgers;
+
+        @Param({"100"})
+        int entrySize;
+
+        File ledgerDir;
+        DefaultEntryLogger entryLogger;
+        ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ledgerDir = Files.createTempDirectory("entrylog-per-ledger-benchmark").toFile();
+            File curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+            BookieImpl.checkDirectoryStructure(curDir);
+
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+            conf.setEntryLogPerLedgerEnabled(true);
+            conf.setMaximumNumberOfActiveEntryLogs(numLedgers);
+            // keep the per-channel footprint small, there is one channel per active ledger
+            conf.setWriteBufferBytes(4096);
+            conf.setDiskUsageThreshold(0.999f);
+
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+
+            byte[] data = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(data);
+            entry = Unpooled.wrappedBuffer(data);
+
+            // open the entry log of every ledger upfront, the benchmark measures the steady state
+            for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                entryLogger.addEntry(ledgerId, entry.slice());
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void flush() throws Exception {
+            entryLogger.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            entryLogger.close();
+            FileUtils.deleteDirectory(ledgerDir);
+        }
+    }
+
+    @Benchmark
+    public long addEntry(TestState s) throws Exception {
+        long ledgerId = ThreadLocalRandom.current().nextInt(s.numLedgers);
+        return s.entryLogger.addEntry(ledgerId, s.entry.slice());
+    }
+}
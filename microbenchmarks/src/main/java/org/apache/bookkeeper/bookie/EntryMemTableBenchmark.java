@@ -0,0 +1,112 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures addEntry throughput of the skiplist and the off-heap entry memtables.
+ * The memtable is flushed to a no-op flusher whenever its size limit is reached.
+ * Run with {@code -prof gc} to compare the allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryMemTableBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"false", "true"})
+        boolean offHeap;
+
+        @Param({"100", "1024"})
+        int entrySize;
+
+        @Param({"1000"})
+        int numLedgers;
+
+        AtomicLong[] nextEntryIds;
+        EntryMemTable memTable;
+        ByteBuffer entry;
+        CacheCallback cb;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setSkipListSizeLimit(16 * 1024 * 1024);
+            conf.setMemtableOffHeapEnabled(offHeap);
+
+            CheckpointSource checkpointSource = CheckpointSource.DEFAULT;
+            memTable = conf.isMemtableOffHeapEnabled()
+                    ? new OffHeapEntryMemTable(conf, checkpointSource, NullStatsLogger.INSTANCE)
+                    : new EntryMemTable(conf, checkpointSource, NullStatsLogger.INSTANCE);
+
+            nextEntryIds = new AtomicLong[numLedgers];
+            for (int i = 0; i < nextEntryIds.length; i++) {
+                nextEntryIds[i] = new AtomicLong(0);
+            }
+
+            byte[] data = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(data);
+            entry = ByteBuffer.wrap(data);
+
+            SkipListFlusher flusher = (ledgerId, entryId, buf) -> { };
+            // flush the snapshot inline, SortedLedgerStorage does it on its scheduler
+            cb = cp -> memTable.flush(flusher);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            memTable.close();
+        }
+    }
+
+    @Benchmark
+    public long addEntry(TestState s) throws Exception {
+        int ledgerId = ThreadLocalRandom.current().nextInt(s.numLedgers);
+        long entryId = s.nextEntryIds[ledgerId].getAndIncrement();
+        return s.memTable.addEntry(ledgerId, entryId, s.entry.duplicate(), s.cb);
+    }
+}
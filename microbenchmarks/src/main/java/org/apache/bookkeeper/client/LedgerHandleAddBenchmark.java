@@ -0,0 +1,219 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the adds of several producer threads to a single ledger handle.
+ * The bookies acknowledge the writes immediately, on the thread of the ledger as the bookie client
+ * does, so the benchmark measures the add pipeline of the client: the entry id assignment, the
+ * pending adds queue and the sequencing of the completions. Run with {@code -t} to vary the number
+ * of producers.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class LedgerHandleAddBenchmark {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"100", "1024"})
+        int entrySize;
+
+        // bounds the adds in flight, as the producers are faster than the completions
+        @Param({"1000"})
+        int maxOutstandingAdds;
+
+        OrderedExecutor mainWorkerPool;
+        LedgerHandle lh;
+        Semaphore outstandingAdds;
+        AddCallback cb;
+        byte[] entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-main-worker").numThreads(4).build();
+            ClientConfiguration conf = new ClientConfiguration();
+            conf.setThrottleValue(0);
+            ClientContext clientCtx = newClientContext(ClientInternalConf.fromConfig(conf), mainWorkerPool);
+
+            List<BookieId> ensemble = Arrays.asList(BookieId.parse("bookie-0:3181"),
+                    BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+            org.apache.bookkeeper.client.api.LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(LEDGER_ID).withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                    .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C).withPassword(PASSWORD)
+                    .newEnsembleEntry(0L, ensemble).build();
+            lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                    BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            cb = (rc, handle, entryId, ctx) -> outstandingAdds.release();
+            entry = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(entry);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            outstandingAdds.acquire(maxOutstandingAdds);
+            mainWorkerPool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void addEntry(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.asyncAddEntry(s.entry, s.cb, null);
+    }
+
+    private static ClientContext newClientContext(ClientInternalConf conf, OrderedExecutor mainWorkerPool) {
+        BookieClient bookieClient = (BookieClient) Proxy.newProxyInstance(BookieClient.class.getClassLoader(),
+                new Class<?>[] { BookieClient.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addEntry":
+                            BookieId addr = (BookieId) args[0];
+                            long ledgerId = (Long) args[1];
+                            long entryId = (Long) args[3];
+                            WriteCallback cb = (WriteCallback) args[5];
+                            Object ctx = args[6];
+                            mainWorkerPool.executeOrdered(ledgerId,
+                                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, addr, ctx));
+                            return null;
+                        case "isWritable":
+                            return true;
+                        default:
+                            if (method.getReturnType() == boolean.class) {
+                                return false;
+                            } else if (method.getReturnType() == long.class) {
+                                return 0L;
+                            } else if (method.getReturnType() == int.class) {
+                                return 0;
+                            }
+                            return null;
+                    }
+                });
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        return new ClientContext() {
+            @Override
+            public ClientInternalConf getConf() {
+                return conf;
+            }
+
+            @Override
+            public LedgerManager getLedgerManager() {
+                return null;
+            }
+
+            @Override
+            public BookieWatcher getBookieWatcher() {
+                return null;
+            }
+
+            @Override
+            public EnsemblePlacementPolicy getPlacementPolicy() {
+                return null;
+            }
+
+            @Override
+            public BookieClient getBookieClient() {
+                return bookieClient;
+            }
+
+            @Override
+            public ByteBufAllocator getByteBufAllocator() {
+                return UnpooledByteBufAllocator.DEFAULT;
+            }
+
+            @Override
+            public OrderedExecutor getMainWorkerPool() {
+                return mainWorkerPool;
+            }
+
+            @Override
+            public OrderedScheduler getScheduler() {
+                return null;
+            }
+
+            @Override
+            public BookKeeperClientStats getClientStats() {
+                return clientStats;
+            }
+
+            @Override
+            public BookieReadLatencyTracker getReadLatencyTracker() {
+                return null;
+            }
+
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return null;
+            }
+
+            @Override
+            public boolean isClientClosed() {
+                return false;
+            }
+        };
+    }
+}
@@ -29,11 +29,15 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.EnDecoder;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDeCoderPreV3;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEnDecoderV3;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -43,6 +47,7 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.slf4j.MDC;
 
 /**
@@ -63,6 +68,8 @@ public class ProtocolBenchmark {
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    EnDecoder respEnDeV3;
+    ByteBufList entryList;
 
     @Setup
     public void prepare() {
@@ -77,6 +84,15 @@ public class ProtocolBenchmark {
         // prepare the encoder
         this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
         this.reqEnDeV3 = new RequestEnDecoderV3(null);
+        this.respEnDeV3 = new ResponseEnDecoderV3(null);
+
+        this.entryList = ByteBufList.get(entry.retainedSlice());
+    }
+
+    @TearDown
+    public void teardown() {
+        entryList.release();
+        entry.release();
     }
 
     @Benchmark
@@ -178,4 +194,46 @@ public class ProtocolBenchmark {
         Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
         ReferenceCountUtil.release(res);
     }
+
+    @Benchmark
+    public void testAddEntryV3Codec() throws Exception {
+        BookieProtoV3Codec.AddRequestV3 request = BookieProtoV3Codec.AddRequestV3.create(
+                0L, 0, ledgerId, entryId, masterKey, entryList, true, 0);
+
+        Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    @Benchmark
+    public void testReadEntryResponseV3() throws Exception {
+        // the bookie used to copy the entry into the protobuf message
+        ReadResponse.Builder readBuilder = ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK)
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setBody(ByteString.copyFrom(entry.nioBuffer()))
+                .setMaxLAC(entryId - 1);
+
+        Response response = Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(0L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readBuilder)
+                .build();
+
+        Object res = this.respEnDeV3.encode(response, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    @Benchmark
+    public void testReadEntryResponseV3Codec() throws Exception {
+        BookieProtoV3Codec.ReadResponseV3 response = BookieProtoV3Codec.ReadResponseV3.create(
+                0L, OperationType.READ_ENTRY, StatusCode.EOK, ledgerId, entryId, entry.retainedSlice())
+                .setMaxLAC(entryId - 1);
+
+        Object res = this.respEnDeV3.encode(response, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
 }